@@ -76,6 +76,20 @@ public class AlertsConfig {
         return alertsMaxParallelProcessing;
     }
 
+    /** Period in milliseconds of the bulk write of the alert state changes. Default: 200. */
+    @Value("${alerts.state.flush.ms:200}")
+    protected long alertsStateFlushMs;
+    public long getAlertsStateFlushMs() {
+        return alertsStateFlushMs;
+    }
+
+    /** Number of alerts with pending changes triggering a bulk write before the period. Default: 500. */
+    @Value("${alerts.state.flush.max:500}")
+    protected int alertsStateFlushMax;
+    public int getAlertsStateFlushMax() {
+        return alertsStateFlushMax;
+    }
+
     @Value("${alerts.direct.link:/alerts/!aid!/?key=!pubid!}")
     protected String alertsDirectLink;
     public String getAlertsDirectLink() {
@@ -115,6 +129,66 @@ public class AlertsConfig {
         return alertsPopupMaxDisplayedMs;
     }
 
+    // ----------------------------------------------
+    // Notification delivery
+    // ----------------------------------------------
+
+    /** Number of SMTP connections used in parallel to send the alert emails. Default: 2. */
+    @Value("${alerts.delivery.email.concurrency:2}")
+    protected int alertsDeliveryEmailConcurrency;
+    public int getAlertsDeliveryEmailConcurrency() {
+        return alertsDeliveryEmailConcurrency;
+    }
+
+    /** Max number of emails sent over one SMTP connection. Default: 50. */
+    @Value("${alerts.delivery.email.batch.max:50}")
+    protected int alertsDeliveryEmailBatchMax;
+    public int getAlertsDeliveryEmailBatchMax() {
+        return alertsDeliveryEmailBatchMax;
+    }
+
+    /** Number of Firebase requests running in parallel. Default: 2. */
+    @Value("${alerts.delivery.push.concurrency:2}")
+    protected int alertsDeliveryPushConcurrency;
+    public int getAlertsDeliveryPushConcurrency() {
+        return alertsDeliveryPushConcurrency;
+    }
+
+    /** Max number of push notifications grouped in one batch, capped by the Firebase limit (500). Default: 500. */
+    @Value("${alerts.delivery.push.batch.max:500}")
+    protected int alertsDeliveryPushBatchMax;
+    public int getAlertsDeliveryPushBatchMax() {
+        return alertsDeliveryPushBatchMax;
+    }
+
+    /** Time in milliseconds a sender waits for more notifications when a batch is not full. Default: 20. */
+    @Value("${alerts.delivery.linger.ms:20}")
+    protected long alertsDeliveryLingerMs;
+    public long getAlertsDeliveryLingerMs() {
+        return alertsDeliveryLingerMs;
+    }
+
+    /** Max number of notifications waiting per medium. Default: 10000. */
+    @Value("${alerts.delivery.queue.size:10000}")
+    protected int alertsDeliveryQueueSize;
+    public int getAlertsDeliveryQueueSize() {
+        return alertsDeliveryQueueSize;
+    }
+
+    /** Max time in milliseconds for the deliveries of an alert, the alert state moves on after it. Default: 60000. */
+    @Value("${alerts.delivery.timeout.ms:60000}")
+    protected long alertsDeliveryTimeoutMs;
+    public long getAlertsDeliveryTimeoutMs() {
+        return alertsDeliveryTimeoutMs;
+    }
+
+    /** Max time in milliseconds an alert worker waits for room in a full delivery queue. Default: 100. */
+    @Value("${alerts.delivery.enqueue.wait.ms:100}")
+    protected long alertsDeliveryEnqueueWaitMs;
+    public long getAlertsDeliveryEnqueueWaitMs() {
+        return alertsDeliveryEnqueueWaitMs;
+    }
+
     // ----------------------------------------------
     // Alert worker thread pool
     // ----------------------------------------------
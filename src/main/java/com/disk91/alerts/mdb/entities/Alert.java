@@ -41,6 +41,8 @@ import java.util.List;
         @CompoundIndex(name = "alertId_idx", def = "{'alertId': 'hashed'}"),
         @CompoundIndex(name = "state_idx", def = "{'state': 1}"),
         @CompoundIndex(name = "requestMs_idx", def = "{'requestMs': 1}"),
+        // Retention purge, ENDED alerts by requestMs
+        @CompoundIndex(name = "state_requestMs_idx", def = "{'state': 1, 'requestMs': 1}"),
         // Compound index used by the expiration check on RUNNING alerts
         @CompoundIndex(name = "state_expirationMs_idx", def = "{'state': 1, 'expirationMs': 1}"),
         // Index on sent array user login + date for user history queries
@@ -143,7 +145,12 @@ public class Alert {
 
     // ========================================
     // Sent report
-    public void upsertSent(String userId, AlertMedium medium, boolean sent, boolean ack, String error) {
+
+    /**
+     * Update or create the delivery state of a user for a medium
+     * @return true when a new entry has been added at the end of the sent list
+     */
+    public boolean upsertSent(String userId, AlertMedium medium, boolean sent, boolean ack, String error) {
         if ( this.sent == null ) this.sent = new ArrayList<>();
         boolean found = false;
         for ( AlertSentEntry entry : this.sent) {
@@ -159,6 +166,7 @@ public class Alert {
             entry.upsertState(medium, sent, ack, error);
             this.sent.add(entry);
         }
+        return !found;
     }
 
     // ========================================
@@ -97,12 +97,26 @@ public interface AlertRepository extends MongoRepository<Alert, String> {
     List<Alert> findNonEndedAlertsByAlertId(String alertId, AlertState excludedState);
 
     /**
-     * Delete all alerts in ENDED state whose requestMs is before the given cutoff.
-     * Used by the scheduled purge to reclaim storage.
+     * Find the oldest alerts in the given state with fromMs <= requestMs < cutoffMs, only id and requestMs are loaded.
+     * Used by the retention purge to delete the expired alerts by batch.
      * @param state     - expected to be AlertState.ENDED
-     * @param cutoffMs  - any alert with requestMs before this value is deleted
+     * @param fromMs    - purge position
+     * @param cutoffMs  - expiration limit
+     * @param pageable  - batch size, sorted by requestMs ascending
+     * @return list of partial Alert instances
      */
-    void deleteByStateAndRequestMsBefore(AlertState state, long cutoffMs);
+    @Query(value = "{ 'state': ?0, 'requestMs': { $gte: ?1, $lt: ?2 } }", fields = "{ '_id': 1, 'requestMs': 1 }")
+    List<Alert> findPurgeableAlerts(AlertState state, long fromMs, long cutoffMs, Pageable pageable);
+
+    /**
+     * Count the alerts in the given state with fromMs <= requestMs < cutoffMs (retention purge backlog).
+     * @param state     - expected to be AlertState.ENDED
+     * @param fromMs    - purge position
+     * @param cutoffMs  - expiration limit
+     * @return number of matching alerts
+     */
+    @Query(value = "{ 'state': ?0, 'requestMs': { $gte: ?1, $lt: ?2 } }", count = true)
+    long countPurgeableAlerts(AlertState state, long fromMs, long cutoffMs);
 
     /**
      * Return a paginated list of alerts where the given user appears in the sent array.
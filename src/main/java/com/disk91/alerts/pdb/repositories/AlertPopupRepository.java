@@ -79,10 +79,34 @@ public interface AlertPopupRepository extends JpaRepository<AlertPopup, UUID> {
     List<AlertPopup> findByUserLoginAndTimeMsGreaterThanOrderByTimeMsAsc(String userLogin, long sinceMs);
 
     /**
-     * Deletes all popup entries older than the given cutoff timestamp.
-     * @param cutoffMs - entries with timeMs before this value are removed
+     * Returns the oldest popups with fromMs <= timeMs < cutoffMs, used by the retention purge.
+     * @param fromMs - purge position
+     * @param cutoffMs - expiration limit
+     * @param pageable - used to cap results (batch size)
+     * @return list of expired popups ordered oldest first
+     */
+    @Query("SELECT p FROM AlertPopup p WHERE p.timeMs >= :fromMs AND p.timeMs < :cutoffMs ORDER BY p.timeMs ASC")
+    List<AlertPopup> findPurgeable(
+            @Param("fromMs") long fromMs,
+            @Param("cutoffMs") long cutoffMs,
+            Pageable pageable
+    );
+
+    /**
+     * Counts the popups with fromMs <= timeMs < cutoffMs (retention purge backlog).
+     * @param fromMs - purge position
+     * @param cutoffMs - expiration limit
+     * @return number of expired popups
+     */
+    long countByTimeMsGreaterThanEqualAndTimeMsLessThan(long fromMs, long cutoffMs);
+
+    /**
+     * Deletes the given popups in a single statement.
+     * @param ids - popup identifiers
+     * @return number of rows deleted
      */
     @Modifying
     @Transactional
-    void deleteByTimeMsBefore(long cutoffMs);
+    @Query("DELETE FROM AlertPopup p WHERE p.id IN :ids")
+    int deleteByIds(@Param("ids") List<UUID> ids);
 }
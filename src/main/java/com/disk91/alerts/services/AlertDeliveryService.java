@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.alerts.services;
+
+import com.disk91.alerts.config.AlertsConfig;
+import com.disk91.alerts.mdb.entities.sub.AlertMedium;
+import com.disk91.common.tools.EmailTools;
+import com.disk91.common.tools.FirebaseTools;
+import com.disk91.common.tools.Now;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+@Service
+public class AlertDeliveryService {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /*
+     * Delivery of the alert notifications out of the alert workers. Each medium has its own bounded queue and
+     * its own sender threads, the number of threads is the concurrency limit of the medium (SMTP connections,
+     * Firebase requests in parallel) so a slow medium does not delay the others. A sender takes the waiting
+     * notifications up to the batch limit, waits alerts.delivery.linger.ms for more when the batch is not full,
+     * and sends them with one call: one SMTP connection for the emails, multicast / sendEach requests for the
+     * push notifications. The result of each notification is given back with a future.
+     */
+
+    public record Delivery(AlertMedium medium, String address, String title, String body, String from) {}
+
+    public record Result(boolean sent, String error) {}
+
+    protected record Pending(Delivery delivery, long queuedNs, CompletableFuture<Result> result) {}
+
+    protected class Channel {
+        protected final AlertMedium medium;
+        protected final int concurrency;
+        protected final int batchMax;
+        protected final String failure;
+        protected final Function<List<Delivery>, List<Boolean>> sender;
+        protected final LinkedBlockingQueue<Pending> queue;
+        protected ThreadPoolTaskExecutor executor;
+        protected Timer sentLatency;
+        protected Timer failedLatency;
+        protected DistributionSummary batchSizes;
+
+        protected Channel(AlertMedium medium, int concurrency, int batchMax, String failure, Function<List<Delivery>, List<Boolean>> sender) {
+            this.medium = medium;
+            this.concurrency = Math.max(1, concurrency);
+            this.batchMax = Math.max(1, batchMax);
+            this.failure = failure;
+            this.sender = sender;
+            this.queue = new LinkedBlockingQueue<>(Math.max(1, alertsConfig.getAlertsDeliveryQueueSize()));
+        }
+
+        protected void start() {
+            String tag = medium.name().toLowerCase();
+            if ( meterRegistry != null ) {
+                sentLatency = Timer.builder("alerts_delivery_latency")
+                        .description("[Alerts] Time from queuing to delivery result of the alert notifications")
+                        .tags("medium", tag, "result", "sent")
+                        .register(meterRegistry);
+                failedLatency = Timer.builder("alerts_delivery_latency")
+                        .description("[Alerts] Time from queuing to delivery result of the alert notifications")
+                        .tags("medium", tag, "result", "failed")
+                        .register(meterRegistry);
+                batchSizes = DistributionSummary.builder("alerts_delivery_batch_size")
+                        .description("[Alerts] Number of alert notifications sent in one batch")
+                        .tags("medium", tag)
+                        .register(meterRegistry);
+                Gauge.builder("alerts_delivery_queue", queue, LinkedBlockingQueue::size)
+                        .description("[Alerts] Number of alert notifications waiting for delivery")
+                        .tags("medium", tag)
+                        .register(meterRegistry);
+            }
+            executor = new ThreadPoolTaskExecutor();
+            executor.setCorePoolSize(concurrency);
+            executor.setMaxPoolSize(concurrency);
+            executor.setThreadNamePrefix("alert-" + tag + "-");
+            executor.setWaitForTasksToCompleteOnShutdown(true);
+            executor.setAwaitTerminationSeconds(30);
+            executor.initialize();
+            for ( int i = 0 ; i < concurrency ; i++ ) executor.execute(this::loop);
+        }
+
+        protected void loop() {
+            ArrayList<Pending> batch = new ArrayList<>(batchMax);
+            long lingerNs = alertsConfig.getAlertsDeliveryLingerMs() * 1_000_000L;
+            while ( running.get() || !queue.isEmpty() ) {
+                try {
+                    Pending first = queue.poll(500, TimeUnit.MILLISECONDS);
+                    if ( first == null ) continue;
+                    batch.add(first);
+                    long lingerEnd = Now.NanoTime() + lingerNs;
+                    while ( batch.size() < batchMax ) {
+                        queue.drainTo(batch, batchMax - batch.size());
+                        long wait = lingerEnd - Now.NanoTime();
+                        if ( batch.size() >= batchMax || wait <= 0 || !running.get() ) break;
+                        Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                        if ( next == null ) break;
+                        batch.add(next);
+                    }
+                    send(batch);
+                } catch (InterruptedException x) {
+                    log.warn("[alerts] {} delivery thread interrupted", medium);
+                    // the waiting notifications won't be sent either, their alerts must not wait for them
+                    queue.drainTo(batch);
+                    batch.forEach(p -> p.result().complete(new Result(false, failure)));
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        protected void send(List<Pending> batch) {
+            List<Boolean> sent = null;
+            try {
+                sent = sender.apply(batch.stream().map(Pending::delivery).toList());
+            } catch (Exception x) {
+                log.error("[alerts] Failed to send a batch of {} {} notifications: {}", batch.size(), medium, x.getMessage());
+            }
+            long now = Now.NanoTime();
+            for ( int i = 0 ; i < batch.size() ; i++ ) {
+                Pending p = batch.get(i);
+                boolean ok = sent != null && i < sent.size() && sent.get(i);
+                if ( meterRegistry != null ) (ok ? sentLatency : failedLatency).record(now - p.queuedNs(), TimeUnit.NANOSECONDS);
+                p.result().complete(new Result(ok, ok ? "" : failure));
+            }
+            if ( meterRegistry != null ) batchSizes.record(batch.size());
+            log.debug("[alerts] {} batch of {} notifications processed", medium, batch.size());
+        }
+    }
+
+    protected final AlertsConfig alertsConfig;
+    protected final EmailTools emailTools;
+    protected final FirebaseTools firebaseTools;
+    protected final EnumMap<AlertMedium, Channel> channels = new EnumMap<>(AlertMedium.class);
+    protected final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Autowired(required = false)
+    protected MeterRegistry meterRegistry;
+
+    @Autowired
+    public AlertDeliveryService(AlertsConfig _alertsConfig, EmailTools _emailTools, FirebaseTools _firebaseTools) {
+        this.alertsConfig = _alertsConfig;
+        this.emailTools = _emailTools;
+        this.firebaseTools = _firebaseTools;
+    }
+
+    @PostConstruct
+    public void initAlertDeliveryService() {
+        channels.put(AlertMedium.EMAIL, new Channel(
+                AlertMedium.EMAIL,
+                alertsConfig.getAlertsDeliveryEmailConcurrency(),
+                alertsConfig.getAlertsDeliveryEmailBatchMax(),
+                "alerts-failed-send-email",
+                l -> emailTools.sendBatch(l.stream()
+                        .map(d -> new EmailTools.Email(d.address(), d.body(), d.title(), d.from()))
+                        .toList())
+        ));
+        channels.put(AlertMedium.PUSH, new Channel(
+                AlertMedium.PUSH,
+                alertsConfig.getAlertsDeliveryPushConcurrency(),
+                Math.min(alertsConfig.getAlertsDeliveryPushBatchMax(), FirebaseTools.FCM_BATCH_MAX),
+                "alerts-failed-send-push",
+                l -> firebaseTools.sendPushBatch(l.stream()
+                        .map(d -> new FirebaseTools.Push(d.address(), d.title(), d.body()))
+                        .toList())
+        ));
+        running.set(true);
+        channels.values().forEach(Channel::start);
+        log.info("[alerts] Delivery started, email {} connections, push {} requests in parallel",
+                channels.get(AlertMedium.EMAIL).concurrency, channels.get(AlertMedium.PUSH).concurrency);
+    }
+
+    @PreDestroy
+    public void destroyAlertDeliveryService() {
+        // the senders empty their queue before leaving
+        running.set(false);
+        channels.values().forEach(c -> { if ( c.executor != null ) c.executor.shutdown(); });
+    }
+
+    public boolean isSupported(AlertMedium medium) {
+        return channels.containsKey(medium);
+    }
+
+    public int getQueueSize(AlertMedium medium) {
+        Channel c = channels.get(medium);
+        return ( c == null ) ? 0 : c.queue.size();
+    }
+
+    /**
+     * Queue a notification for delivery, wait up to alerts.delivery.enqueue.wait.ms when the queue of the medium is full
+     * @param delivery - notification to send
+     * @return future completed with the delivery result
+     */
+    public CompletableFuture<Result> deliver(Delivery delivery) {
+        Channel c = channels.get(delivery.medium());
+        if ( c == null || !running.get() ) {
+            return CompletableFuture.completedFuture(new Result(false, "alerts-delivery-not-supported"));
+        }
+        Pending p = new Pending(delivery, Now.NanoTime(), new CompletableFuture<>());
+        try {
+            if ( !c.queue.offer(p, alertsConfig.getAlertsDeliveryEnqueueWaitMs(), TimeUnit.MILLISECONDS) ) {
+                log.warn("[alerts] {} delivery queue full, notification dropped", delivery.medium());
+                return CompletableFuture.completedFuture(new Result(false, "alerts-delivery-queue-full"));
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture(new Result(false, "alerts-delivery-queue-full"));
+        }
+        return p.result();
+    }
+
+}
@@ -25,19 +25,21 @@ import com.disk91.alerts.config.AlertsConfig;
 import com.disk91.alerts.mdb.entities.sub.AlertCriticality;
 import com.disk91.alerts.pdb.entities.AlertPopup;
 import com.disk91.alerts.pdb.repositories.AlertPopupRepository;
+import com.disk91.common.services.PurgeService;
+import com.disk91.common.services.PurgeTarget;
 import com.disk91.common.tools.Now;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Service
-public class AlertPopupService {
+public class AlertPopupService implements PurgeTarget {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -47,6 +49,9 @@ public class AlertPopupService {
     @Autowired
     protected AlertsConfig alertsConfig;
 
+    @Autowired
+    protected PurgeService purgeService;
+
 
     /**
      * Create and persist a popup notification for a user.
@@ -135,13 +140,35 @@ public class AlertPopupService {
         log.debug("[alerts] Marked {} popup(s) as viewed for user {}", updated, userLogin);
     }
 
-    /**
-     * Scheduled hourly purge of popup entries older than alerts.max.history.ms.
-     */
-    @Scheduled(fixedDelay = 3600_0000)
-    public void purgeExpiredPopups() {
-        long cutoffMs = Now.NowUtcMs() - alertsConfig.getAlertsMaxHistoryMs();
-        alertPopupRepository.deleteByTimeMsBefore(cutoffMs);
-        log.debug("[alerts] Purged popup entries older than {} ms", alertsConfig.getAlertsMaxHistoryMs());
+    // ----------------------------------------------
+    // Retention purge: popups older than alerts.max.history.ms, run by the PurgeService
+
+    @PostConstruct
+    private void initPopupPurge() {
+        purgeService.register(this);
+    }
+
+    @Override
+    public String getPurgeName() {
+        return "alerts-popups";
+    }
+
+    @Override
+    public long getPurgeCutoffMs(long nowMs) {
+        if ( alertsConfig.getAlertsMaxHistoryMs() <= 0 ) return 0;
+        return nowMs - alertsConfig.getAlertsMaxHistoryMs();
+    }
+
+    @Override
+    public PurgeBatch purgeBatch(long fromMs, long cutoffMs, int max) {
+        List<AlertPopup> expired = alertPopupRepository.findPurgeable(fromMs, cutoffMs, PageRequest.of(0, max));
+        if ( expired.isEmpty() ) return new PurgeBatch(0, fromMs);
+        alertPopupRepository.deleteByIds(expired.stream().map(AlertPopup::getId).toList());
+        return new PurgeBatch(expired.size(), expired.getLast().getTimeMs());
+    }
+
+    @Override
+    public long countPurgeBacklog(long fromMs, long cutoffMs) {
+        return alertPopupRepository.countByTimeMsGreaterThanEqualAndTimeMsLessThan(fromMs, cutoffMs);
     }
 }
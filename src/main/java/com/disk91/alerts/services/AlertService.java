@@ -28,6 +28,8 @@ import com.disk91.alerts.mdb.repositories.AlertRepository;
 import com.disk91.audit.integration.AuditIntegration;
 import com.disk91.common.config.CommonConfig;
 import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.services.PurgeService;
+import com.disk91.common.services.PurgeTarget;
 import com.disk91.common.tools.*;
 import com.disk91.common.tools.exceptions.ITNotFoundException;
 import com.disk91.common.tools.exceptions.ITParseException;
@@ -37,6 +39,7 @@ import com.disk91.groups.services.GroupsServices;
 import com.disk91.users.mdb.entities.User;
 import com.disk91.users.mdb.entities.sub.UserAlertPreference;
 import com.disk91.users.services.UserCommon;
+import com.disk91.users.services.UserRecipientIndex;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
@@ -60,15 +63,18 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.disk91.users.services.UsersRolesCache.StandardRoles.ROLE_DEVICE_ALERTING;
 import static com.disk91.users.services.UsersRolesCache.StandardRoles.ROLE_GOD_ADMIN;
 
 @Service
-public class AlertService {
+public class AlertService implements PurgeTarget {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -94,6 +100,9 @@ public class AlertService {
     @Autowired
     protected UserCommon userCommon;
 
+    @Autowired
+    protected UserRecipientIndex userRecipientIndex;
+
     @Autowired
     protected GroupsServices groupsServices;
 
@@ -101,13 +110,16 @@ public class AlertService {
     protected DeviceCache deviceCache;
 
     @Autowired
-    protected EmailTools emailTools;
+    protected AlertDeliveryService alertDeliveryService;
+
+    @Autowired
+    protected AlertPopupService alertPopupService;
 
     @Autowired
-    protected FirebaseTools firebaseTools;
+    protected PurgeService purgeService;
 
     @Autowired
-    protected AlertPopupService alertPopupService;
+    protected AlertStateWriter alertStateWriter;
 
     // ================================================================================================================
     // WORKER INFRASTRUCTURE
@@ -128,11 +140,13 @@ public class AlertService {
      */
     @PostConstruct
     private void initAlertProcessor() {
+        purgeService.register(this);
+
         // Reset PENDING_QUEUE alerts stuck in the memory queue when the previous run stopped
         List<Alert> stuckPending = alertRepository.findAlertsByState(AlertState.PENDING_QUEUE);
         for (Alert alert : stuckPending) {
             alert.setState(AlertState.PENDING);
-            alertRepository.save(alert);
+            alertStateWriter.saveState(alert);
         }
         if (!stuckPending.isEmpty()) {
             log.info("[alerts] Reset {} PENDING_QUEUE alert(s) to PENDING at startup", stuckPending.size());
@@ -142,11 +156,13 @@ public class AlertService {
         List<Alert> stuckEnding = alertRepository.findAlertsByState(AlertState.ENDING_QUEUE);
         for (Alert alert : stuckEnding) {
             alert.setState(AlertState.ENDING);
-            alertRepository.save(alert);
+            alertStateWriter.saveState(alert);
         }
         if (!stuckEnding.isEmpty()) {
             log.info("[alerts] Reset {} ENDING_QUEUE alert(s) to ENDING at startup", stuckEnding.size());
         }
+        // the resets are batched, write them before reading the alerts to enqueue
+        alertStateWriter.flush();
 
         running.set(true);
 
@@ -218,12 +234,13 @@ public class AlertService {
     }
     /**
      * Transition an alert to its queue state, persist it, and add it to the in-memory queue.
-     * PENDING → PENDING_QUEUE, ENDING → ENDING_QUEUE.
+     * PENDING → PENDING_QUEUE, ENDING → ENDING_QUEUE. The queue state is written with the next state batch,
+     * after a restart an alert still PENDING or ENDING in the database is enqueued again anyway.
      * @param alert - the alert to enqueue; its state is mutated in place
      */
     private void enqueue(Alert alert) {
         alert.setState(alert.getState() == AlertState.PENDING ? AlertState.PENDING_QUEUE : AlertState.ENDING_QUEUE);
-        alertRepository.save(alert);
+        alertStateWriter.saveState(alert);
         alertQueue.offer(alert);
     }
 
@@ -263,7 +280,7 @@ public class AlertService {
      * Find the best Medium for a given User in regard of the template preference
      * Can return NULL when no match
      */
-    private AlertMedium getRightMedium(User user, AlertLocaleMessage alm, AlertTemplate template) {
+    private AlertMedium getRightMedium(UserAlertPreference upref, AlertLocaleMessage alm, AlertTemplate template) {
 
         // find the best medium based on medium accepted by user and the medium preferred by template:
         //     Scan the template preferred in the given order and take the first accepted by the user.
@@ -271,7 +288,6 @@ public class AlertService {
         //     When selection comes to DEFAULT, for user we try PUSH, then SMS, then EMAIL based on what user accepts
         //     When no preferred, we can scan the available list in ale
 
-        UserAlertPreference upref = user.getAlertPreference() != null ? user.getAlertPreference() : UserAlertPreference.of();
         boolean templateHasDefault = template.getPreferred().isEmpty() || template.getPreferred().contains(AlertMedium.DEFAULT);
         AlertMedium selectedMedium = null;
 
@@ -326,6 +342,25 @@ public class AlertService {
         return messageVariant;
     }
 
+    /**
+     * Update the delivery entry of a user and record it for persistence, the delivery results are given back
+     * by the delivery threads so the alert is locked during the update
+     */
+    private void recordSent(Alert alert, String login, AlertMedium medium, boolean sent, boolean ack, String error) {
+        synchronized (alert) {
+            boolean added = alert.upsertSent(login, medium, sent, ack, error);
+            alertStateWriter.saveSent(alert, login, added);
+        }
+    }
+
+    /**
+     * Queue a notification and record its result on the alert once sent
+     */
+    private CompletableFuture<Void> deliver(Alert alert, String login, AlertDeliveryService.Delivery delivery) {
+        return alertDeliveryService.deliver(delivery)
+                .thenAccept(r -> recordSent(alert, login, delivery.medium(), r.sent(), false, r.error()));
+    }
+
     /**
      * Process one alert dequeued by a worker, dispatching on its current state.
      * PENDING_QUEUE: fire open notification and transition to RUNNING or ENDED per template behavior.
@@ -335,6 +370,9 @@ public class AlertService {
      */
     private void processAlert(Alert alert, long now) {
 
+        // notifications handed to the delivery service
+        List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+
         // Get the template message
         AlertTemplate template = null;
         try {
@@ -345,7 +383,7 @@ public class AlertService {
             alert.setState(AlertState.ENDED);
             alert.setRequestMs(Now.NowUtcMs());
             alert.setError("alerts-template-not-found");
-            alertRepository.save(alert);
+            alertStateWriter.commit(alert);
             return;
         }
 
@@ -394,28 +432,26 @@ public class AlertService {
                 alert.setState(AlertState.ENDED);
                 alert.setRequestMs(Now.NowUtcMs());
                 alert.setError("alerts-target-not-found");
-                alertRepository.save(alert);
+                alertStateWriter.commit(alert);
                 return;
 
             }
-            HashMap<String, User> targets = new HashMap<>();
+            HashMap<String, UserRecipientIndex.Recipient> targets = new HashMap<>();
             HashMap<String, Group> groups = new HashMap<>();
             for (String group : alert.getTargetedGroups()) {
                 log.debug("[alerts] targeted group {} found", group);
                 try {
                     Group g = groupsServices.getGroupByShortId(group);
                     if (g.isAlertGroup()) {
-                        // Find users in this group
-                        List<User> users = userCommon.getUsersByGroupWithRole(
+                        // Find users in this group (not the sub-groups, to avoid spamming the group managers)
+                        List<UserRecipientIndex.Recipient> recipients = userRecipientIndex.getAlertRecipients(
                                 g.getShortId(),
-                                false,  // prefer to not go to sub to avoid spamming the group managers
-                                true,
                                 ROLE_DEVICE_ALERTING.getRoleName()
                         );
                         // Add users
-                        for (User user : users) {
-                            targets.put(user.getLogin(), user);
-                            groups.put(user.getLogin(), g);
+                        for (UserRecipientIndex.Recipient recipient : recipients) {
+                            targets.put(recipient.login(), recipient);
+                            groups.put(recipient.login(), g);
                         }
                     } else {
                         log.debug("[alerts] group skipped {} : not an alert group", group);
@@ -433,28 +469,30 @@ public class AlertService {
                     : template.getOpen();
 
             // for each
-            for (User user : targets.values()) {
-                log.debug("[alerts] targeted user {}", user.getLogin());
+            for (UserRecipientIndex.Recipient recipient : targets.values()) {
+                log.debug("[alerts] targeted user {}", recipient.login());
 
                 // Get the locale to be used
                 AlertLocaleMessage bestLocale = this.getRightAlertLocaleMessage(
-                        user.getLanguage(),
+                        recipient.language(),
                         localeMessages
                 );
                 if (bestLocale == null) {
-                    log.warn("[alerts] No locale message for alert {} user {}, skipping", alert.getAlertId(), user.getLogin());
+                    log.warn("[alerts] No locale message for alert {} user {}, skipping", alert.getAlertId(), recipient.login());
                     continue;
-                } else log.debug("[alerts] Selected locale {} for user  {} found", bestLocale.getLocale(), user.getLogin());
+                } else log.debug("[alerts] Selected locale {} for user  {} found", bestLocale.getLocale(), recipient.login());
 
                 // Get the preferred Medium
-                AlertMedium selectedMedium = getRightMedium(user, bestLocale, template);
+                AlertMedium selectedMedium = getRightMedium(recipient.alertPreference(), bestLocale, template);
 
                 if (selectedMedium == null) {
-                    log.warn("[alerts] No compatible medium for alert {} user {}, skipping", alert.getAlertId(), user.getLogin());
+                    log.warn("[alerts] No compatible medium for alert {} user {}, skipping", alert.getAlertId(), recipient.login());
                     continue;
-                } else log.debug("[alerts] Selected medium {} for user  {} found", selectedMedium, user.getLogin());
+                } else log.debug("[alerts] Selected medium {} for user  {} found", selectedMedium, recipient.login());
 
-                if (user.isPersonalDataAccessible()) {
+                // the index instance is shared, the keys are set on a copy
+                User user = recipient.user().clone();
+                if (recipient.personalData()) {
 
                     // Find the associated AlertMediumMessage
                     AlertMediumMessage messageVariant = getRightMedium(bestLocale, selectedMedium);
@@ -483,74 +521,67 @@ public class AlertService {
                         );
                     }
 
-                    alert.upsertSent(user.getLogin(), selectedMedium, false, false, "alerts-alert-not-sent");
-                    alertRepository.save(alert);
+                    recordSent(alert, user.getLogin(), selectedMedium, false, false, "alerts-alert-not-sent");
 
                     switch (selectedMedium) {
                         case EMAIL -> {
                             user.setKeys(commonConfig.getEncryptionKey(), commonConfig.getApplicationKey());
                             try {
-                                emailTools.send(
+                                deliveries.add(deliver(alert, user.getLogin(), new AlertDeliveryService.Delivery(
+                                        selectedMedium,
                                         user.getEncEmail(),
-                                        renderedMessage,
                                         renderedTitle,
+                                        renderedMessage,
                                         (alertsConfig.getAlertsMailSender().isEmpty()) ? commonConfig.getCommonMailSender() : alertsConfig.getAlertsMailSender()
-                                );
-                                alert.upsertSent(user.getLogin(), selectedMedium, true, false, "");
+                                )));
                             } catch (ITParseException x) {
-                                alert.upsertSent(user.getLogin(), selectedMedium, false, false, "alerts-failed-to-get-email");
+                                recordSent(alert, user.getLogin(), selectedMedium, false, false, "alerts-failed-to-get-email");
                             }
                             user.cleanKeys();
-                            alertRepository.save(alert);
                         }
                         case SMS -> {
                             // @TODO
-                            alert.upsertSent(user.getLogin(), selectedMedium, false, false, "SMS Not yet implemented");
-                            alertRepository.save(alert);
+                            recordSent(alert, user.getLogin(), selectedMedium, false, false, "SMS Not yet implemented");
                             log.warn("[alerts] SMS not yet implemented");
                         }
                         case PUSH -> {
                             user.setKeys(commonConfig.getEncryptionKey(), commonConfig.getApplicationKey());
                             try {
                                 if (user.getPushAddress() == null) {
-                                    alert.upsertSent(user.getLogin(), selectedMedium, false, false, "alerts-failed-no-push-address");
+                                    recordSent(alert, user.getLogin(), selectedMedium, false, false, "alerts-failed-no-push-address");
                                 } else {
-                                    firebaseTools.sendPush(
+                                    deliveries.add(deliver(alert, user.getLogin(), new AlertDeliveryService.Delivery(
+                                            selectedMedium,
                                             user.getEncPushAddress(),
                                             renderedTitle,
-                                            renderedMessage
-                                    );
-                                    alert.upsertSent(user.getLogin(), selectedMedium, true, false, "");
+                                            renderedMessage,
+                                            null
+                                    )));
                                 }
                             } catch (ITParseException x) {
-                                alert.upsertSent(user.getLogin(), selectedMedium, false, false, "alerts-failed-send-push");
+                                recordSent(alert, user.getLogin(), selectedMedium, false, false, "alerts-failed-send-push");
                             }
                             user.cleanKeys();
-                            alertRepository.save(alert);
                         }
                         case WHATSAPP -> {
                             // @TODO
-                            alert.upsertSent(user.getLogin(), selectedMedium, false, false, "WHATSAPP Not yet implemented");
-                            alertRepository.save(alert);
+                            recordSent(alert, user.getLogin(), selectedMedium, false, false, "WHATSAPP Not yet implemented");
                             log.warn("[alerts] WHATSAPP not yet implemented");
                         }
                         case TOPIC -> {
                             // @TODO
-                            alert.upsertSent(user.getLogin(), selectedMedium, false, false, "TOPIC Not yet implemented");
-                            alertRepository.save(alert);
+                            recordSent(alert, user.getLogin(), selectedMedium, false, false, "TOPIC Not yet implemented");
                             log.warn("[alerts] TOPIC not yet implemented");
                         }
                         case WEBHOOK -> {
                             // @TODO
-                            alert.upsertSent(user.getLogin(), selectedMedium, false, false, "WEBHOOK Not yet implemented");
-                            alertRepository.save(alert);
+                            recordSent(alert, user.getLogin(), selectedMedium, false, false, "WEBHOOK Not yet implemented");
                             log.warn("[alerts] WEBHOOK not yet implemented");
                         }
                     }
                 } else {
                     log.debug("[alerts] User {} presonal data not accesible",  user.getLogin());
-                    alert.upsertSent(user.getLogin(), selectedMedium, false, false, "alerts-user-no-personal-data");
-                    alertRepository.save(alert);
+                    recordSent(alert, user.getLogin(), selectedMedium, false, false, "alerts-user-no-personal-data");
                 }
 
                 // Manage the POPUP
@@ -578,9 +609,9 @@ public class AlertService {
                         );
 
                         // Update state
-                        alert.upsertSent(user.getLogin(), AlertMedium.POPUP, true, true, "");
+                        recordSent(alert, user.getLogin(), AlertMedium.POPUP, true, true, "");
                     } else {
-                        alert.upsertSent(user.getLogin(), AlertMedium.POPUP, false, false, "alerts-no-popup-config");
+                        recordSent(alert, user.getLogin(), AlertMedium.POPUP, false, false, "alerts-no-popup-config");
                     }
 
                 }
@@ -588,41 +619,77 @@ public class AlertService {
             } // loop on users
         }
 
-        // Now, we update the alert behavior
-        switch (alert.getState()) {
-
-            case PENDING_QUEUE -> {
-                alert.setFireMs(now);
-                AlertBehavior behavior = template.getBehavior();
-                switch (behavior) {
-                    case SILENT, FIRE_FORGET -> {
-                        alert.setRequestMs(Now.NowUtcMs());
-                        alert.setState(AlertState.ENDED);
+        // the notifications are sent by the delivery service, the state changes once they are completed, the
+        // worker goes on with the next alert
+        if (deliveries.isEmpty()) {
+            completeAlert(alert, template, now);
+            return;
+        }
+        final AlertTemplate t = template;
+        CompletableFuture.allOf(deliveries.toArray(new CompletableFuture[0]))
+                .orTimeout(alertsConfig.getAlertsDeliveryTimeoutMs(), TimeUnit.MILLISECONDS)
+                .whenComplete((v, x) -> {
+                    Throwable cause = ( x instanceof CompletionException && x.getCause() != null ) ? x.getCause() : x;
+                    if (cause instanceof TimeoutException) {
+                        log.warn("[alerts] Deliveries of alert {} not completed after {} ms", alert.getAlertId(), alertsConfig.getAlertsDeliveryTimeoutMs());
+                    } else if (cause != null) {
+                        log.error("[alerts] Deliveries of alert {} failed: {}", alert.getAlertId(), cause.getMessage());
                     }
-                    case FIRE_TO_END, FIRE_UNTIL -> {
-                        alert.setState(AlertState.RUNNING);
-                        if (template.getDurationMs() > 0) {
-                            alert.setExpirationMs(now + template.getDurationMs());
-                        } else alert.setExpirationMs(now + 10*Now.ONE_MINUTE);
+                    try {
+                        completeAlert(alert, t, now);
+                    } catch (Exception e) {
+                        log.error("[alerts] Error completing alert {} (state={}): {}", alert.getAlertId(), alert.getState(), e.getMessage());
                     }
-                    default -> {
-                        log.warn("[alerts] Unknown behavior {} for alert {}, moving to ENDED", behavior, alert.getAlertId());
-                        alert.setRequestMs(Now.NowUtcMs());
-                        alert.setState(AlertState.ENDED);
+                });
+    }
+
+    /**
+     * Move the alert to its next state once its notifications are processed, called by the worker or by the
+     * delivery thread completing the last notification. The delivery results are recorded under the alert lock.
+     * @param alert - the processed alert; its state is mutated in place
+     * @param template - the alert template
+     * @param now - processing time used to set fireMs and compute expiration
+     */
+    private void completeAlert(Alert alert, AlertTemplate template, long now) {
+        synchronized (alert) {
+            // Now, we update the alert behavior
+            switch (alert.getState()) {
+
+                case PENDING_QUEUE -> {
+                    alert.setFireMs(now);
+                    AlertBehavior behavior = template.getBehavior();
+                    switch (behavior) {
+                        case SILENT, FIRE_FORGET -> {
+                            alert.setRequestMs(Now.NowUtcMs());
+                            alert.setState(AlertState.ENDED);
+                        }
+                        case FIRE_TO_END, FIRE_UNTIL -> {
+                            alert.setState(AlertState.RUNNING);
+                            if (template.getDurationMs() > 0) {
+                                alert.setExpirationMs(now + template.getDurationMs());
+                            } else alert.setExpirationMs(now + 10*Now.ONE_MINUTE);
+                        }
+                        default -> {
+                            log.warn("[alerts] Unknown behavior {} for alert {}, moving to ENDED", behavior, alert.getAlertId());
+                            alert.setRequestMs(Now.NowUtcMs());
+                            alert.setState(AlertState.ENDED);
+                        }
                     }
+                    // terminal state written before going on, RUNNING goes with the next batch
+                    if (alert.getState() == AlertState.ENDED) alertStateWriter.commit(alert);
+                    else alertStateWriter.saveState(alert);
                 }
-                alertRepository.save(alert);
-            }
 
-            case ENDING_QUEUE -> {
-                log.debug("[alerts] Alert {} close-notification processed, moving to ENDED", alert.getAlertId());
-                alert.setState(AlertState.ENDED);
-                alert.setExpirationMs(now);
-                alertRepository.save(alert);
-            }
+                case ENDING_QUEUE -> {
+                    log.debug("[alerts] Alert {} close-notification processed, moving to ENDED", alert.getAlertId());
+                    alert.setState(AlertState.ENDED);
+                    alert.setExpirationMs(now);
+                    alertStateWriter.commit(alert);
+                }
 
-            default -> {
-                log.warn("[alerts] Worker dequeued alert {} in unexpected state {}", alert.getAlertId(), alert.getState());
+                default -> {
+                    log.warn("[alerts] Worker dequeued alert {} in unexpected state {}", alert.getAlertId(), alert.getState());
+                }
             }
         }
     }
@@ -789,7 +856,7 @@ public class AlertService {
                             // @TODO - process the message retry on the second medium
                             alert.setFires(0);
                         }
-                        alertRepository.save(alert);
+                        alertStateWriter.saveState(alert);
                     }
                 }
                 return null;
@@ -824,6 +891,8 @@ public class AlertService {
      * @throws ITNotFoundException when no RUNNING alert is found for this alertId
      */
     public void endAlert(String alertId) throws ITNotFoundException {
+        // the RUNNING transition may still be in the state batch
+        alertStateWriter.flush();
         List<Alert> activeAlerts = alertRepository.findNonEndedAlertsByAlertId(alertId, AlertState.ENDED);
         if (activeAlerts.isEmpty()) {
             log.debug("[alerts] endAlert called on non-existing alert {}", alertId);
@@ -842,7 +911,7 @@ public class AlertService {
                 Alert stale = activeAlerts.get(i);
                 stale.setState(AlertState.ENDED);
                 stale.setExpirationMs(nowMs);
-                alertRepository.save(stale);
+                alertStateWriter.commit(stale);
             }
         }
 
@@ -859,7 +928,7 @@ public class AlertService {
                 // we can manually cancel but it's not the objective
                 alert.setState(AlertState.ENDED);
                 alert.setRequestMs(Now.NowUtcMs());
-                alertRepository.save(alert);
+                alertStateWriter.commit(alert);
                 return;
             }
         } catch (ITNotFoundException e) {
@@ -868,12 +937,12 @@ public class AlertService {
             alert.setState(AlertState.ENDED);
             alert.setRequestMs(Now.NowUtcMs());
             alert.setError("alerts-template-not-found");
-            alertRepository.save(alert);
+            alertStateWriter.commit(alert);
             return;
         }
 
         alert.setState(AlertState.ENDING);
-        alertRepository.save(alert);
+        alertStateWriter.saveState(alert);
         log.debug("[alerts] Alert {} moved to ENDING_QUEUE and enqueued", alertId);
         auditIntegration.auditLog(
                 ModuleCatalog.Modules.ALERTS,
@@ -955,38 +1024,55 @@ public class AlertService {
      */
     @Scheduled(fixedDelay = 30_000, initialDelay = 60_000)
     protected void checkExpiredAlerts() {
+        alertStateWriter.flush();
         long now = Now.NowUtcMs();
         List<Alert> expired = alertRepository.findExpiredRunningAlerts(AlertState.RUNNING, now);
         for (Alert alert : expired) {
             log.info("[alerts] Alert {} expired, moving to ENDED", alert.getAlertId());
             alert.setState(AlertState.ENDED);
             alert.setRequestMs(Now.NowUtcMs());
-            alertRepository.save(alert);
+            alertStateWriter.saveState(alert);
         }
 
         List<Alert> retries = alertRepository.findRetryRunningAlerts(AlertState.RUNNING, now);
         for (Alert alert : retries) {
             log.info("[alerts] Alert {} in retry, (to be implemented)", alert.getAlertId());
             alert.setRetryMs(0); // do not process any more retry
-            alertRepository.save(alert);
+            alertStateWriter.saveState(alert);
             // @TODO - process the retrial on a second medium if any or previous
         }
+        // expired alerts are terminal, written with one bulk before returning
+        alertStateWriter.flush();
 
     }
 
-    /**
-     * Daily purge: delete ENDED alerts older than alerts.max.retention.ms.
-     * Runs once per day with a 1-hour initial delay to avoid startup contention.
-     */
-    @Scheduled(fixedRateString = "PT24H", initialDelayString = "PT1H")
-    public void purgeOldAlerts() {
-        long cutoffMs = Now.NowUtcMs() - alertsConfig.getAlertsMaxRetentionMs();
-        log.info("[alerts] Purging ENDED alerts with requestMs before {}", cutoffMs);
-        try {
-            alertRepository.deleteByStateAndRequestMsBefore(AlertState.ENDED, cutoffMs);
-            log.info("[alerts] Alert purge complete");
-        } catch (Exception e) {
-            log.error("[alerts] Alert purge failed: {}", e.getMessage());
-        }
+    // ----------------------------------------------
+    // Retention purge: ENDED alerts older than alerts.max.retention.ms, run by the PurgeService
+
+    @Override
+    public String getPurgeName() {
+        return "alerts";
+    }
+
+    @Override
+    public long getPurgeCutoffMs(long nowMs) {
+        if ( alertsConfig.getAlertsMaxRetentionMs() <= 0 ) return 0;
+        return nowMs - alertsConfig.getAlertsMaxRetentionMs();
+    }
+
+    @Override
+    public PurgeBatch purgeBatch(long fromMs, long cutoffMs, int max) {
+        List<Alert> expired = alertRepository.findPurgeableAlerts(
+                AlertState.ENDED, fromMs, cutoffMs,
+                PageRequest.of(0, max, Sort.by(Sort.Direction.ASC, "requestMs"))
+        );
+        if ( expired.isEmpty() ) return new PurgeBatch(0, fromMs);
+        alertRepository.deleteAllById(expired.stream().map(Alert::getId).toList());
+        return new PurgeBatch(expired.size(), expired.getLast().getRequestMs());
+    }
+
+    @Override
+    public long countPurgeBacklog(long fromMs, long cutoffMs) {
+        return alertRepository.countPurgeableAlerts(AlertState.ENDED, fromMs, cutoffMs);
     }
 }
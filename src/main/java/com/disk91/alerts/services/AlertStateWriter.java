@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.alerts.services;
+
+import com.disk91.alerts.config.AlertsConfig;
+import com.disk91.alerts.mdb.entities.Alert;
+import com.disk91.alerts.mdb.entities.sub.AlertSentEntry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.TypeInformation;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+@Service
+public class AlertStateWriter {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /*
+     * Persistence of the alert state changes by targeted updates: the lifecycle fields are $set, an existing
+     * delivery entry is $set at its position and a new one is $push, the document with its growing sent list
+     * is never rewritten. The changes are coalesced per alert (last value wins) and written every
+     * alerts.state.flush.ms as one unordered bulk write; commit() writes the changes of an alert immediately
+     * and is used for the terminal states, so they are durable before the processing goes on.
+     * The $set and the $push of an alert are two operations commuting in the unordered bulk, the $push only
+     * applies when the sent list has not already reached its position so a retry does not duplicate entries.
+     * The lock is held during the writes, the changes recorded meanwhile wait for the write to complete.
+     */
+
+    protected static final int MAX_ATTEMPTS = 3;
+
+    protected static class Pending {
+        protected final String id;
+        protected final LinkedHashMap<String, Object> sets = new LinkedHashMap<>();
+        // position in the sent list of the first pushed entry, -1 when nothing is pushed
+        protected int pushBase = -1;
+        protected final List<Object> pushes = new ArrayList<>();
+        protected int attempts = 0;
+
+        protected Pending(String id) {
+            this.id = id;
+        }
+    }
+
+    protected final MongoTemplate mongoTemplate;
+    protected final AlertsConfig alertsConfig;
+    protected final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+
+    @Autowired(required = false)
+    protected MeterRegistry meterRegistry;
+
+    @Autowired
+    public AlertStateWriter(MongoTemplate _mongoTemplate, AlertsConfig _alertsConfig) {
+        this.mongoTemplate = _mongoTemplate;
+        this.alertsConfig = _alertsConfig;
+    }
+
+    @PostConstruct
+    public void initAlertStateWriter() {
+        if ( meterRegistry == null ) return;
+        Gauge.builder("alerts_state_pending", this::getPendingCount)
+                .description("[Alerts] Number of alerts with state changes waiting to be written")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void destroyAlertStateWriter() {
+        flush();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    protected Pending pendingFor(String id) {
+        return pending.computeIfAbsent(id, Pending::new);
+    }
+
+    /**
+     * Record the lifecycle fields of the alert (state, dates, fires, error), written on the next flush
+     * @param alert - alert already persisted
+     */
+    public void saveState(Alert alert) {
+        if ( alert.getId() == null ) {
+            mongoTemplate.save(alert);
+            return;
+        }
+        synchronized (this) {
+            Pending p = pendingFor(alert.getId());
+            p.sets.put("state", alert.getState());
+            p.sets.put("requestMs", alert.getRequestMs());
+            p.sets.put("fireMs", alert.getFireMs());
+            p.sets.put("expirationMs", alert.getExpirationMs());
+            p.sets.put("retryMs", alert.getRetryMs());
+            p.sets.put("fires", alert.getFires());
+            p.sets.put("error", alert.getError());
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Record the delivery entry of a user, written on the next flush
+     * @param alert - alert already persisted
+     * @param userLogin - user of the entry
+     * @param added - the entry has just been added at the end of the sent list (see Alert.upsertSent)
+     */
+    public void saveSent(Alert alert, String userLogin, boolean added) {
+        if ( alert.getId() == null ) {
+            mongoTemplate.save(alert);
+            return;
+        }
+        int index = -1;
+        for ( int i = 0 ; i < alert.getSent().size() ; i++ ) {
+            if ( userLogin.equals(alert.getSent().get(i).getUserLogin()) ) {
+                index = i;
+                break;
+            }
+        }
+        if ( index < 0 ) return;
+        // snapshot, the entry is still modified by the caller
+        Object entry = mongoTemplate.getConverter().convertToMongoType(
+                alert.getSent().get(index),
+                TypeInformation.of(AlertSentEntry.class)
+        );
+        synchronized (this) {
+            Pending p = pendingFor(alert.getId());
+            if ( p.pushBase >= 0 && index >= p.pushBase ) {
+                int pos = index - p.pushBase;
+                if ( pos < p.pushes.size() ) p.pushes.set(pos, entry);
+                else p.pushes.add(entry);
+            } else if ( added ) {
+                p.pushBase = index;
+                p.pushes.add(entry);
+            } else {
+                p.sets.put("sent." + index, entry);
+            }
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Record the lifecycle fields and write all the pending changes of the alert now. When the targeted
+     * update fails the whole document is saved.
+     * @param alert - alert already persisted
+     */
+    public void commit(Alert alert) {
+        saveState(alert);
+        synchronized (this) {
+            Pending p = pending.remove(alert.getId());
+            if ( p == null ) return;
+            try {
+                write(List.of(p));
+            } catch (Exception x) {
+                log.warn("[alerts] Targeted update of alert {} failed, saving the document: {}", alert.getAlertId(), x.getMessage());
+                mongoTemplate.save(alert);
+            }
+        }
+    }
+
+    protected void flushIfFull() {
+        if ( getPendingCount() >= alertsConfig.getAlertsStateFlushMax() ) flush();
+    }
+
+    /**
+     * Write all the pending changes in one unordered bulk, the failed alerts are kept for the next flush
+     */
+    @Scheduled(fixedDelayString = "${alerts.state.flush.ms:200}", initialDelay = 1_000)
+    public synchronized void flush() {
+        if ( pending.isEmpty() ) return;
+        List<Pending> batch = new ArrayList<>(pending.values());
+        pending.clear();
+        try {
+            write(batch);
+        } catch (BulkOperationException x) {
+            log.error("[alerts] Alert state bulk write, {} failed operations: {}", x.getErrors().size(), x.getMessage());
+            requeue(failedOf(batch, x));
+        } catch (Exception x) {
+            log.error("[alerts] Alert state bulk write failed: {}", x.getMessage());
+            requeue(batch);
+        }
+    }
+
+    protected void requeue(Collection<Pending> failed) {
+        for ( Pending p : failed ) {
+            if ( ++p.attempts >= MAX_ATTEMPTS ) {
+                log.error("[alerts] Alert {} state changes dropped after {} attempts", p.id, p.attempts);
+                continue;
+            }
+            pending.put(p.id, p);
+        }
+    }
+
+    // operations of the last write, to find the alerts of the failed ones
+    protected List<Pending> lastOperations = new ArrayList<>();
+
+    protected Collection<Pending> failedOf(List<Pending> batch, BulkOperationException x) {
+        Set<Pending> failed = new HashSet<>();
+        x.getErrors().forEach(e -> {
+            if ( e.getIndex() >= 0 && e.getIndex() < lastOperations.size() ) failed.add(lastOperations.get(e.getIndex()));
+        });
+        return ( failed.isEmpty() ) ? batch : failed;
+    }
+
+    protected void write(List<Pending> batch) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Alert.class);
+        lastOperations = new ArrayList<>();
+        for ( Pending p : batch ) {
+            if ( !p.sets.isEmpty() ) {
+                Update u = new Update();
+                p.sets.forEach(u::set);
+                bulk.updateOne(Query.query(Criteria.where("_id").is(p.id)), u);
+                lastOperations.add(p);
+            }
+            if ( !p.pushes.isEmpty() ) {
+                bulk.updateOne(
+                        Query.query(Criteria.where("_id").is(p.id).and("sent." + p.pushBase).exists(false)),
+                        new Update().push("sent").each(p.pushes.toArray())
+                );
+                lastOperations.add(p);
+            }
+        }
+        if ( !lastOperations.isEmpty() ) bulk.execute();
+    }
+
+}
@@ -21,9 +21,12 @@ package com.disk91.audit.api;
 
 import com.disk91.audit.api.interfaces.AuditSearchBody;
 import com.disk91.audit.api.interfaces.AuditSearchResponse;
+import com.disk91.audit.services.AuditExportService;
 import com.disk91.audit.services.AuditQueryService;
+import com.disk91.audit.tools.AuditExportWriter;
 import com.disk91.common.api.interfaces.ActionResult;
 import com.disk91.common.tools.exceptions.ITParseException;
+import com.disk91.common.tools.exceptions.ITTooManyException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -31,6 +34,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -39,6 +43,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
@@ -53,6 +58,9 @@ public class ApiAuditSearch {
     @Autowired
     protected AuditQueryService auditQueryService;
 
+    @Autowired
+    protected AuditExportService auditExportService;
+
     /**
      * Search and retrieve audit log entries with an optional free-text filter applied
      * simultaneously on service name, action name and owner (OR match), with date range
@@ -68,6 +76,8 @@ public class ApiAuditSearch {
                     "on service name, action name and owner simultaneously (OR condition). " +
                     "The search string must be Base64-encoded when provided. " +
                     "Date range and pagination filters are also available. " +
+                    "On Mongo storage the search is a prefix (or exact) match and the next pages are read with the returned cursor, " +
+                    "the cursor is also supported on partitioned PostgreSQL storage. " +
                     "Logs are returned from most recent to oldest. " +
                     "Users with ROLE_AUDIT_RD see log parameters replaced by ***. " +
                     "Users with ROLE_AUDIT_RD_CLEAR see decrypted parameter values. " +
@@ -100,7 +110,13 @@ public class ApiAuditSearch {
             @Parameter(description = "Page number, 0-based (optional, default 0)")
             @RequestParam(required = false, defaultValue = "0") int page,
             @Parameter(description = "Number of elements per page, max 200 (optional, default 50)")
-            @RequestParam(required = false, defaultValue = "50") int pageSize
+            @RequestParam(required = false, defaultValue = "50") int pageSize,
+            @Parameter(description = "Cursor from the previous page nextCursor, replaces page (optional, Mongo or partitioned PostgreSQL storage)")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Exact match of the search text instead of a prefix or partial match (optional, default false, Mongo or partitioned PostgreSQL storage)")
+            @RequestParam(required = false, defaultValue = "false") boolean exact,
+            @Parameter(description = "Count the matching entries, bounded (optional, default true)")
+            @RequestParam(required = false, defaultValue = "true") boolean count
     ) {
         try {
             // Decode the Base64-encoded search string; reject malformed input immediately
@@ -110,6 +126,9 @@ public class ApiAuditSearch {
             body.setEndMs(endMs);
             body.setPage(page);
             body.setPageSize(pageSize);
+            body.setCursor(cursor);
+            body.setExact(exact);
+            body.setCount(count);
 
             // Determine if the caller has cleartext access to decrypted params
             boolean clearAccess = request.isUserInRole("ROLE_AUDIT_RD_CLEAR");
@@ -125,6 +144,97 @@ public class ApiAuditSearch {
         }
     }
 
+    /**
+     * Export the audit log entries of a time range matching the search, as a stream. The entries are read
+     * from a database cursor and written as they come, oldest first, so the export size is not limited
+     * by the memory. Parameters are obfuscated or decrypted as for the search.
+     */
+    @Operation(
+            summary = "Export audit log entries",
+            description = "Stream the audit log entries matching the search and the date range, from oldest to most recent, " +
+                    "as NDJSON (one JSON object per line) or CSV, optionally gzip compressed. " +
+                    "The search is the same as the search API, Base64-encoded. " +
+                    "Users with ROLE_AUDIT_RD see log parameters replaced by ***. " +
+                    "Users with ROLE_AUDIT_RD_CLEAR see decrypted parameter values. " +
+                    "The number of concurrent exports is limited, 429 is returned when the limit is reached. " +
+                    "An error during the export aborts the connection, the output is then incomplete.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Export stream"),
+                    @ApiResponse(responseCode = "400", description = "Parse Error",
+                            content = @Content(schema = @Schema(implementation = ActionResult.class))),
+                    @ApiResponse(responseCode = "403", description = "Forbidden",
+                            content = @Content(schema = @Schema(implementation = ActionResult.class))),
+                    @ApiResponse(responseCode = "429", description = "Too many exports running",
+                            content = @Content(schema = @Schema(implementation = ActionResult.class))),
+            }
+    )
+    @RequestMapping(
+            value = "/export",
+            produces = { "application/x-ndjson", "text/csv", "application/gzip", "application/json" },
+            method = RequestMethod.GET
+    )
+    @PreAuthorize("hasRole('ROLE_LOGIN_COMPLETE') and hasAnyRole('ROLE_AUDIT_RD','ROLE_AUDIT_RD_CLEAR')")
+    // ----------------------------------------------------------------------
+    public ResponseEntity<?> getAuditExport(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            @Parameter(description = "Free-text search applied on service, action and owner fields - Base64 encoded (optional)")
+            @RequestParam(required = false) String search,
+            @Parameter(description = "Start date filter, ms since epoch, inclusive (optional, 0 = no bound)")
+            @RequestParam(required = false, defaultValue = "0") long startMs,
+            @Parameter(description = "End date filter, ms since epoch, inclusive (optional, 0 = no bound)")
+            @RequestParam(required = false, defaultValue = "0") long endMs,
+            @Parameter(description = "Exact match of the search text (optional, default false)")
+            @RequestParam(required = false, defaultValue = "false") boolean exact,
+            @Parameter(description = "Output format, ndjson or csv (optional, default ndjson)")
+            @RequestParam(required = false, defaultValue = "ndjson") String format,
+            @Parameter(description = "Gzip compressed output (optional, default false)")
+            @RequestParam(required = false, defaultValue = "false") boolean gzip
+    ) {
+        String requester = request.getUserPrincipal().getName();
+        String filter;
+        AuditExportWriter.Format f;
+        try {
+            filter = decodeBase64Param("search", search);
+            if ( filter != null ) filter = filter.trim();
+            if ( startMs > 0 && endMs > 0 && startMs > endMs ) throw new ITParseException("audit-search-invalid-date-range");
+            f = switch (format.toLowerCase()) {
+                case "ndjson" -> AuditExportWriter.Format.NDJSON;
+                case "csv" -> AuditExportWriter.Format.CSV;
+                default -> throw new ITParseException("audit-export-invalid-format");
+            };
+            if ( auditExportService.getSource() == AuditExportService.Source.NONE ) throw new ITParseException("audit-log-non-database");
+            auditExportService.startExport();
+        } catch (ITParseException x) {
+            return new ResponseEntity<>(ActionResult.BADREQUEST(x.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (ITTooManyException x) {
+            return new ResponseEntity<>(ActionResult.TOO_MANY_REQUESTS(x.getMessage()), HttpStatus.TOO_MANY_REQUESTS);
+        }
+
+        // the response is written directly, a long export would reach the async request timeout
+        try {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(( gzip ) ? "application/gzip" : f.contentType + ";charset=UTF-8");
+            response.setHeader("Content-Disposition", "attachment; filename=\"audit-export" + f.extension + (( gzip ) ? ".gz" : "") + "\"");
+            boolean clearAccess = request.isUserInRole("ROLE_AUDIT_RD_CLEAR");
+            AuditExportWriter out = new AuditExportWriter(response.getOutputStream(), f, gzip);
+            auditExportService.export(requester, auditExportService.getSource(), filter, exact, startMs, endMs, clearAccess, out);
+            // only a complete export gets the end of stream (gzip trailer)
+            out.close();
+        } catch (IOException x) {
+            log.warn("[audit] Export by {} interrupted: {}", requester, x.getMessage());
+        } catch (RuntimeException x) {
+            // the response is committed, the error makes the server abort the connection so the client
+            // sees an incomplete export instead of a shorter one
+            log.error("[audit] Export by {} failed: {}", requester, x.getMessage());
+            throw x;
+        } finally {
+            auditExportService.endExport();
+        }
+        // response already written
+        return null;
+    }
+
     /**
      * Decode a Base64-encoded query parameter. Returns null when the parameter is absent.
      * Throws ITParseException when the value is present but not valid Base64.
@@ -62,6 +62,29 @@ public class AuditSearchBody {
     )
     protected int pageSize;
 
+    @Schema(
+            description = "Cursor returned with the previous page (nextCursor) to get the next one, page is ignored when set. Mongo and partitioned PostgreSQL storage only.",
+            example = "1700000000000_65a1f0c2e4b0a1b2c3d4e5f6",
+            requiredMode = Schema.RequiredMode.NOT_REQUIRED
+    )
+    protected String cursor;
+
+    @Schema(
+            description = "Exact match of the search text instead of a prefix (Mongo) or partial (partitioned PostgreSQL) match. Mongo and partitioned PostgreSQL storage only.",
+            example = "false",
+            defaultValue = "false",
+            requiredMode = Schema.RequiredMode.NOT_REQUIRED
+    )
+    protected boolean exact;
+
+    @Schema(
+            description = "Count the matching entries (bounded, the total can be approximate). Defaults to true.",
+            example = "true",
+            defaultValue = "true",
+            requiredMode = Schema.RequiredMode.NOT_REQUIRED
+    )
+    protected boolean count = true;
+
 
     // ==========================
     // Getters & Setters
@@ -105,7 +128,28 @@ public class AuditSearchBody {
     public void setPageSize(int pageSize) {
         this.pageSize = pageSize;
     }
-}
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 
+    public boolean isExact() {
+        return exact;
+    }
 
+    public void setExact(boolean exact) {
+        this.exact = exact;
+    }
+
+    public boolean isCount() {
+        return count;
+    }
+
+    public void setCount(boolean count) {
+        this.count = count;
+    }
+}
@@ -61,6 +61,20 @@ public class AuditSearchResponse {
     )
     protected List<AuditResponse> logs;
 
+    @Schema(
+            description = "Cursor to request the next page, null on the last page",
+            example = "1700000000000_65a1f0c2e4b0a1b2c3d4e5f6",
+            requiredMode = Schema.RequiredMode.NOT_REQUIRED
+    )
+    protected String nextCursor;
+
+    @Schema(
+            description = "The total is an estimation or a lower bound (count limit reached), -1 when not counted",
+            example = "false",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected boolean totalApproximate;
+
 
     // ==========================
     // Getters & Setters
@@ -104,5 +118,20 @@ public class AuditSearchResponse {
     public void setLogs(List<AuditResponse> logs) {
         this.logs = logs;
     }
-}
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isTotalApproximate() {
+        return totalApproximate;
+    }
+
+    public void setTotalApproximate(boolean totalApproximate) {
+        this.totalApproximate = totalApproximate;
+    }
+}
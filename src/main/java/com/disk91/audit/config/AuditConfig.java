@@ -52,4 +52,136 @@ public class AuditConfig {
         return auditLogsDecryptionEnabled;
     }
 
+    @Value("${audit.queue.size:10000}")
+    protected int auditQueueSize;
+    public int getAuditQueueSize() {
+        return auditQueueSize;
+    }
+
+    @Value("${audit.batch.max.size:200}")
+    protected int auditBatchMaxSize;
+    public int getAuditBatchMaxSize() {
+        return auditBatchMaxSize;
+    }
+
+    @Value("${audit.batch.max.wait.ms:50}")
+    protected long auditBatchMaxWaitMs;
+    public long getAuditBatchMaxWaitMs() {
+        return auditBatchMaxWaitMs;
+    }
+
+    @Value("${audit.enqueue.wait.ms:30000}")
+    protected long auditEnqueueWaitMs;
+    public long getAuditEnqueueWaitMs() {
+        return auditEnqueueWaitMs;
+    }
+
+    @Value("${audit.commit.retries:3}")
+    protected int auditCommitRetries;
+    public int getAuditCommitRetries() {
+        return auditCommitRetries;
+    }
+
+    @Value("${audit.commit.retry.delay.ms:200}")
+    protected long auditCommitRetryDelayMs;
+    public long getAuditCommitRetryDelayMs() {
+        return auditCommitRetryDelayMs;
+    }
+
+    @Value("${audit.file.segment.size.mb:64}")
+    protected int auditFileSegmentSizeMb;
+    public int getAuditFileSegmentSizeMb() {
+        return auditFileSegmentSizeMb;
+    }
+
+    @Value("${audit.file.index.chunk.kb:256}")
+    protected int auditFileIndexChunkKb;
+    public int getAuditFileIndexChunkKb() {
+        return auditFileIndexChunkKb;
+    }
+
+    @Value("${audit.file.compression:gzip}")
+    protected String auditFileCompression;
+    public String getAuditFileCompression() {
+        return auditFileCompression;
+    }
+
+    @Value("${audit.file.retention.days:0}")
+    protected int auditFileRetentionDays;
+    public int getAuditFileRetentionDays() {
+        return auditFileRetentionDays;
+    }
+
+    @Value("${audit.file.max.total.size.mb:0}")
+    protected long auditFileMaxTotalSizeMb;
+    public long getAuditFileMaxTotalSizeMb() {
+        return auditFileMaxTotalSizeMb;
+    }
+
+    @Value("${audit.search.count.limit:10000}")
+    protected long auditSearchCountLimit;
+    public long getAuditSearchCountLimit() {
+        return auditSearchCountLimit;
+    }
+
+    @Value("${audit.psql.partitioning.enabled:false}")
+    protected boolean auditPsqlPartitioningEnabled;
+    public boolean isAuditPsqlPartitioningEnabled() {
+        return auditPsqlPartitioningEnabled;
+    }
+
+    @Value("${audit.psql.partition.premake.months:2}")
+    protected int auditPsqlPartitionPremakeMonths;
+    public int getAuditPsqlPartitionPremakeMonths() {
+        return auditPsqlPartitionPremakeMonths;
+    }
+
+    @Value("${audit.psql.retention.months:0}")
+    protected int auditPsqlRetentionMonths;
+    public int getAuditPsqlRetentionMonths() {
+        return auditPsqlRetentionMonths;
+    }
+
+    @Value("${audit.db.retention.days:0}")
+    protected int auditDbRetentionDays;
+    public int getAuditDbRetentionDays() {
+        return auditDbRetentionDays;
+    }
+
+    @Value("${audit.export.max.concurrent:2}")
+    protected int auditExportMaxConcurrent;
+    public int getAuditExportMaxConcurrent() {
+        return auditExportMaxConcurrent;
+    }
+
+    @Value("${audit.export.fetch.size:1000}")
+    protected int auditExportFetchSize;
+    public int getAuditExportFetchSize() {
+        return auditExportFetchSize;
+    }
+
+    @Value("${audit.chain.enabled:true}")
+    protected boolean auditChainEnabled;
+    public boolean isAuditChainEnabled() {
+        return auditChainEnabled;
+    }
+
+    @Value("${audit.chain.segment.ms:3600000}")
+    protected long auditChainSegmentMs;
+    public long getAuditChainSegmentMs() {
+        return auditChainSegmentMs;
+    }
+
+    @Value("${audit.chain.checkpoint.ms:60000}")
+    protected long auditChainCheckpointMs;
+    public long getAuditChainCheckpointMs() {
+        return auditChainCheckpointMs;
+    }
+
+    @Value("${audit.chain.checkpoint.records:10000}")
+    protected long auditChainCheckpointRecords;
+    public long getAuditChainCheckpointRecords() {
+        return auditChainCheckpointRecords;
+    }
+
 }
@@ -20,11 +20,14 @@
 package com.disk91.audit.mdb.entities;
 
 import com.disk91.audit.integration.AuditMessage;
+import com.disk91.audit.tools.AuditHashChain;
 import com.disk91.common.tools.Now;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
+import org.springframework.data.domain.Persistable;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -38,9 +41,16 @@ import java.util.ArrayList;
         @CompoundIndex(name = "auditMess_service_Idx", def = "{'service' : 'hashed' }"),
         @CompoundIndex(name = "auditMess_owner_Idx", def = "{'owner' : 'hashed' }"),
         @CompoundIndex(name = "auditMess_time_Idx", def = "{'actionMs' : 'hashed' }"),
+        // search indexes, keyset pagination on (actionMs, _id) with an optional prefix / exact filter
+        @CompoundIndex(name = "auditMess_search_time_Idx", def = "{'actionMs' : -1, '_id' : -1 }"),
+        @CompoundIndex(name = "auditMess_search_service_Idx", def = "{'serviceLc' : 1, 'actionMs' : -1, '_id' : -1 }"),
+        @CompoundIndex(name = "auditMess_search_action_Idx", def = "{'actionLc' : 1, 'actionMs' : -1, '_id' : -1 }"),
+        @CompoundIndex(name = "auditMess_search_owner_Idx", def = "{'ownerLc' : 1, 'actionMs' : -1, '_id' : -1 }"),
+        // hash chain verification
+        @CompoundIndex(name = "auditMess_chain_Idx", def = "{'chainId' : 1, 'chainSeq' : 1 }"),
 })
 @Sharded(shardKey = { "id" }, shardingStrategy = ShardingStrategy.RANGE)
-public class AuditMdb extends AuditMessage {
+public class AuditMdb extends AuditMessage implements Persistable<String> {
 
     @Id
     protected String id;
@@ -49,20 +59,44 @@ public class AuditMdb extends AuditMessage {
 
     protected String auditSignature;
 
+    // hash chain the entry belongs to and its position in the chain
+    protected String chainId;
+
+    protected long chainSeq;
+
+    // lowercase copies of service, action and owner for the indexed search
+    protected String serviceLc;
+    protected String actionLc;
+    protected String ownerLc;
+
+    // The id is set by the application so a failed batch can be written again without duplicates. The new
+    // entries are flagged to be inserted in a single insertMany, the retries update them one by one.
+    @Transient
+    protected boolean newEntry = false;
+
+    @Override
+    public boolean isNew() {
+        return newEntry;
+    }
+
+    public void setNewEntry(boolean newEntry) {
+        this.newEntry = newEntry;
+    }
+
     // ================================================================================================================
     // from an AuditMessage
 
     /**
      * Create a Audit ready for database insertion from an AuditMessage
-     * The signature will be created later, and it will take a previous signature into account
-     * to create a chain of audits.
+     * The signature comes from the hash chain, it covers the previous entry of the chain and the message
      * @param am - audit message to be converted
-     * @param previousAudit - previous audit in the chain, can be null if first audit
-     * @param signingKey - key to be used for signature, it can include a time based modification for avoiding recalculation
+     * @param link - position and signature in the hash chain, null when the chain is disabled
      * @return Audit element ready for db interaction
      */
-    public static AuditMdb fromAuditMessage(AuditMessage am, AuditMdb previousAudit, String signingKey) {
+    public static AuditMdb fromAuditMessage(AuditMessage am, AuditHashChain.Link link) {
         AuditMdb a = new AuditMdb();
+        a.setId(new ObjectId().toHexString());
+        a.setNewEntry(true);
         a.setService(am.getService());
         a.setAction(am.getAction());
         a.setActionMs(am.getActionMs());
@@ -73,14 +107,31 @@ public class AuditMdb extends AuditMessage {
             a.getParams().add(param);
         }
         a.setAuditTimestampNs(Now.NanoTime());
-        a.setAuditSignature("not-yet-implemented");
-
-        // @TODO implement signature calculation with previousAudit and signingKey
+        if ( link != null ) {
+            a.setAuditSignature(link.signature());
+            a.setChainId(link.chainId());
+            a.setChainSeq(link.seq());
+        } else {
+            a.setAuditSignature("not-chained");
+            a.setChainSeq(-1);
+        }
+        a.setServiceLc(toSearchKey(am.getService()));
+        a.setActionLc(toSearchKey(am.getAction()));
+        a.setOwnerLc(toSearchKey(am.getOwner()));
 
         return a;
     }
 
 
+    /**
+     * Normalized form of a searchable field
+     * @param v - field value
+     * @return lowercase value, null when null
+     */
+    public static String toSearchKey(String v) {
+        return ( v == null ) ? null : v.trim().toLowerCase(java.util.Locale.ROOT);
+    }
+
     // ================================================================================================================
     // Getters & Setters
 
@@ -108,4 +159,44 @@ public class AuditMdb extends AuditMessage {
     public void setAuditSignature(String auditSignature) {
         this.auditSignature = auditSignature;
     }
+
+    public String getServiceLc() {
+        return serviceLc;
+    }
+
+    public void setServiceLc(String serviceLc) {
+        this.serviceLc = serviceLc;
+    }
+
+    public String getActionLc() {
+        return actionLc;
+    }
+
+    public void setActionLc(String actionLc) {
+        this.actionLc = actionLc;
+    }
+
+    public String getOwnerLc() {
+        return ownerLc;
+    }
+
+    public void setOwnerLc(String ownerLc) {
+        this.ownerLc = ownerLc;
+    }
+
+    public String getChainId() {
+        return chainId;
+    }
+
+    public void setChainId(String chainId) {
+        this.chainId = chainId;
+    }
+
+    public long getChainSeq() {
+        return chainSeq;
+    }
+
+    public void setChainSeq(long chainSeq) {
+        this.chainSeq = chainSeq;
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.mdb.repositories;
+
+import com.disk91.audit.mdb.entities.AuditCheckpointMdb;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface AuditCheckpointRepositoryMdb extends MongoRepository<AuditCheckpointMdb, String> {
+
+    // nearest checkpoint ending before a position
+    AuditCheckpointMdb findFirstByChainIdAndToSeqLessThanOrderByToSeqDesc(String chainId, long seq);
+
+    List<AuditCheckpointMdb> findByChainIdAndToSeqGreaterThanEqualOrderByToSeqAsc(String chainId, long seq);
+
+}
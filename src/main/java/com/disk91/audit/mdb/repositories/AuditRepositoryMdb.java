@@ -20,35 +20,15 @@
 package com.disk91.audit.mdb.repositories;
 
 import com.disk91.audit.mdb.entities.AuditMdb;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
-import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface AuditRepositoryMdb extends MongoRepository<AuditMdb, String> {
 
-    /**
-     * Search audit entries using a native MongoDB query with an optional free-text filter
-     * applied as a case-insensitive regex on service, action and owner simultaneously (OR condition),
-     * combined with a date range. Results are ordered via Pageable (sort by actionMs DESC expected).
-     * Pass an empty string for search to match all entries.
-     * Pass 0 for startMs to skip the lower bound, Long.MAX_VALUE for endMs to skip the upper bound.
-     * @param search  - regex pattern applied on service/action/owner (OR), empty string = match all
-     * @param startMs - lower bound on actionMs inclusive (0 = match all)
-     * @param endMs   - upper bound on actionMs inclusive (Long.MAX_VALUE = match all)
-     * @param pageable - pagination and sort parameters
-     * @return Page of matching AuditMdb entries
-     */
-    @Query("{ '$and': [ " +
-            "  { '$or': [ " +
-            "    { 'service': { '$regex': ?0, '$options': 'i' } }, " +
-            "    { 'action':  { '$regex': ?0, '$options': 'i' } }, " +
-            "    { 'owner':   { '$regex': ?0, '$options': 'i' } }  " +
-            "  ] }, " +
-            "  { 'actionMs': { '$gte': ?1, '$lte': ?2 } } " +
-            "] }")
-    Page<AuditMdb> searchAuditLogs(String search, long startMs, long endMs, Pageable pageable);
+    // entries of a hash chain range, by position
+    List<AuditMdb> findByChainIdAndChainSeqGreaterThanEqualAndChainSeqLessThanEqualOrderByChainSeqAsc(String chainId, long from, long to);
 
 }
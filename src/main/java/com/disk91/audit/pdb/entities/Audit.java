@@ -20,8 +20,10 @@
 package com.disk91.audit.pdb.entities;
 
 import com.disk91.audit.integration.AuditMessage;
+import com.disk91.audit.tools.AuditHashChain;
 import com.disk91.common.tools.Now;
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -34,9 +36,10 @@ import java.util.UUID;
                 @Index(name = "idx_audit_service_key", columnList = "service", unique = false),
                 @Index(name = "idx_audit_owner_key", columnList = "owner", unique = false),
                 @Index(name = "idx_audit_time_key", columnList = "action_ms", unique = false),
+                @Index(name = "idx_audit_chain_key", columnList = "chain_id, chain_seq", unique = false),
         }
 )
-public class Audit {
+public class Audit implements Persistable<UUID> {
 
     @Id
     @Column(name = "audit_key", nullable = false, unique = true)
@@ -48,6 +51,13 @@ public class Audit {
     @Column(name = "audit_signature", nullable = false)
     protected String auditSignature;
 
+    // Hash chain the entry belongs to and its position in the chain
+    @Column(name = "chain_id", nullable = true)
+    protected String chainId;
+
+    @Column(name = "chain_seq", nullable = true)
+    protected Long chainSeq;
+
     // Service name, based on the module name ex : Users
     @Column(name = "service", nullable = false)
     protected String service;
@@ -67,19 +77,38 @@ public class Audit {
     @Column(name = "params", nullable = false)
     protected List<String> params;
 
+    // The key is set by the application, so the repository can't detect a new row from it and would
+    // select it before each insert. New audits are flagged to be inserted directly (and batched).
+    @Transient
+    protected boolean newAudit = true;
+
+    @Override
+    public UUID getId() {
+        return auditKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return newAudit;
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markNotNew() {
+        this.newAudit = false;
+    }
+
     // ================================================================================================================
     // from an AuditMessage
 
     /**
      * Create a Audit ready for database insertion from an AuditMessage
-     * The signature will be created later, and it will take a previous signature into account
-     * to create a chain of audits.
+     * The signature comes from the hash chain, it covers the previous entry of the chain and the message
      * @param am - audit message to be converted
-     * @param previousAudit - previous audit in the chain, can be null if first audit
-     * @param signingKey - key to be used for signature, it can include a time based modification for avoiding recalculation
+     * @param link - position and signature in the hash chain, null when the chain is disabled
      * @return Audit element ready for db interaction
      */
-    public static Audit fromAuditMessage(AuditMessage am, Audit previousAudit, String signingKey) {
+    public static Audit fromAuditMessage(AuditMessage am, AuditHashChain.Link link) {
         Audit a = new Audit();
         a.setAuditKey(UUID.randomUUID());
         a.setService(am.getService());
@@ -92,9 +121,13 @@ public class Audit {
             a.getParams().add(param);
         }
         a.setAuditTimestampNs(Now.NanoTime());
-        a.setAuditSignature("not-yet-implemented");
-
-        // @TODO implement signature calculation with previousAudit and signingKey
+        if ( link != null ) {
+            a.setAuditSignature(link.signature());
+            a.setChainId(link.chainId());
+            a.setChainSeq(link.seq());
+        } else {
+            a.setAuditSignature("not-chained");
+        }
 
         return a;
     }
@@ -174,4 +207,20 @@ public class Audit {
     public void setParams(List<String> params) {
         this.params = params;
     }
+
+    public String getChainId() {
+        return chainId;
+    }
+
+    public void setChainId(String chainId) {
+        this.chainId = chainId;
+    }
+
+    public Long getChainSeq() {
+        return chainSeq;
+    }
+
+    public void setChainSeq(Long chainSeq) {
+        this.chainSeq = chainSeq;
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.pdb.entities;
+
+import com.disk91.audit.tools.AuditHashChain;
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.util.UUID;
+
+@Entity
+@Table(
+        name = "audit_checkpoints",
+        indexes = {
+                @Index(name = "idx_audit_check_chain_key", columnList = "chain_id, to_seq", unique = false),
+        }
+)
+public class AuditCheckpoint implements Persistable<UUID> {
+
+    @Id
+    @Column(name = "checkpoint_key", nullable = false, unique = true)
+    protected UUID checkpointKey;
+
+    // Instance writing the chain
+    @Column(name = "instance_id", nullable = false)
+    protected String instanceId;
+
+    // Chain and range of positions covered by the checkpoint
+    @Column(name = "chain_id", nullable = false)
+    protected String chainId;
+
+    @Column(name = "from_seq", nullable = false)
+    protected long fromSeq;
+
+    @Column(name = "to_seq", nullable = false)
+    protected long toSeq;
+
+    // Merkle root of the signatures of the range, signature of the last entry of the range
+    @Column(name = "merkle_root", nullable = false)
+    protected String merkleRoot;
+
+    @Column(name = "head_hash", nullable = false)
+    protected String headHash;
+
+    // Previous checkpoint hash of the instance and this checkpoint hash
+    @Column(name = "previous_hash", nullable = false)
+    protected String previousHash;
+
+    @Column(name = "hash", nullable = false)
+    protected String hash;
+
+    @Column(name = "created_ms", nullable = false)
+    protected long createdMs;
+
+    // The key is set by the application, new checkpoints are inserted without a select
+    @Transient
+    protected boolean newCheckpoint = true;
+
+    @Override
+    public UUID getId() {
+        return checkpointKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return newCheckpoint;
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markNotNew() {
+        this.newCheckpoint = false;
+    }
+
+    // ================================================================================================================
+
+    public static AuditCheckpoint fromCheckpoint(AuditHashChain.Checkpoint c) {
+        AuditCheckpoint a = new AuditCheckpoint();
+        a.setCheckpointKey(UUID.randomUUID());
+        a.setInstanceId(c.instanceId());
+        a.setChainId(c.chainId());
+        a.setFromSeq(c.fromSeq());
+        a.setToSeq(c.toSeq());
+        a.setMerkleRoot(c.merkleRoot());
+        a.setHeadHash(c.headHash());
+        a.setPreviousHash(c.previousHash());
+        a.setHash(c.hash());
+        a.setCreatedMs(c.createdMs());
+        return a;
+    }
+
+    public AuditHashChain.Checkpoint toCheckpoint() {
+        return new AuditHashChain.Checkpoint(instanceId, chainId, fromSeq, toSeq, merkleRoot, headHash, previousHash, hash, createdMs);
+    }
+
+    // ================================================================================================================
+    // Getters & Setters
+
+    public UUID getCheckpointKey() {
+        return checkpointKey;
+    }
+
+    public void setCheckpointKey(UUID checkpointKey) {
+        this.checkpointKey = checkpointKey;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public String getChainId() {
+        return chainId;
+    }
+
+    public void setChainId(String chainId) {
+        this.chainId = chainId;
+    }
+
+    public long getFromSeq() {
+        return fromSeq;
+    }
+
+    public void setFromSeq(long fromSeq) {
+        this.fromSeq = fromSeq;
+    }
+
+    public long getToSeq() {
+        return toSeq;
+    }
+
+    public void setToSeq(long toSeq) {
+        this.toSeq = toSeq;
+    }
+
+    public String getMerkleRoot() {
+        return merkleRoot;
+    }
+
+    public void setMerkleRoot(String merkleRoot) {
+        this.merkleRoot = merkleRoot;
+    }
+
+    public String getHeadHash() {
+        return headHash;
+    }
+
+    public void setHeadHash(String headHash) {
+        this.headHash = headHash;
+    }
+
+    public String getPreviousHash() {
+        return previousHash;
+    }
+
+    public void setPreviousHash(String previousHash) {
+        this.previousHash = previousHash;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public long getCreatedMs() {
+        return createdMs;
+    }
+
+    public void setCreatedMs(long createdMs) {
+        this.createdMs = createdMs;
+    }
+}
@@ -27,10 +27,11 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.UUID;
 
 @Repository
-public interface AuditRepository extends JpaRepository<Audit, UUID> {
+public interface AuditRepository extends JpaRepository<Audit, UUID>, AuditRepositoryBatch {
 
     /**
      * Search audit entries with an optional free-text filter applied as a case-insensitive
@@ -66,4 +67,7 @@ public interface AuditRepository extends JpaRepository<Audit, UUID> {
             Pageable pageable
     );
 
+    // entries of a hash chain range, by position
+    List<Audit> findByChainIdAndChainSeqGreaterThanEqualAndChainSeqLessThanEqualOrderByChainSeqAsc(String chainId, Long from, Long to);
+
 }
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.services;
+
+import com.disk91.audit.config.AuditConfig;
+import com.disk91.audit.integration.AuditMessage;
+import com.disk91.audit.mdb.entities.AuditCheckpointMdb;
+import com.disk91.audit.mdb.entities.AuditMdb;
+import com.disk91.audit.mdb.repositories.AuditCheckpointRepositoryMdb;
+import com.disk91.audit.mdb.repositories.AuditRepositoryMdb;
+import com.disk91.audit.pdb.entities.Audit;
+import com.disk91.audit.pdb.entities.AuditCheckpoint;
+import com.disk91.audit.pdb.repositories.AuditCheckpointRepository;
+import com.disk91.audit.pdb.repositories.AuditRepository;
+import com.disk91.audit.tools.AuditHashChain;
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.tools.Now;
+import com.disk91.common.tools.Tools;
+import com.disk91.common.tools.exceptions.ITParseException;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+@Service
+public class AuditChainService {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /*
+     * Hash chain of the audit entries stored in the databases (see AuditHashChain). The chain is computed once
+     * per message by the audit writer thread, the same signature is stored in Mongo and PostgreSQL, and the
+     * checkpoints are stored once the entries they cover are written. When a batch write fails, the chain is
+     * rolled back and closed before the batch, the entries it may have partially written are not covered.
+     */
+
+    // entries loaded per database request during a verification
+    protected static final int VERIFY_PAGE = 10_000;
+
+    @Autowired
+    protected AuditConfig auditConfig;
+
+    @Autowired
+    protected CommonConfig commonConfig;
+
+    @Autowired
+    protected AuditRepositoryMdb auditRepositoryMongo;
+
+    @Autowired
+    protected AuditRepository auditRepository;
+
+    @Autowired
+    protected AuditCheckpointRepositoryMdb auditCheckpointRepositoryMongo;
+
+    @Autowired
+    protected AuditCheckpointRepository auditCheckpointRepository;
+
+    protected AuditHashChain chain = null;
+    // chain state before the last batch
+    protected AuditHashChain.Mark beforeBatch = null;
+    protected byte [] key = null;
+    protected boolean mongoActive = false;
+    protected boolean psqlActive = false;
+
+    @PostConstruct
+    public void initAuditChain() {
+        for ( String target : Tools.getStringListFromParam(auditConfig.getAuditStoreMedium()) ) {
+            switch (AuditService.toAuditTarget(target)) {
+                case AUDIT_TARGET_MONGO -> mongoActive = true;
+                case AUDIT_TARGET_PSQL -> psqlActive = true;
+                default -> {}
+            }
+        }
+        if ( !auditConfig.isAuditChainEnabled() || (!mongoActive && !psqlActive) ) return;
+        this.key = deriveKey(commonConfig.getEncryptionKey());
+        this.chain = new AuditHashChain(
+                key,
+                commonConfig.getInstanceId(),
+                Now.NowUtcMs(),
+                auditConfig.getAuditChainSegmentMs(),
+                auditConfig.getAuditChainCheckpointMs(),
+                auditConfig.getAuditChainCheckpointRecords()
+        );
+        log.info("[audit] Audit hash chain enabled");
+    }
+
+    /**
+     * Chain signing key, derived from the encryption key
+     */
+    public static byte [] deriveKey(String encryptionKey) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(("audit-chain:" + encryptionKey).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException("audit-chain-sha256-unavailable", x);
+        }
+    }
+
+    public boolean isEnabled() {
+        return chain != null;
+    }
+
+    /**
+     * Chain a batch of messages, from the audit writer thread
+     * @param batch - messages in write order
+     * @return chain link per message, null when the chain is disabled
+     */
+    public List<AuditHashChain.Link> chain(List<AuditMessage> batch) {
+        if ( chain == null ) return null;
+        long now = Now.NowUtcMs();
+        beforeBatch = chain.mark();
+        ArrayList<AuditHashChain.Link> links = new ArrayList<>(batch.size());
+        for ( AuditMessage m : batch ) links.add(chain.append(m, now));
+        return links;
+    }
+
+    /**
+     * Roll back the last chained batch, from the audit writer thread when the batch has not been written to
+     * every target. The chain is closed before the batch, the next batch starts a new chain.
+     */
+    public void rollback() {
+        if ( chain == null || beforeBatch == null ) return;
+        chain.rollback(beforeBatch, Now.NowUtcMs());
+        beforeBatch = null;
+        log.warn("[audit] Audit chain closed before a batch not written");
+    }
+
+    /**
+     * Store the checkpoints due, from the audit writer thread once the chained entries are written
+     * @param close - close the current chain (shutdown)
+     */
+    public void publishCheckpoints(boolean close) {
+        if ( chain == null ) return;
+        long now = Now.NowUtcMs();
+        if ( close ) chain.closeChain(now);
+        else chain.tick(now);
+        List<AuditHashChain.Checkpoint> cps = chain.drainCheckpoints();
+        if ( cps.isEmpty() ) return;
+        if ( mongoActive ) {
+            try {
+                auditCheckpointRepositoryMongo.saveAll(cps.stream().map(AuditCheckpointMdb::fromCheckpoint).toList());
+            } catch (Exception x) {
+                log.error("[audit] Failed to save {} audit checkpoints in MONGO: {}", cps.size(), x.getMessage());
+            }
+        }
+        if ( psqlActive ) {
+            try {
+                auditCheckpointRepository.saveAll(cps.stream().map(AuditCheckpoint::fromCheckpoint).toList());
+            } catch (Exception x) {
+                log.error("[audit] Failed to save {} audit checkpoints in PSQL: {}", cps.size(), x.getMessage());
+            }
+        }
+        for ( AuditHashChain.Checkpoint c : cps ) {
+            log.debug("[audit] Checkpoint {} [{}-{}] root {}", c.chainId(), c.fromSeq(), c.toSeq(), c.merkleRoot());
+        }
+    }
+
+    /**
+     * Verify a range of a chain. The verification starts from the nearest checkpoint before the range, its
+     * hash is verified, then every entry up to toSeq and the checkpoints in between.
+     * @param chainId - chain to verify
+     * @param fromSeq - first position to verify
+     * @param toSeq - last position to verify
+     * @return verification result
+     * @throws ITParseException - chain disabled or invalid range
+     */
+    public AuditHashChain.VerifyResult verify(String chainId, long fromSeq, long toSeq) throws ITParseException {
+        if ( key == null ) throw new ITParseException("audit-chain-disabled");
+        if ( chainId == null || fromSeq < 0 || toSeq < fromSeq ) throw new ITParseException("audit-chain-invalid-range");
+        AuditHashChain.Checkpoint anchor;
+        List<AuditHashChain.Checkpoint> checkpoints;
+        PagedEntries entries;
+        if ( mongoActive ) {
+            AuditCheckpointMdb a = auditCheckpointRepositoryMongo.findFirstByChainIdAndToSeqLessThanOrderByToSeqDesc(chainId, fromSeq);
+            anchor = ( a != null ) ? a.toCheckpoint() : null;
+            long start = ( anchor != null ) ? anchor.toSeq() + 1 : 0;
+            checkpoints = auditCheckpointRepositoryMongo.findByChainIdAndToSeqGreaterThanEqualOrderByToSeqAsc(chainId, start)
+                    .stream().map(AuditCheckpointMdb::toCheckpoint).toList();
+            entries = new PagedEntries(start, toSeq, (from, to) -> {
+                ArrayList<AuditHashChain.Entry> r = new ArrayList<>();
+                for ( AuditMdb e : auditRepositoryMongo.findByChainIdAndChainSeqGreaterThanEqualAndChainSeqLessThanEqualOrderByChainSeqAsc(chainId, from, to) ) {
+                    r.add(new AuditHashChain.Entry(e.getChainSeq(), e, e.getAuditSignature()));
+                }
+                return r;
+            });
+        } else {
+            AuditCheckpoint a = auditCheckpointRepository.findFirstByChainIdAndToSeqLessThanOrderByToSeqDesc(chainId, fromSeq);
+            anchor = ( a != null ) ? a.toCheckpoint() : null;
+            long start = ( anchor != null ) ? anchor.toSeq() + 1 : 0;
+            checkpoints = auditCheckpointRepository.findByChainIdAndToSeqGreaterThanEqualOrderByToSeqAsc(chainId, start)
+                    .stream().map(AuditCheckpoint::toCheckpoint).toList();
+            entries = new PagedEntries(start, toSeq, (from, to) -> {
+                ArrayList<AuditHashChain.Entry> r = new ArrayList<>();
+                for ( Audit e : auditRepository.findByChainIdAndChainSeqGreaterThanEqualAndChainSeqLessThanEqualOrderByChainSeqAsc(chainId, from, to) ) {
+                    r.add(new AuditHashChain.Entry(e.getChainSeq(), toAuditMessage(e), e.getAuditSignature()));
+                }
+                return r;
+            });
+        }
+        long start = Now.NowUtcMs();
+        AuditHashChain.VerifyResult r = AuditHashChain.verify(key, chainId, anchor, toSeq, entries, checkpoints);
+        log.info("[audit] Chain {} [{}-{}] verified from {} : {} ({} entries, {} ms)",
+                chainId, fromSeq, toSeq, ( anchor != null ) ? anchor.toSeq() + 1 : 0,
+                ( r.valid ) ? "valid" : r.reason + " at " + r.failedSeq, r.verified, Now.NowUtcMs() - start);
+        return r;
+    }
+
+    protected static AuditMessage toAuditMessage(Audit a) {
+        AuditMessage m = new AuditMessage();
+        m.setService(a.getService());
+        m.setAction(a.getAction());
+        m.setActionMs(a.getActionMs());
+        m.setOwner(a.getOwner());
+        m.setLogStr(a.getLogStr());
+        m.setParams(a.getParams());
+        return m;
+    }
+
+    protected interface PageLoader {
+        List<AuditHashChain.Entry> load(long from, long to);
+    }
+
+    /**
+     * Chain entries loaded page by page, the verification memory does not depend on the range size
+     */
+    protected static class PagedEntries implements Iterator<AuditHashChain.Entry> {
+        protected final PageLoader loader;
+        protected final long to;
+        protected long next;
+        protected Iterator<AuditHashChain.Entry> page = null;
+
+        protected PagedEntries(long from, long to, PageLoader loader) {
+            this.loader = loader;
+            this.next = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ( page == null || !page.hasNext() ) {
+                if ( next > to ) return false;
+                long end = Math.min(to, next + VERIFY_PAGE - 1);
+                page = loader.load(next, end).iterator();
+                next = end + 1;
+            }
+            return true;
+        }
+
+        @Override
+        public AuditHashChain.Entry next() {
+            if ( !hasNext() ) throw new NoSuchElementException();
+            return page.next();
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.services;
+
+import com.disk91.audit.config.AuditConfig;
+import com.disk91.audit.integration.AuditIntegration;
+import com.disk91.audit.mdb.entities.AuditMdb;
+import com.disk91.audit.tools.AuditExportWriter;
+import com.disk91.common.tools.Now;
+import com.disk91.common.tools.Tools;
+import com.disk91.common.tools.exceptions.ITTooManyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+@Service
+public class AuditExportService {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /*
+     * Streaming export of the audit entries for a time range and the search filters, oldest first. The entries
+     * are read from a server side cursor (Mongo cursor batches, JDBC fetch size in a read only transaction) and
+     * written as they come, nothing is accumulated: the memory is bounded by the cursor batch and the output
+     * buffer, and a slow client slows down the reading. The number of concurrent exports is limited as each
+     * one holds a request thread and a database cursor.
+     */
+
+    public enum Source { MONGO, PSQL, NONE }
+
+    protected AuditConfig auditConfig;
+    protected AuditIntegration auditIntegration;
+    protected MongoTemplate mongoTemplate;
+    protected JdbcTemplate jdbcTemplate;
+    protected Semaphore exports;
+
+    @Autowired
+    public AuditExportService(AuditConfig _auditConfig, AuditIntegration _auditIntegration, MongoTemplate _mongoTemplate, JdbcTemplate _jdbcTemplate) {
+        this.auditConfig = _auditConfig;
+        this.auditIntegration = _auditIntegration;
+        this.mongoTemplate = _mongoTemplate;
+        this.jdbcTemplate = _jdbcTemplate;
+        this.exports = new Semaphore(Math.max(1, _auditConfig.getAuditExportMaxConcurrent()));
+    }
+
+    /**
+     * Storage used for the export, the same as the search
+     */
+    public Source getSource() {
+        Source source = Source.NONE;
+        for ( String target : Tools.getStringListFromParam(auditConfig.getAuditStoreMedium()) ) {
+            switch (AuditService.toAuditTarget(target)) {
+                case AUDIT_TARGET_MONGO:
+                    return Source.MONGO;
+                case AUDIT_TARGET_PSQL:
+                    source = Source.PSQL;
+                    break;
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Reserve an export slot, to be released with endExport once the export is done
+     * @throws ITTooManyException - when the max number of concurrent exports is reached
+     */
+    public void startExport() throws ITTooManyException {
+        if ( !exports.tryAcquire() ) throw new ITTooManyException("audit-export-too-many");
+    }
+
+    public void endExport() {
+        exports.release();
+    }
+
+    /**
+     * Export the matching entries, oldest first
+     * @param requester - login of the requesting user (for logging)
+     * @param source - storage to read
+     * @param search - text to match on service, action or owner, null for no filter
+     * @param exact - exact match instead of the storage default match
+     * @param startMs - lower bound on actionMs inclusive, 0 for no bound
+     * @param endMs - upper bound on actionMs inclusive, 0 for no bound
+     * @param clearAccess - true to decrypt the log parameters, false to obfuscate them
+     * @param out - export writer, not closed
+     * @return number of entries exported
+     * @throws IOException - when writing to the client fails
+     */
+    public long export(String requester, Source source, String search, boolean exact, long startMs, long endMs, boolean clearAccess, AuditExportWriter out) throws IOException {
+        long start = Now.NowUtcMs();
+        long rows = switch (source) {
+            case MONGO -> exportMongo(search, exact, startMs, endMs, clearAccess, out);
+            case PSQL -> exportPsql(search, exact, startMs, endMs, clearAccess, out);
+            case NONE -> 0;
+        };
+        long duration = Math.max(1, Now.NowUtcMs() - start);
+        log.info("[audit] Export by {} : {} entries in {} ms ({} entries/s)", requester, rows, duration, (rows * 1000) / duration);
+        return rows;
+    }
+
+    protected long exportMongo(String search, boolean exact, long startMs, long endMs, boolean clearAccess, AuditExportWriter out) throws IOException {
+        ArrayList<Criteria> and = AuditMdbSearchService.filters(search, exact, startMs, endMs);
+        Query q = new Query();
+        if ( !and.isEmpty() ) q.addCriteria(new Criteria().andOperator(and));
+        // walk the time index in order and filter, a text index would need a blocking sort
+        q.with(Sort.by(Sort.Direction.ASC, "actionMs").and(Sort.by(Sort.Direction.ASC, "_id")));
+        q.withHint("auditMess_search_time_Idx");
+        q.cursorBatchSize(auditConfig.getAuditExportFetchSize());
+        long rows = 0;
+        try ( Stream<AuditMdb> s = mongoTemplate.stream(q, AuditMdb.class) ) {
+            Iterator<AuditMdb> it = s.iterator();
+            while ( it.hasNext() ) {
+                AuditMdb a = it.next();
+                out.write(a.getActionMs(), a.getService(), a.getAction(), a.getOwner(),
+                        auditIntegration.resolveLogStr(a.getLogStr(), a.getParams(), clearAccess));
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    protected long exportPsql(String search, boolean exact, long startMs, long endMs, boolean clearAccess, AuditExportWriter out) throws IOException {
+        ArrayList<Object> args = new ArrayList<>();
+        ArrayList<String> where = AuditPdbSearchService.filters(search, exact, startMs, endMs, args);
+        StringBuilder sql = new StringBuilder("SELECT service, action, action_ms, owner, log_str, params FROM " + AuditPdbPartitionService.TABLE);
+        if ( !where.isEmpty() ) sql.append(" WHERE ").append(String.join(" AND ", where));
+        sql.append(" ORDER BY action_ms, audit_key");
+        try {
+            Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) c -> {
+                // PostgreSQL only uses a cursor for the fetch size inside a transaction
+                boolean auto = c.getAutoCommit();
+                boolean readOnly = c.isReadOnly();
+                c.setAutoCommit(false);
+                c.setReadOnly(true);
+                try ( PreparedStatement ps = c.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY) ) {
+                    ps.setFetchSize(auditConfig.getAuditExportFetchSize());
+                    for ( int i = 0 ; i < args.size() ; i++ ) ps.setObject(i + 1, args.get(i));
+                    long count = 0;
+                    try ( ResultSet rs = ps.executeQuery() ) {
+                        while ( rs.next() ) {
+                            Array p = rs.getArray("params");
+                            List<String> params = ( p != null ) ? Arrays.asList((String []) p.getArray()) : List.of();
+                            out.write(rs.getLong("action_ms"), rs.getString("service"), rs.getString("action"), rs.getString("owner"),
+                                    auditIntegration.resolveLogStr(rs.getString("log_str"), params, clearAccess));
+                            count++;
+                        }
+                    }
+                    return count;
+                } catch (IOException x) {
+                    throw new UncheckedIOException(x);
+                } finally {
+                    c.rollback();
+                    c.setReadOnly(readOnly);
+                    c.setAutoCommit(auto);
+                }
+            });
+            return ( rows != null ) ? rows : 0;
+        } catch (UncheckedIOException x) {
+            throw x.getCause();
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.services;
+
+import com.disk91.audit.mdb.entities.AuditMdb;
+import com.disk91.common.tools.exceptions.ITParseException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+@Service
+public class AuditMdbSearchService {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /*
+     * Audit search on Mongo. The search text is matched on lowercase copies of service, action and owner,
+     * exactly or as an anchored prefix so the compound indexes (field, actionMs, _id) are used, instead of an
+     * unanchored case-insensitive regex scanning all the documents. Pages are read with a keyset cursor on
+     * (actionMs, _id) descending, each page costs the same whatever its depth, and the count is optional and
+     * bounded.
+     */
+
+    public static class Result {
+        public List<AuditMdb> entries = new ArrayList<>();
+        // cursor for the next page, null when this is the last page
+        public String nextCursor;
+        // number of matching entries, -1 when not requested
+        public long total = -1;
+        // the count reached the limit, there are more entries
+        public boolean totalApproximate;
+    }
+
+    protected MongoTemplate mongoTemplate;
+
+    @Autowired
+    public AuditMdbSearchService(MongoTemplate _mongoTemplate) {
+        this.mongoTemplate = _mongoTemplate;
+    }
+
+    /**
+     * Search the audit entries, most recent first
+     * @param search - text to match on service, action or owner (OR), null for no filter
+     * @param exact - exact match instead of prefix match
+     * @param startMs - lower bound on actionMs inclusive, 0 for no bound
+     * @param endMs - upper bound on actionMs inclusive, 0 for no bound
+     * @param cursor - cursor returned with the previous page, null for the first page
+     * @param page - page number when no cursor is given (skip based, avoid deep pages)
+     * @param pageSize - number of entries per page
+     * @param countLimit - max number of entries to count, 0 for no count
+     * @return the page entries and the cursor for the next one
+     * @throws ITParseException - invalid cursor
+     */
+    public Result search(String search, boolean exact, long startMs, long endMs, String cursor, int page, int pageSize, long countLimit) throws ITParseException {
+        ArrayList<Criteria> and = filters(search, exact, startMs, endMs);
+
+        Result r = new Result();
+        if ( countLimit > 0 ) {
+            if ( and.isEmpty() ) {
+                r.total = mongoTemplate.estimatedCount(AuditMdb.class);
+                r.totalApproximate = true;
+            } else {
+                Query cq = new Query(new Criteria().andOperator(and));
+                cq.limit((int) Math.min(Integer.MAX_VALUE, countLimit));
+                r.total = mongoTemplate.count(cq, AuditMdb.class);
+                r.totalApproximate = ( r.total >= countLimit );
+            }
+        }
+
+        if ( cursor != null && !cursor.isBlank() ) {
+            // keyset: entries strictly after the last one of the previous page
+            long cMs;
+            ObjectId cId;
+            try {
+                String [] v = cursor.split("_", -1);
+                if ( v.length != 2 ) throw new ITParseException("audit-search-invalid-cursor");
+                cMs = Long.parseLong(v[0]);
+                cId = new ObjectId(v[1]);
+            } catch (Exception x) {
+                throw new ITParseException("audit-search-invalid-cursor");
+            }
+            and.add(new Criteria().orOperator(
+                    Criteria.where("actionMs").lt(cMs),
+                    new Criteria().andOperator(Criteria.where("actionMs").is(cMs), Criteria.where("_id").lt(cId))
+            ));
+        }
+        Query q = new Query();
+        if ( !and.isEmpty() ) q.addCriteria(new Criteria().andOperator(and));
+        q.with(Sort.by(Sort.Direction.DESC, "actionMs").and(Sort.by(Sort.Direction.DESC, "_id")));
+        if ( cursor == null || cursor.isBlank() ) q.skip((long) Math.max(0, page) * pageSize);
+        q.limit(pageSize + 1);
+        List<AuditMdb> found = mongoTemplate.find(q, AuditMdb.class);
+        for ( int i = 0 ; i < Math.min(pageSize, found.size()) ; i++ ) r.entries.add(found.get(i));
+        if ( found.size() > pageSize ) {
+            AuditMdb last = r.entries.get(r.entries.size() - 1);
+            r.nextCursor = last.getActionMs() + "_" + last.getId();
+        }
+        return r;
+    }
+
+    protected static ArrayList<Criteria> filters(String search, boolean exact, long startMs, long endMs) {
+        ArrayList<Criteria> and = new ArrayList<>();
+        if ( search != null && !search.isBlank() ) {
+            String key = AuditMdb.toSearchKey(search);
+            if ( exact ) {
+                and.add(new Criteria().orOperator(
+                        Criteria.where("serviceLc").is(key),
+                        Criteria.where("actionLc").is(key),
+                        Criteria.where("ownerLc").is(key)
+                ));
+            } else {
+                // anchored and case-sensitive on the lowercase fields: index range scan
+                Pattern prefix = Pattern.compile("^" + Pattern.quote(key));
+                and.add(new Criteria().orOperator(
+                        Criteria.where("serviceLc").regex(prefix),
+                        Criteria.where("actionLc").regex(prefix),
+                        Criteria.where("ownerLc").regex(prefix)
+                ));
+            }
+        }
+        if ( startMs > 0 || endMs > 0 ) {
+            Criteria range = Criteria.where("actionMs");
+            if ( startMs > 0 ) range = range.gte(startMs);
+            if ( endMs > 0 ) range = range.lte(endMs);
+            and.add(range);
+        }
+        return and;
+    }
+
+    /**
+     * Set the lowercase search fields on the entries created before they exist, server side
+     */
+    public void backfillSearchFields() {
+        try {
+            long start = System.currentTimeMillis();
+            long updated = mongoTemplate.getCollection(mongoTemplate.getCollectionName(AuditMdb.class)).updateMany(
+                    Filters.exists("serviceLc", false),
+                    List.of(Updates.combine(
+                            Updates.set("serviceLc", new Document("$toLower", "$service")),
+                            Updates.set("actionLc", new Document("$toLower", "$action")),
+                            Updates.set("ownerLc", new Document("$toLower", "$owner"))
+                    ))
+            ).getModifiedCount();
+            if ( updated > 0 ) log.info("[audit] {} audit entries indexed for search in {} ms", updated, System.currentTimeMillis() - start);
+        } catch (Exception x) {
+            log.error("[audit] Failed to backfill the audit search fields: {}", x.getMessage());
+        }
+    }
+
+}
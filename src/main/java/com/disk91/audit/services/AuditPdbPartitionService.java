@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.services;
+
+import com.disk91.audit.config.AuditConfig;
+import com.disk91.common.tools.Now;
+import com.disk91.common.tools.Tools;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Service
+public class AuditPdbPartitionService {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /*
+     * Partitioned storage of the audit entries in PostgreSQL. The audit_audits table is range partitioned
+     * by month (UTC) on action_ms, the partitions are created in advance and the oldest ones are dropped for
+     * retention, a drop is immediate where a DELETE would rewrite and vacuum the table. The primary key
+     * (action_ms, audit_key) gives the keyset order of the search, a BRIN index covers the time ranges and
+     * pg_trgm GIN indexes the text filters. A default partition gets the entries out of the created months.
+     * An existing non partitioned table is converted (entries copied) on the first start in this mode.
+     */
+
+    public static final String TABLE = "audit_audits";
+    protected static final String PARTITION_PREFIX = TABLE + "_p";
+    protected static final Pattern PARTITION_NAME = Pattern.compile("^" + PARTITION_PREFIX + "(\\d{4})(\\d{2})$");
+
+    protected JdbcTemplate jdbcTemplate;
+    protected AuditConfig auditConfig;
+
+    // pg_trgm is available and the text indexes exist
+    protected boolean trigram = false;
+    protected boolean active = false;
+
+    @Autowired
+    public AuditPdbPartitionService(JdbcTemplate _jdbcTemplate, AuditConfig _auditConfig) {
+        this.jdbcTemplate = _jdbcTemplate;
+        this.auditConfig = _auditConfig;
+    }
+
+    @PostConstruct
+    public void initPartitionService() {
+        if ( !auditConfig.isAuditPsqlPartitioningEnabled() ) return;
+        boolean psqlActive = Tools.getStringListFromParam(auditConfig.getAuditStoreMedium()).stream()
+                .anyMatch(t -> AuditService.toAuditTarget(t) == AuditService.AuditTarget.AUDIT_TARGET_PSQL);
+        if ( !psqlActive ) return;
+        setupSchema();
+    }
+
+    /**
+     * Create or convert the partitioned table, its indexes and the partitions for the coming months
+     */
+    public void setupSchema() {
+        String kind = jdbcTemplate.query(
+                "SELECT c.relkind::text FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "WHERE c.relname = ? AND n.nspname = current_schema()",
+                rs -> rs.next() ? rs.getString(1) : null, TABLE);
+        if ( kind == null ) {
+            log.info("[audit] Creating the partitioned audit table");
+            jdbcTemplate.execute(createTableSql(TABLE));
+        } else if ( kind.equals("r") ) {
+            convertTable();
+        }
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + "_default PARTITION OF " + TABLE + " DEFAULT");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD COLUMN IF NOT EXISTS chain_id varchar(255), ADD COLUMN IF NOT EXISTS chain_seq bigint");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_audit_chain_key ON " + TABLE + " (chain_id, chain_seq)");
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_audit_time_brin ON " + TABLE + " USING brin (action_ms)");
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_audit_service_trgm ON " + TABLE + " USING gin (lower(service) gin_trgm_ops)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_audit_action_trgm ON " + TABLE + " USING gin (lower(action) gin_trgm_ops)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_audit_owner_trgm ON " + TABLE + " USING gin (lower(owner) gin_trgm_ops)");
+            trigram = true;
+        } catch (Exception x) {
+            log.warn("[audit] pg_trgm is not available, audit text search will not be indexed: {}", x.getMessage());
+        }
+        active = true;
+        maintainPartitions();
+    }
+
+    protected static String createTableSql(String name) {
+        return "CREATE TABLE " + name + " (" +
+                "audit_key uuid NOT NULL, " +
+                "audit_timestamp_ns bigint NOT NULL, " +
+                "audit_signature varchar(255) NOT NULL, " +
+                "service varchar(255) NOT NULL, " +
+                "action varchar(255) NOT NULL, " +
+                "action_ms bigint NOT NULL, " +
+                "owner varchar(255) NOT NULL, " +
+                "log_str varchar(255) NOT NULL, " +
+                "params varchar(255)[] NOT NULL, " +
+                "chain_id varchar(255), " +
+                "chain_seq bigint, " +
+                "PRIMARY KEY (action_ms, audit_key)" +
+                ") PARTITION BY RANGE (action_ms)";
+    }
+
+    /**
+     * Convert the table created by JPA into the partitioned one, in a single transaction. The entries
+     * are copied, this can be long on a large table and is only made once.
+     */
+    protected void convertTable() {
+        log.info("[audit] Converting the audit table to a partitioned table");
+        long start = Now.NowUtcMs();
+        Long [] range = jdbcTemplate.query("SELECT min(action_ms), max(action_ms) FROM " + TABLE,
+                rs -> {
+                    rs.next();
+                    return new Long[] { (Long) rs.getObject(1), (Long) rs.getObject(2) };
+                });
+        jdbcTemplate.execute((ConnectionCallback<Void>) c -> {
+            boolean auto = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try ( Statement s = c.createStatement() ) {
+                s.execute("ALTER TABLE " + TABLE + " RENAME TO " + TABLE + "_legacy");
+                // the index names of the legacy table are reused on the new one
+                for ( String idx : List.of("idx_audit_service_key", "idx_audit_owner_key", "idx_audit_time_key", "idx_audit_chain_key") ) {
+                    s.execute("DROP INDEX IF EXISTS " + idx);
+                }
+                s.execute(createTableSql(TABLE));
+                if ( range != null && range[0] != null ) {
+                    YearMonth m = toMonth(range[0]);
+                    YearMonth last = toMonth(range[1]);
+                    while ( !m.isAfter(last) ) {
+                        s.execute(createPartitionSql(m, false));
+                        m = m.plusMonths(1);
+                    }
+                }
+                s.execute("CREATE TABLE " + TABLE + "_default PARTITION OF " + TABLE + " DEFAULT");
+                s.execute("ALTER TABLE " + TABLE + "_legacy ADD COLUMN IF NOT EXISTS chain_id varchar(255), ADD COLUMN IF NOT EXISTS chain_seq bigint");
+                s.execute("INSERT INTO " + TABLE + " (" + AuditPdbSearchService.COLUMNS + ") SELECT " + AuditPdbSearchService.COLUMNS + " FROM " + TABLE + "_legacy");
+                s.execute("DROP TABLE " + TABLE + "_legacy");
+                c.commit();
+            } catch (Exception x) {
+                c.rollback();
+                throw x;
+            } finally {
+                c.setAutoCommit(auto);
+            }
+            return null;
+        });
+        log.info("[audit] Audit table converted in {} ms", Now.NowUtcMs() - start);
+    }
+
+    /**
+     * Create the partitions for the current and the coming months, drop the ones out of the retention
+     */
+    @Scheduled(fixedDelay = 3_600_000, initialDelay = 3_600_000)
+    public void maintainPartitions() {
+        if ( !active ) return;
+        try {
+            YearMonth m = toMonth(Now.NowUtcMs());
+            for ( int i = 0 ; i <= auditConfig.getAuditPsqlPartitionPremakeMonths() ; i++ ) {
+                try {
+                    jdbcTemplate.execute(createPartitionSql(m.plusMonths(i), true));
+                } catch (Exception x) {
+                    // the default partition already has entries in this month
+                    log.error("[audit] Failed to create the audit partition for {}: {}", m.plusMonths(i), x.getMessage());
+                }
+            }
+            dropExpiredPartitions(Now.NowUtcMs());
+        } catch (Exception x) {
+            log.error("[audit] Failed to maintain the audit partitions: {}", x.getMessage());
+        }
+    }
+
+    /**
+     * Drop the partitions entirely older than the retention period
+     * @param nowMs - current time
+     * @return number of partitions dropped
+     */
+    public int dropExpiredPartitions(long nowMs) {
+        int retention = auditConfig.getAuditPsqlRetentionMonths();
+        if ( retention <= 0 ) return 0;
+        YearMonth oldest = toMonth(nowMs).minusMonths(retention);
+        int dropped = 0;
+        for ( String p : listPartitions() ) {
+            Matcher mt = PARTITION_NAME.matcher(p);
+            if ( !mt.matches() ) continue;
+            YearMonth m = YearMonth.of(Integer.parseInt(mt.group(1)), Integer.parseInt(mt.group(2)));
+            if ( m.isBefore(oldest) ) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + p);
+                log.info("[audit] Audit partition {} dropped (retention {} months)", p, retention);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * List the partitions of the audit table
+     * @return partition table names
+     */
+    public List<String> listPartitions() {
+        return new ArrayList<>(jdbcTemplate.queryForList(
+                "SELECT c.relname::text FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ? ORDER BY c.relname",
+                String.class, TABLE));
+    }
+
+    protected static YearMonth toMonth(long ms) {
+        return YearMonth.from(Instant.ofEpochMilli(ms).atZone(ZoneOffset.UTC));
+    }
+
+    protected static String createPartitionSql(YearMonth m, boolean ifNotExists) {
+        long from = m.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        long to = m.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        return String.format("CREATE TABLE %s%s%04d%02d PARTITION OF %s FOR VALUES FROM (%d) TO (%d)",
+                ( ifNotExists ) ? "IF NOT EXISTS " : "", PARTITION_PREFIX, m.getYear(), m.getMonthValue(), TABLE, from, to);
+    }
+
+    // ================================================================================================================
+    // Getters
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public boolean isTrigram() {
+        return trigram;
+    }
+
+}
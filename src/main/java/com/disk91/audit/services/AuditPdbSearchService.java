@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.services;
+
+import com.disk91.audit.pdb.entities.Audit;
+import com.disk91.common.tools.exceptions.ITParseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+@Service
+public class AuditPdbSearchService {
+
+    /*
+     * Audit search on the partitioned PostgreSQL table (see AuditPdbPartitionService). The statement is built
+     * with only the filters in use so the planner prunes the partitions out of the time range and uses the
+     * trigram indexes for the text, pages are read with a keyset cursor on the primary key (action_ms, audit_key)
+     * descending, and the count is optional and bounded.
+     */
+
+    public static class Result {
+        public List<Audit> entries = new ArrayList<>();
+        // cursor for the next page, null when this is the last page
+        public String nextCursor;
+        // number of matching entries, -1 when not requested
+        public long total = -1;
+        // the count reached the limit or is estimated from the table statistics
+        public boolean totalApproximate;
+    }
+
+    public record SearchQuery(String sql, Object [] args) {}
+
+    protected static final String COLUMNS = "audit_key, audit_timestamp_ns, audit_signature, service, action, action_ms, owner, log_str, params, chain_id, chain_seq";
+
+    protected JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public AuditPdbSearchService(JdbcTemplate _jdbcTemplate) {
+        this.jdbcTemplate = _jdbcTemplate;
+    }
+
+    /**
+     * Search the audit entries, most recent first
+     * @param search - text to match on service, action or owner (OR, case-insensitive), null for no filter
+     * @param exact - exact match instead of partial match
+     * @param startMs - lower bound on actionMs inclusive, 0 for no bound
+     * @param endMs - upper bound on actionMs inclusive, 0 for no bound
+     * @param cursor - cursor returned with the previous page, null for the first page
+     * @param page - page number when no cursor is given (offset based, avoid deep pages)
+     * @param pageSize - number of entries per page
+     * @param countLimit - max number of entries to count, 0 for no count
+     * @return the page entries and the cursor for the next one
+     * @throws ITParseException - invalid cursor
+     */
+    public Result search(String search, boolean exact, long startMs, long endMs, String cursor, int page, int pageSize, long countLimit) throws ITParseException {
+        Result r = new Result();
+        if ( countLimit > 0 ) {
+            if ( (search == null || search.isBlank()) && startMs <= 0 && endMs <= 0 ) {
+                Long estimate = jdbcTemplate.queryForObject(
+                        "SELECT coalesce(sum(greatest(c.reltuples, 0)), 0)::bigint FROM pg_inherits i " +
+                        "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ?",
+                        Long.class, AuditPdbPartitionService.TABLE);
+                r.total = ( estimate != null ) ? estimate : 0;
+                r.totalApproximate = true;
+            } else {
+                SearchQuery c = prepareCount(search, exact, startMs, endMs, countLimit);
+                Long count = jdbcTemplate.queryForObject(c.sql(), Long.class, c.args());
+                r.total = ( count != null ) ? count : 0;
+                r.totalApproximate = ( r.total >= countLimit );
+            }
+        }
+
+        SearchQuery q = prepare(search, exact, startMs, endMs, cursor, page, pageSize);
+        List<Audit> found = jdbcTemplate.query(q.sql(), AUDIT_MAPPER, q.args());
+        for ( int i = 0 ; i < Math.min(pageSize, found.size()) ; i++ ) r.entries.add(found.get(i));
+        if ( found.size() > pageSize ) {
+            Audit last = r.entries.get(r.entries.size() - 1);
+            r.nextCursor = last.getActionMs() + "_" + last.getAuditKey();
+        }
+        return r;
+    }
+
+    /**
+     * Build the statement returning one page (plus one entry to detect the next page)
+     */
+    public SearchQuery prepare(String search, boolean exact, long startMs, long endMs, String cursor, int page, int pageSize) throws ITParseException {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM " + AuditPdbPartitionService.TABLE);
+        ArrayList<Object> args = new ArrayList<>();
+        ArrayList<String> where = filters(search, exact, startMs, endMs, args);
+        if ( cursor != null && !cursor.isBlank() ) {
+            // keyset: entries strictly after the last one of the previous page
+            try {
+                String [] v = cursor.split("_");
+                long cMs = Long.parseLong(v[0]);
+                UUID cKey = UUID.fromString(v[1]);
+                where.add("(action_ms, audit_key) < (?, ?)");
+                args.add(cMs);
+                args.add(cKey);
+            } catch (Exception x) {
+                throw new ITParseException("audit-search-invalid-cursor");
+            }
+        }
+        if ( !where.isEmpty() ) sql.append(" WHERE ").append(String.join(" AND ", where));
+        sql.append(" ORDER BY action_ms DESC, audit_key DESC LIMIT ?");
+        args.add(pageSize + 1);
+        if ( cursor == null || cursor.isBlank() ) {
+            sql.append(" OFFSET ?");
+            args.add((long) Math.max(0, page) * pageSize);
+        }
+        return new SearchQuery(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Build the statement counting the matching entries up to the limit
+     */
+    public SearchQuery prepareCount(String search, boolean exact, long startMs, long endMs, long countLimit) {
+        ArrayList<Object> args = new ArrayList<>();
+        ArrayList<String> where = filters(search, exact, startMs, endMs, args);
+        StringBuilder sql = new StringBuilder("SELECT count(*) FROM (SELECT 1 FROM " + AuditPdbPartitionService.TABLE);
+        if ( !where.isEmpty() ) sql.append(" WHERE ").append(String.join(" AND ", where));
+        sql.append(" LIMIT ?) c");
+        args.add(countLimit);
+        return new SearchQuery(sql.toString(), args.toArray());
+    }
+
+    protected static ArrayList<String> filters(String search, boolean exact, long startMs, long endMs, ArrayList<Object> args) {
+        ArrayList<String> where = new ArrayList<>();
+        if ( search != null && !search.isBlank() ) {
+            String key = search.trim().toLowerCase(Locale.ROOT);
+            if ( exact ) {
+                where.add("(lower(service) = ? OR lower(action) = ? OR lower(owner) = ?)");
+            } else {
+                // the expressions match the trigram indexes, wildcards in the text are literal
+                key = "%" + key.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+                where.add("(lower(service) LIKE ? OR lower(action) LIKE ? OR lower(owner) LIKE ?)");
+            }
+            args.addAll(Arrays.asList(key, key, key));
+        }
+        if ( startMs > 0 ) {
+            where.add("action_ms >= ?");
+            args.add(startMs);
+        }
+        if ( endMs > 0 ) {
+            where.add("action_ms <= ?");
+            args.add(endMs);
+        }
+        return where;
+    }
+
+    protected static final RowMapper<Audit> AUDIT_MAPPER = (rs, n) -> {
+        Audit a = new Audit();
+        a.setAuditKey(rs.getObject("audit_key", UUID.class));
+        a.setAuditTimestampNs(rs.getLong("audit_timestamp_ns"));
+        a.setAuditSignature(rs.getString("audit_signature"));
+        a.setService(rs.getString("service"));
+        a.setAction(rs.getString("action"));
+        a.setActionMs(rs.getLong("action_ms"));
+        a.setOwner(rs.getString("owner"));
+        a.setLogStr(rs.getString("log_str"));
+        Array p = rs.getArray("params");
+        a.setParams(( p != null ) ? new ArrayList<>(Arrays.asList((String []) p.getArray())) : new ArrayList<>());
+        a.setChainId(rs.getString("chain_id"));
+        a.setChainSeq((Long) rs.getObject("chain_seq"));
+        return a;
+    };
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.services;
+
+import com.disk91.audit.config.AuditConfig;
+import com.disk91.audit.mdb.entities.AuditMdb;
+import com.disk91.common.services.PurgeService;
+import com.disk91.common.services.PurgeTarget;
+import com.disk91.common.tools.Tools;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+public class AuditPurgeService {
+
+    /*
+     * Retention of the audit entries stored in the databases (audit.db.retention.days), the expired entries are
+     * deleted progressively by the PurgeService in the action time order. The partitioned PostgreSQL table is not
+     * concerned, its retention drops the whole monthly partitions.
+     */
+
+    protected AuditConfig auditConfig;
+    protected AuditPdbPartitionService auditPdbPartitionService;
+    protected PurgeService purgeService;
+    protected MongoTemplate mongoTemplate;
+    protected JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public AuditPurgeService(
+            AuditConfig _auditConfig,
+            AuditPdbPartitionService _auditPdbPartitionService,
+            PurgeService _purgeService,
+            MongoTemplate _mongoTemplate,
+            JdbcTemplate _jdbcTemplate
+    ) {
+        this.auditConfig = _auditConfig;
+        this.auditPdbPartitionService = _auditPdbPartitionService;
+        this.purgeService = _purgeService;
+        this.mongoTemplate = _mongoTemplate;
+        this.jdbcTemplate = _jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void initAuditPurge() {
+        for ( String target : Tools.getStringListFromParam(auditConfig.getAuditStoreMedium()) ) {
+            switch (AuditService.toAuditTarget(target)) {
+                case AUDIT_TARGET_MONGO -> purgeService.register(new MongoPurge());
+                case AUDIT_TARGET_PSQL -> {
+                    if ( !auditPdbPartitionService.isActive() ) purgeService.register(new PsqlPurge());
+                }
+                default -> {}
+            }
+        }
+    }
+
+    protected long getCutoffMs(long nowMs) {
+        if ( auditConfig.getAuditDbRetentionDays() <= 0 ) return 0;
+        return nowMs - (auditConfig.getAuditDbRetentionDays() * 86_400_000L);
+    }
+
+    protected class MongoPurge implements PurgeTarget {
+
+        @Override
+        public String getPurgeName() {
+            return "audit-mongo";
+        }
+
+        @Override
+        public long getPurgeCutoffMs(long nowMs) {
+            return getCutoffMs(nowMs);
+        }
+
+        protected Criteria expired(long fromMs, long cutoffMs) {
+            return Criteria.where("actionMs").gte(fromMs).lt(cutoffMs);
+        }
+
+        @Override
+        public PurgeBatch purgeBatch(long fromMs, long cutoffMs, int max) {
+            Query q = new Query(expired(fromMs, cutoffMs))
+                    .with(Sort.by(Sort.Direction.ASC, "actionMs"))
+                    .limit(max);
+            q.fields().include("_id").include("actionMs");
+            List<AuditMdb> l = mongoTemplate.find(q, AuditMdb.class);
+            if ( l.isEmpty() ) return new PurgeBatch(0, fromMs);
+            mongoTemplate.remove(
+                    new Query(Criteria.where("_id").in(l.stream().map(AuditMdb::getId).toList())),
+                    AuditMdb.class
+            );
+            return new PurgeBatch(l.size(), l.getLast().getActionMs());
+        }
+
+        @Override
+        public long countPurgeBacklog(long fromMs, long cutoffMs) {
+            return mongoTemplate.count(new Query(expired(fromMs, cutoffMs)), AuditMdb.class);
+        }
+    }
+
+    protected class PsqlPurge implements PurgeTarget {
+
+        @Override
+        public String getPurgeName() {
+            return "audit-psql";
+        }
+
+        @Override
+        public long getPurgeCutoffMs(long nowMs) {
+            return getCutoffMs(nowMs);
+        }
+
+        @Override
+        public PurgeBatch purgeBatch(long fromMs, long cutoffMs, int max) {
+            List<Long> deleted = jdbcTemplate.queryForList(
+                    "DELETE FROM " + AuditPdbPartitionService.TABLE + " WHERE audit_key IN (" +
+                    "SELECT audit_key FROM " + AuditPdbPartitionService.TABLE + " " +
+                    "WHERE action_ms >= ? AND action_ms < ? ORDER BY action_ms LIMIT ?) RETURNING action_ms",
+                    Long.class, fromMs, cutoffMs, max);
+            if ( deleted.isEmpty() ) return new PurgeBatch(0, fromMs);
+            long last = fromMs;
+            for ( Long ms : deleted ) last = Math.max(last, ms);
+            return new PurgeBatch(deleted.size(), last);
+        }
+
+        @Override
+        public long countPurgeBacklog(long fromMs, long cutoffMs) {
+            Long count = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM " + AuditPdbPartitionService.TABLE + " WHERE action_ms >= ? AND action_ms < ?",
+                    Long.class, fromMs, cutoffMs);
+            return ( count == null ) ? 0 : count;
+        }
+    }
+
+}
@@ -25,19 +25,17 @@ import com.disk91.audit.api.interfaces.AuditSearchResponse;
 import com.disk91.audit.config.AuditConfig;
 import com.disk91.audit.integration.AuditIntegration;
 import com.disk91.audit.mdb.entities.AuditMdb;
-import com.disk91.audit.mdb.repositories.AuditRepositoryMdb;
 import com.disk91.audit.pdb.entities.Audit;
 import com.disk91.audit.pdb.repositories.AuditRepository;
-import com.disk91.common.tools.Now;
 import com.disk91.common.tools.Tools;
 import com.disk91.common.tools.exceptions.ITParseException;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -66,7 +64,25 @@ public class AuditQueryService {
     protected AuditRepository auditRepository;
 
     @Autowired
-    protected AuditRepositoryMdb auditRepositoryMdb;
+    protected AuditMdbSearchService auditMdbSearchService;
+
+    @Autowired
+    protected AuditPdbSearchService auditPdbSearchService;
+
+    @Autowired
+    protected AuditPdbPartitionService auditPdbPartitionService;
+
+    @PostConstruct
+    public void init() {
+        boolean mongoActive = Tools.getStringListFromParam(auditConfig.getAuditStoreMedium()).stream()
+                .anyMatch(t -> AuditService.toAuditTarget(t) == AuditService.AuditTarget.AUDIT_TARGET_MONGO);
+        if ( mongoActive ) {
+            // entries created before the search fields, in background as it can be long
+            Thread t = new Thread(auditMdbSearchService::backfillSearchFields, "audit-search-backfill");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
 
     /**
      * Search audit log entries according to given criteria with pagination support.
@@ -141,17 +157,31 @@ public class AuditQueryService {
         long total = 0;
 
         if (mongoActive) {
-            // Normalize optional params: empty regex matches all; Long.MAX_VALUE as upper bound matches all
-            String effectiveSearch = (searchFilter == null) ? "" : searchFilter;
-            long effectiveEndMs    = (endMs == 0) ? Now.NowUtcMs() : endMs;
-
-            // Delegate to the repository native MongoDB query, sorted by actionMs descending
-            PageRequest pageable = PageRequest.of(page, pageSize, Sort.by(Sort.Direction.DESC, "actionMs"));
-            Page<AuditMdb> resultPage = auditRepositoryMdb.searchAuditLogs(
-                    effectiveSearch, startMs, effectiveEndMs, pageable);
+            // Prefix / exact match on the indexed fields, keyset pagination when a cursor is given
+            AuditMdbSearchService.Result result = auditMdbSearchService.search(
+                    searchFilter, body.isExact(), startMs, endMs, body.getCursor(), page, pageSize,
+                    body.isCount() ? auditConfig.getAuditSearchCountLimit() : 0
+            );
+
+            total = result.total;
+            response.setNextCursor(result.nextCursor);
+            response.setTotalApproximate(result.totalApproximate);
+            for (AuditMdb a : result.entries) {
+                entries.add(mapToResponse(a.getService(), a.getAction(), a.getActionMs(),
+                        a.getOwner(), a.getLogStr(), a.getParams(), clearAccess));
+            }
 
-            total = resultPage.getTotalElements();
-            for (AuditMdb a : resultPage.getContent()) {
+        } else if (auditPdbPartitionService.isActive()) {
+            // Partitioned PostgreSQL table, partial match on the trigram indexes, keyset pagination
+            AuditPdbSearchService.Result result = auditPdbSearchService.search(
+                    searchFilter, body.isExact(), startMs, endMs, body.getCursor(), page, pageSize,
+                    body.isCount() ? auditConfig.getAuditSearchCountLimit() : 0
+            );
+
+            total = result.total;
+            response.setNextCursor(result.nextCursor);
+            response.setTotalApproximate(result.totalApproximate);
+            for (Audit a : result.entries) {
                 entries.add(mapToResponse(a.getService(), a.getAction(), a.getActionMs(),
                         a.getOwner(), a.getLogStr(), a.getParams(), clearAccess));
             }
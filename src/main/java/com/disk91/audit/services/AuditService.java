@@ -25,22 +25,37 @@ import com.disk91.audit.mdb.entities.AuditMdb;
 import com.disk91.audit.mdb.repositories.AuditRepositoryMdb;
 import com.disk91.audit.pdb.entities.Audit;
 import com.disk91.audit.pdb.repositories.AuditRepository;
+import com.disk91.audit.tools.AuditFileSink;
+import com.disk91.audit.tools.AuditHashChain;
 import com.disk91.common.api.interfaces.ActionResult;
 import com.disk91.common.config.ModuleCatalog;
 import com.disk91.common.tools.Now;
 import com.disk91.common.tools.Tools;
 import com.disk91.common.tools.exceptions.ITParseException;
 import com.disk91.common.tools.exceptions.ITTooManyException;
-import com.disk91.integration.api.interfaces.IntegrationCallback;
+import com.disk91.integration.api.interfaces.IntegrationBatchCallback;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
 import com.disk91.integration.services.IntegrationService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class AuditService {
@@ -80,104 +95,77 @@ public class AuditService {
     @Autowired
     protected AuditRepositoryMdb auditRepositoryMongo;
 
+    @Autowired
+    protected AuditChainService auditChainService;
+
+
+    protected AuditFileSink auditFileSink = null;
+
+    /*
+     * Audit pipeline: the integration callback queues the messages in a bounded queue and returns, the integration
+     * event completion is deferred to the commit, so the event is done (and released from the integration journal)
+     * only once stored without blocking the integration worker. A single writer thread takes them by batch of up
+     * to audit.batch.max.size messages or audit.batch.max.wait.ms and commits each batch to every target in one
+     * operation: Mongo insertMany, JDBC batch insert, one file write and flush. A failed target write is retried.
+     * Once the writer is stopped, the callers commit their messages themselves.
+     */
+    protected static class PendingAudit {
+        protected final IntegrationQuery query;
+        protected final AuditMessage message;
+        protected boolean deferred = false;
 
-    protected static java.io.BufferedWriter auditWriter = null;
-    protected static String auditCurrentYyMmDd = null;
-    protected static java.nio.file.Path auditCurrentPath = null;
+        protected PendingAudit(IntegrationQuery query) {
+            this.query = query;
+            this.message = (AuditMessage) query.getQuery();
+        }
+    }
+
+    protected ArrayList<AuditTarget> auditTargets;
+    protected LinkedBlockingQueue<PendingAudit> auditQueue;
+    protected Thread auditWriterThread;
+    protected final AtomicBoolean running = new AtomicBoolean(false);
+    protected final ReentrantLock commitLock = new ReentrantLock();
 
     @PostConstruct
     public void init() {
         log.info("[audit] Service initialization");
+        this.auditTargets = new ArrayList<>();
         ArrayList<String> targets = Tools.getStringListFromParam(auditConfig.getAuditStoreMedium());
         for (String t : targets) {
             log.info("[audit] Service initialized for target: {}", t);
+            AuditTarget at = toAuditTarget(t);
+            if ( at != AuditTarget.AUDIT_TARGET_NONE ) this.auditTargets.add(at);
         }
+        this.initAuditMetrics();
+        if ( this.auditTargets.contains(AuditTarget.AUDIT_TARGET_FILES) ) {
+            this.auditFileSink = new AuditFileSink(
+                    java.nio.file.Paths.get(auditConfig.getAuditStoreFilePath()),
+                    auditConfig.getAuditFileSegmentSizeMb() * 1024L * 1024L,
+                    auditConfig.getAuditFileIndexChunkKb() * 1024L,
+                    "gzip".equalsIgnoreCase(auditConfig.getAuditFileCompression()),
+                    auditConfig.getAuditFileRetentionDays(),
+                    auditConfig.getAuditFileMaxTotalSizeMb() * 1024L * 1024L
+            );
+        }
+
+        this.auditQueue = new LinkedBlockingQueue<>(Math.max(1, auditConfig.getAuditQueueSize()));
+        this.running.set(true);
+        this.auditWriterThread = new Thread(this::auditWriterLoop, "audit-writer");
+        this.auditWriterThread.setDaemon(true);
+        this.auditWriterThread.start();
+
         try {
             integrationService.registerCallback(
                     ModuleCatalog.Modules.AUDIT,
-                    new IntegrationCallback() {
+                    new IntegrationBatchCallback() {
                         @Override
-                        public synchronized void onIntegrationEvent(IntegrationQuery q) {
-                            AuditMessage auditMessage = (AuditMessage) q.getQuery();
-                            ArrayList<String> targets = Tools.getStringListFromParam(auditConfig.getAuditStoreMedium());
-                            for (String t : targets) {
-                                switch (toAuditTarget(t)) {
-                                    case AUDIT_TARGET_LOGS:
-                                        log.info(Tools.ANSI_YELLOW+"[audit] {}"+Tools.ANSI_RESET, auditIntegration.toString(auditMessage));
-                                        break;
-                                    case AUDIT_TARGET_FILES:
-                                        String day = Now.formatToYYYYMMDDUtc(Now.NowUtcMs());
-                                        if ( auditWriter == null || auditCurrentYyMmDd == null || !auditCurrentYyMmDd.equals(day) ) {
-                                            try {
-                                                // Close current writer if any
-                                                if ( auditWriter != null ) {
-                                                    try { auditWriter.flush(); } catch (Exception ignore) { }
-                                                    try { auditWriter.close(); } catch (Exception ignore) { }
-                                                    auditWriter = null;
-                                                }
-
-                                                // Ensure directory exists
-                                                java.nio.file.Path dir = java.nio.file.Paths.get(auditConfig.getAuditStoreFilePath()).normalize();
-                                                java.nio.file.Files.createDirectories(dir);
-
-                                                // Build file name: audit-YYMMDD.log
-                                                String fileName = "audit-" + day + ".log";
-                                                java.nio.file.Path filePath = dir.resolve(fileName).normalize();
-
-                                                // Open writer in append mode, keep it open between calls
-                                                auditWriter = java.nio.file.Files.newBufferedWriter(
-                                                        filePath,
-                                                        java.nio.charset.StandardCharsets.UTF_8,
-                                                        java.nio.file.StandardOpenOption.CREATE,
-                                                        java.nio.file.StandardOpenOption.WRITE,
-                                                        java.nio.file.StandardOpenOption.APPEND
-                                                );
-
-                                                auditCurrentYyMmDd = day;
-                                                auditCurrentPath = filePath;
-                                                log.info("[audit] New Audit log file created: {}", auditCurrentPath);
-
-                                            } catch (Exception x) {
-                                                log.error("[audit] Failed to rotate/open audit log file", x);
-                                            }
-                                        }
-                                        try {
-                                            // Write line with newline and flush immediately
-                                            auditWriter.write(auditIntegration.toString(auditMessage));
-                                            auditWriter.newLine();
-                                            auditWriter.flush();
-                                        } catch (Exception x) {
-                                            log.error("[audit] Failed to write audit log line", x);
-                                        }
-                                        break;
-                                    case AUDIT_TARGET_MONGO:
-                                        try {
-                                            AuditMdb am = AuditMdb.fromAuditMessage(auditMessage, null, null);
-                                            auditRepositoryMongo.save(am);
-                                        } catch (Exception e) {
-                                            log.error("[audit] Failed to save audit in MONGO: {}", e.getMessage());
-                                        }
-                                        break;
-                                    case AUDIT_TARGET_PSQL:
-                                        try {
-                                            Audit ap = Audit.fromAuditMessage(auditMessage, null, null);
-                                            auditRepository.save(ap);
-                                        } catch (Exception e) {
-                                            log.error("[audit] Failed to save audit in PSQL: {}", e.getMessage());
-                                        }
-                                        break;
-                                    case AUDIT_TARGET_NONE:
-                                    default:
-                                        break;
-                                }
-                            }
-
-                            // terminate the action
-                            q.setResponse(ActionResult.OK("Audit logged")); // fire & forget, success on every actions
-                            q.setResult(null);
-                            q.setState(IntegrationQuery.QueryState.STATE_DONE);
-                            q.setResponse_ts(Now.NanoTime());
+                        public void onIntegrationEvents(List<IntegrationQuery> queries) {
+                            storeAndTerminate(queries);
+                        }
 
+                        @Override
+                        public void onIntegrationEvent(IntegrationQuery q) {
+                            storeAndTerminate(List.of(q));
                         }
                     }
             );
@@ -186,4 +174,321 @@ public class AuditService {
         }
     }
 
+    /**
+     * Store the audit messages of the integration events and terminate them, the events are done once the
+     * messages are committed, in error when the queue stays full or the commit failed
+     * @param queries - integration events with an AuditMessage payload
+     */
+    protected void storeAndTerminate(List<IntegrationQuery> queries) {
+        ArrayList<PendingAudit> pendings = new ArrayList<>(queries.size());
+        for ( IntegrationQuery q : queries ) pendings.add(new PendingAudit(q));
+
+        if ( this.running.get() ) {
+            // terminated by the writer, the queue only blocks when the writer is late
+            long deadline = Now.NanoTime() + Math.max(0, auditConfig.getAuditEnqueueWaitMs()) * 1_000_000L;
+            for ( PendingAudit p : pendings ) {
+                p.deferred = true;
+                this.integrationService.deferCompletion(p.query);
+                try {
+                    if ( !this.auditQueue.offer(p, Math.max(0, deadline - Now.NanoTime()), TimeUnit.NANOSECONDS) ) {
+                        this.terminate(p, false);
+                    }
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                    this.terminate(p, false);
+                }
+            }
+            // the writer may have stopped in the meantime, commit what it left
+            if ( !this.running.get() ) this.commitQueued();
+        } else {
+            // writer stopped, commit directly
+            this.commit(pendings);
+        }
+    }
+
+    /**
+     * Report the commit result in the integration event, and complete it when deferred
+     * @param p - pending message
+     * @param committed - true when stored
+     */
+    protected void terminate(PendingAudit p, boolean committed) {
+        IntegrationQuery q = p.query;
+        if ( committed ) {
+            q.setResponse(ActionResult.OK("Audit logged"));
+            q.setState(IntegrationQuery.QueryState.STATE_DONE);
+        } else {
+            q.setResponse(ActionResult.UNKNOWN("audit-not-stored"));
+            q.setState(IntegrationQuery.QueryState.STATE_ERROR);
+        }
+        q.setResult(null);
+        q.setResponse_ts(Now.NanoTime());
+        if ( p.deferred ) this.integrationService.completeDeferred(q);
+    }
+
+    /**
+     * Stop the writer once the queued messages are committed, the writer is interrupted when it does not
+     * stop in time and the messages left are committed here
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.running.set(false);
+        if ( this.auditWriterThread == null ) return;
+        try {
+            this.auditWriterThread.join(30_000);
+            if ( this.auditWriterThread.isAlive() ) {
+                log.warn("[audit] Audit writer not stopped after 30s, interrupting");
+                this.auditWriterThread.interrupt();
+                this.auditWriterThread.join(5_000);
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+        if ( this.auditWriterThread.isAlive() ) {
+            // writer stuck in a commit, the messages left are reported in error
+            ArrayList<PendingAudit> left = new ArrayList<>();
+            this.auditQueue.drainTo(left);
+            for ( PendingAudit p : left ) this.terminate(p, false);
+            log.error("[audit] Audit writer not stopped, {} audits not stored", left.size());
+        } else {
+            this.commitQueued();
+        }
+        this.auditChainService.publishCheckpoints(true);
+        if ( this.auditFileSink != null ) this.auditFileSink.close();
+    }
+
+    /**
+     * Writer loop, take the queued messages by batch and commit them, the messages left on stop are committed
+     */
+    protected void auditWriterLoop() {
+        int maxSize = Math.max(1, auditConfig.getAuditBatchMaxSize());
+        long maxWaitMs = Math.max(0, auditConfig.getAuditBatchMaxWaitMs());
+        ArrayList<PendingAudit> batch = new ArrayList<>(maxSize);
+        while ( this.running.get() && !Thread.currentThread().isInterrupted() ) {
+            try {
+                PendingAudit first = this.auditQueue.poll(500, TimeUnit.MILLISECONDS);
+                if ( first == null ) {
+                    // time based checkpoints when idle
+                    this.auditChainService.publishCheckpoints(false);
+                    continue;
+                }
+                batch.add(first);
+                this.auditQueue.drainTo(batch, maxSize - 1);
+                // wait for the batch to fill, up to the max delay
+                long deadline = Now.NanoTime() + maxWaitMs * 1_000_000L;
+                while ( batch.size() < maxSize && this.running.get() ) {
+                    long remaining = deadline - Now.NanoTime();
+                    if ( remaining <= 0 ) break;
+                    PendingAudit next = this.auditQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if ( next == null ) break;
+                    batch.add(next);
+                    this.auditQueue.drainTo(batch, maxSize - batch.size());
+                }
+            } catch (InterruptedException x) {
+                // stop requested, the batch in progress is still committed
+                Thread.currentThread().interrupt();
+            } catch (Exception x) {
+                log.error("[audit] Audit writer failure", x);
+            }
+            this.commit(batch);
+            batch.clear();
+        }
+        if ( !Thread.currentThread().isInterrupted() ) this.commitQueued();
+    }
+
+    /**
+     * Commit the messages waiting in the queue, by batch
+     */
+    protected void commitQueued() {
+        int maxSize = Math.max(1, auditConfig.getAuditBatchMaxSize());
+        ArrayList<PendingAudit> batch = new ArrayList<>(maxSize);
+        while ( this.auditQueue.drainTo(batch, maxSize) > 0 ) {
+            this.commit(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Commit a batch of pending messages and report the result in the integration events
+     * @param batch - pending messages
+     */
+    protected void commit(List<PendingAudit> batch) {
+        if ( batch.isEmpty() ) return;
+        boolean committed = false;
+        this.commitLock.lock();
+        try {
+            ArrayList<AuditMessage> messages = new ArrayList<>(batch.size());
+            for ( PendingAudit p : batch ) messages.add(p.message);
+            committed = this.commitBatch(messages);
+        } catch (Exception x) {
+            log.error("[audit] Failed to commit {} audits", batch.size(), x);
+        } finally {
+            this.commitLock.unlock();
+            for ( PendingAudit p : batch ) this.terminate(p, committed);
+        }
+    }
+
+    /**
+     * Write a batch of audit messages to every target, one operation per target, a failed target write
+     * is retried with an increasing delay
+     * @param batch - messages to write
+     * @return true when written to every target
+     */
+    protected boolean commitBatch(List<AuditMessage> batch) {
+        if ( this.batchSizes != null ) this.batchSizes.record(batch.size());
+        List<AuditHashChain.Link> links = this.auditChainService.chain(batch);
+        boolean committed = false;
+        try {
+            committed = this.writeTargets(batch, links);
+        } finally {
+            // the chain must not cover the entries not written everywhere
+            if ( !committed ) this.auditChainService.rollback();
+        }
+        // checkpoints once the entries they cover are written
+        this.auditChainService.publishCheckpoints(false);
+        return committed;
+    }
+
+    /**
+     * Write a chained batch to every target
+     * @param batch - messages to write
+     * @param links - hash chain links, null when the chain is disabled
+     * @return true when written to every target
+     */
+    protected boolean writeTargets(List<AuditMessage> batch, List<AuditHashChain.Link> links) {
+        boolean committed = true;
+        for ( AuditTarget t : this.auditTargets ) {
+            long start = Now.NanoTime();
+            TargetWrite write = this.prepareWrite(t, batch, links);
+            long delayMs = Math.max(1, auditConfig.getAuditCommitRetryDelayMs());
+            boolean done = false;
+            for ( int attempt = 0 ; ; attempt++ ) {
+                try {
+                    write.run(attempt);
+                    done = true;
+                    break;
+                } catch (Exception x) {
+                    if ( attempt >= auditConfig.getAuditCommitRetries() ) {
+                        log.error("[audit] Failed to save {} audits in {} after {} attempts: {}", batch.size(), t, attempt + 1, x.getMessage());
+                        break;
+                    }
+                    log.warn("[audit] Failed to save {} audits in {}, retrying: {}", batch.size(), t, x.getMessage());
+                    try {
+                        Thread.sleep(delayMs);
+                    } catch (InterruptedException ix) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    delayMs *= 2;
+                }
+            }
+            if ( !done ) {
+                committed = false;
+                if ( this.failedCommits != null ) this.failedCommits.increment();
+            }
+            Timer timer = this.commitLatencies.get(t);
+            if ( timer != null ) timer.record(Now.NanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return committed;
+    }
+
+    /**
+     * Write of a batch to a target, can be called again after a failure
+     */
+    @FunctionalInterface
+    protected interface TargetWrite {
+        void run(int attempt) throws Exception;
+    }
+
+    /**
+     * Prepare the write of a batch for a target, the entries are built once so a retry writes the same
+     * entries (same ids, same signatures)
+     * @param t - target
+     * @param batch - messages to write
+     * @param links - hash chain links, null when the chain is disabled
+     * @return the target write
+     */
+    protected TargetWrite prepareWrite(AuditTarget t, List<AuditMessage> batch, List<AuditHashChain.Link> links) {
+        switch (t) {
+            case AUDIT_TARGET_LOGS:
+                return attempt -> {
+                    for ( AuditMessage auditMessage : batch ) {
+                        log.info(Tools.ANSI_YELLOW+"[audit] {}"+Tools.ANSI_RESET, auditIntegration.toString(auditMessage));
+                    }
+                };
+            case AUDIT_TARGET_FILES: {
+                // lines already appended are not written again on retry
+                int[] written = { 0 };
+                return attempt -> this.writeAuditFile(batch, written);
+            }
+            case AUDIT_TARGET_MONGO: {
+                ArrayList<AuditMdb> ams = new ArrayList<>(batch.size());
+                for ( int i = 0 ; i < batch.size() ; i++ ) {
+                    ams.add(AuditMdb.fromAuditMessage(batch.get(i), ( links != null ) ? links.get(i) : null));
+                }
+                return attempt -> {
+                    // a failed insertMany may be partially written, the retries save the entries one by one
+                    if ( attempt > 0 ) ams.forEach(a -> a.setNewEntry(false));
+                    auditRepositoryMongo.saveAll(ams);
+                };
+            }
+            case AUDIT_TARGET_PSQL: {
+                ArrayList<Audit> aps = new ArrayList<>(batch.size());
+                for ( int i = 0 ; i < batch.size() ; i++ ) {
+                    aps.add(Audit.fromAuditMessage(batch.get(i), ( links != null ) ? links.get(i) : null));
+                }
+                // single transaction, nothing written on failure
+                return attempt -> auditRepository.insertAll(aps, auditConfig.getAuditBatchMaxSize());
+            }
+            case AUDIT_TARGET_NONE:
+            default:
+                return attempt -> {};
+        }
+    }
+
+    /**
+     * Append a batch to the audit files, a single flush per batch
+     * @param batch - messages to write
+     * @param written - number of messages already appended, updated
+     */
+    protected void writeAuditFile(List<AuditMessage> batch, int[] written) throws IOException {
+        if ( this.auditFileSink == null ) return;
+        for ( int i = written[0] ; i < batch.size() ; i++ ) {
+            AuditMessage auditMessage = batch.get(i);
+            this.auditFileSink.append(auditMessage.getActionMs(), auditIntegration.toString(auditMessage));
+            written[0] = i + 1;
+        }
+        this.auditFileSink.flush();
+    }
+
+    // ================================================================================================
+    // Metrics
+
+    @Autowired(required = false)
+    protected MeterRegistry meterRegistry;
+
+    protected DistributionSummary batchSizes;
+    protected Counter failedCommits;
+    protected final EnumMap<AuditTarget, Timer> commitLatencies = new EnumMap<>(AuditTarget.class);
+
+    protected void initAuditMetrics() {
+        if ( meterRegistry == null ) return;
+        this.batchSizes = DistributionSummary.builder("capture_audit_batch_size")
+                .description("[capture] Number of audit messages per commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.failedCommits = Counter.builder("capture_audit_commit_failed")
+                .description("[capture] Number of audit target commits failed after the retries")
+                .register(meterRegistry);
+        for ( AuditTarget t : this.auditTargets ) {
+            this.commitLatencies.put(t, Timer.builder("capture_audit_commit_latency")
+                    .description("[capture] Audit batch commit duration per target")
+                    .tag("target", t.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        Gauge.builder("capture_audit_queue_depth", () -> ( auditQueue == null ) ? 0 : auditQueue.size())
+                .description("[capture] Number of audit messages waiting to be written")
+                .register(meterRegistry);
+    }
+
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.tools;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Write the exported audit entries to an output stream, one entry per line as NDJSON or CSV (RFC 4180),
+ * optionally gzip compressed. Entries are written as they come through a fixed size buffer, the writes block
+ * when the client does not read, so the export progresses at the client speed with a bounded memory.
+ */
+public class AuditExportWriter implements Closeable {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", ".ndjson"),
+        CSV("text/csv", ".csv");
+
+        public final String contentType;
+        public final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+    }
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+    protected static final JsonFactory JSON = new JsonFactory();
+
+    protected final Format format;
+    protected final Writer writer;
+    protected final JsonGenerator json;
+    protected long rows = 0;
+
+    public AuditExportWriter(OutputStream out, Format format, boolean compress) throws IOException {
+        this.format = format;
+        OutputStream os = new BufferedOutputStream(out, BUFFER_SIZE);
+        if ( compress ) os = new GZIPOutputStream(os, BUFFER_SIZE);
+        this.writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+        if ( format == Format.NDJSON ) {
+            this.json = JSON.createGenerator(writer);
+            this.json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        } else {
+            this.json = null;
+            this.writer.write("actionMs,service,action,owner,log\r\n");
+        }
+    }
+
+    /**
+     * Write one audit entry
+     */
+    public void write(long actionMs, String service, String action, String owner, String log) throws IOException {
+        if ( json != null ) {
+            json.writeStartObject();
+            json.writeNumberField("actionMs", actionMs);
+            json.writeStringField("service", service);
+            json.writeStringField("action", action);
+            json.writeStringField("owner", owner);
+            json.writeStringField("log", log);
+            json.writeEndObject();
+            json.writeRaw('\n');
+        } else {
+            writer.write(Long.toString(actionMs));
+            writer.write(',');
+            writeCsv(service);
+            writer.write(',');
+            writeCsv(action);
+            writer.write(',');
+            writeCsv(owner);
+            writer.write(',');
+            writeCsv(log);
+            writer.write("\r\n");
+        }
+        rows++;
+    }
+
+    protected void writeCsv(String v) throws IOException {
+        if ( v == null ) return;
+        boolean quote = false;
+        for ( int i = 0 ; i < v.length() && !quote ; i++ ) {
+            char c = v.charAt(i);
+            quote = ( c == ',' || c == '"' || c == '\r' || c == '\n' );
+        }
+        if ( !quote ) {
+            writer.write(v);
+            return;
+        }
+        writer.write('"');
+        writer.write(v.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Write the buffered data to the client, the compressed data may stay in the gzip buffer
+     */
+    public void flush() throws IOException {
+        if ( json != null ) json.flush();
+        writer.flush();
+    }
+
+    /**
+     * Complete the export (gzip trailer) and flush, the output stream is closed
+     */
+    @Override
+    public void close() throws IOException {
+        if ( json != null ) json.close();
+        writer.close();
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+}
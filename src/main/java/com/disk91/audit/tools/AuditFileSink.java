@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.tools;
+
+import com.disk91.common.tools.Now;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Audit log file storage. The lines are appended to segments named audit-<yyyy-MM-dd>-<seq>.log, a new
+ * segment is started on day change or when the segment reaches its max size. Closed segments are gzip
+ * compressed in background and the oldest segments are deleted according to the retention (days and
+ * total size).
+ * Each segment has a sidecar index (.idx) with one entry per chunk of about chunkSize bytes: offset in the
+ * segment file, min and max line timestamps. Each chunk is compressed as a separate gzip member, the index
+ * of a compressed segment has the compressed offsets, so a time range read only decompresses the chunks
+ * covering the range.
+ */
+public class AuditFileSink {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    protected static final String PREFIX = "audit-";
+    protected static final String LOG = ".log";
+    protected static final String GZ = ".log.gz";
+    protected static final String IDX = ".idx";
+
+    protected record Chunk(long offset, long minTs, long maxTs) {}
+
+    protected final Path directory;
+    protected final long segmentMaxSize;
+    protected final long chunkSize;
+    protected final boolean compress;
+    protected final int retentionDays;
+    protected final long maxTotalSize;
+
+    // background compression and retention
+    protected final ExecutorService background;
+    // readers vs segment replacement (compression, deletion)
+    protected final ReentrantReadWriteLock filesLock = new ReentrantReadWriteLock();
+
+    // active segment
+    protected Path segment;
+    protected String segmentDay;
+    protected OutputStream out;
+    protected BufferedWriter index;
+    protected long size;
+    protected long chunkStart;
+    protected long chunkMinTs;
+    protected long chunkMaxTs;
+
+    /**
+     * @param directory - audit files directory, created when not existing
+     * @param segmentMaxSize - segment size in bytes triggering a rotation
+     * @param chunkSize - index granularity in bytes
+     * @param compress - gzip the closed segments
+     * @param retentionDays - days of segments to keep, 0 for no limit
+     * @param maxTotalSize - max size of the audit files in bytes, 0 for no limit
+     */
+    public AuditFileSink(Path directory, long segmentMaxSize, long chunkSize, boolean compress, int retentionDays, long maxTotalSize) {
+        this.directory = directory.normalize();
+        this.segmentMaxSize = Math.max(1024 * 1024, segmentMaxSize);
+        this.chunkSize = Math.max(4 * 1024, chunkSize);
+        this.compress = compress;
+        this.retentionDays = Math.max(0, retentionDays);
+        this.maxTotalSize = Math.max(0, maxTotalSize);
+        this.background = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "audit-file-sink");
+            t.setDaemon(true);
+            return t;
+        });
+        this.recover();
+    }
+
+    /**
+     * Append a line, the line is written on flush
+     * @param timestampMs - line timestamp, for the index
+     * @param line - text without line feed
+     * @throws IOException - write failure
+     */
+    public synchronized void append(long timestampMs, String line) throws IOException {
+        String day = Now.formatToYYYYMMDDUtc(Now.NowUtcMs());
+        if ( out == null || !day.equals(segmentDay) || size >= segmentMaxSize ) rotate(day);
+        if ( size - chunkStart >= chunkSize ) closeChunk();
+        byte [] b = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        out.write(b);
+        size += b.length;
+        chunkMinTs = Math.min(chunkMinTs, timestampMs);
+        chunkMaxTs = Math.max(chunkMaxTs, timestampMs);
+    }
+
+    /**
+     * Write the appended lines to the file, once per batch
+     * @throws IOException - write failure
+     */
+    public synchronized void flush() throws IOException {
+        if ( out == null ) return;
+        out.flush();
+        index.flush();
+    }
+
+    /**
+     * Close the active segment and stop the background tasks (waiting for the running compression)
+     */
+    public synchronized void close() {
+        try {
+            closeSegment();
+        } catch (IOException x) {
+            log.error("[audit] Failed to close audit segment {}", segment, x);
+        }
+        background.shutdown();
+        try {
+            background.awaitTermination(60, TimeUnit.SECONDS);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Segments
+
+    protected void closeChunk() throws IOException {
+        if ( size == chunkStart ) return;
+        index.write(chunkStart + " " + chunkMinTs + " " + chunkMaxTs);
+        index.newLine();
+        chunkStart = size;
+        chunkMinTs = Long.MAX_VALUE;
+        chunkMaxTs = Long.MIN_VALUE;
+    }
+
+    protected void closeSegment() throws IOException {
+        if ( out == null ) return;
+        closeChunk();
+        out.close();
+        index.close();
+        out = null;
+        Path closed = segment;
+        segment = null;
+        if ( compress ) background.submit(() -> compressSegment(closed));
+        background.submit(this::applyRetention);
+    }
+
+    protected void rotate(String day) throws IOException {
+        closeSegment();
+        Files.createDirectories(directory);
+        // next sequence for the day, after a restart too
+        int seq = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, PREFIX + day + "-*")) {
+            for ( Path p : ds ) {
+                String n = p.getFileName().toString();
+                try {
+                    seq = Math.max(seq, Integer.parseInt(n.substring(PREFIX.length() + day.length() + 1, n.indexOf('.'))));
+                } catch (NumberFormatException | StringIndexOutOfBoundsException x) {
+                    // not a segment
+                }
+            }
+        }
+        segment = directory.resolve(String.format("%s%s-%04d%s", PREFIX, day, seq + 1, LOG));
+        segmentDay = day;
+        out = new BufferedOutputStream(Files.newOutputStream(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), 64 * 1024);
+        index = Files.newBufferedWriter(indexOf(segment), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = Files.size(segment);
+        chunkStart = size;
+        chunkMinTs = Long.MAX_VALUE;
+        chunkMaxTs = Long.MIN_VALUE;
+        log.info("[audit] New Audit log file created: {}", segment);
+    }
+
+    protected static Path indexOf(Path segment) {
+        return segment.resolveSibling(segment.getFileName().toString() + IDX);
+    }
+
+    protected static List<Chunk> readIndex(Path segment) {
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        Path idx = indexOf(segment);
+        if ( !Files.exists(idx) ) {
+            // segment without index (previous version), a single chunk
+            chunks.add(new Chunk(0, Long.MIN_VALUE, Long.MAX_VALUE));
+            return chunks;
+        }
+        try {
+            for ( String l : Files.readAllLines(idx, StandardCharsets.UTF_8) ) {
+                String [] v = l.trim().split(" ");
+                if ( v.length != 3 ) continue;
+                chunks.add(new Chunk(Long.parseLong(v[0]), Long.parseLong(v[1]), Long.parseLong(v[2])));
+            }
+        } catch (IOException | NumberFormatException x) {
+            chunks.clear();
+            chunks.add(new Chunk(0, Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+        return chunks;
+    }
+
+    /**
+     * Compress a closed segment, each chunk is a gzip member so it can be decompressed alone
+     * @param plain - closed segment
+     */
+    protected void compressSegment(Path plain) {
+        if ( !Files.exists(plain) ) return;         // removed by the retention
+        Path gz = plain.resolveSibling(plain.getFileName().toString().replace(LOG, GZ));
+        Path gzTmp = gz.resolveSibling(gz.getFileName() + ".tmp");
+        Path gzIdxTmp = indexOf(gz).resolveSibling(indexOf(gz).getFileName() + ".tmp");
+        try {
+            List<Chunk> chunks = readIndex(plain);
+            long plainSize = Files.size(plain);
+            try (
+                RandomAccessFile in = new RandomAccessFile(plain.toFile(), "r");
+                FileOutputStream fout = new FileOutputStream(gzTmp.toFile());
+                BufferedWriter idx = Files.newBufferedWriter(gzIdxTmp, StandardCharsets.UTF_8)
+            ) {
+                for ( int i = 0 ; i < chunks.size() ; i++ ) {
+                    Chunk c = chunks.get(i);
+                    long end = ( i + 1 < chunks.size() ) ? chunks.get(i + 1).offset() : plainSize;
+                    if ( end <= c.offset() ) continue;
+                    idx.write(fout.getChannel().position() + " " + c.minTs() + " " + c.maxTs());
+                    idx.newLine();
+                    // one gzip member per chunk, closing the member keeps the file open
+                    OutputStream member = new FilterOutputStream(fout) {
+                        @Override
+                        public void write(byte[] b, int off, int len) throws IOException {
+                            out.write(b, off, len);
+                        }
+                        @Override
+                        public void close() throws IOException {
+                            out.flush();
+                        }
+                    };
+                    try (
+                        InputStream data = rangeOf(in, c.offset(), end);
+                        GZIPOutputStream g = new GZIPOutputStream(member, 64 * 1024)
+                    ) {
+                        data.transferTo(g);
+                    }
+                }
+            }
+            filesLock.writeLock().lock();
+            try {
+                Files.move(gzIdxTmp, indexOf(gz), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(gzTmp, gz, StandardCopyOption.REPLACE_EXISTING);
+                Files.deleteIfExists(plain);
+                Files.deleteIfExists(indexOf(plain));
+            } finally {
+                filesLock.writeLock().unlock();
+            }
+            log.debug("[audit] Audit segment {} compressed", plain);
+        } catch (IOException x) {
+            log.error("[audit] Failed to compress audit segment {}", plain, x);
+            try {
+                Files.deleteIfExists(gzTmp);
+                Files.deleteIfExists(gzIdxTmp);
+            } catch (IOException ignore) { }
+        }
+    }
+
+    /**
+     * List the segments (plain or compressed) ordered by day and sequence
+     */
+    protected List<Path> listSegments() throws IOException {
+        ArrayList<Path> segments = new ArrayList<>();
+        if ( !Files.isDirectory(directory) ) return segments;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for ( Path p : ds ) {
+                String n = p.getFileName().toString();
+                if ( n.endsWith(LOG) || n.endsWith(GZ) ) segments.add(p);
+            }
+        }
+        segments.sort((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()));
+        return segments;
+    }
+
+    /**
+     * Delete the closed segments older than the retention, then the oldest ones over the max total size
+     */
+    protected void applyRetention() {
+        if ( retentionDays == 0 && maxTotalSize == 0 ) return;
+        filesLock.writeLock().lock();
+        try {
+            Path active;
+            synchronized (this) {
+                active = segment;
+            }
+            String minDay = Now.formatToYYYYMMDDUtc(Now.NowUtcMs() - retentionDays * Now.ONE_FULL_DAY);
+            List<Path> segments = listSegments();
+            long total = 0;
+            for ( Path p : segments ) total += Files.size(p) + ( Files.exists(indexOf(p)) ? Files.size(indexOf(p)) : 0 );
+            for ( Path p : segments ) {
+                if ( p.equals(active) ) break;
+                String n = p.getFileName().toString();
+                String day = n.substring(PREFIX.length(), Math.min(n.length(), PREFIX.length() + 10));
+                boolean expired = retentionDays > 0 && day.compareTo(minDay) < 0;
+                boolean overSize = maxTotalSize > 0 && total > maxTotalSize;
+                if ( !expired && !overSize ) break;
+                long s = Files.size(p) + ( Files.exists(indexOf(p)) ? Files.size(indexOf(p)) : 0 );
+                Files.deleteIfExists(p);
+                Files.deleteIfExists(indexOf(p));
+                total -= s;
+                log.info("[audit] Audit segment {} deleted ({})", p, expired ? "retention" : "max size");
+            }
+        } catch (IOException x) {
+            log.error("[audit] Audit retention failure ({})", x.getMessage());
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Recovery of the segments left by a previous run: a new segment is started on the first append, so the
+     * plain segments are closed ones, not compressed when the process stopped before (crash, kill). The index
+     * of such a segment misses its last chunk, the last indexed chunk is extended to the end of the file.
+     */
+    protected void recover() {
+        try {
+            if ( !Files.isDirectory(directory) ) return;
+            // compression interrupted
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, PREFIX + "*.tmp")) {
+                for ( Path p : ds ) Files.deleteIfExists(p);
+            }
+            for ( Path p : listSegments() ) {
+                if ( !p.getFileName().toString().endsWith(LOG) ) continue;
+                List<Chunk> chunks = readIndex(p);
+                if ( Files.exists(indexOf(p)) && !chunks.isEmpty() ) {
+                    Chunk last = chunks.get(chunks.size() - 1);
+                    chunks.set(chunks.size() - 1, new Chunk(last.offset(), last.minTs(), Long.MAX_VALUE));
+                    try (BufferedWriter idx = Files.newBufferedWriter(indexOf(p), StandardCharsets.UTF_8)) {
+                        for ( Chunk c : chunks ) {
+                            idx.write(c.offset() + " " + c.minTs() + " " + c.maxTs());
+                            idx.newLine();
+                        }
+                    }
+                }
+                if ( compress ) {
+                    log.info("[audit] Audit segment {} not compressed, compressing", p);
+                    background.submit(() -> compressSegment(p));
+                }
+            }
+        } catch (IOException x) {
+            log.error("[audit] Audit segments recovery failure ({})", x.getMessage());
+        }
+    }
+
+    /**
+     * Stream over a range of the file, read sequentially from the current position
+     * @param in - file, positioned at start
+     * @param start - range start
+     * @param end - range end (excluded)
+     * @return buffered stream of the range
+     */
+    protected static InputStream rangeOf(RandomAccessFile in, long start, long end) throws IOException {
+        in.seek(start);
+        return new BufferedInputStream(new InputStream() {
+            long remaining = end - start;
+
+            @Override
+            public int read() throws IOException {
+                if ( remaining <= 0 ) return -1;
+                int b = in.read();
+                if ( b >= 0 ) remaining--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if ( remaining <= 0 ) return -1;
+                int r = in.read(b, off, (int) Math.min(len, remaining));
+                if ( r > 0 ) remaining -= r;
+                return r;
+            }
+        }, 64 * 1024);
+    }
+
+    // -------------------------------------------------------------------------
+    // Read
+
+    /**
+     * Read the lines in a time range, only the chunks covering the range are read (and decompressed), the
+     * lines of these chunks out of the range are returned too, the caller filters on the line timestamp.
+     * @param fromMs - range start
+     * @param toMs - range end
+     * @param consumer - called for each line, in the file order
+     * @throws IOException - read failure
+     */
+    public void read(long fromMs, long toMs, Consumer<String> consumer) throws IOException {
+        this.flush();
+        filesLock.readLock().lock();
+        try {
+            Path active;
+            long activeChunk;
+            synchronized (this) {
+                active = segment;
+                activeChunk = chunkStart;
+            }
+            for ( Path p : listSegments() ) {
+                boolean gz = p.getFileName().toString().endsWith(GZ);
+                List<Chunk> chunks = readIndex(p);
+                if ( p.equals(active) ) {
+                    // the current chunk is not yet in the index
+                    chunks.add(new Chunk(activeChunk, Long.MIN_VALUE, Long.MAX_VALUE));
+                }
+                long fileSize = Files.size(p);
+                try (RandomAccessFile in = new RandomAccessFile(p.toFile(), "r")) {
+                    for ( int i = 0 ; i < chunks.size() ; i++ ) {
+                        Chunk c = chunks.get(i);
+                        if ( c.maxTs() < fromMs || c.minTs() > toMs ) continue;
+                        long end = ( i + 1 < chunks.size() ) ? chunks.get(i + 1).offset() : fileSize;
+                        if ( end <= c.offset() ) continue;
+                        // streamed, a segment without index is a single chunk of the file size
+                        InputStream is = rangeOf(in, c.offset(), end);
+                        if ( gz ) is = new GZIPInputStream(is, 64 * 1024);
+                        try (BufferedReader r = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+                            String l;
+                            while ( (l = r.readLine()) != null ) consumer.accept(l);
+                        }
+                    }
+                }
+            }
+        } finally {
+            filesLock.readLock().unlock();
+        }
+    }
+
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.audit.tools;
+
+import com.disk91.audit.integration.AuditMessage;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tamper-evident chain of the audit records written by an instance. Each record gets a signature, the HMAC
+ * of the previous record signature and of the record fields, so a modified, removed or inserted record
+ * breaks the chain from that point. A chain covers one time segment of one instance (the chain id has the
+ * instance, the segment start and the process start), the writer thread is the only one appending so there
+ * is no global lock and each instance chains independently.
+ * Periodically, and when a segment ends, a checkpoint is produced with the Merkle root of the record
+ * signatures since the previous checkpoint and the chain head. Checkpoints are chained the same way, so a
+ * range is verified from the nearest checkpoint before it instead of from the chain start.
+ * When the records of a batch are not written, the chain is rolled back to its state before the batch and
+ * closed with a checkpoint of the records written, the next records start a new chain. The positions of the
+ * aborted records are after the last checkpoint of the closed chain, so they do not leave a gap.
+ * Not thread safe, used by the audit writer thread.
+ */
+public class AuditHashChain {
+
+    public record Link(String chainId, long seq, String signature) {}
+
+    public record Checkpoint(
+            String instanceId,
+            String chainId,
+            long fromSeq,
+            long toSeq,
+            String merkleRoot,
+            String headHash,
+            String previousHash,
+            String hash,
+            long createdMs
+    ) {}
+
+    public record Entry(long seq, AuditMessage message, String signature) {}
+
+    /**
+     * Chain state saved before a batch, to roll it back when the batch is not written
+     */
+    public static class Mark {
+        protected String chainId;
+        protected long segmentStart;
+        protected long seq;
+        protected byte [] head;
+        protected long fromSeq;
+        protected byte [][] levels;
+        protected long lastCheckpointMs;
+        protected byte [] lastCheckpointHash;
+        protected int pending;
+    }
+
+    protected static final HexFormat HEX = HexFormat.of();
+
+    protected final Mac mac;
+    protected final String instanceId;
+    protected final String nonce;
+    protected final long segmentMs;
+    protected final long checkpointMs;
+    protected final long checkpointRecords;
+
+    // current chain
+    protected String chainId = null;
+    protected long segmentStart = -1;
+    protected long seq = 0;
+    protected byte [] head;
+    // a segment can be chained again after a rollback, the chain id gets a suffix
+    protected long lastSegment = -1;
+    protected int reopened = 0;
+
+    // records since the last checkpoint
+    protected long fromSeq = 0;
+    protected final MerkleFrontier frontier = new MerkleFrontier();
+    protected long lastCheckpointMs;
+    protected byte [] lastCheckpointHash;
+    protected final ArrayList<Checkpoint> pending = new ArrayList<>();
+
+    /**
+     * @param key - signing key
+     * @param instanceId - instance writing the chain
+     * @param startMs - process start, makes the chain ids unique across restarts
+     * @param segmentMs - duration of a chain
+     * @param checkpointMs - max duration between two checkpoints
+     * @param checkpointRecords - max number of records between two checkpoints
+     */
+    public AuditHashChain(byte [] key, String instanceId, long startMs, long segmentMs, long checkpointMs, long checkpointRecords) {
+        this.mac = newMac(key);
+        this.instanceId = instanceId;
+        this.nonce = Long.toString(startMs, 36);
+        this.segmentMs = Math.max(1, segmentMs);
+        this.checkpointMs = Math.max(1, checkpointMs);
+        this.checkpointRecords = Math.max(1, checkpointRecords);
+        this.lastCheckpointMs = startMs;
+        this.lastCheckpointHash = genesis(mac, instanceId + "-" + nonce);
+    }
+
+    /**
+     * Chain a record
+     * @param m - audit record
+     * @param nowMs - current time, selects the segment
+     * @return the chain, position and signature of the record
+     */
+    public Link append(AuditMessage m, long nowMs) {
+        long segment = nowMs - (nowMs % segmentMs);
+        if ( segment != segmentStart ) {
+            closeChain(nowMs);
+            reopened = ( segment == lastSegment ) ? reopened + 1 : 0;
+            lastSegment = segment;
+            segmentStart = segment;
+            chainId = instanceId + "-" + segment + "-" + nonce + (( reopened > 0 ) ? "-" + reopened : "");
+            seq = 0;
+            fromSeq = 0;
+            lastCheckpointMs = nowMs;
+            head = genesis(mac, chainId);
+        }
+        head = hashRecord(mac, head, chainId, seq, m);
+        frontier.add(head);
+        Link l = new Link(chainId, seq, HEX.formatHex(head));
+        seq++;
+        if ( seq - fromSeq >= checkpointRecords ) checkpoint(nowMs);
+        return l;
+    }
+
+    /**
+     * Produce the checkpoints due, time based or at the end of the segment
+     * @param nowMs - current time
+     */
+    public void tick(long nowMs) {
+        if ( chainId == null ) return;
+        if ( nowMs - (nowMs % segmentMs) != segmentStart ) {
+            closeChain(nowMs);
+        } else if ( nowMs - lastCheckpointMs >= checkpointMs ) {
+            checkpoint(nowMs);
+        }
+    }
+
+    /**
+     * Close the current chain with a checkpoint, the next record starts a new chain
+     */
+    public void closeChain(long nowMs) {
+        if ( chainId == null ) return;
+        checkpoint(nowMs);
+        chainId = null;
+        segmentStart = -1;
+    }
+
+    /**
+     * Checkpoint the records appended since the previous checkpoint, if any
+     * @param nowMs - current time
+     */
+    public void checkpoint(long nowMs) {
+        lastCheckpointMs = nowMs;
+        if ( chainId == null || seq == fromSeq ) return;
+        Checkpoint c = signCheckpoint(mac, instanceId, chainId, fromSeq, seq - 1, frontier.root(), head, lastCheckpointHash, nowMs);
+        lastCheckpointHash = HEX.parseHex(c.hash());
+        pending.add(c);
+        frontier.clear();
+        fromSeq = seq;
+    }
+
+    /**
+     * Save the chain state, before appending a batch
+     * @return the state to restore with rollback
+     */
+    public Mark mark() {
+        Mark m = new Mark();
+        m.chainId = chainId;
+        m.segmentStart = segmentStart;
+        m.seq = seq;
+        m.head = head;
+        m.fromSeq = fromSeq;
+        m.levels = frontier.levels.clone();
+        m.lastCheckpointMs = lastCheckpointMs;
+        m.lastCheckpointHash = lastCheckpointHash;
+        m.pending = pending.size();
+        return m;
+    }
+
+    /**
+     * Restore the chain state saved before a batch not written and close the chain, the checkpoints produced
+     * by the batch are discarded. The segment chained again gets a new chain id.
+     * @param m - state saved before the batch
+     * @param nowMs - current time
+     */
+    public void rollback(Mark m, long nowMs) {
+        chainId = m.chainId;
+        segmentStart = m.segmentStart;
+        seq = m.seq;
+        head = m.head;
+        fromSeq = m.fromSeq;
+        System.arraycopy(m.levels, 0, frontier.levels, 0, m.levels.length);
+        lastCheckpointMs = m.lastCheckpointMs;
+        lastCheckpointHash = m.lastCheckpointHash;
+        while ( pending.size() > m.pending ) pending.remove(pending.size() - 1);
+        closeChain(nowMs);
+    }
+
+    /**
+     * Get and remove the checkpoints produced and not yet published
+     */
+    public List<Checkpoint> drainCheckpoints() {
+        if ( pending.isEmpty() ) return List.of();
+        List<Checkpoint> r = new ArrayList<>(pending);
+        pending.clear();
+        return r;
+    }
+
+    // ================================================================================================================
+    // Verification
+
+    public static class VerifyResult {
+        // all the records of the range are verified
+        public boolean valid = true;
+        public long verified = 0;
+        // first failing position, -1 when valid
+        public long failedSeq = -1;
+        public String reason;
+        // checkpoint the verification started from, null from the chain start
+        public Checkpoint anchor;
+
+        protected VerifyResult fail(long seq, String reason) {
+            this.valid = false;
+            this.failedSeq = seq;
+            this.reason = reason;
+            return this;
+        }
+    }
+
+    /**
+     * Verify a range of a chain, starting after a trusted checkpoint
+     * @param key - signing key
+     * @param chainId - chain to verify
+     * @param anchor - last checkpoint before the range (its hash is verified), null to start at the chain start
+     * @param toSeq - last position to verify
+     * @param entries - records from the anchor end (or 0) to toSeq, by position
+     * @param checkpoints - checkpoints starting after the anchor, by position
+     * @return verification result
+     */
+    public static VerifyResult verify(byte [] key, String chainId, Checkpoint anchor, long toSeq, Iterator<Entry> entries, List<Checkpoint> checkpoints) {
+        Mac mac = newMac(key);
+        VerifyResult r = new VerifyResult();
+        r.anchor = anchor;
+        byte [] prev;
+        long expected;
+        if ( anchor != null ) {
+            if ( !verifyCheckpoint(mac, anchor) ) return r.fail(anchor.toSeq(), "audit-chain-checkpoint-invalid");
+            prev = HEX.parseHex(anchor.headHash());
+            expected = anchor.toSeq() + 1;
+        } else {
+            prev = genesis(mac, chainId);
+            expected = 0;
+        }
+        Iterator<Checkpoint> cps = checkpoints.iterator();
+        Checkpoint next = cps.hasNext() ? cps.next() : null;
+        MerkleFrontier frontier = new MerkleFrontier();
+        while ( expected <= toSeq ) {
+            if ( !entries.hasNext() ) return r.fail(expected, "audit-chain-record-missing");
+            Entry e = entries.next();
+            if ( e.seq() != expected ) return r.fail(expected, "audit-chain-record-missing");
+            prev = hashRecord(mac, prev, chainId, e.seq(), e.message());
+            if ( e.signature() == null || !MessageDigest.isEqual(prev, parseHex(e.signature())) ) {
+                return r.fail(e.seq(), "audit-chain-record-invalid");
+            }
+            frontier.add(prev);
+            if ( next != null && next.toSeq() == e.seq() ) {
+                if ( !verifyCheckpoint(mac, next)
+                        || !MessageDigest.isEqual(frontier.root(), HEX.parseHex(next.merkleRoot()))
+                        || !MessageDigest.isEqual(prev, HEX.parseHex(next.headHash())) ) {
+                    return r.fail(e.seq(), "audit-chain-checkpoint-mismatch");
+                }
+                frontier.clear();
+                next = cps.hasNext() ? cps.next() : null;
+            }
+            r.verified++;
+            expected++;
+        }
+        return r;
+    }
+
+    // ================================================================================================================
+    // Hashing
+
+    protected static Mac newMac(byte [] key) {
+        try {
+            Mac m = Mac.getInstance("HmacSHA256");
+            m.init(new SecretKeySpec(key, "HmacSHA256"));
+            return m;
+        } catch (GeneralSecurityException x) {
+            throw new IllegalStateException("audit-chain-hmac-unavailable", x);
+        }
+    }
+
+    protected static byte [] genesis(Mac mac, String id) {
+        updateString(mac, "genesis");
+        updateString(mac, id);
+        return mac.doFinal();
+    }
+
+    protected static byte [] hashRecord(Mac mac, byte [] prev, String chainId, long seq, AuditMessage m) {
+        mac.update(prev);
+        updateString(mac, chainId);
+        updateLong(mac, seq);
+        updateString(mac, m.getService());
+        updateString(mac, m.getAction());
+        updateLong(mac, m.getActionMs());
+        updateString(mac, m.getOwner());
+        updateString(mac, m.getLogStr());
+        List<String> params = m.getParams();
+        int n = ( params == null ) ? 0 : params.size();
+        updateLong(mac, n);
+        for ( int i = 0 ; i < n ; i++ ) updateString(mac, params.get(i));
+        return mac.doFinal();
+    }
+
+    protected static Checkpoint signCheckpoint(Mac mac, String instanceId, String chainId, long from, long to, byte [] root, byte [] head, byte [] previous, long nowMs) {
+        updateString(mac, instanceId);
+        updateString(mac, chainId);
+        updateLong(mac, from);
+        updateLong(mac, to);
+        mac.update(root);
+        mac.update(head);
+        mac.update(previous);
+        updateLong(mac, nowMs);
+        return new Checkpoint(instanceId, chainId, from, to, HEX.formatHex(root), HEX.formatHex(head),
+                HEX.formatHex(previous), HEX.formatHex(mac.doFinal()), nowMs);
+    }
+
+    protected static boolean verifyCheckpoint(Mac mac, Checkpoint c) {
+        try {
+            Checkpoint s = signCheckpoint(mac, c.instanceId(), c.chainId(), c.fromSeq(), c.toSeq(),
+                    HEX.parseHex(c.merkleRoot()), HEX.parseHex(c.headHash()), HEX.parseHex(c.previousHash()), c.createdMs());
+            return MessageDigest.isEqual(HEX.parseHex(s.hash()), parseHex(c.hash()));
+        } catch (IllegalArgumentException x) {
+            return false;
+        }
+    }
+
+    protected static byte [] parseHex(String h) {
+        try {
+            return HEX.parseHex(h);
+        } catch (IllegalArgumentException x) {
+            return new byte[0];
+        }
+    }
+
+    protected static void updateString(Mac mac, String s) {
+        if ( s == null ) {
+            updateLong(mac, -1);
+            return;
+        }
+        byte [] b = s.getBytes(StandardCharsets.UTF_8);
+        updateLong(mac, b.length);
+        mac.update(b);
+    }
+
+    protected static void updateLong(Mac mac, long v) {
+        byte [] b = new byte[8];
+        for ( int i = 0 ; i < 8 ; i++ ) b[i] = (byte) (v >>> (56 - 8 * i));
+        mac.update(b);
+    }
+
+    /**
+     * Merkle tree built incrementally, only the roots of the complete subtrees are kept (one per level).
+     * The root folds these subtrees from the smallest, so it does not need the count to be a power of 2.
+     */
+    protected static class MerkleFrontier {
+        protected final MessageDigest sha;
+        protected byte [][] levels = new byte[64][];
+
+        protected MerkleFrontier() {
+            try {
+                this.sha = MessageDigest.getInstance("SHA-256");
+            } catch (GeneralSecurityException x) {
+                throw new IllegalStateException("audit-chain-sha256-unavailable", x);
+            }
+        }
+
+        protected void add(byte [] leaf) {
+            byte [] node = leaf;
+            int l = 0;
+            while ( levels[l] != null ) {
+                node = node(levels[l], node);
+                levels[l] = null;
+                l++;
+            }
+            levels[l] = node;
+        }
+
+        protected byte [] root() {
+            byte [] r = null;
+            for ( byte [] level : levels ) {
+                if ( level == null ) continue;
+                r = ( r == null ) ? level : node(level, r);
+            }
+            return ( r == null ) ? new byte[32] : r;
+        }
+
+        protected void clear() {
+            Arrays.fill(levels, null);
+        }
+
+        protected byte [] node(byte [] left, byte [] right) {
+            sha.update((byte) 1);
+            sha.update(left);
+            sha.update(right);
+            return sha.digest();
+        }
+    }
+
+}
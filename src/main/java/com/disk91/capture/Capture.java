@@ -30,6 +30,7 @@ import com.disk91.common.tools.Now;
 import com.disk91.common.tools.exceptions.ITParseException;
 import com.disk91.common.tools.exceptions.ITTooManyException;
 import com.disk91.integration.api.interfaces.IntegrationCallback;
+import com.disk91.integration.api.interfaces.IntegrationInvalidation;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
 import com.disk91.integration.services.IntegrationService;
 import com.mongodb.client.MongoDatabase;
@@ -118,8 +119,9 @@ public class Capture {
                                 q.setState(IntegrationQuery.QueryState.STATE_DONE);
                                 q.setResponse_ts(Now.NanoTime());
                             } else if ( q.getAction() == CAPTURE_ACTION_FLUSH_CACHE_ENDPOINT.ordinal() ) {
-                                String id = (String) q.getQuery();
-                                captureEndpointCache.flushCaptureEndpoint(id);
+                                for ( String id : IntegrationInvalidation.keysOf(q) ) {
+                                    captureEndpointCache.flushCaptureEndpointLocally(id);
+                                }
                                 // terminate the action
                                 q.setResponse(ActionResult.OK("Endpoint cache flushed")); // fire & forget, success on every actions
                                 q.setResult(null);
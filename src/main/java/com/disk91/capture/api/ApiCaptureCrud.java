@@ -20,11 +20,15 @@
 package com.disk91.capture.api;
 
 import com.disk91.capture.api.interfaces.*;
+import com.disk91.capture.api.interfaces.sub.IdsBulkJobState;
 import com.disk91.capture.api.interfaces.sub.InsertIDsStatus;
+import com.disk91.capture.mdb.entities.sub.IdStateEnum;
 import com.disk91.capture.services.CaptureEndpointService;
+import com.disk91.capture.services.CaptureIdsBulkService;
 import com.disk91.capture.services.CaptureIdsService;
 import com.disk91.common.api.interfaces.ActionResult;
 import com.disk91.common.tools.exceptions.ITNotFoundException;
+import com.disk91.common.tools.exceptions.ITOverQuotaException;
 import com.disk91.common.tools.exceptions.ITParseException;
 import com.disk91.common.tools.exceptions.ITRightException;
 import com.disk91.users.api.interfaces.UserApiTokenCreationBody;
@@ -40,9 +44,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
 
@@ -60,6 +66,9 @@ public class ApiCaptureCrud {
     @Autowired
     protected CaptureIdsService captureIdsService;
 
+    @Autowired
+    protected CaptureIdsBulkService captureIdsBulkService;
+
     /**
      * List the existing endpoints created by this user, or all the users when you are platform admin.
      * @param request
@@ -272,4 +281,102 @@ public class ApiCaptureCrud {
         }
     }
 
+    /**
+     * Bulk import of Ids from a csv file
+     * The file is streamed and processed by chunk in background, the valid lines are inserted and the rejected ones
+     * are reported with their line number. The first line of the file is the header. The call returns a job
+     * to be polled for progress. Same rights as the Ids creation.
+     */
+    @Operation(
+            summary = "Bulk import IDs to existing capture endpoint from a csv file",
+            description = "This endpoint allows a user with ROLE_BACKEND_CAPTURE and owning the endpoint to import a large number of IDs " +
+                    "from a csv file (multipart/form-data, 'file' part). The first line of the file contains the headers, each other line an ID. " +
+                    "The header and the rights are verified immediately, then the lines are processed in background; the valid lines are " +
+                    "inserted and the rejected ones are reported with their line number. The returned job can be polled for progress.",
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Import accepted", content = @Content(schema = @Schema(implementation = CaptureIdsBulkJobResponseItf.class))),
+                    @ApiResponse(responseCode = "200", description = "Import refused (header, state...)", content = @Content(schema = @Schema(implementation = CaptureIdsBulkJobResponseItf.class))),
+                    @ApiResponse(responseCode = "400", description = "File invalid", content = @Content(schema = @Schema(implementation = ActionResult.class))),
+                    @ApiResponse(responseCode = "403", description = "Not authorized", content = @Content(schema = @Schema(implementation = ActionResult.class))),
+                    @ApiResponse(responseCode = "429", description = "Too many imports in progress", content = @Content(schema = @Schema(implementation = ActionResult.class)))
+            }
+    )
+    @RequestMapping(
+            value = "/ids/bulk",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = "application/json",
+            method = RequestMethod.POST
+    )
+    @PreAuthorize("hasRole('ROLE_LOGIN_COMPLETE') and hasRole('ROLE_BACKEND_CAPTURE')")
+    // ----------------------------------------------------------------------
+    public ResponseEntity<?> postEndpointIdsBulkInsertion(
+            HttpServletRequest request,
+            @RequestPart("file") MultipartFile file,
+            @RequestParam("captureId") String captureId,
+            @RequestParam("initialState") IdStateEnum initialState
+    ) {
+        try {
+            CaptureIdsBulkService.BulkJob job = captureIdsBulkService.startImport(
+                    request.getUserPrincipal().getName(),
+                    captureId,
+                    initialState,
+                    file
+            );
+            CaptureIdsBulkJobResponseItf r = new CaptureIdsBulkJobResponseItf();
+            r.buildFrom(job);
+            if (r.getState() == IdsBulkJobState.FAILED ) {
+                return new ResponseEntity<>(r, HttpStatus.OK);
+            } else {
+                return new ResponseEntity<>(r, HttpStatus.ACCEPTED);
+            }
+        } catch (ITParseException e) {
+            return new ResponseEntity<>(ActionResult.BADREQUEST(e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (ITRightException e){
+            return new ResponseEntity<>(ActionResult.FORBIDDEN(e.getMessage()), HttpStatus.FORBIDDEN);
+        } catch (ITOverQuotaException e) {
+            return new ResponseEntity<>(ActionResult.BADREQUEST(e.getMessage()), HttpStatus.TOO_MANY_REQUESTS);
+        }
+    }
+
+    /**
+     * Get the progress of a bulk import of Ids
+     */
+    @Operation(
+            summary = "Get bulk IDs import progress",
+            description = "Returns the state of a bulk IDs import job with the number of lines processed, inserted and rejected, and the " +
+                    "rejected lines report. Only the user who started the import (or a platform admin) can access it. Terminated jobs " +
+                    "are kept for a limited time.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Job progress", content = @Content(schema = @Schema(implementation = CaptureIdsBulkJobResponseItf.class))),
+                    @ApiResponse(responseCode = "400", description = "Job not found", content = @Content(schema = @Schema(implementation = ActionResult.class))),
+                    @ApiResponse(responseCode = "403", description = "Not authorized", content = @Content(schema = @Schema(implementation = ActionResult.class)))
+            }
+    )
+    @RequestMapping(
+            value = "/ids/bulk/{jobId}",
+            produces = "application/json",
+            method = RequestMethod.GET
+    )
+    @PreAuthorize("hasRole('ROLE_LOGIN_COMPLETE') and hasRole('ROLE_BACKEND_CAPTURE')")
+    // ----------------------------------------------------------------------
+    public ResponseEntity<?> getEndpointIdsBulkInsertion(
+            HttpServletRequest request,
+            @Parameter(required = true, name = "jobId", description = "Bulk import job identifier")
+            @PathVariable String jobId
+    ) {
+        try {
+            CaptureIdsBulkService.BulkJob job = captureIdsBulkService.getJob(
+                    request.getUserPrincipal().getName(),
+                    jobId
+            );
+            CaptureIdsBulkJobResponseItf r = new CaptureIdsBulkJobResponseItf();
+            r.buildFrom(job);
+            return new ResponseEntity<>(r, HttpStatus.OK);
+        } catch (ITNotFoundException e) {
+            return new ResponseEntity<>(ActionResult.BADREQUEST(e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (ITRightException e){
+            return new ResponseEntity<>(ActionResult.FORBIDDEN(e.getMessage()), HttpStatus.FORBIDDEN);
+        }
+    }
+
 }
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.capture.api.interfaces;
+
+import com.disk91.capture.api.interfaces.sub.IdsBulkJobState;
+import com.disk91.capture.api.interfaces.sub.IdsBulkLineError;
+import com.disk91.capture.api.interfaces.sub.InsertIDsStatus;
+import com.disk91.capture.services.CaptureIdsBulkService;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+import java.util.List;
+
+@Tag(name = "Capture Ids bulk job", description = "Bulk IDs import job progress")
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CaptureIdsBulkJobResponseItf {
+
+    @Schema(
+            description = "Job identifier to be used for polling the progress",
+            example = "idsjob_0123456789abcdef",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected String jobId;
+
+    @Schema(
+            description = "Endpoint reference",
+            example = "1",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected String captureId;
+
+    @Schema(
+            description = "Job state",
+            example = "RUNNING",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected IdsBulkJobState state;
+
+    @Schema(
+            description = "Global status, INSERTED when all lines are inserted, the first error status otherwise ; null while no error",
+            example = "INSERTED",
+            requiredMode = Schema.RequiredMode.NOT_REQUIRED
+    )
+    protected InsertIDsStatus status;
+
+    @Schema(
+            description = "Job creation date in ms since epoch",
+            example = "1700000000000",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected long creationMs;
+
+    @Schema(
+            description = "Processing start date in ms since epoch, 0 when not started",
+            example = "1700000000000",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected long startMs;
+
+    @Schema(
+            description = "Processing end date in ms since epoch, 0 when not terminated",
+            example = "1700000000000",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected long endMs;
+
+    @Schema(
+            description = "Number of lines processed",
+            example = "12000",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected long linesProcessed;
+
+    @Schema(
+            description = "Number of IDs inserted in database",
+            example = "11998",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected long inserted;
+
+    @Schema(
+            description = "Number of lines rejected",
+            example = "2",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected long errorCount;
+
+    @Schema(
+            description = "True when the error report has been limited and does not contain all the rejected lines",
+            example = "false",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected boolean errorsTruncated;
+
+    @ArraySchema(schema = @Schema(
+            description = "Rejected lines with the reason",
+            implementation = IdsBulkLineError.class
+    ))
+    protected List<IdsBulkLineError> errors;
+
+
+    // --------------------------------
+
+    public void buildFrom(CaptureIdsBulkService.BulkJob job) {
+        this.jobId = job.getJobId();
+        this.captureId = job.getCaptureId();
+        this.state = job.getState();
+        this.status = job.getStatus();
+        this.creationMs = job.getCreationMs();
+        this.startMs = job.getStartMs();
+        this.endMs = job.getEndMs();
+        this.linesProcessed = job.getLinesProcessed();
+        this.inserted = job.getInserted();
+        this.errorCount = job.getErrorCount();
+        this.errorsTruncated = job.isErrorsTruncated();
+        this.errors = job.getErrors();
+    }
+
+    // --------------------------------
+
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getCaptureId() {
+        return captureId;
+    }
+
+    public void setCaptureId(String captureId) {
+        this.captureId = captureId;
+    }
+
+    public IdsBulkJobState getState() {
+        return state;
+    }
+
+    public void setState(IdsBulkJobState state) {
+        this.state = state;
+    }
+
+    public InsertIDsStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(InsertIDsStatus status) {
+        this.status = status;
+    }
+
+    public long getCreationMs() {
+        return creationMs;
+    }
+
+    public void setCreationMs(long creationMs) {
+        this.creationMs = creationMs;
+    }
+
+    public long getStartMs() {
+        return startMs;
+    }
+
+    public void setStartMs(long startMs) {
+        this.startMs = startMs;
+    }
+
+    public long getEndMs() {
+        return endMs;
+    }
+
+    public void setEndMs(long endMs) {
+        this.endMs = endMs;
+    }
+
+    public long getLinesProcessed() {
+        return linesProcessed;
+    }
+
+    public void setLinesProcessed(long linesProcessed) {
+        this.linesProcessed = linesProcessed;
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    public void setInserted(long inserted) {
+        this.inserted = inserted;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public void setErrorCount(long errorCount) {
+        this.errorCount = errorCount;
+    }
+
+    public boolean isErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    public void setErrorsTruncated(boolean errorsTruncated) {
+        this.errorsTruncated = errorsTruncated;
+    }
+
+    public List<IdsBulkLineError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<IdsBulkLineError> errors) {
+        this.errors = errors;
+    }
+}
@@ -19,6 +19,7 @@
  */
 package com.disk91.capture.api.interfaces;
 
+import com.disk91.capture.api.interfaces.sub.IdsBulkLineError;
 import com.disk91.capture.api.interfaces.sub.InsertIDsStatus;
 import com.disk91.capture.mdb.entities.Protocols;
 import com.disk91.capture.mdb.entities.sub.MandatoryField;
@@ -36,7 +37,7 @@ public class CaptureInsertIdsResponseItf {
 
     // Status of the insertion
     @Schema(
-            description = "Result of the insertion, in case of error, nothing is inserted",
+            description = "Result of the insertion, in case of a line error nothing is inserted, PARTIALLY_INSERTED when the database refused some of the lines",
             example = "",
             requiredMode = Schema.RequiredMode.REQUIRED
     )
@@ -63,6 +64,12 @@ public class CaptureInsertIdsResponseItf {
     )
     protected long errorCount;
 
+    @Schema(
+            description = "Lines refused during the database insertion, limited in size",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected List<IdsBulkLineError> errors = new ArrayList<>();
+
 
     // --------------------------------
 
@@ -100,4 +107,12 @@ public class CaptureInsertIdsResponseItf {
     public void setErrorCount(long errorCount) {
         this.errorCount = errorCount;
     }
+
+    public List<IdsBulkLineError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<IdsBulkLineError> errors) {
+        this.errors = errors;
+    }
 }
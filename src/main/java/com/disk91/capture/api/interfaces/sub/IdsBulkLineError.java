@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.capture.api.interfaces.sub;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@Tag(name = "Capture Ids bulk line error", description = "Line rejected during a bulk IDs import")
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class IdsBulkLineError {
+
+    @Schema(
+            description = "Line number in the file, header excluded",
+            example = "12",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected long line;
+
+    @Schema(
+            description = "Reason of the rejection",
+            example = "NOT_UNIQUE",
+            requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    protected InsertIDsStatus status;
+
+
+    // --------------------------------
+
+    public static IdsBulkLineError of(long line, InsertIDsStatus status) {
+        IdsBulkLineError e = new IdsBulkLineError();
+        e.setLine(line);
+        e.setStatus(status);
+        return e;
+    }
+
+    // --------------------------------
+
+
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(long line) {
+        this.line = line;
+    }
+
+    public InsertIDsStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(InsertIDsStatus status) {
+        this.status = status;
+    }
+}
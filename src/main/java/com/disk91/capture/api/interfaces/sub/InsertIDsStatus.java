@@ -2,6 +2,7 @@ package com.disk91.capture.api.interfaces.sub;
 
 public enum InsertIDsStatus {
     INSERTED,
+    PARTIALLY_INSERTED,     // Part of the IDs have been refused by the database, see the line errors
     INVALID_PROTOCOL_ID,
     INVALID_ENDPOINT_ID,
     INVALID_TYPE_ID,
@@ -77,6 +77,36 @@ public class CaptureConfig {
         return captureAsyncQueueMaxSize;
     }
 
+    @Value("${capture.async.queue.mode:fifo}")
+    protected String captureAsyncQueueMode;
+    public String getCaptureAsyncQueueMode() {
+        return captureAsyncQueueMode;
+    }
+
+    @Value("${capture.async.queue.fair.key:owner}")
+    protected String captureAsyncQueueFairKey;
+    public String getCaptureAsyncQueueFairKey() {
+        return captureAsyncQueueFairKey;
+    }
+
+    @Value("${capture.async.queue.fair.tenant.max.size:1000}")
+    protected int captureAsyncQueueFairTenantMaxSize;
+    public int getCaptureAsyncQueueFairTenantMaxSize() {
+        return captureAsyncQueueFairTenantMaxSize;
+    }
+
+    @Value("${capture.async.queue.fair.default.weight:1}")
+    protected int captureAsyncQueueFairDefaultWeight;
+    public int getCaptureAsyncQueueFairDefaultWeight() {
+        return captureAsyncQueueFairDefaultWeight;
+    }
+
+    @Value("${capture.async.queue.fair.weights:}")
+    protected String captureAsyncQueueFairWeights;
+    public String getCaptureAsyncQueueFairWeights() {
+        return captureAsyncQueueFairWeights;
+    }
+
     @Value(("${capture.dataprocessor.class:com.disk91.capture.drivers.standard.DefaultProcessorForPivot}"))
     protected String captureDataProcessorClass;
     public String getCaptureDataProcessorClass() {
@@ -124,6 +154,16 @@ public class CaptureConfig {
         return captureEndpointCacheLogPeriod;
     }
 
+    // --------------------------------------------
+    // Capture Endpoint Counters
+    // --------------------------------------------
+
+    @Value("${capture.endpoint.counters.flush.period:PT1M}")
+    protected String captureEndpointCountersFlushPeriod;
+    public String getCaptureEndpointCountersFlushPeriod() {
+        return captureEndpointCountersFlushPeriod;
+    }
+
     // -----------------------------------------
     // ProtocolIds
     // -----------------------------------------
@@ -140,4 +180,58 @@ public class CaptureConfig {
         return captureProtocolIdsRecheckRateDays;
     }
 
+    @Value("${capture.protocol.ids.sync.threads:4}")
+    protected int captureProtocolIdsSyncThreads;
+    public int getCaptureProtocolIdsSyncThreads() {
+        return captureProtocolIdsSyncThreads;
+    }
+
+    @Value("${capture.protocol.ids.sync.burst:1}")
+    protected int captureProtocolIdsSyncBurst;
+    public int getCaptureProtocolIdsSyncBurst() {
+        return captureProtocolIdsSyncBurst;
+    }
+
+    @Value("${capture.protocol.ids.sync.batch.max:100}")
+    protected int captureProtocolIdsSyncBatchMax;
+    public int getCaptureProtocolIdsSyncBatchMax() {
+        return captureProtocolIdsSyncBatchMax;
+    }
+
+    @Value("${capture.protocol.ids.sync.backoff_s:300}")
+    protected int captureProtocolIdsSyncBackoff;
+    public int getCaptureProtocolIdsSyncBackoff() {
+        return captureProtocolIdsSyncBackoff;
+    }
+
+    @Value("${capture.protocol.ids.bulk.chunk.size:1000}")
+    protected int captureProtocolIdsBulkChunkSize;
+    public int getCaptureProtocolIdsBulkChunkSize() {
+        return captureProtocolIdsBulkChunkSize;
+    }
+
+    @Value("${capture.protocol.ids.bulk.threads:1}")
+    protected int captureProtocolIdsBulkThreads;
+    public int getCaptureProtocolIdsBulkThreads() {
+        return captureProtocolIdsBulkThreads;
+    }
+
+    @Value("${capture.protocol.ids.bulk.max.jobs:10}")
+    protected int captureProtocolIdsBulkMaxJobs;
+    public int getCaptureProtocolIdsBulkMaxJobs() {
+        return captureProtocolIdsBulkMaxJobs;
+    }
+
+    @Value("${capture.protocol.ids.bulk.max.errors:1000}")
+    protected int captureProtocolIdsBulkMaxErrors;
+    public int getCaptureProtocolIdsBulkMaxErrors() {
+        return captureProtocolIdsBulkMaxErrors;
+    }
+
+    @Value("${capture.protocol.ids.bulk.retention_s:3600}")
+    protected int captureProtocolIdsBulkRetention;
+    public int getCaptureProtocolIdsBulkRetention() {
+        return captureProtocolIdsBulkRetention;
+    }
+
 }
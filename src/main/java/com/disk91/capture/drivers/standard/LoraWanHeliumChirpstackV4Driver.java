@@ -27,6 +27,8 @@ import com.disk91.capture.interfaces.sub.*;
 import com.disk91.capture.mdb.entities.CaptureEndpoint;
 import com.disk91.capture.mdb.entities.ProtocolIds;
 import com.disk91.capture.mdb.entities.Protocols;
+import com.disk91.capture.mdb.entities.sub.CaptureEndpointCounter;
+import com.disk91.capture.services.CaptureEndpointCounters;
 import com.disk91.common.config.CommonConfig;
 import com.disk91.common.interfaces.chirpstack.ChirpstackV4HeliumPayload;
 import com.disk91.common.tools.*;
@@ -82,6 +84,9 @@ public class LoraWanHeliumChirpstackV4Driver extends AbstractProtocol {
     @Autowired
     protected GroupsServices groupsServices;
 
+    @Autowired
+    protected CaptureEndpointCounters captureEndpointCounters;
+
     @PostConstruct
     private void initLoraWanHeliumChirpstackV4Driver() {
         log.info("[LoraWanHeliumChirpstackV4Driver] Initializing LoraWan Helium Chirpstack V4 Protocol Driver");
@@ -111,7 +116,7 @@ public class LoraWanHeliumChirpstackV4Driver extends AbstractProtocol {
             ITRightException,                   // No trace
             ITHackerException                   // Will generated a trace in audit (with caching to not overload)
     {
-        endpoint.incTotalInDriver();
+        captureEndpointCounters.increment(endpoint, CaptureEndpointCounter.IN_DRIVER);
 
         CaptureDataPivot p = CaptureDataPivot.initPivot();
         p.setRxUuid(this.getRxUUID());
@@ -125,7 +130,7 @@ public class LoraWanHeliumChirpstackV4Driver extends AbstractProtocol {
             payload = mapper.readValue(json, ChirpstackV4HeliumPayload.class);
         } catch (JsonProcessingException x) {
             // failed to parse
-            endpoint.incTotalBadPayloadFormat();
+            captureEndpointCounters.increment(endpoint, CaptureEndpointCounter.BAD_PAYLOAD_FORMAT);
             log.debug("[HeliumChirpstackV4Protocol] Conversion failed {}", x.getMessage());
             throw new ITParseException("capture-driver-helium-chirpstackv4-failed-to-parse-json");
         }
@@ -136,46 +141,25 @@ public class LoraWanHeliumChirpstackV4Driver extends AbstractProtocol {
             d = devicesNwkCache.getDevice("LoRa", "deveui", payload.getDeviceInfo().getDevEui().toLowerCase());
 
             // Check rights on device
-            // When the JWT user is in group ROLE_GLOBAL_CAPTURE it has global access on devices
-            boolean authorized = false;
-            try {
-                userCommon.getUserWithRolesAndGroups(
-                        jwtUser,
-                        UsersRolesCache.StandardRoles.ROLE_GLOBAL_CAPTURE.getRoleName(),
-                        null,
-                        null,
-                        false
-                );
-                authorized = true;
-            } catch (ITNotFoundException | ITRightException x) {
-                // Not a global capture user, we need to check device groups
-
-                // When the JWT user is an apikey we need to check the apikey rights searching for the groups of the
-                // device and ensuring the apikey has write rights on at least one of them.
-                for (DevGroupAssociated g : d.getAssociatedGroups()) {
-                    try {
-                        userCommon.getUserWithRolesAndGroups(
-                                jwtUser,
-                                UsersRolesCache.StandardRoles.ROLE_DEVICE_WRITE.getRoleName(),
-                                null,
-                                g.getGroupId(),
-                                true
-                        );
-                        authorized = true;
-                        break; // found, no need to continue
-                    } catch (ITNotFoundException | ITRightException ignore) {
-                        // not in this group, try the next one
-                    }
-                }
-            }
+            // When the JWT user is in group ROLE_GLOBAL_CAPTURE it has global access on devices, otherwise it needs
+            // ROLE_DEVICE_WRITE on at least one of the device groups (apikey rights or user rights). The decision is
+            // cached for the (user, device groups) combination.
+            ArrayList<String> deviceGroups = new ArrayList<>();
+            for (DevGroupAssociated g : d.getAssociatedGroups()) deviceGroups.add(g.getGroupId());
+            boolean authorized = userCommon.isAuthorizedOnGroups(
+                    jwtUser,
+                    UsersRolesCache.StandardRoles.ROLE_GLOBAL_CAPTURE.getRoleName(),
+                    UsersRolesCache.StandardRoles.ROLE_DEVICE_WRITE.getRoleName(),
+                    deviceGroups
+            );
             if (!authorized) {
-                endpoint.incTotalBadDeviceRight();
+                captureEndpointCounters.increment(endpoint, CaptureEndpointCounter.BAD_DEVICE_RIGHT);
                 throw new ITHackerException("capture-driver-helium-chirpstackv4-no-rights-on-device");
             }
 
         } catch (ITNotFoundException x) {
             // This device is not known
-            endpoint.incTotalBadDeviceRight();
+            captureEndpointCounters.increment(endpoint, CaptureEndpointCounter.BAD_DEVICE_RIGHT);
             throw new ITRightException("capture-driver-helium-chirpstackv4-unknown-device");
         }
         // Once on this point, the authorization is OK
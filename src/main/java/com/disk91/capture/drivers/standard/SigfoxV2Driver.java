@@ -32,8 +32,10 @@ import com.disk91.capture.interfaces.sub.*;
 import com.disk91.capture.mdb.entities.CaptureEndpoint;
 import com.disk91.capture.mdb.entities.ProtocolIds;
 import com.disk91.capture.mdb.entities.Protocols;
+import com.disk91.capture.mdb.entities.sub.CaptureEndpointCounter;
 import com.disk91.capture.mdb.entities.sub.IdStateEnum;
 import com.disk91.capture.services.CaptureEndpointCache;
+import com.disk91.capture.services.CaptureEndpointCounters;
 import com.disk91.capture.services.CaptureEndpointService;
 import com.disk91.capture.services.CaptureIdsService;
 import com.disk91.common.config.CommonConfig;
@@ -106,6 +108,9 @@ public class SigfoxV2Driver extends AbstractProtocol {
     @Autowired
     protected CaptureEndpointCache captureEndpointCache;
 
+    @Autowired
+    protected CaptureEndpointCounters captureEndpointCounters;
+
     @PostConstruct
     private void initSigfoxV2Driver() {
         log.info("[SigfoxV2Driver] Initializing Sigfox V2 Protocol Driver");
@@ -139,7 +144,7 @@ public class SigfoxV2Driver extends AbstractProtocol {
             ITRightException,                   // No trace
             ITHackerException                   // Will generated a trace in audit (with caching to not overload)
     {
-        endpoint.incTotalInDriver();
+        captureEndpointCounters.increment(endpoint, CaptureEndpointCounter.IN_DRIVER);
 
         CaptureDataPivot p = CaptureDataPivot.initPivot();
         p.setRxUuid(this.getRxUUID());
@@ -153,7 +158,7 @@ public class SigfoxV2Driver extends AbstractProtocol {
             payload = mapper.readValue(json, SigfoxCommonMessage.class);
         } catch (JsonProcessingException x) {
             // failed to parse
-            endpoint.incTotalBadPayloadFormat();
+            captureEndpointCounters.increment(endpoint, CaptureEndpointCounter.BAD_PAYLOAD_FORMAT);
             log.debug("[capture][sigfoxv2] Conversion failed {}", x.getMessage());
             throw new ITParseException("capture-driver-sigfox-v2-failed-to-parse-json");
         }
@@ -199,46 +204,25 @@ public class SigfoxV2Driver extends AbstractProtocol {
             } catch (ITNotFoundException | ITRightException ignore) {} // auto-creat => false or no group defined
             if ( !deviceOk ) {
                 // else
-                endpoint.incTotalBadDeviceRight();
+                captureEndpointCounters.increment(endpoint, CaptureEndpointCounter.BAD_DEVICE_RIGHT);
                 throw new ITRightException("capture-driver-sigfox-v2-unknown-device");
             }
         }
 
         // Check rights on device
-        // When the JWT user is in group ROLE_GLOBAL_CAPTURE it has global access on devices
-        boolean authorized = false;
-        try {
-            userCommon.getUserWithRolesAndGroups(
-                    jwtUser,
-                    UsersRolesCache.StandardRoles.ROLE_GLOBAL_CAPTURE.getRoleName(),
-                    null,
-                    null,
-                    false
-            );
-            authorized = true;
-        } catch (ITNotFoundException | ITRightException x) {
-            // Not a global capture user, we need to check device groups
-
-            // When the JWT user is an apikey we need to check the apikey rights searching for the groups of the
-            // device and ensuring the apikey has write rights on at least one of them.
-            for (DevGroupAssociated g : d.getAssociatedGroups()) {
-                try {
-                    userCommon.getUserWithRolesAndGroups(
-                            jwtUser,
-                            UsersRolesCache.StandardRoles.ROLE_DEVICE_WRITE.getRoleName(),
-                            null,
-                            g.getGroupId(),
-                            true
-                    );
-                    authorized = true;
-                    break; // found, no need to continue
-                } catch (ITNotFoundException | ITRightException ignore) {
-                    // not in this group, try the next one
-                }
-            }
-        }
+        // When the JWT user is in group ROLE_GLOBAL_CAPTURE it has global access on devices, otherwise it needs
+        // ROLE_DEVICE_WRITE on at least one of the device groups (apikey rights or user rights). The decision is
+        // cached for the (user, device groups) combination.
+        ArrayList<String> deviceGroups = new ArrayList<>();
+        for (DevGroupAssociated g : d.getAssociatedGroups()) deviceGroups.add(g.getGroupId());
+        boolean authorized = userCommon.isAuthorizedOnGroups(
+                jwtUser,
+                UsersRolesCache.StandardRoles.ROLE_GLOBAL_CAPTURE.getRoleName(),
+                UsersRolesCache.StandardRoles.ROLE_DEVICE_WRITE.getRoleName(),
+                deviceGroups
+        );
         if (!authorized) {
-            endpoint.incTotalBadDeviceRight();
+            captureEndpointCounters.increment(endpoint, CaptureEndpointCounter.BAD_DEVICE_RIGHT);
             throw new ITHackerException("capture-driver-sigfox-v2-no-rights-on-device");
         }
 
@@ -396,6 +380,19 @@ public class SigfoxV2Driver extends AbstractProtocol {
     // ID management
     // =================================================================================================================
 
+    /**
+     * Sigfox API rate limits are applied per API account, the endpoints sharing the same account share the
+     * synchronization rate limit.
+     */
+    @Override
+    public String getNetworkServerKey(CaptureEndpoint endpoint) {
+        try {
+            return "sigfox:" + endpoint.getOneField("protocol-sigfox-api-endpoint") + ":" + endpoint.getOneField("protocol-sigfox-api-user");
+        } catch (ITNotFoundException x) {
+            return endpoint.getRef();
+        }
+    }
+
     public ProtocolIds checkId(
             CaptureEndpoint endpoint,           // Corresponding endpoint
             ProtocolIds _id
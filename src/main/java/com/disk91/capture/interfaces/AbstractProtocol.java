@@ -27,6 +27,7 @@ import com.disk91.common.tools.exceptions.*;
 import com.disk91.users.mdb.entities.User;
 import jakarta.servlet.http.HttpServletRequest;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -144,6 +145,55 @@ public abstract class AbstractProtocol {
     ) throws
             ITOverQuotaException;
 
+    /**
+     * Max number of IDs the driver can review in a single checkIds call. Drivers with a backend batch API can
+     * override it with checkIds, default is one by one.
+     *
+     * @return batch size
+     */
+    public int getCheckIdsBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Review a batch of IDs, same contract as checkId for each of the IDs. The returned list contains, in the
+     * same order, the reviewed ID or null when no change. It can be shorter than the given list when the backend
+     * stopped the processing, the remaining IDs will be reviewed later.
+     * The default implementation calls checkId for each ID.
+     *
+     * @param endpoint - corresponding endpoint
+     * @param ids - IDs to review
+     * @return the reviewed IDs, null entries when no change
+     * @throws ITOverQuotaException - to stop the processing for this connector, when no ID has been processed
+     */
+    public List<ProtocolIds> checkIds(
+            CaptureEndpoint endpoint,           // Corresponding endpoint
+            List<ProtocolIds> ids
+    ) throws
+            ITOverQuotaException {
+        ArrayList<ProtocolIds> ret = new ArrayList<>();
+        for ( ProtocolIds _id : ids ) {
+            try {
+                ret.add(checkId(endpoint, _id));
+            } catch (ITOverQuotaException x) {
+                if ( ret.isEmpty() ) throw x;
+                break;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Identify the network server account behind an endpoint. The IDs synchronization rate limit is shared by
+     * the endpoints with the same key. By default, each endpoint has its own limit.
+     *
+     * @param endpoint - corresponding endpoint
+     * @return network server key
+     */
+    public String getNetworkServerKey(CaptureEndpoint endpoint) {
+        return endpoint.getRef();
+    }
+
 
     /**
      * This function will allow a subscription to be created in the back end if it does not already exist. It will be
@@ -19,6 +19,7 @@
  */
 package com.disk91.capture.mdb.entities;
 
+import com.disk91.capture.mdb.entities.sub.CaptureEndpointCounter;
 import com.disk91.common.tools.CloneableObject;
 import com.disk91.common.tools.CustomField;
 import com.disk91.common.tools.exceptions.ITNotFoundException;
@@ -111,38 +112,26 @@ public class CaptureEndpoint implements CloneableObject<CaptureEndpoint> {
         this.totalBillingRefused = 0L;
     }
 
-    public synchronized void incTotalFramesReceived() {
-        this.totalFramesReceived++;
-    }
-
-    public synchronized void incTotalBadOwnerRefused() {
-        this.totalBadOwnerRefused++;
-    }
-
-    public synchronized void incTotalFramesAcceptedToPivot() {
-        this.totalFramesAcceptedToPivot++;
-    }
-
-    public synchronized void incTotalFramesAcceptedToProcess() {
-        this.totalFramesAcceptedToProcess++;
-    }
-
-    public synchronized void incTotalBadPayloadFormat() {
-        this.totalBadPayloadFormat++;
-    }
-
-    public synchronized void incTotalBadDeviceRight() {
-        this.totalBadDeviceRight++;
-    }
-
-    public synchronized void incTotalInDriver() {
-        this.totalInDriver++;
+    /**
+     * Apply a counter delta to the in-memory copy of the endpoint. The persisted value is managed by
+     * the CaptureEndpointCounters service with $inc updates, this only keeps the local view consistent
+     * @param counter - counter to update
+     * @param delta - value to add
+     */
+    public synchronized void addToCounter(CaptureEndpointCounter counter, long delta) {
+        switch (counter) {
+            case FRAMES_RECEIVED -> this.totalFramesReceived += delta;
+            case BAD_OWNER_REFUSED -> this.totalBadOwnerRefused += delta;
+            case FRAMES_ACCEPTED_TO_PIVOT -> this.totalFramesAcceptedToPivot += delta;
+            case FRAMES_ACCEPTED_TO_PROCESS -> this.totalFramesAcceptedToProcess += delta;
+            case BAD_PAYLOAD_FORMAT -> this.totalBadPayloadFormat += delta;
+            case BAD_DEVICE_RIGHT -> this.totalBadDeviceRight += delta;
+            case IN_DRIVER -> this.totalInDriver += delta;
+            case QUEUED_TO_PROCESS -> this.totalQueuedToProcess += delta;
+            case BILLING_REFUSED -> this.totalBillingRefused += delta;
+        }
     }
 
-    public synchronized void incTotalQueuedToProcess() {this.totalQueuedToProcess++;}
-
-    public synchronized void incTotalBillingRefused() {this.totalBillingRefused++;}
-
     // --------------------------------
 
     @Override
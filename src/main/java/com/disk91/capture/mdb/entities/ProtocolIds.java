@@ -36,6 +36,8 @@ import java.util.List;
 @CompoundIndexes({
         @CompoundIndex(name = "cap_pro_ids_capure_id", def = "{'captureId': 'hashed'}"),
         @CompoundIndex(name = "cap_pro_ids_capure_id_state", def = "{'captureId': 'hashed', 'state': 1}"),
+        @CompoundIndex(name = "cap_pro_ids_capure_id_oid", def = "{'captureId': 1, '_id': 1}"),
+        @CompoundIndex(name = "cap_pro_ids_capure_id_config", def = "{'captureId': 1, 'customConfig.name': 1, 'customConfig.value': 1}"),
 })
 public class ProtocolIds {
 
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.capture.mdb.entities;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document(collection = "capture_protocol_ids_sync")
+public class ProtocolIdsSyncCursor {
+
+    // Capture endpoint reference, one cursor per endpoint
+    @Id
+    private String id;
+
+    // Id of the last ProtocolIds processed in the current pass, null when the pass is terminated
+    protected String lastId;
+
+    // Current pass start date in MS since epoch
+    protected long passStartMs;
+
+    // Last pass end date in MS since epoch
+    protected long lastPassEndMs;
+
+    // Last update date in MS since epoch
+    protected long updateMs;
+
+
+    // --------------------------------
+
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(String lastId) {
+        this.lastId = lastId;
+    }
+
+    public long getPassStartMs() {
+        return passStartMs;
+    }
+
+    public void setPassStartMs(long passStartMs) {
+        this.passStartMs = passStartMs;
+    }
+
+    public long getLastPassEndMs() {
+        return lastPassEndMs;
+    }
+
+    public void setLastPassEndMs(long lastPassEndMs) {
+        this.lastPassEndMs = lastPassEndMs;
+    }
+
+    public long getUpdateMs() {
+        return updateMs;
+    }
+
+    public void setUpdateMs(long updateMs) {
+        this.updateMs = updateMs;
+    }
+}
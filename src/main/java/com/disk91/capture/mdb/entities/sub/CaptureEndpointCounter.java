@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.capture.mdb.entities.sub;
+
+public enum CaptureEndpointCounter {
+    FRAMES_RECEIVED("totalFramesReceived"),                     // Total frames received on the endpoint
+    BAD_OWNER_REFUSED("totalBadOwnerRefused"),                  // Total frames refused because JWT owner is invalid
+    FRAMES_ACCEPTED_TO_PIVOT("totalFramesAcceptedToPivot"),     // Total frames accepted and passed to pivot transformation
+    FRAMES_ACCEPTED_TO_PROCESS("totalFramesAcceptedToProcess"), // Total frames pivoted and passed to processing
+    BAD_PAYLOAD_FORMAT("totalBadPayloadFormat"),                // Total frames rejected due to payload format
+    BAD_DEVICE_RIGHT("totalBadDeviceRight"),                    // Total frames rejected due to device right exception
+    IN_DRIVER("totalInDriver"),                                 // Total frames in the different raw -> pivot Driver
+    QUEUED_TO_PROCESS("totalQueuedToProcess"),                  // Total frames queued to be processed
+    BILLING_REFUSED("totalBillingRefused");                     // Total frames refused due to billing restrictions
+
+    // Name of the corresponding field in the capture_endpoints document
+    private final String fieldName;
+
+    CaptureEndpointCounter(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+}
@@ -27,6 +27,7 @@ import com.disk91.capture.interfaces.CaptureDataPivot;
 import com.disk91.capture.mdb.entities.CapturePivotRaw;
 import com.disk91.capture.mdb.repositories.CapturePivotRawRepository;
 import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.FairQueue;
 import com.disk91.common.tools.Now;
 import com.disk91.common.tools.exceptions.ITOverQuotaException;
 import com.mongodb.WriteConcern;
@@ -89,6 +90,40 @@ public class CaptureAsyncProcessService {
     protected AtomicInteger rawQueueEstimatedSize = new AtomicInteger(0);
     protected AtomicInteger rawLostDataCount = new AtomicInteger(0);
 
+    // Fair mode, one sub-queue per tenant (owner or endpoint) dequeued with a weighted round-robin, null in fifo mode
+    protected FairQueue<EnQueuedDataPivot> fairQueue = null;
+    protected final HashMap<String, Integer> fairWeights = new HashMap<>();
+
+    // Fair mode stats, aggregated over the tenants to keep a bounded number of metric series
+    protected final AtomicLong tenantRefused = new AtomicLong(0);
+    protected final AtomicLong tenantEvicted = new AtomicLong(0);
+
+    /**
+     * Get the tenant key of a pivot for the fair mode
+     * @param pivot - pivot
+     * @return tenant key
+     */
+    protected String getTenantKey(CaptureDataPivot pivot) {
+        String key = ( captureConfig.getCaptureAsyncQueueFairKey().compareToIgnoreCase("endpoint") == 0 ) ? pivot.getRxCaptureRef() : pivot.getIngestOwnerId();
+        return ( key != null ) ? key : "unknown";
+    }
+
+    /**
+     * Called by the fair queue, under its lock, when a frame of a noisy tenant is evicted to make room for a less
+     * loaded tenant, the frame is lost like a refused one.
+     * @param tenant - tenant of the evicted frame
+     * @param e - evicted frame
+     */
+    protected void onTenantEviction(String tenant, EnQueuedDataPivot e) {
+        this.rawQueueEstimatedSize.decrementAndGet();
+        this.rawLostDataCount.incrementAndGet();
+        this.tenantEvicted.incrementAndGet();
+        if ( (Now.NowUtcMs() - lastLog) > 30_000 ) {
+            log.error("[capture] Async processing queue full, frame evicted for tenant {}, queue size {}", tenant, this.rawQueueEstimatedSize.get());
+            lastLog = Now.NowUtcMs();
+        }
+    }
+
     protected long lastLog = 0;
 
     /**
@@ -113,23 +148,10 @@ public class CaptureAsyncProcessService {
                         lastLog = Now.NowUtcMs();
                     }
                 }
-                // Stop in case of full queue
-                if ( this.rawQueueEstimatedSize.get() >= captureConfig.getCaptureAsyncQueueMaxSize() ) {
-                    rawLostDataCount.incrementAndGet();
-                    if ( (Now.NowUtcMs() - lastLog) > 30_000 ) {
-                        log.error("[capture] Async processing queue size exceeded maximum limit: {}", this.rawQueueEstimatedSize.get());
-                        auditIntegration.auditLog(
-                                ModuleCatalog.Modules.CAPTURE,
-                                ActionCatalog.getActionName(ActionCatalog.Actions.INGEST_QUEUE_FULL),
-                                pivot.getIngestOwnerId(),
-                                "Loss of data due to overloaded async processing queue size {1}",
-                                new String[]{""+rawLostDataCount.get()}
-                        );
-                        lastLog = Now.NowUtcMs();
-                    }
-                    this.incrementEnqueueRefused();
-                    throw new ITOverQuotaException("capture-async-service-overloaded");
-                } else {
+                // Stop in case of full queue, in fair mode the queue decides, refusing only the noisy tenants
+                String tenant = ( fairQueue != null ) ? getTenantKey(pivot) : null;
+                boolean refused = ( tenant == null ) && this.rawQueueEstimatedSize.get() >= captureConfig.getCaptureAsyncQueueMaxSize();
+                if ( !refused ) {
                     // Normal case, enqueue
                     // Before we check if we have to reset the lost data counter with a 10% threshold
                     if ( rawLostDataCount.get() > 0 && this.rawQueueEstimatedSize.get() < (90*captureConfig.getCaptureAsyncQueueMaxSize())/100 ) {
@@ -144,9 +166,35 @@ public class CaptureAsyncProcessService {
                         rawLostDataCount.set(0);
                     }
                     EnQueuedDataPivot e = new EnQueuedDataPivot(pivot);
-                    this.rawQueue.add(e);
-                    this.rawQueueEstimatedSize.incrementAndGet();
-                    this.incrementEnqueueSuccess();
+                    if ( tenant != null ) {
+                        // refused when the tenant sub-queue is full or when the queue is full and the tenant is the noisiest
+                        refused = !this.fairQueue.offer(tenant, e);
+                    } else this.rawQueue.add(e);
+                    if ( !refused ) {
+                        this.rawQueueEstimatedSize.incrementAndGet();
+                        this.incrementEnqueueSuccess();
+                    }
+                }
+                if ( refused ) {
+                    rawLostDataCount.incrementAndGet();
+                    if ( tenant != null ) tenantRefused.incrementAndGet();
+                    if ( (Now.NowUtcMs() - lastLog) > 30_000 ) {
+                        if ( tenant != null ) {
+                            log.error("[capture] Async processing queue refused frame for tenant {}, tenant queue size {}, queue size {}", tenant, fairQueue.size(tenant), this.rawQueueEstimatedSize.get());
+                        } else {
+                            log.error("[capture] Async processing queue size exceeded maximum limit: {}", this.rawQueueEstimatedSize.get());
+                        }
+                        auditIntegration.auditLog(
+                                ModuleCatalog.Modules.CAPTURE,
+                                ActionCatalog.getActionName(ActionCatalog.Actions.INGEST_QUEUE_FULL),
+                                pivot.getIngestOwnerId(),
+                                "Loss of data due to overloaded async processing queue size {1}",
+                                new String[]{""+rawLostDataCount.get()}
+                        );
+                        lastLog = Now.NowUtcMs();
+                    }
+                    this.incrementEnqueueRefused();
+                    throw new ITOverQuotaException("capture-async-service-overloaded");
                 }
             } else {
                 // service is closing report
@@ -216,7 +264,7 @@ public class CaptureAsyncProcessService {
      */
     private void workerLoop() {
         while (running.get() && !Thread.currentThread().isInterrupted()) {
-            EnQueuedDataPivot pivot = rawQueue.poll();
+            EnQueuedDataPivot pivot = ( fairQueue != null ) ? fairQueue.poll() : rawQueue.poll();
             if (pivot == null) {
                 Now.sleep(50);
                 continue;
@@ -245,6 +293,37 @@ public class CaptureAsyncProcessService {
     @PostConstruct
     private void startWorkers() {
         if (captureConfig.getCaptureProcessorThreadsCount() > 0) {
+            if ( captureConfig.getCaptureAsyncQueueMode().compareToIgnoreCase("fair") == 0 ) {
+                // weights as tenant:weight list
+                for ( String w : captureConfig.getCaptureAsyncQueueFairWeights().split(",") ) {
+                    String[] kv = w.trim().split(":");
+                    if ( kv.length != 2 ) continue;
+                    try {
+                        fairWeights.put(kv[0].trim(), Integer.parseInt(kv[1].trim()));
+                    } catch (NumberFormatException x) {
+                        log.warn("[capture] Invalid async queue weight {}", w);
+                    }
+                }
+                fairQueue = new FairQueue<>(
+                        tenant -> fairWeights.getOrDefault(tenant, captureConfig.getCaptureAsyncQueueFairDefaultWeight()),
+                        captureConfig.getCaptureAsyncQueueFairTenantMaxSize(),
+                        captureConfig.getCaptureAsyncQueueMaxSize()
+                );
+                fairQueue.setEvictionListener(this::onTenantEviction);
+                Gauge.builder("capture_async_process_tenant_active", fairQueue, FairQueue::activeTenants)
+                        .description("[capture] Number of tenants with frames pending in the async queue")
+                        .register(meterRegistry);
+                Gauge.builder("capture_async_process_tenant_max_depth", fairQueue, FairQueue::maxTenantSize)
+                        .description("[capture] Number of frames pending for the most loaded tenant")
+                        .register(meterRegistry);
+                Gauge.builder("capture_async_process_tenant_refused", tenantRefused, AtomicLong::get)
+                        .description("[capture] Number of frames refused to the noisy tenants due to overload from start")
+                        .register(meterRegistry);
+                Gauge.builder("capture_async_process_tenant_evicted", tenantEvicted, AtomicLong::get)
+                        .description("[capture] Number of queued frames evicted from the noisy tenants due to overload from start")
+                        .register(meterRegistry);
+                log.info("[capture] Async queue in fair mode per {}, {} specific weights", captureConfig.getCaptureAsyncQueueFairKey(), fairWeights.size());
+            }
             running.set(true);
             workers = Executors.newFixedThreadPool(captureConfig.getCaptureProcessorThreadsCount(), r -> {
                 Thread t = new Thread(r);
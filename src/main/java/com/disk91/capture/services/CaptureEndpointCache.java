@@ -27,9 +27,8 @@ import com.disk91.common.config.ModuleCatalog;
 import com.disk91.common.tools.Now;
 import com.disk91.common.tools.ObjectCache;
 import com.disk91.common.tools.exceptions.ITNotFoundException;
-import com.disk91.common.tools.exceptions.ITOverQuotaException;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
-import com.disk91.integration.services.IntegrationService;
+import com.disk91.integration.services.IntegrationInvalidationService;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
@@ -37,6 +36,10 @@ import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -71,7 +74,10 @@ public class CaptureEndpointCache {
     protected CommonConfig commonConfig;
 
     @Autowired
-    protected IntegrationService integrationService;
+    protected IntegrationInvalidationService integrationInvalidationService;
+
+    @Autowired
+    protected MongoTemplate mongoTemplate;
 
     // ================================================================================================================
     // CACHE SERVICE
@@ -92,15 +98,11 @@ public class CaptureEndpointCache {
             ) {
                 @Override
                 synchronized public void onCacheRemoval(String key, CaptureEndpoint obj, boolean batch, boolean last) {
-                    // Save the stats update
-                    if ( obj != null ) {
-                        repository.save(obj);
-                    }
+                    // Nothing to save, the stats are persisted by CaptureEndpointCounters
                 }
                 @Override
                 public void bulkCacheUpdate(List<CaptureEndpoint> objects) {
-                    // save the stats update in bulk
-                    repository.saveAll(objects);
+                    // Nothing to save, the stats are persisted by CaptureEndpointCounters
                 }
             };
         }
@@ -167,27 +169,41 @@ public class CaptureEndpointCache {
         }
     }
 
+    /**
+     * Get the capture endpoint only when it is already in the local cache, no database access
+     * @param id - id to be retrieved (REF Field)
+     * @return the cached object or null when not cached
+     */
+    public CaptureEndpoint getCachedCaptureEndpoint(String id) {
+        if (!this.serviceEnable || config.getCaptureEndpointCacheMaxSize() == 0) return null;
+        return this.cache.get(id);
+    }
+
     /**
      * Remove a capture endpoint from the local cache if exists (this is when the object has been updated somewhere else)
      * @param id - capture endpoint to be removed
      * @return
      */
     public void flushCaptureEndpoint(String id) {
+        this.flushCaptureEndpointLocally(id);
+
+        // Broadcast other instances to flush their cache for this endpoint (coalesced)
+        integrationInvalidationService.invalidate(
+                ModuleCatalog.Modules.CAPTURE,
+                CAPTURE_ACTION_FLUSH_CACHE_ENDPOINT.ordinal(),
+                IntegrationQuery.getRoutefromRouteString(config.getCaptureIntracomMedium()),
+                id
+        );
+    }
+
+    /**
+     * Remove a capture endpoint from the local cache only, on invalidation received from another instance
+     * @param id - capture endpoint to be removed
+     */
+    public void flushCaptureEndpointLocally(String id) {
         if ( this.serviceEnable && config.getCaptureEndpointCacheMaxSize() > 0 ) {
             this.cache.remove(id,false);
         }
-
-        // Broadcast other instances to flush their cache for this device
-        IntegrationQuery iq = new IntegrationQuery(ModuleCatalog.Modules.CAPTURE, commonConfig.getInstanceId());
-        iq.setServiceNameDest(ModuleCatalog.Modules.CAPTURE);
-        iq.setType(IntegrationQuery.QueryType.TYPE_BROADCAST);
-        iq.setAction(CAPTURE_ACTION_FLUSH_CACHE_ENDPOINT.ordinal());
-        iq.setQuery(id);
-        iq.setRoute(IntegrationQuery.getRoutefromRouteString(config.getCaptureIntracomMedium()));
-        try {
-            integrationService.processQuery(iq);
-        } catch (ITOverQuotaException ignored) {}
-
     }
 
 
@@ -203,21 +219,38 @@ public class CaptureEndpointCache {
     }
 
     /**
-     * Saves the CaptureEndpoint to database and flush the cache
+     * Saves the CaptureEndpoint configuration to database and flush the cache
+     * The stats fields are not written, they are updated with $inc by CaptureEndpointCounters
+     * and the cached copy may be behind the database values.
      * @param captureEndpoint
      */
     public synchronized void save(CaptureEndpoint captureEndpoint) {
         flushCaptureEndpoint(captureEndpoint.getRef());
-        repository.save(captureEndpoint);
+        Update u = new Update()
+                .set("name", captureEndpoint.getName())
+                .set("description", captureEndpoint.getDescription())
+                .set("owner", captureEndpoint.getOwner())
+                .set("wideOpen", captureEndpoint.isWideOpen())
+                .set("encrypted", captureEndpoint.isEncrypted())
+                .set("creationMs", captureEndpoint.getCreationMs())
+                .set("protocolId", captureEndpoint.getProtocolId())
+                .set("customConfig", captureEndpoint.getCustomConfig())
+                .set("processingClassName", captureEndpoint.getProcessingClassName())
+                .set("idTypeName", captureEndpoint.getIdTypeName());
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("ref").is(captureEndpoint.getRef())),
+                u,
+                CaptureEndpoint.class
+        );
     }
 
     /**
-     * On regular basis (5 minutes), save the stats of all cached endpoints
+     * On regular basis (5 minutes), print the stats of all cached endpoints
      * Print the stats on logs at least until the front-end have the feature to display them
      * later pass it to debug level
      */
     @Scheduled(fixedRate = 300000, initialDelay = 5000)
-    protected void printStatsAndSave() {
+    protected void printStats() {
         if ( ! this.serviceEnable || config.getCaptureEndpointCacheMaxSize() == 0 ) return;
         for ( String key : Collections.list(this.cache.list()) ) {
             CaptureEndpoint ep = this.cache.get(key);
@@ -233,7 +266,6 @@ public class CaptureEndpointCache {
                         ep.getTotalBadPayloadFormat(),
                         ep.getTotalBadDeviceRight()
                 );
-                this.save(ep);
             }
         }
     }
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.capture.services;
+
+import com.disk91.capture.mdb.entities.CaptureEndpoint;
+import com.disk91.capture.mdb.entities.sub.CaptureEndpointCounter;
+import com.disk91.common.tools.Now;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+@Service
+public class CaptureEndpointCounters {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * CaptureEndpoint counters are incremented for every frame received. Instead of updating the cached
+     * CaptureEndpoint and rewriting the whole document, every instance accumulates the deltas in memory
+     * (LongAdder are striped, so there is no contention between the capture threads) and pushes them on
+     * regular basis with $inc updates in an unordered bulk. The endpoint is not evicted, re-read or broadcast
+     * and multiple instances are adding their own deltas to the same document.
+     * The entries with nothing pending are removed after each flush so the map only holds the active endpoints.
+     * A removed entry is marked retired, an increment landing on it is moved to the new entry; sumThenReset
+     * takes each cell atomically so a value is moved once, by the flush or by the increment.
+     */
+
+    @Autowired
+    protected MongoTemplate mongoTemplate;
+
+    @Autowired
+    protected CaptureEndpointCache captureEndpointCache;
+
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    private static final CaptureEndpointCounter[] COUNTERS = CaptureEndpointCounter.values();
+
+    protected static class Deltas {
+        // one LongAdder per counter (index is the counter ordinal)
+        protected final LongAdder[] adders;
+        // removed from the map, the remaining values must be moved to the live entry
+        protected volatile boolean retired = false;
+
+        protected Deltas() {
+            adders = new LongAdder[COUNTERS.length];
+            for ( int i = 0 ; i < COUNTERS.length ; i++ ) adders[i] = new LongAdder();
+        }
+
+        protected boolean isZero() {
+            for ( LongAdder a : adders ) if ( a.sum() != 0 ) return false;
+            return true;
+        }
+    }
+
+    // Pending deltas per endpoint ref
+    protected final ConcurrentHashMap<String, Deltas> deltas = new ConcurrentHashMap<>();
+
+    protected boolean serviceEnable = false;
+
+    @PostConstruct
+    private void initCaptureEndpointCounters() {
+        log.info("[capture] initCaptureEndpointCounters");
+        this.serviceEnable = true;
+
+        Gauge.builder("capture_endpoint_counters_flush_count", this.getFlushCount())
+                .description("[capture] Number of counter flushes with at least one update from start")
+                .register(meterRegistry);
+        Gauge.builder("capture_endpoint_counters_flush_duration_ms", this.getFlushDuration())
+                .description("[capture] Total duration of counter flushes in ms from start")
+                .register(meterRegistry);
+        Gauge.builder("capture_endpoint_counters_flush_updates", this.getFlushUpdates())
+                .description("[capture] Number of endpoint $inc updates sent from start")
+                .register(meterRegistry);
+        Gauge.builder("capture_endpoint_counters_flush_failed", this.getFlushFailed())
+                .description("[capture] Number of endpoint $inc updates failed and postponed from start")
+                .register(meterRegistry);
+        Gauge.builder("capture_endpoint_counters_tracked_endpoints", () -> deltas.size())
+                .description("[capture] Number of endpoints with tracked counters")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        log.info("[capture] CaptureEndpointCounters stopping");
+        this.serviceEnable = false;
+        this.flush();
+        log.info("[capture] CaptureEndpointCounters stopped");
+    }
+
+    // ================================================================================================================
+    // Counter access
+    // ================================================================================================================
+
+    /**
+     * Increment a counter for the given endpoint, the update is only in memory until the next flush
+     * @param endpoint - endpoint concerned
+     * @param counter - counter to increment
+     */
+    public void increment(CaptureEndpoint endpoint, CaptureEndpointCounter counter) {
+        if ( endpoint == null || endpoint.getRef() == null ) return;
+        Deltas d = deltas.get(endpoint.getRef());
+        if ( d == null ) {
+            d = deltas.computeIfAbsent(endpoint.getRef(), k -> new Deltas());
+        }
+        d.adders[counter.ordinal()].increment();
+        if ( d.retired ) migrate(endpoint.getRef(), d);
+    }
+
+    /**
+     * Move the values left in a retired entry to the live entry of the endpoint
+     * @param ref - endpoint ref
+     * @param retired - entry removed from the map
+     */
+    protected void migrate(String ref, Deltas retired) {
+        Deltas from = retired;
+        while ( from != null && from.retired ) {
+            Deltas to = null;
+            for ( int i = 0 ; i < COUNTERS.length ; i++ ) {
+                long v = from.adders[i].sumThenReset();
+                if ( v != 0 ) {
+                    if ( to == null ) to = deltas.computeIfAbsent(ref, k -> new Deltas());
+                    to.adders[i].add(v);
+                }
+            }
+            // the live entry may have been retired meanwhile
+            from = to;
+        }
+    }
+
+    /**
+     * Get the value not yet flushed for a given endpoint counter
+     * @param ref - endpoint ref
+     * @param counter - counter to get
+     * @return pending delta
+     */
+    public long getPending(String ref, CaptureEndpointCounter counter) {
+        Deltas d = deltas.get(ref);
+        if ( d == null ) return 0;
+        return d.adders[counter.ordinal()].sum();
+    }
+
+    /**
+     * Forget the pending deltas for an endpoint (when the endpoint has been deleted)
+     * @param ref - endpoint ref
+     */
+    public void discard(String ref) {
+        deltas.remove(ref);
+    }
+
+    // ================================================================================================================
+    // Flush to database
+    // ================================================================================================================
+
+    @Scheduled(fixedDelayString = "${capture.endpoint.counters.flush.period:PT1M}", initialDelay = 5_000)
+    protected void scheduledFlush() {
+        if ( ! this.serviceEnable ) return;
+        this.flush();
+    }
+
+    /**
+     * Push all the pending deltas to the database in a single unordered bulk of $inc updates. The adders
+     * are drained with sumThenReset, increments made during the flush are kept for the next one. When an
+     * update fails, its deltas are restored into the adders to be retried on next flush. The entries left
+     * at zero are removed.
+     */
+    public synchronized void flush() {
+        long start = Now.NowUtcMs();
+        ArrayList<String> refs = new ArrayList<>();
+        ArrayList<long[]> values = new ArrayList<>();
+        for ( Map.Entry<String, Deltas> e : deltas.entrySet() ) {
+            long[] v = new long[COUNTERS.length];
+            boolean changed = false;
+            for ( int i = 0 ; i < COUNTERS.length ; i++ ) {
+                v[i] = e.getValue().adders[i].sumThenReset();
+                if ( v[i] != 0 ) changed = true;
+            }
+            if ( changed ) {
+                refs.add(e.getKey());
+                values.add(v);
+            }
+        }
+        if ( refs.isEmpty() ) {
+            prune();
+            return;
+        }
+
+        HashSet<Integer> failed = new HashSet<>();
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CaptureEndpoint.class);
+            for ( int k = 0 ; k < refs.size() ; k++ ) {
+                Update u = new Update();
+                long[] v = values.get(k);
+                for ( int i = 0 ; i < COUNTERS.length ; i++ ) {
+                    if ( v[i] != 0 ) u.inc(COUNTERS[i].getFieldName(), v[i]);
+                }
+                bulk.updateOne(Query.query(Criteria.where("ref").is(refs.get(k))), u);
+            }
+            BulkWriteResult r = bulk.execute();
+            log.debug("[capture] Endpoint counters flushed, {} endpoints, {} matched", refs.size(), r.getMatchedCount());
+        } catch (BulkOperationException x) {
+            // unordered, only the reported updates have not been applied
+            for ( BulkWriteError err : x.getErrors() ) failed.add(err.getIndex());
+            log.warn("[capture] Endpoint counters flush partially failed, {} updates postponed", failed.size());
+        } catch (Exception x) {
+            // nothing has been applied
+            for ( int k = 0 ; k < refs.size() ; k++ ) failed.add(k);
+            log.error("[capture] Endpoint counters flush failed, {} updates postponed ({})", failed.size(), x.getMessage());
+        }
+
+        for ( int k = 0 ; k < refs.size() ; k++ ) {
+            long[] v = values.get(k);
+            if ( failed.contains(k) ) {
+                // restore the deltas for the next flush
+                Deltas d = deltas.computeIfAbsent(refs.get(k), key -> new Deltas());
+                for ( int i = 0 ; i < COUNTERS.length ; i++ ) {
+                    if ( v[i] != 0 ) d.adders[i].add(v[i]);
+                }
+            } else {
+                // keep the local cached copy in line with what has been persisted by this instance
+                CaptureEndpoint ep = captureEndpointCache.getCachedCaptureEndpoint(refs.get(k));
+                if ( ep != null ) {
+                    for ( int i = 0 ; i < COUNTERS.length ; i++ ) {
+                        if ( v[i] != 0 ) ep.addToCounter(COUNTERS[i], v[i]);
+                    }
+                }
+            }
+        }
+
+        prune();
+
+        flushCount.incrementAndGet();
+        flushUpdates.addAndGet(refs.size() - failed.size());
+        flushFailed.addAndGet(failed.size());
+        flushDuration.addAndGet(Now.NowUtcMs() - start);
+    }
+
+    /**
+     * Remove the entries with nothing pending, an increment made during the removal is moved back to the map
+     */
+    protected void prune() {
+        for ( Map.Entry<String, Deltas> e : deltas.entrySet() ) {
+            Deltas d = e.getValue();
+            if ( !d.isZero() ) continue;
+            d.retired = true;
+            deltas.remove(e.getKey(), d);
+            migrate(e.getKey(), d);
+        }
+    }
+
+    // ================================================================================================================
+    // Metrics
+    // ================================================================================================================
+
+    protected AtomicLong flushCount = new AtomicLong(0);
+    public Supplier<Number> getFlushCount() {
+        return () -> flushCount.get();
+    }
+
+    protected AtomicLong flushDuration = new AtomicLong(0);
+    public Supplier<Number> getFlushDuration() {
+        return () -> flushDuration.get();
+    }
+
+    protected AtomicLong flushUpdates = new AtomicLong(0);
+    public Supplier<Number> getFlushUpdates() {
+        return () -> flushUpdates.get();
+    }
+
+    protected AtomicLong flushFailed = new AtomicLong(0);
+    public Supplier<Number> getFlushFailed() {
+        return () -> flushFailed.get();
+    }
+
+}
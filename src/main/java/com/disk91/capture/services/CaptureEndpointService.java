@@ -68,6 +68,12 @@ public class CaptureEndpointService {
     @Autowired
     protected CaptureEndpointCache captureEndpointCache;
 
+    @Autowired
+    protected CaptureIdsSyncService captureIdsSyncService;
+
+    @Autowired
+    protected CaptureEndpointCounters captureEndpointCounters;
+
     @Autowired
     protected CaptureEndpointRepository captureEndpointRepository;
 
@@ -189,6 +195,8 @@ public class CaptureEndpointService {
                     // authorized to delete
                     captureEndpointRepository.delete(e);
                     captureEndpointCache.flushCaptureEndpoint(e.getRef());
+                    captureEndpointCounters.discard(e.getRef());
+                    captureIdsSyncService.discard(e.getRef());
 
                     // Add audit trace
                     auditIntegration.auditLog(
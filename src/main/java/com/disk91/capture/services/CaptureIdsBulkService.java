@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.capture.services;
+
+import com.disk91.capture.api.interfaces.sub.IdsBulkJobState;
+import com.disk91.capture.api.interfaces.sub.IdsBulkLineError;
+import com.disk91.capture.api.interfaces.sub.InsertIDsStatus;
+import com.disk91.capture.config.CaptureConfig;
+import com.disk91.capture.mdb.entities.sub.IdStateEnum;
+import com.disk91.common.tools.HexCodingTools;
+import com.disk91.common.tools.Now;
+import com.disk91.common.tools.exceptions.ITNotFoundException;
+import com.disk91.common.tools.exceptions.ITOverQuotaException;
+import com.disk91.common.tools.exceptions.ITParseException;
+import com.disk91.common.tools.exceptions.ITRightException;
+import com.disk91.users.mdb.entities.User;
+import com.disk91.users.services.UserCommon;
+import com.disk91.users.services.UsersRolesCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Service
+public class CaptureIdsBulkService {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Bulk IDs provisioning from a csv file. The file is accepted once the requestor rights and the header
+     * are verified, then it is processed asynchronously by a worker: lines are streamed from the file and
+     * handled by chunk (one uniqueness query per unique field and per chunk, one unordered bulk insert).
+     * Contrary to the synchronous insertion, the valid lines are inserted and the rejected ones are reported
+     * with their line number. The client polls the job to get the progress.
+     */
+
+    @Autowired
+    protected CaptureIdsService captureIdsService;
+
+    @Autowired
+    protected CaptureConfig captureConfig;
+
+    @Autowired
+    protected UserCommon userCommon;
+
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    public static class BulkJob {
+        protected String jobId;
+        protected String requestorId;
+        protected String captureId;
+        protected volatile IdsBulkJobState state;
+        protected volatile InsertIDsStatus status;
+        protected long creationMs;
+        protected volatile long startMs;
+        protected volatile long endMs;
+        protected final AtomicLong linesProcessed = new AtomicLong(0);
+        protected final AtomicLong inserted = new AtomicLong(0);
+        protected final AtomicLong errorCount = new AtomicLong(0);
+        protected final List<IdsBulkLineError> errors = Collections.synchronizedList(new ArrayList<>());
+        protected volatile boolean errorsTruncated;
+        protected Path file;
+
+        public String getJobId() { return jobId; }
+        public String getRequestorId() { return requestorId; }
+        public String getCaptureId() { return captureId; }
+        public IdsBulkJobState getState() { return state; }
+        public InsertIDsStatus getStatus() { return status; }
+        public long getCreationMs() { return creationMs; }
+        public long getStartMs() { return startMs; }
+        public long getEndMs() { return endMs; }
+        public long getLinesProcessed() { return linesProcessed.get(); }
+        public long getInserted() { return inserted.get(); }
+        public long getErrorCount() { return errorCount.get(); }
+        public List<IdsBulkLineError> getErrors() {
+            synchronized (errors) { return new ArrayList<>(errors); }
+        }
+        public boolean isErrorsTruncated() { return errorsTruncated; }
+
+        protected boolean isActive() {
+            return state == IdsBulkJobState.PENDING || state == IdsBulkJobState.RUNNING;
+        }
+    }
+
+    protected final ConcurrentHashMap<String, BulkJob> jobs = new ConcurrentHashMap<>();
+
+    protected ExecutorService executor;
+
+    @PostConstruct
+    private void initCaptureIdsBulkService() {
+        log.info("[capture] initCaptureIdsBulkService");
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, captureConfig.getCaptureProtocolIdsBulkThreads()),
+                r -> {
+                    Thread t = new Thread(r);
+                    t.setName("capture-ids-bulk-" + t.threadId());
+                    t.setDaemon(true);
+                    return t;
+                }
+        );
+
+        Gauge.builder("capture_ids_bulk_jobs_active", () -> jobs.values().stream().filter(BulkJob::isActive).count())
+                .description("[capture] Number of bulk IDs import jobs pending or running")
+                .register(meterRegistry);
+        Gauge.builder("capture_ids_bulk_lines_processed", this.getLinesProcessed())
+                .description("[capture] Number of lines processed by bulk IDs imports from start")
+                .register(meterRegistry);
+        Gauge.builder("capture_ids_bulk_ids_inserted", this.getIdsInserted())
+                .description("[capture] Number of IDs inserted by bulk IDs imports from start")
+                .register(meterRegistry);
+        Gauge.builder("capture_ids_bulk_lines_rejected", this.getLinesRejected())
+                .description("[capture] Number of lines rejected by bulk IDs imports from start")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        log.info("[capture] CaptureIdsBulkService stopping");
+        this.executor.shutdownNow();
+        try {
+            this.executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // remove the temporary files of the jobs not processed
+        for ( BulkJob job : jobs.values() ) {
+            deleteJobFile(job);
+        }
+        log.info("[capture] CaptureIdsBulkService stopped");
+    }
+
+    // ================================================================================================================
+    // Job management
+    // ================================================================================================================
+
+    /**
+     * Accept a new bulk import. The header (first line of the file) and the requestor rights are verified
+     * synchronously, the lines are processed later by a worker.
+     * @param requestorId - user login or apikey
+     * @param captureId - endpoint reference
+     * @param initialState - expected initial state for the IDs
+     * @param file - csv file, first line is the header
+     * @return the job, in FAILED state when the header or initial state is invalid
+     * @throws ITRightException - user not authorized on the endpoint
+     * @throws ITParseException - file empty or not readable
+     * @throws ITOverQuotaException - too many jobs in progress
+     */
+    public BulkJob startImport(
+            String requestorId,
+            String captureId,
+            IdStateEnum initialState,
+            MultipartFile file
+    ) throws ITRightException, ITParseException, ITOverQuotaException {
+
+        if ( file == null || file.isEmpty() ) throw new ITParseException("capture-ids-bulk-empty-file");
+        if ( jobs.values().stream().filter(BulkJob::isActive).count() >= captureConfig.getCaptureProtocolIdsBulkMaxJobs() ) {
+            throw new ITOverQuotaException("capture-ids-bulk-too-many-jobs");
+        }
+
+        BulkJob job = new BulkJob();
+        job.jobId = "idsjob_" + HexCodingTools.getRandomHexString(16);
+        job.requestorId = requestorId;
+        job.captureId = captureId;
+        job.creationMs = Now.NowUtcMs();
+        job.state = IdsBulkJobState.PENDING;
+
+        // verify the header before accepting the job
+        String header;
+        try ( BufferedReader r = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)) ) {
+            header = r.readLine();
+        } catch (IOException x) {
+            throw new ITParseException("capture-ids-bulk-read-failed");
+        }
+        if ( header != null && header.startsWith("\uFEFF") ) header = header.substring(1); // remove utf-8 BOM
+        CaptureIdsService.IdsImportContext ctx = new CaptureIdsService.IdsImportContext();
+        InsertIDsStatus s = captureIdsService.prepareImport(ctx, requestorId, captureId, initialState, header);
+        if ( s != null ) {
+            job.state = IdsBulkJobState.FAILED;
+            job.status = s;
+            job.endMs = Now.NowUtcMs();
+            jobs.put(job.jobId, job);
+            return job;
+        }
+
+        // the multipart content is released at the end of the request, keep it in a temporary file for the worker
+        try {
+            job.file = Files.createTempFile("capture-ids-", ".csv");
+            file.transferTo(job.file);
+        } catch (IOException x) {
+            deleteJobFile(job);
+            log.error("[capture] Ids bulk import, failed to store the file: {}", x.getMessage());
+            throw new ITParseException("capture-ids-bulk-read-failed");
+        }
+
+        jobs.put(job.jobId, job);
+        executor.submit(() -> processJob(job, ctx));
+        log.info("[capture] Ids bulk import {} accepted for endpoint {} ({} bytes)", job.jobId, captureId, file.getSize());
+        return job;
+    }
+
+    /**
+     * Get a job status, only the requestor or a platform admin can access it
+     * @param requestorId - user login or apikey
+     * @param jobId - job identifier
+     * @return the job
+     * @throws ITNotFoundException - job does not exist or has expired
+     * @throws ITRightException - user not authorized to access the job
+     */
+    public BulkJob getJob(String requestorId, String jobId) throws ITNotFoundException, ITRightException {
+        BulkJob job = (jobId != null) ? jobs.get(jobId) : null;
+        if ( job == null ) throw new ITNotFoundException("capture-ids-bulk-job-not-found");
+        if ( job.requestorId.compareTo(requestorId) != 0 ) {
+            try {
+                User _requestor = userCommon.getUser(requestorId);
+                if ( !_requestor.isInRole(UsersRolesCache.StandardRoles.ROLE_GOD_ADMIN) ) {
+                    throw new ITRightException("capture-ids-bulk-job-not-authorized");
+                }
+            } catch (ITNotFoundException x) {
+                throw new ITRightException("user-profile-user-not-found");
+            }
+        }
+        return job;
+    }
+
+    /**
+     * Remove the terminated jobs once the retention period is over
+     */
+    @Scheduled(fixedRate = 60_000, initialDelay = 60_000)
+    protected void purgeJobs() {
+        long limit = Now.NowUtcMs() - (captureConfig.getCaptureProtocolIdsBulkRetention() * 1000L);
+        jobs.values().removeIf(job -> !job.isActive() && job.endMs < limit);
+    }
+
+    // ================================================================================================================
+    // Job processing
+    // ================================================================================================================
+
+    protected void processJob(BulkJob job, CaptureIdsService.IdsImportContext ctx) {
+        job.state = IdsBulkJobState.RUNNING;
+        job.startMs = Now.NowUtcMs();
+        int chunkSize = Math.max(1, captureConfig.getCaptureProtocolIdsBulkChunkSize());
+        try ( BufferedReader r = Files.newBufferedReader(job.file, StandardCharsets.UTF_8) ) {
+            r.readLine(); // header, already verified
+            ArrayList<CaptureIdsService.IdsImportLine> chunk = new ArrayList<>(chunkSize);
+            String line;
+            long cLine = 0;
+            while ( (line = r.readLine()) != null ) {
+                cLine++;
+                if ( line.isBlank() ) continue;
+                chunk.add(captureIdsService.parseLine(ctx, cLine, line));
+                if ( chunk.size() >= chunkSize ) {
+                    processChunk(job, ctx, chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+                if ( Thread.currentThread().isInterrupted() ) throw new InterruptedException();
+            }
+            if ( !chunk.isEmpty() ) processChunk(job, ctx, chunk);
+            if ( job.status == null ) job.status = InsertIDsStatus.INSERTED;
+            job.state = IdsBulkJobState.DONE;
+            log.info("[capture] Ids bulk import {} done, {} lines, {} inserted, {} rejected in {} ms",
+                    job.jobId,
+                    job.linesProcessed.get(),
+                    job.inserted.get(),
+                    job.errorCount.get(),
+                    Now.NowUtcMs() - job.startMs
+            );
+        } catch (InterruptedException x) {
+            job.status = InsertIDsStatus.UNKNOWN_ERROR;
+            job.state = IdsBulkJobState.FAILED;
+            Thread.currentThread().interrupt();
+        } catch (Exception x) {
+            log.error("[capture] Ids bulk import {} failed after {} lines: {}", job.jobId, job.linesProcessed.get(), x.getMessage());
+            job.status = InsertIDsStatus.UNKNOWN_ERROR;
+            job.state = IdsBulkJobState.FAILED;
+        } finally {
+            job.endMs = Now.NowUtcMs();
+            deleteJobFile(job);
+        }
+    }
+
+    protected void processChunk(
+            BulkJob job,
+            CaptureIdsService.IdsImportContext ctx,
+            List<CaptureIdsService.IdsImportLine> chunk
+    ) {
+        captureIdsService.checkUniqueness(ctx, chunk);
+        int inserted = captureIdsService.bulkInsert(chunk);
+        job.inserted.addAndGet(inserted);
+        idsInserted.addAndGet(inserted);
+        job.linesProcessed.addAndGet(chunk.size());
+        linesProcessed.addAndGet(chunk.size());
+        for ( CaptureIdsService.IdsImportLine l : chunk ) {
+            if ( l.status == null ) continue;
+            // status reports the first error as for the synchronous insertion
+            if ( job.status == null ) job.status = l.status;
+            job.errorCount.incrementAndGet();
+            linesRejected.incrementAndGet();
+            if ( job.errors.size() < captureConfig.getCaptureProtocolIdsBulkMaxErrors() ) {
+                job.errors.add(IdsBulkLineError.of(l.line, l.status));
+            } else job.errorsTruncated = true;
+        }
+    }
+
+    protected void deleteJobFile(BulkJob job) {
+        if ( job.file == null ) return;
+        try {
+            Files.deleteIfExists(job.file);
+        } catch (IOException x) {
+            log.warn("[capture] Ids bulk import {}, failed to remove temporary file {}", job.jobId, job.file);
+        }
+        job.file = null;
+    }
+
+    // ================================================================================================================
+    // Metrics
+    // ================================================================================================================
+
+    private final AtomicLong linesProcessed = new AtomicLong(0);
+    private final AtomicLong idsInserted = new AtomicLong(0);
+    private final AtomicLong linesRejected = new AtomicLong(0);
+
+    public Supplier<Number> getLinesProcessed() {
+        return () -> linesProcessed.get();
+    }
+
+    public Supplier<Number> getIdsInserted() {
+        return () -> idsInserted.get();
+    }
+
+    public Supplier<Number> getLinesRejected() {
+        return () -> linesRejected.get();
+    }
+
+}
@@ -22,11 +22,14 @@ package com.disk91.capture.services;
 import com.disk91.audit.integration.AuditIntegration;
 import com.disk91.capture.Capture;
 import com.disk91.capture.api.interfaces.*;
+import com.disk91.capture.api.interfaces.sub.IdsBulkLineError;
+import com.disk91.capture.api.interfaces.sub.InsertIDsStatus;
 import com.disk91.capture.config.CaptureConfig;
 import com.disk91.capture.interfaces.AbstractProtocol;
 import com.disk91.capture.mdb.entities.CaptureEndpoint;
 import com.disk91.capture.mdb.entities.ProtocolIds;
 import com.disk91.capture.mdb.entities.Protocols;
+import com.disk91.capture.mdb.entities.sub.IdStateEnum;
 import com.disk91.capture.mdb.entities.sub.MandatoryField;
 import com.disk91.capture.mdb.entities.sub.ProtocolId;
 import com.disk91.capture.mdb.repositories.ProtocolIdsRepository;
@@ -38,20 +41,25 @@ import com.disk91.common.tools.exceptions.*;
 import com.disk91.users.mdb.entities.User;
 import com.disk91.users.services.UserCommon;
 import com.disk91.users.services.UsersRolesCache;
+import com.mongodb.bulk.BulkWriteError;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.disk91.capture.api.interfaces.sub.InsertIDsStatus.*;
 import static com.disk91.capture.mdb.entities.sub.IdStateEnum.*;
@@ -76,6 +84,9 @@ public class CaptureIdsService {
     @Autowired
     protected ProtocolIdsRepository protocolIdsRepository;
 
+    @Autowired
+    protected MongoTemplate mongoTemplate;
+
     @Autowired
     protected CaptureConfig captureConfig;
 
@@ -96,11 +107,278 @@ public class CaptureIdsService {
         } else return value;
     }
 
+    /**
+     * Import context shared by the different ID insertion paths (synchronous list or bulk file import). It
+     * contains the resolved endpoint, protocol definition and the verified header mapping.
+     */
+    protected static class IdsImportContext {
+        protected CaptureEndpoint endpoint;
+        protected Protocols protocol;
+        protected ProtocolId protocolId;
+        protected IdStateEnum initialState;
+        protected String requestorId;
+        protected String[] headers;
+        protected final HashMap<String, MandatoryField> fields = new HashMap<>();
+        // unique values already accepted during this import, per field name, to detect duplicates in the input
+        protected final HashMap<String, HashSet<String>> uniqueSeen = new HashMap<>();
+    }
+
+    /**
+     * One parsed line of the import, the id is ready to be inserted when status is null
+     */
+    protected static class IdsImportLine {
+        protected long line;
+        protected ProtocolIds id;
+        protected InsertIDsStatus status;
+    }
+
+    /**
+     * Verify the requestor rights on the endpoint, the protocol definition, the initial state and the headers,
+     * then fill the import context.
+     * @param ctx - context to fill
+     * @param requestorId - user login or apikey
+     * @param captureId - endpoint reference
+     * @param initialState - expected initial state for the IDs
+     * @param headerLine - csv header line
+     * @return null when the import can start, the status to return otherwise
+     * @throws ITRightException - when the user is not authorized on the endpoint
+     */
+    protected InsertIDsStatus prepareImport(
+            IdsImportContext ctx,
+            String requestorId,
+            String captureId,
+            IdStateEnum initialState,
+            String headerLine
+    ) throws ITRightException {
+
+        if (requestorId == null || requestorId.isEmpty()) {
+            throw new ITRightException("user-profile-login-invalid");
+        }
+        try {
+            // get user considering API key
+            User _requestor = userCommon.getUser(requestorId);
+            try {
+                CaptureEndpoint e = captureEndpointCache.getCaptureEndpoint(captureId);
+                if ( e.getOwner().compareTo(_requestor.getLogin()) != 0 && !_requestor.isInRole(UsersRolesCache.StandardRoles.ROLE_GOD_ADMIN) ) {
+                    throw new ITRightException("capture-endpoint-user-not-authorized");
+                }
+                ctx.endpoint = e;
+            } catch ( ITNotFoundException x ) {
+                throw new ITRightException("capture-endpoint-user-not-authorized");
+            }
+        } catch (ITNotFoundException x) {
+            throw new ITRightException("user-profile-user-not-found");
+        }
+        ctx.requestorId = requestorId;
+
+        // get the related definitions
+        try {
+            ctx.protocol = captureProtocolsCache.getProtocol(ctx.endpoint.getProtocolId());
+            for ( ProtocolId _pid : ctx.protocol.getProtocolIds() ) {
+                if ( _pid.getName().compareTo(ctx.endpoint.getIdTypeName()) == 0 ) {
+                    ctx.protocolId = _pid;
+                    break;
+                }
+            }
+            if ( ctx.protocolId == null ) return INVALID_TYPE_ID;
+        } catch (ITNotFoundException ex) {
+            return INVALID_PROTOCOL_ID;
+        }
+
+        // Make sure status is valid
+        if ( initialState == null ) return INVALID_STATUS;
+        switch ( initialState ) {
+            case UNKNOWN:               // Will be dynamically set later by the driver
+            case NOT_ASSIGNED:
+            case ASSIGNED:
+            case IN_USE:
+            case WAITING_RENEWAL:
+                break;
+            case RETURNED:
+            case EXPIRED_RETURNED:
+            case EXPIRED_IN_USE:
+            case REMOVED:
+                return INVALID_STATUS;
+        }
+        ctx.initialState = initialState;
+
+        // check the header format and all are the one expected
+        if ( headerLine == null ) return INVALID_HEADER;
+        ctx.headers = headerLine.trim().split("[;,]");
+        if ( ctx.headers.length == ctx.protocolId.getMandatoryFields().size() ) {
+            HashMap<String, Integer> expectedHeaders = new HashMap<>();
+            for ( MandatoryField mf : ctx.protocolId.getMandatoryFields() ) {
+                expectedHeaders.put(mf.getName().toLowerCase(), 0);
+                ctx.fields.put(mf.getName().toLowerCase(), mf);
+            }
+            for (String header : ctx.headers) {
+                String _header = header.toLowerCase();
+                if( expectedHeaders.containsKey(_header) ) {
+                    if (expectedHeaders.get(_header) == 0 ) {
+                        expectedHeaders.put(_header, expectedHeaders.get(_header) + 1);
+                    } else return DUPLICATED_HEADER;
+                } else return INVALID_HEADER;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parse and verify one csv line, encrypt the fields when required. The uniqueness is not verified here
+     * as it is done by chunk with checkUniqueness.
+     * @param ctx - import context
+     * @param cLine - line number in the input (for error report)
+     * @param line - csv line
+     * @return the parsed line with the ID to insert or the error status
+     */
+    protected IdsImportLine parseLine(IdsImportContext ctx, long cLine, String line) {
+        IdsImportLine r = new IdsImportLine();
+        r.line = cLine;
+
+        String[] values = line.split("[;,]");
+        if ( values.length != ctx.protocolId.getMandatoryFields().size() ) {
+            r.status = MISSING_DATA;
+            return r;
+        }
+        ProtocolIds _id = new ProtocolIds();
+        _id.setProtocolId(ctx.protocol.getId());
+        _id.setConfigTypeId(ctx.endpoint.getIdTypeName());
+        _id.setCaptureId(ctx.endpoint.getRef());
+        _id.setState(ctx.initialState);
+        _id.setCreationBy(ctx.requestorId);
+        _id.setCreationMs(Now.NowUtcMs());
+        _id.setUpdateMs(0);
+        _id.setLastScanMs(0);
+        if ( ctx.initialState == IN_USE || ctx.initialState == WAITING_RENEWAL || ctx.initialState == ASSIGNED ) {
+            _id.setAssignedMs(Now.NowUtcMs());
+        } else _id.setAssignedMs(0);
+        _id.setReleasedMs(0);
+        _id.setSubscriptionStartMs(0);
+        _id.setSubscriptionEndMs(0);
+        _id.setRemovalMs(0);
+        _id.setCustomConfig(new ArrayList<>());
+        // Process fields
+        for ( int i = 0 ; i < ctx.headers.length ; i++ ) {
+            MandatoryField mf = ctx.fields.get(ctx.headers[i].toLowerCase());
+            if ( mf == null ) {
+                // inconsistent as header should have been checked before, but just in case, we check again
+                r.status = INVALID_HEADER;
+                return r;
+            }
+            if ( !mf.isValueValid( values[i] ) ) {
+                r.status = MALFORMED_DATA;
+                return r;
+            }
+            if ( mf.isEncrypted() ) {
+                try {
+                    if (values[i] == null) values[i] = "";
+                    values[i] = encrypteField(values[i]);
+                } catch ( ITParseException x) {
+                    r.status = ENCRYPTION_FAILURE;
+                    return r;
+                }
+            }
+            _id.getCustomConfig().add(CustomField.of(mf.getName(), values[i]));
+        }
+        r.id = _id;
+        return r;
+    }
+
+    /**
+     * Verify the unique fields for a chunk of parsed lines. For each unique field, a single query with $in on
+     * the chunk values is made (supported by the captureId / customConfig index) and the values are also
+     * compared to the ones already accepted in the same import. Lines with duplicates are marked NOT_UNIQUE.
+     * @param ctx - import context
+     * @param chunk - parsed lines
+     */
+    protected void checkUniqueness(IdsImportContext ctx, List<IdsImportLine> chunk) {
+        for ( MandatoryField mf : ctx.fields.values() ) {
+            if ( !mf.isUnique() ) continue;
+            HashSet<String> seen = ctx.uniqueSeen.computeIfAbsent(mf.getName(), k -> new HashSet<>());
+
+            // collect the values to verify, duplicates in the input are rejected immediately
+            HashMap<String, IdsImportLine> candidates = new HashMap<>();
+            for ( IdsImportLine l : chunk ) {
+                if ( l.status != null ) continue;
+                try {
+                    String v = l.id.getOneField(mf.getName());
+                    if ( seen.contains(v) || candidates.containsKey(v) ) {
+                        l.status = NOT_UNIQUE;
+                    } else candidates.put(v, l);
+                } catch (ITNotFoundException x) {
+                    l.status = MISSING_DATA;
+                }
+            }
+            if ( candidates.isEmpty() ) continue;
+
+            Query q = new Query(
+                    Criteria.where("captureId").is(ctx.endpoint.getRef())
+                            .and("customConfig").elemMatch(
+                                    Criteria.where("name").is(mf.getName()).and("value").in(candidates.keySet())
+                            )
+            );
+            q.fields().include("customConfig");
+            for ( ProtocolIds existing : mongoTemplate.find(q, ProtocolIds.class) ) {
+                if ( existing.getCustomConfig() == null ) continue;
+                for ( CustomField cf : existing.getCustomConfig() ) {
+                    if ( cf.getName().equals(mf.getName()) ) {
+                        IdsImportLine l = candidates.get(cf.getValue());
+                        if ( l != null ) l.status = NOT_UNIQUE;
+                    }
+                }
+            }
+        }
+
+        // mark the accepted values as seen for the next chunks
+        for ( MandatoryField mf : ctx.fields.values() ) {
+            if ( !mf.isUnique() ) continue;
+            HashSet<String> seen = ctx.uniqueSeen.get(mf.getName());
+            for ( IdsImportLine l : chunk ) {
+                if ( l.status != null ) continue;
+                try {
+                    seen.add(l.id.getOneField(mf.getName()));
+                } catch (ITNotFoundException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Insert the valid lines of a chunk with an unordered bulk insert, the lines failing the insertion are
+     * marked UNKNOWN_ERROR, all of them when the bulk failed globally.
+     * @param chunk - parsed lines, only the one with no error status are inserted
+     * @return number of inserted IDs
+     */
+    protected int bulkInsert(List<IdsImportLine> chunk) {
+        ArrayList<IdsImportLine> toInsert = new ArrayList<>();
+        for ( IdsImportLine l : chunk ) {
+            if ( l.status == null ) toInsert.add(l);
+        }
+        if ( toInsert.isEmpty() ) return 0;
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProtocolIds.class);
+        for ( IdsImportLine l : toInsert ) bulk.insert(l.id);
+        try {
+            return bulk.execute().getInsertedCount();
+        } catch (BulkOperationException x) {
+            for ( BulkWriteError err : x.getErrors() ) {
+                if ( err.getIndex() < toInsert.size() ) toInsert.get(err.getIndex()).status = UNKNOWN_ERROR;
+            }
+            log.warn("[capture] Ids bulk insertion partially failed for {} lines", x.getErrors().size());
+            return x.getResult().getInsertedCount();
+        } catch (Exception x) {
+            for ( IdsImportLine l : toInsert ) l.status = UNKNOWN_ERROR;
+            log.error("[capture] Ids bulk insertion failed for {} lines: {}", toInsert.size(), x.getMessage());
+            return 0;
+        }
+    }
+
     /**
      * `insertIDs` lets you add IDs to the ID database.
      *  For each ID, the system checks that it matches the expected data format, then scans the entire list to determine
      *  how many errors there may be. If there are no errors in the whole list, the IDs can be inserted into the database.
      *  If an error is found, the process stops on the line containing the first error.
+     *  Uniqueness is verified by chunk and the insertion is made with bulk operations. For large imports, prefer the
+     *  bulk file import from CaptureIdsBulkService.
      *
      * @param requestorId
      * @param body
@@ -117,172 +395,61 @@ public class CaptureIdsService {
         CaptureInsertIdsResponseItf ret = new CaptureInsertIdsResponseItf();
         ret.setInserted(0);
         ret.setErrorCount(0);
-        ret.setErrorCount(0);
         ret.setErrorFirstLine(0);
-        if (requestorId == null || requestorId.isEmpty()) {
-            throw new ITRightException("user-profile-login-invalid");
-        }
-        try {
-            // get user considering API key
-            User _requestor = userCommon.getUser(requestorId);
-            try {
-                CaptureEndpoint e = captureEndpointCache.getCaptureEndpoint(body.getCaptureId());
-                if ( e.getOwner().compareTo(_requestor.getLogin()) == 0 || _requestor.isInRole(UsersRolesCache.StandardRoles.ROLE_GOD_ADMIN) ) {
-                    // authorized to insert ; create the Array list in memory to insert in DB if no error
-                    List<ProtocolIds> idsToInsert = new ArrayList<>();
-
-                    // get the related definitions
-                    Protocols p = null;
-                    ProtocolId pid = null;
-                    try {
-                        p = captureProtocolsCache.getProtocol(e.getProtocolId());
-                        for ( ProtocolId _pid : p.getProtocolIds() ) {
-                            if ( _pid.getName().compareTo(e.getIdTypeName()) == 0 ) {
-                                pid = _pid;
-                                break;
-                            }
-                        }
-                        if ( pid == null ) {
-                            ret.setStatus(INVALID_TYPE_ID);
-                            return ret;
-                        }
-                    } catch (ITNotFoundException ex) {
-                        ret.setStatus(INVALID_PROTOCOL_ID);
-                        return ret;
-                    }
 
-                    // Make sure status is valid
-                    switch ( body.getInitialState() ) {
-                        case UNKNOWN:               // Will be dynamically set later by the driver
-                        case NOT_ASSIGNED:
-                        case ASSIGNED:
-                        case IN_USE:
-                        case WAITING_RENEWAL:
-                            break;
-                        case RETURNED:
-                        case EXPIRED_RETURNED:
-                        case EXPIRED_IN_USE:
-                        case REMOVED:
-                            ret.setStatus(INVALID_STATUS);
-                            return ret;
-                    }
-
-                    // check the header format and all are the one expected
-                    String[] headers = body.getHeaders().split("[;,]");
-                    HashMap<String, MandatoryField> mandatoryFieldHashMap = new HashMap<>();
-                    if ( headers.length == pid.getMandatoryFields().size() ) {
-                        HashMap<String, Integer> expectedHeaders = new HashMap<>();
-                        for ( MandatoryField mf : pid.getMandatoryFields() ) {
-                            expectedHeaders.put(mf.getName().toLowerCase(), 0);
-                            mandatoryFieldHashMap.put(mf.getName().toLowerCase(), mf);
-                        }
-                        for (String header : headers) {
-                            if( expectedHeaders.containsKey(header.toLowerCase()) ) {
-                                if (expectedHeaders.get(header) == 0 ) {
-                                    expectedHeaders.put(header, expectedHeaders.get(header) + 1);
-                                } else {
-                                    ret.setStatus(DUPLICATED_HEADER);
-                                    return ret;
-                                }
-                            } else {
-                                ret.setStatus(INVALID_HEADER);
-                                return ret;
-                            }
-                        }
-                    }
+        IdsImportContext ctx = new IdsImportContext();
+        InsertIDsStatus s = prepareImport(ctx, requestorId, body.getCaptureId(), body.getInitialState(), body.getHeaders());
+        if ( s != null ) {
+            ret.setStatus(s);
+            return ret;
+        }
 
-                    // header is correct, process the lines
-                    int errorCount = 0;
-                    int inserted = 0;
-                    int cLine = 0;
-                    for ( String line : body.getIds() ) {
-                        cLine++;
-                        String[] values = line.split("[;,]");
-                        if ( values.length == pid.getMandatoryFields().size() ) {
-                            ProtocolIds _id = new ProtocolIds();
-                            _id.setProtocolId(p.getId());
-                            _id.setConfigTypeId(e.getIdTypeName());
-                            _id.setCaptureId(e.getRef());
-                            _id.setState(body.getInitialState());
-                            _id.setCreationBy(requestorId);
-                            _id.setCreationMs(Now.NowUtcMs());
-                            _id.setUpdateMs(0);
-                            _id.setLastScanMs(0);
-                            if ( body.getInitialState() == IN_USE || body.getInitialState() == WAITING_RENEWAL || body.getInitialState() == ASSIGNED ) {
-                                _id.setAssignedMs(Now.NowUtcMs());
-                            } else _id.setAssignedMs(0);
-                            _id.setReleasedMs(0);
-                            _id.setSubscriptionStartMs(0);
-                            _id.setSubscriptionEndMs(0);
-                            _id.setRemovalMs(0);
-                            _id.setCustomConfig(new ArrayList<>());
-                            // Process fields
-                            for ( int i = 0 ; i < headers.length ; i++ ) {
-                                MandatoryField mf = mandatoryFieldHashMap.get(headers[i].toLowerCase());
-                                if ( mf != null ) {
-                                    if ( mf.isValueValid( values[i] ) ) {
-                                        if ( mf.isEncrypted() ) {
-                                            try {
-                                                if (values[i] == null) values[i] = "";
-                                                String encryptedValue = encrypteField(values[i]);
-                                                values[i] = encryptedValue;
-                                            } catch ( ITParseException x) {
-                                                if ( ret.getErrorFirstLine() == 0 ) { ret.setStatus(ENCRYPTION_FAILURE); ret.setErrorFirstLine(cLine); }
-                                                errorCount++;
-                                                break;
-                                            }
-                                        }
-                                        _id.getCustomConfig().add(CustomField.of(mf.getName(), values[i]));
-
-                                        if ( mf.isUnique() ) {
-                                            // We need to make sure we don't have an existing value for these fields and endpoint
-                                            if ( protocolIdsRepository.findByCaptureIdAndCustomConfigNameAndValue(
-                                                    e.getRef(),
-                                                    mf.getName(),
-                                                    values[i]
-                                            ).isPresent() ) {
-                                                if ( ret.getErrorFirstLine() == 0 ) { ret.setStatus(NOT_UNIQUE); ret.setErrorFirstLine(cLine); }
-                                                errorCount++;
-                                                break;
-                                            }
-                                        }
-
-                                    } else {
-                                        if ( ret.getErrorFirstLine() == 0 ) { ret.setStatus(MALFORMED_DATA); ret.setErrorFirstLine(cLine); }
-                                        errorCount++;
-                                        break;
-                                    }
-                                } else {
-                                    // inconsistent as header should have been checked before, but just in case, we check again
-                                    if ( ret.getErrorFirstLine() == 0 ) { ret.setStatus(INVALID_HEADER); ret.setErrorFirstLine(cLine); }
-                                    errorCount++;
-                                    break;
-                                }
-                            }
-                            idsToInsert.add(_id);
-                        } else {
-                            if ( ret.getErrorFirstLine() == 0 ) { ret.setStatus(MISSING_DATA); ret.setErrorFirstLine(cLine); }
-                            errorCount++;
-                        }
+        // header is correct, process the lines by chunk
+        int chunkSize = Math.max(1, captureConfig.getCaptureProtocolIdsBulkChunkSize());
+        ArrayList<List<IdsImportLine>> chunks = new ArrayList<>();
+        ArrayList<IdsImportLine> chunk = new ArrayList<>();
+        int errorCount = 0;
+        int cLine = 0;
+        for ( String line : body.getIds() ) {
+            cLine++;
+            chunk.add(parseLine(ctx, cLine, line));
+            if ( chunk.size() >= chunkSize || cLine == body.getIds().size() ) {
+                checkUniqueness(ctx, chunk);
+                for ( IdsImportLine l : chunk ) {
+                    if ( l.status != null ) {
+                        if ( ret.getErrorFirstLine() == 0 ) { ret.setStatus(l.status); ret.setErrorFirstLine(l.line); }
+                        errorCount++;
                     }
-                    if ( errorCount == 0 ) {
-                        // no error, we can insert the list in DB
-                        for (ProtocolIds _id : idsToInsert) {
-                            protocolIdsRepository.save(_id);
-                            inserted++;
-                        }
-                        ret.setInserted(inserted);
-                        ret.setStatus(INSERTED);
-                    } else ret.setErrorCount(errorCount);
-                } else {
-                    throw new ITRightException("capture-endpoint-user-not-authorized");
                 }
-            } catch ( ITNotFoundException x ) {
-                throw new ITRightException("capture-endpoint-user-not-authorized");
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
             }
-        } catch (ITNotFoundException x) {
-            throw new ITRightException("user-profile-user-not-found");
         }
+        if ( errorCount == 0 ) {
+            // no error, we can insert the list in DB
+            int inserted = 0;
+            for ( List<IdsImportLine> c : chunks ) {
+                inserted += bulkInsert(c);
+            }
+            ret.setInserted(inserted);
+            ret.setStatus(INSERTED);
+            // the lines refused by the database are reported, nothing or part of the list has been inserted
+            for ( List<IdsImportLine> c : chunks ) {
+                for ( IdsImportLine l : c ) {
+                    if ( l.status == null ) continue;
+                    if ( ret.getErrorFirstLine() == 0 ) ret.setErrorFirstLine(l.line);
+                    errorCount++;
+                    if ( ret.getErrors().size() < captureConfig.getCaptureProtocolIdsBulkMaxErrors() ) {
+                        ret.getErrors().add(IdsBulkLineError.of(l.line, l.status));
+                    }
+                }
+            }
+            if ( errorCount > 0 ) {
+                ret.setStatus( (inserted > 0) ? PARTIALLY_INSERTED : UNKNOWN_ERROR );
+                ret.setErrorCount(errorCount);
+                log.warn("[capture] Ids insertion for endpoint {}, {} inserted, {} failed", body.getCaptureId(), inserted, errorCount);
+            }
+        } else ret.setErrorCount(errorCount);
         return ret;
     }
 
@@ -313,25 +480,8 @@ public class CaptureIdsService {
     ) throws ITOverQuotaException, ITTooManyException, ITParseException  {
 
         try {
-            Protocols p = captureProtocolsCache.getProtocol(endpoint.getProtocolId());
             // Invoke the protocol ingestion
-            AbstractProtocol ap = protocolCache.get(p.getProcessingClassName());
-            if (ap == null) {
-                synchronized (protocolCache) {
-                    // Manage async call, block on cache and when released make sure another thread did not create it in the meantime
-                    ap = protocolCache.get(p.getProcessingClassName());
-                    if (ap == null) {
-                        try {
-                            Class<?> clazz = Class.forName(p.getProcessingClassName());
-                            ap = (AbstractProtocol) beanFactory.createBean(clazz);
-                            protocolCache.put(p.getProcessingClassName(), ap);
-                        } catch (Exception ex) {
-                            log.error("[capture] Id Subscribe/Renew failed, protocol class instantiation error for protocolId {}", endpoint.getProtocolId());
-                            throw new ITParseException("capture-protocol-class-instantiation-failed");
-                        }
-                    }
-                }
-            }
+            AbstractProtocol ap = getProtocolDriver(endpoint);
 
             try {
                 Object result = ap.getClass()
@@ -410,62 +560,43 @@ public class CaptureIdsService {
      * the APIs on partners’ backends. We will therefore cap it, for example, at one processing per second. This will
      * be a configuration variable, and it will run only if there are items that have not been re-checked for a period
      * of time, which is also configurable.
+     * The scheduling is made by CaptureIdsSyncService (parallel per endpoint, rate-limited per network server).
      */
 
     // Cache the protocols class to avoid recreation each time
-    protected final HashMap<String, AbstractProtocol> protocolCache = new HashMap<>();
+    protected final ConcurrentHashMap<String, AbstractProtocol> protocolCache = new ConcurrentHashMap<>();
 
     @Autowired(required = false)
     private AutowireCapableBeanFactory beanFactory;
 
 
-    private long loops = 0;
-    @Scheduled(fixedRate = 60_000, initialDelay = 10_000)
-    public void refreshIds() {
-        loops++;
-        //log.info("Trace : loops {}, rate {}, loop-1 {} vs loop-0 {}", loops, captureConfig.getCaptureProtocolIdsResyncMaxRate(), (int)((loops-1) * captureConfig.getCaptureProtocolIdsResyncMaxRate()), (int)(loops * captureConfig.getCaptureProtocolIdsResyncMaxRate()));
-
-        // process endpoint per endpoint to break on overQuota (quota or unsupported)
-        captureEndpointCache.forEachCaptureEndpoint((endpoint) -> {
-            // The number of devices to process depends on the rate, which can be greater than 1. In that case, we take
-            // the integer value. However, if it is less than 1, we need to accumulate it over successive runs until we reach a positive value.
-            int toProcess = 0;
-
-            if ( captureConfig.getCaptureProtocolIdsResyncMaxRate() > 1.0 ) {
-                toProcess = (int) captureConfig.getCaptureProtocolIdsResyncMaxRate();
-            } else {
-                if ( (int)((loops-1) * captureConfig.getCaptureProtocolIdsResyncMaxRate()) < (int)(loops * captureConfig.getCaptureProtocolIdsResyncMaxRate()) ) {
-                    toProcess = 1;
-                }
-            }
-            if ( toProcess == 0 ) {
-                // no processing to do at this run
-                return;
-            }
-
-            // get the associated IDs to review job run every 1 minute, and we have a max rate per endpoint per minute as
-            // a parameter so this fixes the max number of IDs to review
-            long inThePastMs = (captureConfig.getCaptureProtocolIdsRecheckRateDays()*Now.ONE_FULL_DAY);
-            Random rnd = new Random(Now.NowUtcMs());
-            double v = 1 + ( ( ( rnd.nextDouble() ) * 0.4 ) - 0.2); // we want a value between 0,8 and 1,2 to randomize the refresh, based on the initial duration
-            inThePastMs = (long) ( (double)inThePastMs * v );
-
-            List<ProtocolIds> ids = protocolIdsRepository.findByCaptureIdAndLastScanMsBeforeAndNotRemoved(
-                    endpoint.getRef(),
-                    Now.NowUtcMs() - inThePastMs,
-                    PageRequest.of(0,toProcess)
-            );
-
-            for ( ProtocolIds _id : ids ) {
-                try {
-                    refreshOneId(endpoint, _id);
-                } catch (ITOverQuotaException e) {
-                    // stop processing the other IDs for this endpoint, we will retry at the next run
-                    break;
+    /**
+     * Get the protocol driver instance associated to an endpoint, drivers are created once and cached
+     * @param endpoint - endpoint
+     * @return the driver
+     * @throws ITNotFoundException - protocol not found
+     * @throws ITParseException - driver class can't be instantiated
+     */
+    protected AbstractProtocol getProtocolDriver(CaptureEndpoint endpoint) throws ITNotFoundException, ITParseException {
+        Protocols p = captureProtocolsCache.getProtocol(endpoint.getProtocolId());
+        AbstractProtocol ap = protocolCache.get(p.getProcessingClassName());
+        if (ap == null) {
+            synchronized (protocolCache) {
+                // Manage async call, block on cache and when released make sure another thread did not create it in the meantime
+                ap = protocolCache.get(p.getProcessingClassName());
+                if (ap == null) {
+                    try {
+                        Class<?> clazz = Class.forName(p.getProcessingClassName());
+                        ap = (AbstractProtocol) beanFactory.createBean(clazz);
+                        protocolCache.put(p.getProcessingClassName(), ap);
+                    } catch (Exception ex) {
+                        log.error("[capture] Protocol class instantiation error for protocolId {}", endpoint.getProtocolId());
+                        throw new ITParseException("capture-protocol-class-instantiation-failed");
+                    }
                 }
             }
-        });
-
+        }
+        return ap;
     }
 
     /**
@@ -481,68 +612,40 @@ public class CaptureIdsService {
             ProtocolIds _id
     ) throws ITOverQuotaException
     {
+        AbstractProtocol ap;
         try {
-            Protocols p = captureProtocolsCache.getProtocol(endpoint.getProtocolId());
-            // Invoke the protocol ingestion
-            AbstractProtocol ap = protocolCache.get(p.getProcessingClassName());
-            if (ap == null) {
-                synchronized (protocolCache) {
-                    // Manage async call, block on cache and when released make sure another thread did not create it in the meantime
-                    ap = protocolCache.get(p.getProcessingClassName());
-                    if (ap == null) {
-                        try {
-                            Class<?> clazz = Class.forName(p.getProcessingClassName());
-                            ap = (AbstractProtocol) beanFactory.createBean(clazz);
-                            protocolCache.put(p.getProcessingClassName(), ap);
-                        } catch (Exception ex) {
-                            log.error("[capture] Id Check failed, protocol class instantiation error for protocolId {}", endpoint.getProtocolId());
-                            throw new ITOverQuotaException("capture-protocol-class-instantiation-failed");
-                        }
-                    }
-                }
-            }
-            try {
-                Object result = ap.getClass()
-                        .getMethod("checkId",
-                                CaptureEndpoint.class,
-                                ProtocolIds.class
-                        )
-                        .invoke(ap,
-                                endpoint,
-                                _id
-                        );
-                if (result != null) {
-                    // Id has been updated
-                    ProtocolIds reviewedId = (ProtocolIds) result;
-                    log.info("[capture] Id Check updated {}, new state {}, subscriptionStart {}, subscriptionEnd {}",
-                            reviewedId.getId(),
-                            reviewedId.getState(), reviewedId.getSubscriptionStartMs(),
-                            reviewedId.getSubscriptionEndMs()
-                    );
-                    reviewedId.setLastScanMs(Now.NowUtcMs());
-                    reviewedId.setUpdateMs(Now.NowUtcMs());
-                    protocolIdsRepository.save(reviewedId);
-                } else {
-                    // no change, just update the scan date
-                    _id.setLastScanMs(Now.NowUtcMs());
-                    protocolIdsRepository.save(_id);
-                }
-
-            } catch (NoSuchMethodException | IllegalAccessException x) {
-                log.error("[capture] Id Check failed, protocol class checkId method missing for protocolId {}", endpoint.getProtocolId());
-                throw new ITOverQuotaException("capture-protocol-class-check-id-method-missing");
-            } catch (InvocationTargetException x) {
-                Throwable _expect = x.getCause();
-                // Re-throw known business exceptions
-                if (_expect instanceof ITOverQuotaException) {
-                    // skip the execution of the other IDs
-                    log.debug("[capture] Id Check stopped, protocol class checkId method over quota for protocolId {}", endpoint.getProtocolId());
-                    throw new ITOverQuotaException("capture-protocol-class-check-id-over-quota");
-                }
-            }
+            ap = getProtocolDriver(endpoint);
         } catch (ITNotFoundException e) {
             // protocol not found
             log.warn("[capture] Id Check failed, protocol not found for protocolId {}", endpoint.getProtocolId());
+            return _id;
+        } catch (ITParseException e) {
+            log.error("[capture] Id Check failed, protocol class instantiation error for protocolId {}", endpoint.getProtocolId());
+            throw new ITOverQuotaException("capture-protocol-class-instantiation-failed");
+        }
+        try {
+            ProtocolIds reviewedId = ap.checkId(endpoint, _id);
+            if (reviewedId != null) {
+                // Id has been updated
+                log.info("[capture] Id Check updated {}, new state {}, subscriptionStart {}, subscriptionEnd {}",
+                        reviewedId.getId(),
+                        reviewedId.getState(), reviewedId.getSubscriptionStartMs(),
+                        reviewedId.getSubscriptionEndMs()
+                );
+                reviewedId.setLastScanMs(Now.NowUtcMs());
+                reviewedId.setUpdateMs(Now.NowUtcMs());
+                protocolIdsRepository.save(reviewedId);
+            } else {
+                // no change, just update the scan date
+                _id.setLastScanMs(Now.NowUtcMs());
+                protocolIdsRepository.save(_id);
+            }
+        } catch (ITOverQuotaException x) {
+            // skip the execution of the other IDs
+            log.debug("[capture] Id Check stopped, protocol class checkId method over quota for protocolId {}", endpoint.getProtocolId());
+            throw new ITOverQuotaException("capture-protocol-class-check-id-over-quota");
+        } catch (RuntimeException x) {
+            log.error("[capture] Id Check failed for id {} protocolId {}: {}", _id.getId(), endpoint.getProtocolId(), x.getMessage());
         }
         return _id;
     }
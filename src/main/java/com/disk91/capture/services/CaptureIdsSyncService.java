@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.capture.services;
+
+import com.disk91.capture.config.CaptureConfig;
+import com.disk91.capture.interfaces.AbstractProtocol;
+import com.disk91.capture.mdb.entities.CaptureEndpoint;
+import com.disk91.capture.mdb.entities.ProtocolIds;
+import com.disk91.capture.mdb.entities.ProtocolIdsSyncCursor;
+import com.disk91.capture.mdb.repositories.ProtocolIdsSyncCursorRepository;
+import com.disk91.common.tools.Now;
+import com.disk91.common.tools.TokenBucket;
+import com.disk91.common.tools.exceptions.ITNotFoundException;
+import com.disk91.common.tools.exceptions.ITOverQuotaException;
+import com.disk91.common.tools.exceptions.ITParseException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class CaptureIdsSyncService {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Synchronization of the ProtocolIds with the network servers (driver checkId). Every minute, the endpoints
+     * with IDs to review are dispatched on a bounded pool (one task per endpoint at a time). Each task takes
+     * tokens from the rate limit of its network server (shared by the endpoints with the same driver network
+     * server key) and reviews the IDs by batch when the driver supports it. The progression is stored in a
+     * cursor per endpoint (last ID processed) so a restart continues the current pass.
+     */
+
+    @Autowired
+    protected CaptureIdsService captureIdsService;
+
+    @Autowired
+    protected CaptureEndpointCache captureEndpointCache;
+
+    @Autowired
+    protected ProtocolIdsSyncCursorRepository protocolIdsSyncCursorRepository;
+
+    @Autowired
+    protected MongoTemplate mongoTemplate;
+
+    @Autowired
+    protected CaptureConfig captureConfig;
+
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    protected static class EndpointSyncStats {
+        protected final AtomicLong pending = new AtomicLong(0);
+        protected final AtomicLong synced = new AtomicLong(0);
+        protected final AtomicLong failed = new AtomicLong(0);
+        protected volatile long pausedUntilMs = 0;
+        // per endpoint gauges, removed with the endpoint
+        protected final ArrayList<Meter> meters = new ArrayList<>();
+    }
+
+    protected final ConcurrentHashMap<String, EndpointSyncStats> stats = new ConcurrentHashMap<>();
+    protected final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    protected final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    protected ExecutorService executor;
+    protected volatile boolean serviceEnable = false;
+
+    @PostConstruct
+    private void initCaptureIdsSyncService() {
+        log.info("[capture] initCaptureIdsSyncService");
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, captureConfig.getCaptureProtocolIdsSyncThreads()),
+                r -> {
+                    Thread t = new Thread(r);
+                    t.setName("capture-ids-sync-" + t.threadId());
+                    t.setDaemon(true);
+                    return t;
+                }
+        );
+        this.serviceEnable = true;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        log.info("[capture] CaptureIdsSyncService stopping");
+        this.serviceEnable = false;
+        this.executor.shutdown();
+        try {
+            if ( !this.executor.awaitTermination(30, TimeUnit.SECONDS) ) this.executor.shutdownNow();
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("[capture] CaptureIdsSyncService stopped");
+    }
+
+    /**
+     * Get or create the stats for an endpoint, the per endpoint gauges are registered on creation
+     * @param ref - endpoint ref
+     * @return stats
+     */
+    protected EndpointSyncStats getStats(String ref) {
+        return stats.computeIfAbsent(ref, k -> {
+            EndpointSyncStats s = new EndpointSyncStats();
+            s.meters.add(Gauge.builder("capture_ids_sync_pending", s, st -> st.pending.get())
+                    .description("[capture] Number of IDs waiting for synchronization with the network server")
+                    .tag("endpoint", k)
+                    .register(meterRegistry));
+            s.meters.add(Gauge.builder("capture_ids_sync_synced", s, st -> st.synced.get())
+                    .description("[capture] Number of IDs synchronized with the network server from start")
+                    .tag("endpoint", k)
+                    .register(meterRegistry));
+            s.meters.add(Gauge.builder("capture_ids_sync_failed", s, st -> st.failed.get())
+                    .description("[capture] Number of IDs synchronization failed or refused from start")
+                    .tag("endpoint", k)
+                    .register(meterRegistry));
+            return s;
+        });
+    }
+
+    /**
+     * Forget the synchronization state of a deleted endpoint, its gauges are removed
+     * @param ref - endpoint ref
+     */
+    public void discard(String ref) {
+        protocolIdsSyncCursorRepository.deleteById(ref);
+        EndpointSyncStats s = stats.remove(ref);
+        if ( s != null ) {
+            s.pending.set(0);
+            for ( Meter m : s.meters ) meterRegistry.remove(m);
+        }
+    }
+
+    // ================================================================================================================
+    // Scheduling
+    // ================================================================================================================
+
+    @Scheduled(fixedRate = 60_000, initialDelay = 10_000)
+    protected void scheduleSync() {
+        if ( !serviceEnable ) return;
+        long now = Now.NowUtcMs();
+        captureEndpointCache.forEachCaptureEndpoint((endpoint) -> {
+            EndpointSyncStats st = getStats(endpoint.getRef());
+            if ( st.pausedUntilMs > now ) return;
+            // previous task for this endpoint still in progress
+            if ( !running.add(endpoint.getRef()) ) return;
+            try {
+                executor.submit(() -> {
+                    try {
+                        syncEndpoint(endpoint, st);
+                    } catch (Exception x) {
+                        log.error("[capture] Ids sync failed for endpoint {}: {}", endpoint.getRef(), x.getMessage());
+                        st.pausedUntilMs = Now.NowUtcMs() + (captureConfig.getCaptureProtocolIdsSyncBackoff() * 1000L);
+                    } finally {
+                        running.remove(endpoint.getRef());
+                    }
+                });
+            } catch (RejectedExecutionException x) {
+                running.remove(endpoint.getRef());
+            }
+        });
+    }
+
+    // ================================================================================================================
+    // Endpoint synchronization
+    // ================================================================================================================
+
+    protected Query dueIdsQuery(String ref, long threshold) {
+        return new Query(
+                Criteria.where("captureId").is(ref)
+                        .and("removalMs").is(0)
+                        .and("lastScanMs").lt(threshold)
+        );
+    }
+
+    protected void pause(EndpointSyncStats st) {
+        st.pausedUntilMs = Now.NowUtcMs() + (captureConfig.getCaptureProtocolIdsSyncBackoff() * 1000L);
+    }
+
+    /**
+     * Review the IDs of an endpoint as long as the rate limit of its network server allows it
+     * @param endpoint - endpoint to synchronize
+     * @param st - endpoint stats
+     */
+    protected void syncEndpoint(CaptureEndpoint endpoint, EndpointSyncStats st) {
+        AbstractProtocol ap;
+        try {
+            ap = captureIdsService.getProtocolDriver(endpoint);
+        } catch (ITNotFoundException | ITParseException x) {
+            log.warn("[capture] Ids sync, no driver for endpoint {} protocol {}", endpoint.getRef(), endpoint.getProtocolId());
+            pause(st);
+            return;
+        }
+
+        // the rate is expressed per minute
+        TokenBucket bucket = buckets.computeIfAbsent(
+                ap.getNetworkServerKey(endpoint),
+                k -> new TokenBucket(
+                        captureConfig.getCaptureProtocolIdsSyncBurst(),
+                        captureConfig.getCaptureProtocolIdsResyncMaxRate() / 60_000.0
+                )
+        );
+        int batchSize = Math.max(1, Math.min(ap.getCheckIdsBatchSize(), captureConfig.getCaptureProtocolIdsSyncBatchMax()));
+        long threshold = Now.NowUtcMs() - (captureConfig.getCaptureProtocolIdsRecheckRateDays() * Now.ONE_FULL_DAY);
+
+        ProtocolIdsSyncCursor cursor = protocolIdsSyncCursorRepository.findById(endpoint.getRef()).orElse(null);
+        if ( cursor == null ) {
+            cursor = new ProtocolIdsSyncCursor();
+            cursor.setId(endpoint.getRef());
+        }
+        if ( cursor.getLastId() == null ) {
+            // new pass, refresh the number of IDs to process
+            st.pending.set(mongoTemplate.count(dueIdsQuery(endpoint.getRef(), threshold), ProtocolIds.class));
+            if ( st.pending.get() == 0 ) return;
+            cursor.setPassStartMs(Now.NowUtcMs());
+        } else if ( st.pending.get() == 0 ) {
+            // pass in progress after a restart
+            Query q = dueIdsQuery(endpoint.getRef(), threshold);
+            q.addCriteria(Criteria.where("id").gt(cursor.getLastId()));
+            st.pending.set(mongoTemplate.count(q, ProtocolIds.class));
+        }
+
+        while ( serviceEnable ) {
+            int tokens = bucket.tryAcquireUpTo(batchSize);
+            if ( tokens == 0 ) break;
+
+            Query q = dueIdsQuery(endpoint.getRef(), threshold);
+            if ( cursor.getLastId() != null ) q.addCriteria(Criteria.where("id").gt(cursor.getLastId()));
+            q.with(Sort.by(Sort.Direction.ASC, "id")).limit(tokens);
+            List<ProtocolIds> ids = mongoTemplate.find(q, ProtocolIds.class);
+            if ( ids.size() < tokens ) bucket.release(tokens - ids.size());
+            if ( ids.isEmpty() ) {
+                // end of the pass, next run will start from the beginning
+                cursor.setLastId(null);
+                cursor.setPassStartMs(0);
+                cursor.setLastPassEndMs(Now.NowUtcMs());
+                cursor.setUpdateMs(Now.NowUtcMs());
+                protocolIdsSyncCursorRepository.save(cursor);
+                st.pending.set(0);
+                break;
+            }
+
+            List<ProtocolIds> results;
+            HashSet<Integer> failed = new HashSet<>();
+            try {
+                results = ap.checkIds(endpoint, ids);
+            } catch (ITOverQuotaException x) {
+                // backend refused the processing, retry later
+                log.debug("[capture] Ids sync paused for endpoint {}: {}", endpoint.getRef(), x.getMessage());
+                st.failed.addAndGet(ids.size());
+                pause(st);
+                break;
+            } catch (RuntimeException x) {
+                log.warn("[capture] Ids sync, batch failed for endpoint {}, reviewing one by one: {}", endpoint.getRef(), x.getMessage());
+                results = checkIdsOneByOne(ap, endpoint, ids, failed);
+            }
+
+            // persist the reviewed IDs, the unchanged ones only get their scan date updated
+            long now = Now.NowUtcMs();
+            BulkOperations bulk = null;
+            ArrayList<String> unchanged = new ArrayList<>();
+            for ( int i = 0 ; i < results.size() ; i++ ) {
+                // failed IDs keep their scan date, they are reviewed again on the next pass
+                if ( failed.contains(i) ) continue;
+                ProtocolIds reviewed = results.get(i);
+                if ( reviewed != null ) {
+                    log.info("[capture] Id Check updated {}, new state {}, subscriptionStart {}, subscriptionEnd {}",
+                            reviewed.getId(),
+                            reviewed.getState(),
+                            reviewed.getSubscriptionStartMs(),
+                            reviewed.getSubscriptionEndMs()
+                    );
+                    reviewed.setLastScanMs(now);
+                    reviewed.setUpdateMs(now);
+                    if ( bulk == null ) bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProtocolIds.class);
+                    bulk.replaceOne(new Query(Criteria.where("id").is(reviewed.getId())), reviewed);
+                } else {
+                    unchanged.add(ids.get(i).getId());
+                }
+            }
+            if ( bulk != null ) bulk.execute();
+            if ( !unchanged.isEmpty() ) {
+                mongoTemplate.updateMulti(
+                        new Query(Criteria.where("id").in(unchanged)),
+                        new Update().set("lastScanMs", now),
+                        ProtocolIds.class
+                );
+            }
+            st.synced.addAndGet(results.size() - failed.size());
+            st.failed.addAndGet(failed.size());
+            if ( st.pending.get() > 0 ) st.pending.set(Math.max(0, st.pending.get() - results.size()));
+
+            if ( !results.isEmpty() ) {
+                cursor.setLastId(ids.get(results.size() - 1).getId());
+                cursor.setUpdateMs(now);
+                protocolIdsSyncCursorRepository.save(cursor);
+            }
+            if ( results.size() < ids.size() ) {
+                // the driver stopped the batch
+                st.failed.addAndGet(ids.size() - results.size());
+                pause(st);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Review the IDs of a batch one by one after the driver failed on the batch, so a single faulty ID does not
+     * block the endpoint. The failing IDs are reported in failed with a null result.
+     * @param ap - protocol driver
+     * @param endpoint - endpoint of the IDs
+     * @param ids - IDs to review
+     * @param failed - filled with the positions of the failing IDs
+     * @return the results as for checkIds, shorter when the backend stopped the processing
+     */
+    protected List<ProtocolIds> checkIdsOneByOne(
+            AbstractProtocol ap,
+            CaptureEndpoint endpoint,
+            List<ProtocolIds> ids,
+            Set<Integer> failed
+    ) {
+        ArrayList<ProtocolIds> results = new ArrayList<>();
+        if ( ids.size() == 1 ) {
+            // already reviewed alone
+            log.warn("[capture] Ids sync, id {} of endpoint {} failed", ids.getFirst().getId(), endpoint.getRef());
+            failed.add(0);
+            results.add(null);
+            return results;
+        }
+        for ( ProtocolIds _id : ids ) {
+            try {
+                List<ProtocolIds> r = ap.checkIds(endpoint, List.of(_id));
+                if ( r.isEmpty() ) break;
+                results.add(r.getFirst());
+            } catch (ITOverQuotaException x) {
+                break;
+            } catch (RuntimeException x) {
+                log.warn("[capture] Ids sync, id {} of endpoint {} failed: {}", _id.getId(), endpoint.getRef(), x.getMessage());
+                failed.add(results.size());
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+}
@@ -28,6 +28,7 @@ import com.disk91.capture.interfaces.AbstractProtocol;
 import com.disk91.capture.interfaces.CaptureIngestResponse;
 import com.disk91.capture.mdb.entities.CaptureEndpoint;
 import com.disk91.capture.mdb.entities.Protocols;
+import com.disk91.capture.mdb.entities.sub.CaptureEndpointCounter;
 import com.disk91.common.config.ModuleCatalog;
 import com.disk91.common.tools.CustomField;
 import com.disk91.common.tools.Now;
@@ -61,6 +62,9 @@ public class CaptureIngestService {
     @Autowired
     protected CaptureEndpointCache captureEndpointCache;
 
+    @Autowired
+    protected CaptureEndpointCounters captureEndpointCounters;
+
     @Autowired
     protected CaptureProtocolsCache captureProtocolsCache;
 
@@ -112,12 +116,12 @@ public class CaptureIngestService {
         try {
             // Get the endpoint information
             CaptureEndpoint e = captureEndpointCache.getCaptureEndpoint(captureId);
-            e.incTotalFramesReceived();
+            captureEndpointCounters.increment(e, CaptureEndpointCounter.FRAMES_RECEIVED);
             // Check the ownership - get the real User behind the request
             User u = userCommon.getUser(req.getUserPrincipal().getName());
             if ( !e.isWideOpen() && e.getOwner().compareTo(u.getLogin()) != 0) {
                 log.debug("[capture] Ingest data failed, right error for captureId {} and user {}", captureId, u.getLogin());
-                e.incTotalBadOwnerRefused();
+                captureEndpointCounters.increment(e, CaptureEndpointCounter.BAD_OWNER_REFUSED);
                 throw new ITRightException("capture-ingest-right-error");
             }
 
@@ -143,7 +147,7 @@ public class CaptureIngestService {
                         }
                     }
                 }
-                e.incTotalFramesAcceptedToPivot();
+                captureEndpointCounters.increment(e, CaptureEndpointCounter.FRAMES_ACCEPTED_TO_PIVOT);
                 try {
                     Object result = ap.getClass()
                             .getMethod("toPivot",
@@ -163,14 +167,14 @@ public class CaptureIngestService {
                         case CAP_STATUS_SUCCESS:
                             // Enqueue for processing
                             try {
-                                e.incTotalFramesAcceptedToProcess();
+                                captureEndpointCounters.increment(e, CaptureEndpointCounter.FRAMES_ACCEPTED_TO_PROCESS);
                                 // Make sure the fame can be processed according to billing rules
                                 if ( crossBillingWrapperService.billingPacketReceptionAuthorized(
                                         pivot.getPivot().getMetadata().getDeviceId()
                                 )) {
                                     captureAsyncProcessService.enqueueRawData(pivot.getPivot());
                                     incrementIngestSuccess();
-                                    e.incTotalQueuedToProcess();
+                                    captureEndpointCounters.increment(e, CaptureEndpointCounter.QUEUED_TO_PROCESS);
 
                                     // record for billing
                                     ArrayList<CustomField> params = new ArrayList<>();
@@ -184,7 +188,7 @@ public class CaptureIngestService {
                                             params
                                     );
                                 } else {
-                                    e.incTotalBillingRefused();
+                                    captureEndpointCounters.increment(e, CaptureEndpointCounter.BILLING_REFUSED);
                                 }
                             } catch (ITOverQuotaException x) {
                                 try {
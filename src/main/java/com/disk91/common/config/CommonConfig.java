@@ -35,7 +35,7 @@ public class CommonConfig {
     // ----------------------------------------------
     // Common setup
     // ----------------------------------------------
-    @Value("{common.instance.id:aZgtj01LkPqzXvWm}")
+    @Value("${common.instance.id:aZgtj01LkPqzXvWm}")
     protected String instanceId;
     public String getInstanceId() {
         return instanceId;
@@ -187,6 +187,41 @@ public class CommonConfig {
         return firebaseServiceAccountPath;
     }
 
+    // ----------------------------------------------
+    // Retention purge
+    // ----------------------------------------------
+
+    @Value("${common.purge.batch.size:500}")
+    protected int purgeBatchSize;
+    public int getPurgeBatchSize() {
+        return purgeBatchSize;
+    }
+
+    @Value("${common.purge.rows.per.second:2000}")
+    protected int purgeRowsPerSecond;
+    public int getPurgeRowsPerSecond() {
+        return purgeRowsPerSecond;
+    }
+
+    @Value("${common.purge.max.run.ms:240000}")
+    protected long purgeMaxRunMs;
+    public long getPurgeMaxRunMs() {
+        return purgeMaxRunMs;
+    }
+
+    // UTC hours, the purge runs when start <= hour < end (window over midnight when start > end, always when equal)
+    @Value("${common.purge.window.start.hour:0}")
+    protected int purgeWindowStartHour;
+    public int getPurgeWindowStartHour() {
+        return purgeWindowStartHour;
+    }
+
+    @Value("${common.purge.window.end.hour:0}")
+    protected int purgeWindowEndHour;
+    public int getPurgeWindowEndHour() {
+        return purgeWindowEndHour;
+    }
+
     // ----------------------------------------------
     // Test activation
     // ----------------------------------------------
@@ -52,6 +52,14 @@ public class EncryptionService {
     }
 
 
+    /**
+     * Authenticated (AES-GCM) encryption with a random nonce, the result is not deterministic so it must
+     * not be used for fields searched by equality. decryptStringWithServerKey handles both formats.
+     */
+    public String encryptStringWithServerKeyAuthenticated(String tobeEncrypted) throws ITParseException {
+        return EncryptionHelper.encryptAuthenticated(tobeEncrypted, commonConfig.getEncryptionKey());
+    }
+
     public String decryptStringWithServerKey(String tobeDecrypted) throws ITParseException {
         return EncryptionHelper.decrypt(tobeDecrypted, __iv, commonConfig.getEncryptionKey());
     }
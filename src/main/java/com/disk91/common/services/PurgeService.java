@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.common.services;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.pdb.entities.Param;
+import com.disk91.common.pdb.repositories.ParamRepository;
+import com.disk91.common.tools.Now;
+import com.disk91.common.tools.TokenBucket;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retention purge of the registered targets. The expired entries are deleted by small batches in the time key order,
+ * rate limited and only during the configured window, so the purge of a large backlog does not compete with the
+ * production traffic. One instance purges at a time (mutex) and the position is saved after each batch, an
+ * interrupted purge resumes from there. Once a target is fully purged, the next run starts again from the beginning
+ * as some entries may have become purgeable behind the position (alerts ended after their request time).
+ */
+@Service
+public class PurgeService {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    protected static final String PURGE_MUTEX = "common.purge";
+    protected static final String PURGE_POSITION_KEY = "common.purge.position.";
+    protected static final long PURGE_WAIT_MS = 50;
+
+    protected final CommonConfig commonConfig;
+    protected final ParamRepository paramRepository;
+    protected final MongoMutexService mongoMutexService;
+
+    @Autowired(required = false)
+    protected MeterRegistry meterRegistry;
+
+    protected static class PurgeState {
+        protected final PurgeTarget target;
+        protected final AtomicLong rowsPerSecond = new AtomicLong(0);
+        protected final AtomicLong backlog = new AtomicLong(0);
+        protected final AtomicLong deleted = new AtomicLong(0);
+        protected Param position;
+
+        protected PurgeState(PurgeTarget target) {
+            this.target = target;
+        }
+    }
+
+    protected final List<PurgeState> targets = new CopyOnWriteArrayList<>();
+
+    public PurgeService(
+            CommonConfig commonConfig,
+            ParamRepository paramRepository,
+            MongoMutexService mongoMutexService
+    ) {
+        this.commonConfig = commonConfig;
+        this.paramRepository = paramRepository;
+        this.mongoMutexService = mongoMutexService;
+    }
+
+    /**
+     * Add a target to the periodic purge, usually from the owner @PostConstruct
+     * @param target - store to purge
+     */
+    public void register(PurgeTarget target) {
+        PurgeState s = new PurgeState(target);
+        this.targets.add(s);
+        if ( meterRegistry != null ) {
+            Gauge.builder("common_service_purge_rows_per_s", s.rowsPerSecond::get)
+                    .description("[Purge] Entries deleted per second during the last purge run")
+                    .tag("target", target.getPurgeName())
+                    .register(meterRegistry);
+            Gauge.builder("common_service_purge_backlog", s.backlog::get)
+                    .description("[Purge] Expired entries remaining after the last purge run")
+                    .tag("target", target.getPurgeName())
+                    .register(meterRegistry);
+            FunctionCounter.builder("common_service_purge_deleted", s.deleted, AtomicLong::get)
+                    .description("[Purge] Entries deleted by the purge")
+                    .tag("target", target.getPurgeName())
+                    .register(meterRegistry);
+        }
+        log.info("[common] Purge target {} registered", target.getPurgeName());
+    }
+
+    /**
+     * @param nowMs - current time
+     * @param startHour - UTC hour the window opens
+     * @param endHour - UTC hour the window closes, the window is over midnight when before start, no window when equal
+     * @return true when the purge can run
+     */
+    public static boolean isInWindow(long nowMs, int startHour, int endHour) {
+        if ( startHour == endHour ) return true;
+        int hour = (int)((nowMs / 3_600_000L) % 24);
+        if ( startHour < endHour ) return hour >= startHour && hour < endHour;
+        return hour >= startHour || hour < endHour;
+    }
+
+    protected boolean isInWindow(long nowMs) {
+        return isInWindow(nowMs, commonConfig.getPurgeWindowStartHour(), commonConfig.getPurgeWindowEndHour());
+    }
+
+    @Scheduled(fixedDelayString = "${common.purge.period.ms:300000}", initialDelay = 300_000)
+    public void purge() {
+        if ( targets.isEmpty() || !isInWindow(Now.NowUtcMs()) ) return;
+        long maxRunMs = commonConfig.getPurgeMaxRunMs();
+        if ( !mongoMutexService.P(PURGE_MUTEX, commonConfig.getInstanceId(), 2 * maxRunMs) ) return;
+        try {
+            runPurge(Now.NowUtcMs() + maxRunMs);
+        } finally {
+            mongoMutexService.V(PURGE_MUTEX, commonConfig.getInstanceId());
+        }
+    }
+
+    /**
+     * Purge the targets one after the other until the deadline, the rate limit is shared by all the targets
+     * @param deadlineMs - time to stop, the remaining entries are purged on the next run
+     */
+    public void runPurge(long deadlineMs) {
+        int batchSize = Math.max(1, commonConfig.getPurgeBatchSize());
+        TokenBucket bucket = new TokenBucket(batchSize, Math.max(1, commonConfig.getPurgeRowsPerSecond()) / 1000.0);
+        for ( PurgeState s : targets ) {
+            try {
+                purgeTarget(s, bucket, batchSize, deadlineMs);
+            } catch (InterruptedException x) {
+                log.warn("[common] Purge interrupted");
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception x) {
+                log.error("[common] Purge of {} failed: {}", s.target.getPurgeName(), x.getMessage());
+            }
+        }
+    }
+
+    protected void purgeTarget(PurgeState s, TokenBucket bucket, int batchSize, long deadlineMs) throws InterruptedException {
+        long startMs = Now.NowUtcMs();
+        long cutoffMs = s.target.getPurgeCutoffMs(startMs);
+        if ( cutoffMs <= 0 ) return;
+
+        long position = loadPosition(s);
+        long deleted = 0;
+        boolean complete = false;
+        while ( Now.NowUtcMs() < deadlineMs && isInWindow(Now.NowUtcMs()) ) {
+            int allowed = bucket.tryAcquireUpTo(batchSize);
+            if ( allowed == 0 ) {
+                Thread.sleep(PURGE_WAIT_MS);
+                continue;
+            }
+            PurgeTarget.PurgeBatch b = s.target.purgeBatch(position, cutoffMs, allowed);
+            bucket.release(allowed - b.deleted());
+            if ( b.deleted() > 0 ) {
+                position = Math.max(position, b.lastKeyMs());
+                deleted += b.deleted();
+                s.deleted.addAndGet(b.deleted());
+            }
+            if ( b.deleted() < allowed ) {
+                complete = true;
+                break;
+            }
+            savePosition(s, position);
+        }
+        // restart from the beginning next time
+        if ( complete ) savePosition(s, 0);
+
+        long durationMs = Math.max(1, Now.NowUtcMs() - startMs);
+        s.rowsPerSecond.set((deleted * 1000) / durationMs);
+        s.backlog.set((complete) ? 0 : s.target.countPurgeBacklog(position, cutoffMs));
+        if ( deleted > 0 || !complete ) {
+            log.info("[common] Purge {} deleted {} entries in {} ms, {} remaining",
+                    s.target.getPurgeName(), deleted, durationMs, s.backlog.get());
+        }
+    }
+
+    // reloaded on every run, another instance may have moved the position since we last held the mutex
+    protected long loadPosition(PurgeState s) {
+        String key = PURGE_POSITION_KEY + s.target.getPurgeName();
+        s.position = paramRepository.findByParamKey(key);
+        if ( s.position == null ) {
+            s.position = new Param();
+            s.position.setParamKey(key);
+            s.position.setLongValue(0);
+        }
+        return s.position.getLongValue();
+    }
+
+    protected void savePosition(PurgeState s, long position) {
+        if ( s.position.getLongValue() == position ) return;
+        s.position.setLongValue(position);
+        paramRepository.save(s.position);
+    }
+
+}
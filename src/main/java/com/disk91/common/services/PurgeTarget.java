@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.common.services;
+
+/**
+ * A store with entries expiring on a time key (ms), purged progressively by the PurgeService.
+ * The entries must be indexed on the time key so a batch is a range read and a delete by id.
+ */
+public interface PurgeTarget {
+
+    /**
+     * Result of a purge batch
+     * @param deleted - number of entries deleted
+     * @param lastKeyMs - time key of the last entry deleted, the next batch starts from there
+     */
+    record PurgeBatch(int deleted, long lastKeyMs) {}
+
+    /**
+     * @return name of the target, used for the metrics and the saved position
+     */
+    String getPurgeName();
+
+    /**
+     * @param nowMs - current time
+     * @return time key under which the entries are expired, 0 when the purge is disabled
+     */
+    long getPurgeCutoffMs(long nowMs);
+
+    /**
+     * Delete the oldest expired entries with fromMs <= time key < cutoffMs
+     * @param fromMs - resume position
+     * @param cutoffMs - expiration limit
+     * @param max - max entries to delete
+     * @return number of entries deleted, less than max when nothing more is expired
+     */
+    PurgeBatch purgeBatch(long fromMs, long cutoffMs, int max);
+
+    /**
+     * @param fromMs - resume position
+     * @param cutoffMs - expiration limit
+     * @return number of expired entries still to be deleted
+     */
+    long countPurgeBacklog(long fromMs, long cutoffMs);
+
+}
@@ -27,6 +27,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.scheduling.annotation.Async;
@@ -35,6 +37,10 @@ import org.springframework.stereotype.Component;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Locale;
 
 @Component
@@ -74,6 +80,72 @@ public class EmailTools {
         }
     }
 
+    public record Email(String to, String text, String subject, String from) {}
+
+    /**
+     * Send a list of emails synchronously, the JavaMailSender opens a single SMTP connection for the whole list
+     * and the server rejecting one message does not stop the others.
+     * @param emails - emails to send
+     * @return for each email, in the same order, true when the SMTP server accepted it
+     */
+    public List<Boolean> sendBatch(List<Email> emails) {
+        ArrayList<Boolean> result = new ArrayList<>(Collections.nCopies(emails.size(), false));
+        if ( emails.isEmpty() ) return result;
+
+        if ( mailPassword.compareToIgnoreCase("debug")==0 ) {
+            for ( int i = 0 ; i < emails.size() ; i++ ) {
+                Email e = emails.get(i);
+                log.info("[common][email] Sending email to ({}) with subject ({}) and text ({})", e.to(), e.subject(), e.text().replace("\\n","\n"));
+                result.set(i, true);
+            }
+            return result;
+        }
+
+        // message -> position in the list, the failed messages are reported by identity
+        IdentityHashMap<MimeMessage, Integer> positions = new IdentityHashMap<>();
+        ArrayList<MimeMessage> messages = new ArrayList<>(emails.size());
+        for ( int i = 0 ; i < emails.size() ; i++ ) {
+            Email e = emails.get(i);
+            try {
+                MimeMessage message = sender.createMimeMessage();
+                // Force UTF-8 encoding to handle accented characters
+                MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+                helper.setFrom(e.from());
+                helper.setTo(e.to());
+                helper.setText(e.text().replace("\\n","\n"),false);
+                helper.setSubject(e.subject());
+                positions.put(message, i);
+                messages.add(message);
+            } catch (MessagingException x) {
+                log.error("[common][email] Impossible to send an email to ({})", e.to());
+            }
+        }
+        if ( messages.isEmpty() ) return result;
+
+        try {
+            sender.send(messages.toArray(new MimeMessage[0]));
+            positions.values().forEach(i -> result.set(i, true));
+        } catch ( MailAuthenticationException x ) {
+            log.error("[common][email] Failed to send email, bad authentication - Make sure you setup email credentials");
+        } catch ( MailSendException x ) {
+            positions.values().forEach(i -> result.set(i, true));
+            x.getFailedMessages().forEach((m, e) -> {
+                Integer i = positions.get(m);
+                if ( i != null ) {
+                    result.set(i, false);
+                    log.error("[common][email] Impossible to send an email to ({}) - {}", emails.get(i).to(), e.getMessage());
+                }
+            });
+            if ( x.getFailedMessages().isEmpty() ) {
+                positions.values().forEach(i -> result.set(i, false));
+                log.error("[common][email] Failed to send emails - {}", x.getMessage());
+            }
+        } catch ( MailException x ) {
+            log.error("[common][email] Failed to send emails - {}", x.getMessage());
+        }
+        return result;
+    }
+
     public Locale extractLocale(HttpServletRequest request, Locale defaultLocale) {
         String acceptLanguage = request.getHeader("Accept-Language");
         if (acceptLanguage == null || acceptLanguage.isEmpty()) {
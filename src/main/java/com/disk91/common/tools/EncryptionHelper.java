@@ -24,32 +24,84 @@ import com.disk91.common.tools.exceptions.ITParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class EncryptionHelper {
 
     private static final Logger log = LoggerFactory.getLogger(EncryptionHelper.class);
 
+    /*
+     * Keys and IVs are given as hex strings, they are parsed once and cached, the Cipher instances are cached per
+     * thread as Cipher.getInstance is costly and a Cipher is not thread safe. The caches are limited as the user
+     * keys are per user.
+     */
+    private static final int MAX_CACHED_SPECS = 4096;
+    private static final ConcurrentHashMap<String, SecretKeySpec> keyCache = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, byte[]> ivCache = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Cipher> cbcCipher = ThreadLocal.withInitial(() -> getCipher("AES/CBC/NoPadding"));
+    private static final ThreadLocal<Cipher> gcmCipher = ThreadLocal.withInitial(() -> getCipher("AES/GCM/NoPadding"));
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    // Authenticated format, version prefix (':' is not part of base64 so there is no collision with CBC strings)
+    public static final String GCM_PREFIX = "g1:";
+    private static final int GCM_NONCE_LEN = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    private static Cipher getCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (NoSuchPaddingException | NoSuchAlgorithmException e) {
+            log.error("[common] Initializing the AES library for {}", transformation);
+            return null;
+        }
+    }
+
+    private static SecretKeySpec getKeySpec(String encKey) {
+        SecretKeySpec k = keyCache.get(encKey);
+        if ( k == null ) {
+            k = new SecretKeySpec(HexCodingTools.getBytesFromInt(HexCodingTools.getIntArrayFromHexString(encKey)), "AES");
+            if ( keyCache.size() >= MAX_CACHED_SPECS ) keyCache.clear();
+            keyCache.put(encKey, k);
+        }
+        return k;
+    }
 
+    private static byte[] getIv(String iv) {
+        byte[] _iv = ivCache.get(iv);
+        if ( _iv == null ) {
+            _iv = HexCodingTools.getBytesFromInt(HexCodingTools.getIntArrayFromHexString(iv));
+            if ( ivCache.size() >= MAX_CACHED_SPECS ) ivCache.clear();
+            ivCache.put(iv, _iv);
+        }
+        return _iv;
+    }
 
     /**
      * Encrypt a given String with IV and Key
-     * The String have " " padding to be 16Byte modulo long.
-     * The space will be stripped on decrytion. do not send string with heading or leading space you will
+     * The String have zero padding to be 16Byte modulo long.
+     * The padding will be stripped on decrytion. do not send string with heading or leading space you will
      * lose them.
-     * The encrypted String is base64 encoded
+     * The encrypted String is base64 encoded. The result is deterministic (same input, same output) so it can
+     * be used for searching encrypted values, use encryptAuthenticated otherwise.
      * @param tobeEncrypted
      * @param iv
      * @param encKey
@@ -59,33 +111,17 @@ public class EncryptionHelper {
 
         if ( iv == null || encKey == null || tobeEncrypted == null ) throw new ITParseException("common-encryption-with-null-paramaters");
 
-        byte [] byteToEncrytp;
         byte [] byteToEncrytpLen = tobeEncrypted.getBytes(StandardCharsets.UTF_8);
-        int pad = (16 - (byteToEncrytpLen.length & 0x0F) );
-        if ( pad == 16 ) pad = 0;
-        pad += byteToEncrytpLen.length;
-        byteToEncrytp = new byte[pad];
-        for ( int i = 0 ; i < byteToEncrytpLen.length ; i++ ) {
-            byteToEncrytp[i] = byteToEncrytpLen[i];
-        }
-        for ( int i = byteToEncrytpLen.length ; i < pad ; i ++ ) {
-            byteToEncrytp[i] = 0;
-        }
-
-        byte[] _iv = HexCodingTools.getBytesFromInt(HexCodingTools.getIntArrayFromHexString(iv));
+        int padded = (byteToEncrytpLen.length + 15) & ~0x0F;
+        // copyOf fills with 0
+        byte [] byteToEncrytp = (padded == byteToEncrytpLen.length) ? byteToEncrytpLen : Arrays.copyOf(byteToEncrytpLen, padded);
 
         try {
-            IvParameterSpec iv_ = new IvParameterSpec(_iv);
-            SecretKeySpec skeySpec = new SecretKeySpec(
-                    HexCodingTools.getBytesFromInt(
-                            HexCodingTools.getIntArrayFromHexString(
-                                    encKey
-                            )), "AES");
-            Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
-            cipher.init(Cipher.ENCRYPT_MODE, skeySpec, iv_);
-            String result = Base64.getEncoder().encodeToString(cipher.doFinal(byteToEncrytp));
-            return result;
-        } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException e) {
+            Cipher cipher = cbcCipher.get();
+            if ( cipher == null ) return null;
+            cipher.init(Cipher.ENCRYPT_MODE, getKeySpec(encKey), new IvParameterSpec(getIv(iv)));
+            return Base64.getEncoder().encodeToString(cipher.doFinal(byteToEncrytp));
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
             log.error("[common] Initializing the AES encryption library");
         } catch (IllegalBlockSizeException | BadPaddingException e) {
             log.error("[common] "+e.getLocalizedMessage());
@@ -97,6 +133,7 @@ public class EncryptionHelper {
     /**
      * Decrypt the given Base64 encoded string to the initial String.
      * Remove heading and leading spaces.
+     * The authenticated format (encryptAuthenticated) is also supported, in this case the iv is ignored.
      * @param tobeDecrypted
      * @param iv
      * @param encKey
@@ -105,34 +142,21 @@ public class EncryptionHelper {
     public static String decrypt(String tobeDecrypted, String iv, String encKey) throws ITParseException {
 
         if ( iv == null || encKey == null || tobeDecrypted == null ) throw new ITParseException("common-decryption-with-null-paramaters");
+        if ( tobeDecrypted.startsWith(GCM_PREFIX) ) return decryptAuthenticated(tobeDecrypted, encKey);
 
-        byte[] _iv = HexCodingTools.getBytesFromInt(HexCodingTools.getIntArrayFromHexString(iv));
         try {
-            IvParameterSpec iv_ = new IvParameterSpec(_iv);
-            SecretKeySpec skeySpec = new SecretKeySpec(
-                    HexCodingTools.getBytesFromInt(
-                            HexCodingTools.getIntArrayFromHexString(
-                                    encKey
-                            )), "AES");
-            Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
-            cipher.init(Cipher.DECRYPT_MODE, skeySpec, iv_);
+            Cipher cipher = cbcCipher.get();
+            if ( cipher == null ) return null;
+            cipher.init(Cipher.DECRYPT_MODE, getKeySpec(encKey), new IvParameterSpec(getIv(iv)));
 
             byte [] decryptedBytes = cipher.doFinal(Base64.getDecoder().decode(tobeDecrypted));
-            int pad = 0;
-            for ( int i = decryptedBytes.length ; i > 0 ; i-- ) {
-                if ( decryptedBytes[i-1] == 0 ) pad++;
-                else break;
-            }
-
-            byte [] unpadded = new byte[decryptedBytes.length-pad];
-            for ( int i = 0 ; i < decryptedBytes.length-pad ; i++ ) {
-                unpadded[i] = decryptedBytes[i];
-            }
+            int len = decryptedBytes.length;
+            while ( len > 0 && decryptedBytes[len-1] == 0 ) len--;
 
             // trim should be removed with the new method but I keep it for non regression
             // with the string already stored in database
-            return new String (unpadded, StandardCharsets.UTF_8).trim();
-        } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException e) {
+            return new String (decryptedBytes, 0, len, StandardCharsets.UTF_8).trim();
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
             log.error("[common] Initializing the AES decryption library");
         } catch (IllegalBlockSizeException | BadPaddingException e) {
             log.error("[common] "+e.getLocalizedMessage());
@@ -140,6 +164,69 @@ public class EncryptionHelper {
         return null;
     }
 
+    /**
+     * Encrypt a given String with AES-GCM and a random nonce. The result is the version prefix followed by
+     * the base64 encoded nonce, cipher text and authentication tag. The result is different on every call, so it
+     * can't be used for searching; the integrity is verified on decryption. decrypt() supports this format.
+     * @param tobeEncrypted
+     * @param encKey
+     * @return
+     */
+    public static String encryptAuthenticated(String tobeEncrypted, String encKey) throws ITParseException {
+
+        if ( encKey == null || tobeEncrypted == null ) throw new ITParseException("common-encryption-with-null-paramaters");
+
+        byte [] nonce = new byte[GCM_NONCE_LEN];
+        secureRandom.nextBytes(nonce);
+        try {
+            Cipher cipher = gcmCipher.get();
+            if ( cipher == null ) return null;
+            cipher.init(Cipher.ENCRYPT_MODE, getKeySpec(encKey), new GCMParameterSpec(GCM_TAG_BITS, nonce));
+            byte [] plain = tobeEncrypted.getBytes(StandardCharsets.UTF_8);
+            byte [] out = new byte[GCM_NONCE_LEN + cipher.getOutputSize(plain.length)];
+            System.arraycopy(nonce, 0, out, 0, GCM_NONCE_LEN);
+            cipher.doFinal(plain, 0, plain.length, out, GCM_NONCE_LEN);
+            return GCM_PREFIX + Base64.getEncoder().encodeToString(out);
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
+            log.error("[common] Initializing the AES-GCM encryption library");
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            log.error("[common] "+e.getLocalizedMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Decrypt a String encrypted with encryptAuthenticated
+     * @param tobeDecrypted
+     * @param encKey
+     * @return
+     * @throws ITParseException when the format is invalid or the authentication failed
+     */
+    public static String decryptAuthenticated(String tobeDecrypted, String encKey) throws ITParseException {
+
+        if ( encKey == null || tobeDecrypted == null ) throw new ITParseException("common-decryption-with-null-paramaters");
+        if ( !tobeDecrypted.startsWith(GCM_PREFIX) ) throw new ITParseException("common-decryption-invalid-format");
+
+        try {
+            byte [] in = Base64.getDecoder().decode(tobeDecrypted.substring(GCM_PREFIX.length()));
+            if ( in.length < GCM_NONCE_LEN + (GCM_TAG_BITS / 8) ) throw new ITParseException("common-decryption-invalid-format");
+            Cipher cipher = gcmCipher.get();
+            if ( cipher == null ) return null;
+            cipher.init(Cipher.DECRYPT_MODE, getKeySpec(encKey), new GCMParameterSpec(GCM_TAG_BITS, in, 0, GCM_NONCE_LEN));
+            byte [] plain = cipher.doFinal(in, GCM_NONCE_LEN, in.length - GCM_NONCE_LEN);
+            return new String(plain, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ITParseException("common-decryption-invalid-format");
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
+            log.error("[common] Initializing the AES-GCM decryption library");
+        } catch (AEADBadTagException e) {
+            throw new ITParseException("common-decryption-authentication-failed");
+        } catch (IllegalBlockSizeException | BadPaddingException e) {
+            log.error("[common] "+e.getLocalizedMessage());
+        }
+        return null;
+    }
+
 
     /**
      * hash a string into a sha256 string equivalent
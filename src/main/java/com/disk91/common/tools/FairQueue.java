@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.common.tools;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Multi-tenant queue with a sub-queue per tenant and a deficit round-robin dequeuing. Each time a tenant gets
+ * its turn, it receives its weight in credits and can dequeue one element per credit, so a tenant with a large
+ * backlog can't starve the others. Each sub-queue is limited in size, offer() refuses the elements above.
+ * The whole queue is also limited in size, when full, a tenant with less pending elements than the largest
+ * sub-queue takes the place of the newest element of that sub-queue, so only the noisy tenants lose data.
+ * All the operations are synchronized, the queue is expected to be used by a limited number of workers.
+ *
+ * @param <T> - queued element type
+ */
+public class FairQueue<T> {
+
+    protected static class SubQueue<T> {
+        protected final String tenant;
+        protected final ArrayDeque<T> items = new ArrayDeque<>();
+        protected int deficit = 0;
+        protected boolean credited = false;
+        protected boolean active = false;
+
+        protected SubQueue(String tenant) {
+            this.tenant = tenant;
+        }
+    }
+
+    protected final HashMap<String, SubQueue<T>> queues = new HashMap<>();
+    protected final ArrayDeque<SubQueue<T>> round = new ArrayDeque<>();
+    protected final ToIntFunction<String> weights;
+    protected final int tenantMaxSize;
+    protected final int maxSize;
+    protected BiConsumer<String, T> evictionListener = null;
+    protected int size = 0;
+
+    /**
+     * @param weights - weight for a tenant (>= 1), number of elements dequeued per round
+     * @param tenantMaxSize - max number of elements per tenant
+     */
+    public FairQueue(ToIntFunction<String> weights, int tenantMaxSize) {
+        this(weights, tenantMaxSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param weights - weight for a tenant (>= 1), number of elements dequeued per round
+     * @param tenantMaxSize - max number of elements per tenant
+     * @param maxSize - max number of elements, all tenants included
+     */
+    public FairQueue(ToIntFunction<String> weights, int tenantMaxSize, int maxSize) {
+        this.weights = weights;
+        this.tenantMaxSize = tenantMaxSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Set the listener called (under the queue lock) with the tenant and the element evicted to make room
+     * for a less loaded tenant
+     * @param listener - eviction listener
+     */
+    public synchronized void setEvictionListener(BiConsumer<String, T> listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * Add an element to the tenant sub-queue
+     * @param tenant - tenant key
+     * @param item - element
+     * @return false when the tenant sub-queue is full or when the queue is full and the tenant has the largest
+     *         sub-queue
+     */
+    public synchronized boolean offer(String tenant, T item) {
+        SubQueue<T> q = queues.get(tenant);
+        int depth = (q == null) ? 0 : q.items.size();
+        if ( depth >= tenantMaxSize ) return false;
+        if ( size >= maxSize ) {
+            // evict the newest element of the largest sub-queue when it is larger than this one after the offer
+            SubQueue<T> largest = null;
+            for ( SubQueue<T> s : round ) {
+                if ( largest == null || s.items.size() > largest.items.size() ) largest = s;
+            }
+            if ( largest == null || largest.items.size() <= depth + 1 ) return false;
+            T evicted = largest.items.pollLast();
+            size--;
+            if ( evictionListener != null ) evictionListener.accept(largest.tenant, evicted);
+        }
+        if ( q == null ) {
+            q = new SubQueue<>(tenant);
+            queues.put(tenant, q);
+        }
+        q.items.addLast(item);
+        size++;
+        if ( !q.active ) {
+            q.active = true;
+            round.addLast(q);
+        }
+        return true;
+    }
+
+    /**
+     * Get the next element according to the deficit round-robin
+     * @return element or null when empty
+     */
+    public synchronized T poll() {
+        while ( !round.isEmpty() ) {
+            SubQueue<T> q = round.peekFirst();
+            if ( !q.credited ) {
+                q.deficit += Math.max(1, weights.applyAsInt(q.tenant));
+                q.credited = true;
+            }
+            if ( q.deficit > 0 && !q.items.isEmpty() ) {
+                q.deficit--;
+                T item = q.items.pollFirst();
+                size--;
+                if ( q.items.isEmpty() ) {
+                    // tenant no more active, credits are not kept
+                    round.pollFirst();
+                    q.deficit = 0;
+                    q.credited = false;
+                    q.active = false;
+                    queues.remove(q.tenant);
+                }
+                return item;
+            }
+            // credits consumed, next tenant
+            round.pollFirst();
+            q.credited = false;
+            round.addLast(q);
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int size(String tenant) {
+        SubQueue<T> q = queues.get(tenant);
+        return (q == null) ? 0 : q.items.size();
+    }
+
+    /**
+     * @return number of elements of the largest sub-queue
+     */
+    public synchronized int maxTenantSize() {
+        int max = 0;
+        for ( SubQueue<T> s : round ) max = Math.max(max, s.items.size());
+        return max;
+    }
+
+    /**
+     * @return number of tenants with pending elements
+     */
+    public synchronized int activeTenants() {
+        return round.size();
+    }
+
+}
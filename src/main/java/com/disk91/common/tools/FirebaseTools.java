@@ -24,10 +24,13 @@ import com.disk91.common.tools.exceptions.ITParseException;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
+import com.google.firebase.messaging.BatchResponse;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.firebase.messaging.FirebaseMessagingException;
 import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.MulticastMessage;
 import com.google.firebase.messaging.Notification;
+import com.google.firebase.messaging.SendResponse;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +39,10 @@ import org.springframework.stereotype.Component;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 @Component
 public class FirebaseTools {
@@ -72,6 +79,99 @@ public class FirebaseTools {
         }
     }
 
+    // Max number of tokens in a multicast and of messages in a sendEach request
+    public static final int FCM_BATCH_MAX = 500;
+
+    public record Push(String token, String title, String body) {}
+
+    protected FirebaseMessaging getMessaging() {
+        return FirebaseMessaging.getInstance();
+    }
+
+    public boolean isFirebaseInitialized() {
+        return firebaseServiceInitialized;
+    }
+
+    /**
+     * Send a list of push notifications with the Firebase batch APIs. The notifications sharing the same title
+     * and body are sent as multicast messages, the others together with sendEach, up to FCM_BATCH_MAX per request.
+     * @param pushes - notifications to send
+     * @return for each notification, in the same order, true when Firebase accepted it
+     */
+    public List<Boolean> sendPushBatch(List<Push> pushes) {
+        ArrayList<Boolean> result = new ArrayList<>(Collections.nCopies(pushes.size(), false));
+        if ( pushes.isEmpty() ) return result;
+        if ( !isFirebaseInitialized() ) {
+            log.warn("[common] Firebase service is not initialized. Cannot send push notification.");
+            return result;
+        }
+
+        // group the notifications by content, keep the order of first appearance
+        LinkedHashMap<String, List<Integer>> groups = new LinkedHashMap<>();
+        for ( int i = 0 ; i < pushes.size() ; i++ ) {
+            Push p = pushes.get(i);
+            groups.computeIfAbsent(p.title() + '\u0000' + p.body(), k -> new ArrayList<>()).add(i);
+        }
+
+        ArrayList<Integer> singles = new ArrayList<>();
+        for ( List<Integer> group : groups.values() ) {
+            if ( group.size() == 1 ) {
+                singles.add(group.getFirst());
+                continue;
+            }
+            Push first = pushes.get(group.getFirst());
+            for ( int s = 0 ; s < group.size() ; s += FCM_BATCH_MAX ) {
+                List<Integer> chunk = group.subList(s, Math.min(s + FCM_BATCH_MAX, group.size()));
+                MulticastMessage message = MulticastMessage.builder()
+                        .setNotification(Notification.builder()
+                                .setTitle(first.title())
+                                .setBody(first.body())
+                                .build())
+                        .addAllTokens(chunk.stream().map(i -> pushes.get(i).token()).toList())
+                        .build();
+                try {
+                    applyBatchResponse(getMessaging().sendEachForMulticast(message), chunk, pushes, result);
+                } catch (FirebaseMessagingException e) {
+                    log.error("[common] Failed to send multicast push notification to {} devices: {}", chunk.size(), e.getMessage());
+                }
+            }
+        }
+
+        for ( int s = 0 ; s < singles.size() ; s += FCM_BATCH_MAX ) {
+            List<Integer> chunk = singles.subList(s, Math.min(s + FCM_BATCH_MAX, singles.size()));
+            List<Message> messages = chunk.stream().map(i -> {
+                Push p = pushes.get(i);
+                return Message.builder()
+                        .setNotification(Notification.builder()
+                                .setTitle(p.title())
+                                .setBody(p.body())
+                                .build())
+                        .setToken(p.token())
+                        .build();
+            }).toList();
+            try {
+                applyBatchResponse(getMessaging().sendEach(messages), chunk, pushes, result);
+            } catch (FirebaseMessagingException e) {
+                log.error("[common] Failed to send push notifications to {} devices: {}", chunk.size(), e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private void applyBatchResponse(BatchResponse response, List<Integer> chunk, List<Push> pushes, List<Boolean> result) {
+        for ( int i = 0 ; i < chunk.size() && i < response.getResponses().size() ; i++ ) {
+            SendResponse r = response.getResponses().get(i);
+            if ( r.isSuccessful() ) {
+                result.set(chunk.get(i), true);
+            } else {
+                log.error("[common] Failed to send push notification to {}: {}",
+                        pushes.get(chunk.get(i)).token(),
+                        ( r.getException() != null ) ? r.getException().getMessage() : "unknown error");
+            }
+        }
+        log.debug("[common] Firebase push batch sent, {} success, {} failure", response.getSuccessCount(), response.getFailureCount());
+    }
+
     public void sendPush(String deviceToken, String title, String body) throws ITParseException {
         if (firebaseServiceInitialized) {
             Message message = Message.builder()
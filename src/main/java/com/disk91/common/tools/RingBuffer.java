@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.common.tools;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded multi-producer / multi-consumer ring buffer. Each slot carries a sequence number so producers and
+ * consumers claim a slot with a single CAS on the tail / head index, no lock is taken and an element is
+ * delivered to exactly one consumer. Consumers with nothing to process park until a producer unparks one
+ * of them, or until the given timeout expires.
+ *
+ * @param <T> - queued element type
+ */
+public class RingBuffer<T> {
+
+    protected final AtomicReferenceArray<T> items;
+    protected final AtomicLongArray sequences;
+    protected final int mask;
+    protected final AtomicLong head = new AtomicLong(0);      // next position to read
+    protected final AtomicLong tail = new AtomicLong(0);      // next position to write
+    protected final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param capacity - max number of elements, rounded up to the next power of 2
+     */
+    public RingBuffer(int capacity) {
+        int size = 2;
+        while ( size < capacity && size < (1 << 30) ) size <<= 1;
+        this.items = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for ( int i = 0 ; i < size ; i++ ) this.sequences.set(i, i);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Add an element and wake up one waiting consumer
+     * @param item - element, not null
+     * @return false when the buffer is full
+     */
+    public boolean offer(T item) {
+        while (true) {
+            long pos = tail.get();
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - pos;
+            if ( dif == 0 ) {
+                if ( tail.compareAndSet(pos, pos + 1) ) {
+                    items.set(idx, item);
+                    sequences.set(idx, pos + 1);       // publish the slot to the consumers
+                    Thread t = waiters.poll();
+                    if ( t != null ) LockSupport.unpark(t);
+                    return true;
+                }
+            } else if ( dif < 0 ) {
+                // slot not yet released by the consumer of the previous round
+                return false;
+            }
+            // else another producer got this slot, retry
+        }
+    }
+
+    /**
+     * Get the next element without waiting
+     * @return the element or null when empty
+     */
+    public T poll() {
+        while (true) {
+            long pos = head.get();
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - (pos + 1);
+            if ( dif == 0 ) {
+                if ( head.compareAndSet(pos, pos + 1) ) {
+                    T item = items.getAndSet(idx, null);
+                    sequences.set(idx, pos + mask + 1);  // release the slot for the next round
+                    return item;
+                }
+            } else if ( dif < 0 ) {
+                return null;
+            }
+            // else another consumer got this slot, retry
+        }
+    }
+
+    /**
+     * Get the next element, park the calling thread until an element is available or the timeout expires
+     * @param timeout - max wait duration
+     * @param unit - timeout unit
+     * @return the element or null on timeout / interruption
+     */
+    public T poll(long timeout, TimeUnit unit) {
+        T item = poll();
+        if ( item != null ) return item;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Thread me = Thread.currentThread();
+        while ( !me.isInterrupted() ) {
+            waiters.add(me);
+            // check again once registered, an offer() made before the registration would not unpark us
+            item = poll();
+            if ( item != null ) {
+                waiters.remove(me);
+                return item;
+            }
+            long remaining = deadline - System.nanoTime();
+            if ( remaining <= 0 ) {
+                waiters.remove(me);
+                return null;
+            }
+            LockSupport.parkNanos(this, remaining);
+            waiters.remove(me);
+            item = poll();
+            if ( item != null ) return item;
+        }
+        return null;
+    }
+
+    /**
+     * Number of elements in the buffer, approximative under concurrency
+     */
+    public int size() {
+        long s = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(s, mask + 1));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.common.tools;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel for time-bounded expirations. An element is scheduled in the slot of its deadline
+ * (one slot per tick), advance() only visits the slots elapsed since the previous call, so the cost is
+ * proportional to the number of elements expiring, not to the number of elements scheduled. Deadlines
+ * beyond one wheel turn stay in their slot and are checked again on the next turns. The precision is
+ * one tick; elements are never expired before their deadline.
+ *
+ * @param <T> - scheduled element type
+ */
+public class TimerWheel<T> {
+
+    protected record Timer<T>(T element, long deadlineMs) {}
+
+    protected final ConcurrentLinkedQueue<Timer<T>>[] slots;
+    protected final long tickMs;
+    protected long currentTick;
+
+    /**
+     * @param slots - number of slots, a turn is slots * tickMs
+     * @param tickMs - slot duration in ms
+     * @param nowMs - initial time
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int slots, long tickMs, long nowMs) {
+        this.slots = new ConcurrentLinkedQueue[Math.max(1, slots)];
+        for ( int i = 0 ; i < this.slots.length ; i++ ) this.slots[i] = new ConcurrentLinkedQueue<>();
+        this.tickMs = Math.max(1, tickMs);
+        this.currentTick = nowMs / this.tickMs;
+    }
+
+    /**
+     * Schedule the expiration of an element, thread safe
+     * @param element - element to expire
+     * @param deadlineMs - expiration time
+     */
+    public void schedule(T element, long deadlineMs) {
+        // the slot after the deadline tick so the element is not expired before its deadline
+        long tick = deadlineMs / tickMs + 1;
+        slots[(int) (tick % slots.length)].add(new Timer<>(element, deadlineMs));
+    }
+
+    /**
+     * Expire the elements with a deadline before now, called by a single thread
+     * @param nowMs - current time
+     * @param expired - called for each expired element
+     */
+    public void advance(long nowMs, Consumer<T> expired) {
+        long target = nowMs / tickMs;
+        // no more than one turn to visit, all the slots
+        if ( target - currentTick > slots.length ) currentTick = target - slots.length;
+        while ( currentTick < target ) {
+            currentTick++;
+            ConcurrentLinkedQueue<Timer<T>> slot = slots[(int) (currentTick % slots.length)];
+            int count = slot.size();
+            for ( int i = 0 ; i < count ; i++ ) {
+                Timer<T> t = slot.poll();
+                if ( t == null ) break;
+                if ( t.deadlineMs() <= nowMs ) expired.accept(t.element());
+                else slot.add(t);                       // next turn
+            }
+        }
+    }
+
+}
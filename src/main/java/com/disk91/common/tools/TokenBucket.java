@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.common.tools;
+
+/**
+ * Simple token bucket for rate limiting, tokens are refilled continuously at the given rate up to the capacity.
+ * Non-blocking: callers take the tokens available and retry later when empty.
+ */
+public class TokenBucket {
+
+    protected final double capacity;
+    protected final double refillPerMs;
+    protected double tokens;
+    protected long lastRefillMs;
+
+    /**
+     * @param capacity - max tokens (burst)
+     * @param refillPerMs - tokens added per millisecond
+     */
+    public TokenBucket(double capacity, double refillPerMs) {
+        this.capacity = Math.max(1.0, capacity);
+        this.refillPerMs = Math.max(0.0, refillPerMs);
+        this.tokens = this.capacity;
+        this.lastRefillMs = Now.NowUtcMs();
+    }
+
+    protected void refill() {
+        long now = Now.NowUtcMs();
+        if ( now > lastRefillMs ) {
+            tokens = Math.min(capacity, tokens + ((now - lastRefillMs) * refillPerMs));
+            lastRefillMs = now;
+        }
+    }
+
+    /**
+     * Take up to the given number of tokens
+     * @param max - tokens requested
+     * @return number of tokens obtained, 0 when the bucket is empty
+     */
+    public synchronized int tryAcquireUpTo(int max) {
+        refill();
+        int obtained = (int) Math.min(max, Math.floor(tokens));
+        if ( obtained > 0 ) tokens -= obtained;
+        return obtained;
+    }
+
+    /**
+     * Give back tokens not used
+     * @param count - tokens to return
+     */
+    public synchronized void release(int count) {
+        if ( count > 0 ) tokens = Math.min(capacity, tokens + count);
+    }
+
+    public synchronized double getAvailable() {
+        refill();
+        return tokens;
+    }
+
+}
@@ -24,7 +24,6 @@ import com.disk91.common.config.ModuleCatalog;
 import com.disk91.common.tools.Now;
 import com.disk91.common.tools.ObjectCache;
 import com.disk91.common.tools.exceptions.ITNotFoundException;
-import com.disk91.common.tools.exceptions.ITOverQuotaException;
 import com.disk91.devices.config.DevicesConfig;
 import com.disk91.devices.mdb.entities.Device;
 import com.disk91.devices.mdb.entities.DeviceHistory;
@@ -32,7 +31,7 @@ import com.disk91.devices.mdb.entities.sub.DeviceHistoryReason;
 import com.disk91.devices.mdb.repositories.DevicesHistoryRepository;
 import com.disk91.devices.mdb.repositories.DevicesRepository;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
-import com.disk91.integration.services.IntegrationService;
+import com.disk91.integration.services.IntegrationInvalidationService;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
@@ -197,7 +196,7 @@ public class DeviceCache {
     }
 
     @Autowired
-    protected IntegrationService integrationService;
+    protected IntegrationInvalidationService integrationInvalidationService;
     @Autowired
     protected CommonConfig commonConfig;
 
@@ -207,19 +206,24 @@ public class DeviceCache {
      * @return
      */
     public void flushDevice(String d) {
+        this.flushDeviceLocally(d);
+        // Broadcast other instances to flush their cache for this device (coalesced)
+        integrationInvalidationService.invalidate(
+                ModuleCatalog.Modules.DEVICES,
+                DEVICES_ACTION_FLUSH_CACHE_DEVICE.ordinal(),
+                IntegrationQuery.getRoutefromRouteString(deviceConfig.getDevicesIntegrationMedium()),
+                d
+        );
+    }
+
+    /**
+     * Remove a device from the local cache only, on invalidation received from another instance
+     * @param d - deviceId to be removed
+     */
+    public void flushDeviceLocally(String d) {
         if ( this.serviceEnable && deviceConfig.getDevicesCacheMaxSize() > 0 ) {
             this.devicesCache.remove(d,false);
         }
-        // Broadcast other instances to flush their cache for this device
-        IntegrationQuery iq = new IntegrationQuery(ModuleCatalog.Modules.DEVICES, commonConfig.getInstanceId());
-        iq.setServiceNameDest(ModuleCatalog.Modules.DEVICES);
-        iq.setType(IntegrationQuery.QueryType.TYPE_BROADCAST);
-        iq.setAction(DEVICES_ACTION_FLUSH_CACHE_DEVICE.ordinal());
-        iq.setQuery(d);
-        iq.setRoute(IntegrationQuery.getRoutefromRouteString(deviceConfig.getDevicesIntegrationMedium()));
-        try {
-            integrationService.processQuery(iq);
-        } catch (ITOverQuotaException ignored) {}
     }
 
     /**
@@ -31,6 +31,7 @@ import com.disk91.devices.mdb.entities.Device;
 import com.disk91.devices.mdb.repositories.DevicesHistoryRepository;
 import com.disk91.devices.mdb.repositories.DevicesRepository;
 import com.disk91.integration.api.interfaces.IntegrationCallback;
+import com.disk91.integration.api.interfaces.IntegrationInvalidation;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
 import com.disk91.integration.services.IntegrationService;
 import com.disk91.users.mdb.entities.User;
@@ -80,8 +81,9 @@ public class DeviceService {
                         @Override
                         public void onIntegrationEvent(IntegrationQuery q) {
                             if ( q.getAction() == DEVICES_ACTION_FLUSH_CACHE_DEVICE.ordinal() ) {
-                                String devEUI = (String) q.getQuery();
-                                deviceCache.flushDevice(devEUI);
+                                for ( String devEUI : IntegrationInvalidation.keysOf(q) ) {
+                                    deviceCache.flushDeviceLocally(devEUI);
+                                }
                                 // terminate the action
                                 q.setResponse(ActionResult.OK("Device cache flushed")); // fire & forget, success on every actions
                                 q.setResult(null);
@@ -22,4 +22,5 @@ package com.disk91.groups.integration;
 public enum GroupActions {
     GROUPS_ACTION_FLUSH_CACHE_GROUP,
     GROUPS_ACTION_FLUSH_CACHE_SHORTID,
+    GROUPS_ACTION_FLUSH_CACHE_SHORTIDS,
 }
@@ -24,13 +24,13 @@ import com.disk91.common.config.ModuleCatalog;
 import com.disk91.common.tools.Now;
 import com.disk91.common.tools.ObjectCache;
 import com.disk91.common.tools.exceptions.ITNotFoundException;
-import com.disk91.common.tools.exceptions.ITOverQuotaException;
 import com.disk91.groups.config.GroupsConfig;
 import com.disk91.groups.mdb.entities.Group;
 import com.disk91.groups.mdb.repositories.GroupRepository;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
-import com.disk91.integration.services.IntegrationService;
+import com.disk91.integration.services.IntegrationInvalidationService;
 import com.disk91.users.mdb.entities.User;
+import com.disk91.users.services.UserAuthorizationCache;
 import com.disk91.users.services.UserCache;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -44,6 +44,7 @@ import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import static com.disk91.groups.integration.GroupActions.GROUPS_ACTION_FLUSH_CACHE_GROUP;
@@ -70,11 +71,14 @@ public class GroupsCache {
     @Autowired
     protected UserCache userCache;
 
+    @Autowired
+    protected UserAuthorizationCache userAuthorizationCache;
+
     @Autowired
     protected CommonConfig commonConfig;
 
     @Autowired
-    protected IntegrationService integrationService;
+    protected IntegrationInvalidationService integrationInvalidationService;
 
     // ================================================================================================================
     // CACHE SERVICE
@@ -208,21 +212,27 @@ public class GroupsCache {
      */
     protected void flushGroup(String shortId) {
         if ( Group.isVirtualGroup(shortId) ) return; // virtual group, do nothing
+        this.flushGroupsLocally(List.of(shortId));
+
+        // Broadcast other instances to flush their cache for this group (coalesced)
+        integrationInvalidationService.invalidate(
+                ModuleCatalog.Modules.GROUPS,
+                GROUPS_ACTION_FLUSH_CACHE_GROUP.ordinal(),
+                IntegrationQuery.getRoutefromRouteString(groupsConfig.getGroupsIntracomMedium()),
+                shortId
+        );
+    }
+
+    /**
+     * Remove groups from the local cache only, on invalidation received from another instance
+     * @param shortIds - groupIds to be removed
+     */
+    protected void flushGroupsLocally(Collection<String> shortIds) {
         if ( this.serviceEnable && groupsConfig.getGroupsCacheMaxSize() > 0 ) {
-            this.groupCache.remove(shortId,false);
+            for ( String shortId : shortIds ) this.groupCache.remove(shortId,false);
         }
-
-        // Broadcast other instances to flush their cache for this device
-        IntegrationQuery iq = new IntegrationQuery(ModuleCatalog.Modules.GROUPS, commonConfig.getInstanceId());
-        iq.setServiceNameDest(ModuleCatalog.Modules.GROUPS);
-        iq.setType(IntegrationQuery.QueryType.TYPE_BROADCAST);
-        iq.setAction(GROUPS_ACTION_FLUSH_CACHE_GROUP.ordinal());
-        iq.setQuery(shortId);
-        iq.setRoute(IntegrationQuery.getRoutefromRouteString(groupsConfig.getGroupsIntracomMedium()));
-        try {
-            integrationService.processQuery(iq);
-        } catch (ITOverQuotaException ignored) {}
-
+        // group changes may impact any authorization decision (hierarchy), once for all the groups
+        userAuthorizationCache.invalidateAll();
     }
 
 }
@@ -32,6 +32,7 @@ import com.disk91.groups.mdb.entities.Group;
 import com.disk91.groups.mdb.repositories.GroupRepository;
 import com.disk91.groups.tools.GroupsList;
 import com.disk91.integration.api.interfaces.IntegrationCallback;
+import com.disk91.integration.api.interfaces.IntegrationInvalidation;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
 import com.disk91.integration.services.IntegrationService;
 import com.disk91.users.mdb.entities.User;
@@ -48,6 +49,7 @@ import java.util.List;
 
 import static com.disk91.groups.integration.GroupActions.GROUPS_ACTION_FLUSH_CACHE_GROUP;
 import static com.disk91.groups.integration.GroupActions.GROUPS_ACTION_FLUSH_CACHE_SHORTID;
+import static com.disk91.groups.integration.GroupActions.GROUPS_ACTION_FLUSH_CACHE_SHORTIDS;
 
 @Service
 public class GroupsServices {
@@ -90,16 +92,23 @@ public class GroupsServices {
                         @Override
                         public void onIntegrationEvent(IntegrationQuery q) {
                             if ( q.getAction() == GROUPS_ACTION_FLUSH_CACHE_GROUP.ordinal() ) {
-                                String shortid = (String) q.getQuery();
-                                groupsCache.flushGroup(shortid);
+                                groupsCache.flushGroupsLocally(IntegrationInvalidation.keysOf(q));
                                 // terminate the action
                                 q.setResponse(ActionResult.OK("Group cache flushed")); // fire & forget, success on every actions
                                 q.setResult(null);
                                 q.setState(IntegrationQuery.QueryState.STATE_DONE);
                                 q.setResponse_ts(Now.NanoTime());
                             } else if ( q.getAction() == GROUPS_ACTION_FLUSH_CACHE_SHORTID.ordinal() ) {
+                                // legacy format, one group per message
                                 Group g = (Group) q.getQuery();
-                                groupsShortIdCache.flushGroup(g);
+                                groupsShortIdCache.flushGroupLocally(g);
+                                // terminate the action
+                                q.setResponse(ActionResult.OK("Group hierarchy cache flushed")); // fire & forget, success on every actions
+                                q.setResult(null);
+                                q.setState(IntegrationQuery.QueryState.STATE_DONE);
+                                q.setResponse_ts(Now.NanoTime());
+                            } else if ( q.getAction() == GROUPS_ACTION_FLUSH_CACHE_SHORTIDS.ordinal() ) {
+                                groupsShortIdCache.flushShortIdsLocally(IntegrationInvalidation.keysOf(q));
                                 // terminate the action
                                 q.setResponse(ActionResult.OK("Group hierarchy cache flushed")); // fire & forget, success on every actions
                                 q.setResult(null);
@@ -31,8 +31,10 @@ import com.disk91.groups.mdb.entities.Group;
 import com.disk91.groups.mdb.repositories.GroupRepository;
 import com.disk91.groups.tools.GroupsList;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.services.IntegrationInvalidationService;
 import com.disk91.integration.services.IntegrationService;
 import com.disk91.users.mdb.entities.User;
+import com.disk91.users.services.UserAuthorizationCache;
 import com.disk91.users.services.UserCache;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -45,10 +47,13 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import static com.disk91.groups.integration.GroupActions.GROUPS_ACTION_FLUSH_CACHE_GROUP;
 import static com.disk91.groups.integration.GroupActions.GROUPS_ACTION_FLUSH_CACHE_SHORTID;
+import static com.disk91.groups.integration.GroupActions.GROUPS_ACTION_FLUSH_CACHE_SHORTIDS;
 
 @Service
 public class GroupsShortIdCache {
@@ -72,12 +77,18 @@ public class GroupsShortIdCache {
     @Autowired
     protected UserCache userCache;
 
+    @Autowired
+    protected UserAuthorizationCache userAuthorizationCache;
+
     @Autowired
     protected CommonConfig commonConfig;
 
     @Autowired
     protected IntegrationService integrationService;
 
+    @Autowired
+    protected IntegrationInvalidationService integrationInvalidationService;
+
     // ================================================================================================================
     // CACHE SERVICE
     // ================================================================================================================
@@ -217,24 +228,52 @@ public class GroupsShortIdCache {
      */
     protected void flushGroup(Group g) {
         if ( Group.isVirtualGroup(g.getShortId()) ) return; // virtual group, do nothing
-        if ( this.serviceEnable && groupsConfig.getGroupsCacheMaxSize() > 0 ) {
+        this.flushGroupLocally(g);
+
+        IntegrationQuery.QueryRoute route = IntegrationQuery.getRoutefromRouteString(groupsConfig.getGroupsIntracomMedium());
+        if ( integrationInvalidationService.isLegacy() ) {
+            // Broadcast other instances to flush their cache for this group, format of the older versions
+            IntegrationQuery iq = new IntegrationQuery(ModuleCatalog.Modules.GROUPS, commonConfig.getInstanceId());
+            iq.setServiceNameDest(ModuleCatalog.Modules.GROUPS);
+            iq.setType(IntegrationQuery.QueryType.TYPE_BROADCAST);
+            iq.setAction(GROUPS_ACTION_FLUSH_CACHE_SHORTID.ordinal());
+            iq.setQuery(g);
+            iq.setRoute(route);
+            try {
+                integrationService.processQuery(iq);
+            } catch (ITOverQuotaException ignored) {}
+        } else {
+            // Broadcast other instances to flush their cache for this group hierarchy (coalesced)
             for ( String shortId : g.getReferringGroups() ) {
-                this.groupCache.remove(shortId,false);
+                integrationInvalidationService.invalidate(ModuleCatalog.Modules.GROUPS, GROUPS_ACTION_FLUSH_CACHE_SHORTIDS.ordinal(), route, shortId);
             }
-            this.groupCache.remove(g.getShortId(),false);
+            integrationInvalidationService.invalidate(ModuleCatalog.Modules.GROUPS, GROUPS_ACTION_FLUSH_CACHE_SHORTIDS.ordinal(), route, g.getShortId());
         }
+    }
 
-        // Broadcast other instances to flush their cache for this device
-        IntegrationQuery iq = new IntegrationQuery(ModuleCatalog.Modules.GROUPS, commonConfig.getInstanceId());
-        iq.setServiceNameDest(ModuleCatalog.Modules.GROUPS);
-        iq.setType(IntegrationQuery.QueryType.TYPE_BROADCAST);
-        iq.setAction(GROUPS_ACTION_FLUSH_CACHE_SHORTID.ordinal());
-        iq.setQuery(g);
-        iq.setRoute(IntegrationQuery.getRoutefromRouteString(groupsConfig.getGroupsIntracomMedium()));
-        try {
-            integrationService.processQuery(iq);
-        } catch (ITOverQuotaException ignored) {}
+    /**
+     * Remove a group hierarchy from the local cache, on a flush received from another instance
+     * @param g - group to be removed with its referring groups
+     */
+    protected void flushGroupLocally(Group g) {
+        if ( Group.isVirtualGroup(g.getShortId()) ) return;
+        ArrayList<String> shortIds = new ArrayList<>(g.getReferringGroups());
+        shortIds.add(g.getShortId());
+        this.flushShortIdsLocally(shortIds);
+    }
 
+    /**
+     * Remove groupLists from the local cache, on a coalesced flush received from another instance
+     * @param shortIds - group short ids to be removed
+     */
+    protected void flushShortIdsLocally(Collection<String> shortIds) {
+        if ( this.serviceEnable && groupsConfig.getGroupsCacheMaxSize() > 0 ) {
+            for ( String shortId : shortIds ) {
+                this.groupCache.remove(shortId,false);
+            }
+        }
+        // group changes may impact any authorization decision (hierarchy)
+        userAuthorizationCache.invalidateAll();
     }
 
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.integration.api.interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Payload of a coalesced cache invalidation broadcast, the keys to be flushed by the destination module
+ * for the query action. A single key invalidation from an older instance has a String payload, use keysOf
+ * to handle both.
+ */
+public class IntegrationInvalidation {
+
+    protected List<String> keys;
+
+    public IntegrationInvalidation() {
+        this.keys = new ArrayList<>();
+    }
+
+    public IntegrationInvalidation(Collection<String> keys) {
+        this.keys = new ArrayList<>(keys);
+    }
+
+    /**
+     * Get the keys to invalidate from an invalidation query
+     * @param q - received query
+     * @return the keys, empty list when the payload is not an invalidation
+     */
+    public static List<String> keysOf(IntegrationQuery q) {
+        if ( q.getQuery() instanceof IntegrationInvalidation i ) return i.getKeys();
+        if ( q.getQuery() instanceof String s ) return List.of(s);
+        return List.of();
+    }
+
+    // ---
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public void setKeys(List<String> keys) {
+        this.keys = keys;
+    }
+}
@@ -64,4 +64,218 @@ public class IntegrationConfig {
         return integrationWorkersMaxCount;
     }
 
+    @Value("${integration.memory.bus:store}")
+    protected String integrationMemoryBus;
+    public String getIntegrationMemoryBus() {
+        return integrationMemoryBus;
+    }
+
+    @Value("${integration.memory.bus.size:65536}")
+    protected int integrationMemoryBusSize;
+    public int getIntegrationMemoryBusSize() {
+        return integrationMemoryBusSize;
+    }
+
+    @Value("${integration.module.workers:}")
+    protected String integrationModuleWorkers;
+    public String getIntegrationModuleWorkers() {
+        return integrationModuleWorkers;
+    }
+
+    @Value("${integration.module.queue.size:}")
+    protected String integrationModuleQueueSize;
+    public String getIntegrationModuleQueueSize() {
+        return integrationModuleQueueSize;
+    }
+
+    @Value("${integration.module.overflow:}")
+    protected String integrationModuleOverflow;
+    public String getIntegrationModuleOverflow() {
+        return integrationModuleOverflow;
+    }
+
+    @Value("${integration.module.overflow.default:reject}")
+    protected String integrationModuleOverflowDefault;
+    public String getIntegrationModuleOverflowDefault() {
+        return integrationModuleOverflowDefault;
+    }
+
+    // ----------------------------------------------
+    // batch delivery
+    // ----------------------------------------------
+
+    @Value("${integration.batch.max.size:100}")
+    protected int integrationBatchMaxSize;
+    public int getIntegrationBatchMaxSize() {
+        return integrationBatchMaxSize;
+    }
+
+    @Value("${integration.batch.max.wait.ms:10}")
+    protected long integrationBatchMaxWaitMs;
+    public long getIntegrationBatchMaxWaitMs() {
+        return integrationBatchMaxWaitMs;
+    }
+
+    @Value("${integration.module.batch.size:}")
+    protected String integrationModuleBatchSize;
+    public String getIntegrationModuleBatchSize() {
+        return integrationModuleBatchSize;
+    }
+
+    @Value("${integration.module.batch.wait.ms:}")
+    protected String integrationModuleBatchWaitMs;
+    public String getIntegrationModuleBatchWaitMs() {
+        return integrationModuleBatchWaitMs;
+    }
+
+    // ----------------------------------------------
+    // request / response queries
+    // ----------------------------------------------
+
+    @Value("${integration.query.timeout.ms:10000}")
+    protected long integrationQueryTimeoutMs;
+    public long getIntegrationQueryTimeoutMs() {
+        return integrationQueryTimeoutMs;
+    }
+
+    @Value("${integration.query.max.pending:10000}")
+    protected int integrationQueryMaxPending;
+    public int getIntegrationQueryMaxPending() {
+        return integrationQueryMaxPending;
+    }
+
+    // ----------------------------------------------
+    // database route
+    // ----------------------------------------------
+
+    @Value("${integration.route.db.collection.size.mb:64}")
+    protected long integrationRouteDbCollectionSizeMb;
+    public long getIntegrationRouteDbCollectionSizeMb() {
+        return integrationRouteDbCollectionSizeMb;
+    }
+
+    @Value("${integration.route.db.batch.size:100}")
+    protected int integrationRouteDbBatchSize;
+    public int getIntegrationRouteDbBatchSize() {
+        return integrationRouteDbBatchSize;
+    }
+
+    @Value("${integration.route.db.poll.ms:500}")
+    protected long integrationRouteDbPollMs;
+    public long getIntegrationRouteDbPollMs() {
+        return integrationRouteDbPollMs;
+    }
+
+    // ----------------------------------------------
+    // mqtt route
+    // ----------------------------------------------
+
+    @Value("${integration.route.mqtt.url:tcp://localhost:1883}")
+    protected String integrationRouteMqttUrl;
+    public String getIntegrationRouteMqttUrl() {
+        return integrationRouteMqttUrl;
+    }
+
+    @Value("${integration.route.mqtt.user:}")
+    protected String integrationRouteMqttUser;
+    public String getIntegrationRouteMqttUser() {
+        return integrationRouteMqttUser;
+    }
+
+    @Value("${integration.route.mqtt.password:}")
+    protected String integrationRouteMqttPassword;
+    public String getIntegrationRouteMqttPassword() {
+        return integrationRouteMqttPassword;
+    }
+
+    @Value("${integration.route.mqtt.client.prefix:itc}")
+    protected String integrationRouteMqttClientPrefix;
+    public String getIntegrationRouteMqttClientPrefix() {
+        return integrationRouteMqttClientPrefix;
+    }
+
+    @Value("${integration.route.mqtt.topic.prefix:itc/integration}")
+    protected String integrationRouteMqttTopicPrefix;
+    public String getIntegrationRouteMqttTopicPrefix() {
+        return integrationRouteMqttTopicPrefix;
+    }
+
+    @Value("${integration.route.mqtt.share.group:itc}")
+    protected String integrationRouteMqttShareGroup;
+    public String getIntegrationRouteMqttShareGroup() {
+        return integrationRouteMqttShareGroup;
+    }
+
+    @Value("${integration.route.mqtt.qos.broadcast:1}")
+    protected int integrationRouteMqttQosBroadcast;
+    public int getIntegrationRouteMqttQosBroadcast() {
+        return integrationRouteMqttQosBroadcast;
+    }
+
+    @Value("${integration.route.mqtt.qos.fireforget:2}")
+    protected int integrationRouteMqttQosFireForget;
+    public int getIntegrationRouteMqttQosFireForget() {
+        return integrationRouteMqttQosFireForget;
+    }
+
+    @Value("${integration.route.mqtt.buffer.size:10000}")
+    protected int integrationRouteMqttBufferSize;
+    public int getIntegrationRouteMqttBufferSize() {
+        return integrationRouteMqttBufferSize;
+    }
+
+    @Value("${integration.route.mqtt.max.inflight:1000}")
+    protected int integrationRouteMqttMaxInflight;
+    public int getIntegrationRouteMqttMaxInflight() {
+        return integrationRouteMqttMaxInflight;
+    }
+
+    @Value("${integration.journal.enabled:false}")
+    protected boolean integrationJournalEnabled;
+    public boolean isIntegrationJournalEnabled() {
+        return integrationJournalEnabled;
+    }
+
+    @Value("${integration.journal.path:/journal/}")
+    protected String integrationJournalPath;
+    public String getIntegrationJournalPath() {
+        return integrationJournalPath;
+    }
+
+    @Value("${integration.journal.segment.size.mb:16}")
+    protected int integrationJournalSegmentSizeMb;
+    public int getIntegrationJournalSegmentSizeMb() {
+        return integrationJournalSegmentSizeMb;
+    }
+
+    @Value("${integration.journal.fsync.ms:1000}")
+    protected long integrationJournalFsyncMs;
+    public long getIntegrationJournalFsyncMs() {
+        return integrationJournalFsyncMs;
+    }
+
+    @Value("${integration.invalidation.window.ms:50}")
+    protected long integrationInvalidationWindowMs;
+    public long getIntegrationInvalidationWindowMs() {
+        return integrationInvalidationWindowMs;
+    }
+
+    @Value("${integration.invalidation.max.keys:500}")
+    protected int integrationInvalidationMaxKeys;
+    public int getIntegrationInvalidationMaxKeys() {
+        return integrationInvalidationMaxKeys;
+    }
+
+    @Value("${integration.invalidation.legacy:true}")
+    protected boolean integrationInvalidationLegacy;
+    public boolean isIntegrationInvalidationLegacy() {
+        return integrationInvalidationLegacy;
+    }
+
+    @Value("${integration.store.expiration.ms:300000}")
+    protected long integrationStoreExpirationMs;
+    public long getIntegrationStoreExpirationMs() {
+        return integrationStoreExpirationMs;
+    }
+
 }
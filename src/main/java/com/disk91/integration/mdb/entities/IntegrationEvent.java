@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.integration.mdb.entities;
+
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document(collection = IntegrationEvent.COLLECTION)
+public class IntegrationEvent {
+
+    // capped collection, created on start by the db route
+    public static final String COLLECTION = "integration_events";
+
+    // ObjectId, gives the insertion order used to resume the event reading
+    @Id
+    private String id;
+
+    // Query uid to link with response
+    protected String queryId;
+
+    // Source module
+    protected ModuleCatalog.Modules serviceNameSource;
+
+    // Source instance id
+    protected String sourceInstanceId;
+
+    // Destination module
+    protected ModuleCatalog.Modules serviceNameDest;
+
+    // Query type, fire & forget events are processed by a single instance, broadcast by all
+    protected IntegrationQuery.QueryType type;
+
+    // Query action, value depends on services
+    protected int action;
+
+    // Query parameters
+    protected Object query;
+
+    // Query creation date in MS since epoch
+    protected long queryMs;
+
+    // Query timeout in MS, the event is not processed after, 0 for no timeout
+    protected long timeoutMs;
+
+
+    /**
+     * Create an event from a query
+     * @param q - query to publish
+     * @return the event to be stored
+     */
+    public static IntegrationEvent buildFrom(IntegrationQuery q) {
+        IntegrationEvent e = new IntegrationEvent();
+        e.setQueryId(q.getQueryId().toString());
+        e.setServiceNameSource(q.getServiceNameSource());
+        e.setSourceInstanceId(q.getSourceInstanceId());
+        e.setServiceNameDest(q.getServiceNameDest());
+        e.setType(q.getType());
+        e.setAction(q.getAction());
+        e.setQuery(q.getQuery());
+        e.setQueryMs(q.getQuery_ms());
+        e.setTimeoutMs(q.getTimeout_ms());
+        return e;
+    }
+
+    /**
+     * Rebuild the query from the event for a local processing
+     * @return the query
+     */
+    public IntegrationQuery toQuery() {
+        IntegrationQuery q = new IntegrationQuery(this.serviceNameSource, this.sourceInstanceId);
+        q.setQueryId(java.util.UUID.fromString(this.queryId));
+        q.setServiceNameDest(this.serviceNameDest);
+        q.setType(this.type);
+        q.setAction(this.action);
+        q.setQuery(this.query);
+        q.setQuery_ms(this.queryMs);
+        q.setTimeout_ms(this.timeoutMs);
+        q.setRoute(IntegrationQuery.QueryRoute.ROUTE_DB);
+        return q;
+    }
+
+
+    // --------------------------------
+
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getQueryId() {
+        return queryId;
+    }
+
+    public void setQueryId(String queryId) {
+        this.queryId = queryId;
+    }
+
+    public ModuleCatalog.Modules getServiceNameSource() {
+        return serviceNameSource;
+    }
+
+    public void setServiceNameSource(ModuleCatalog.Modules serviceNameSource) {
+        this.serviceNameSource = serviceNameSource;
+    }
+
+    public String getSourceInstanceId() {
+        return sourceInstanceId;
+    }
+
+    public void setSourceInstanceId(String sourceInstanceId) {
+        this.sourceInstanceId = sourceInstanceId;
+    }
+
+    public ModuleCatalog.Modules getServiceNameDest() {
+        return serviceNameDest;
+    }
+
+    public void setServiceNameDest(ModuleCatalog.Modules serviceNameDest) {
+        this.serviceNameDest = serviceNameDest;
+    }
+
+    public IntegrationQuery.QueryType getType() {
+        return type;
+    }
+
+    public void setType(IntegrationQuery.QueryType type) {
+        this.type = type;
+    }
+
+    public int getAction() {
+        return action;
+    }
+
+    public void setAction(int action) {
+        this.action = action;
+    }
+
+    public Object getQuery() {
+        return query;
+    }
+
+    public void setQuery(Object query) {
+        this.query = query;
+    }
+
+    public long getQueryMs() {
+        return queryMs;
+    }
+
+    public void setQueryMs(long queryMs) {
+        this.queryMs = queryMs;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void setTimeoutMs(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.integration.services;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.tools.Now;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.mdb.entities.IntegrationEvent;
+import com.disk91.integration.mdb.entities.IntegrationEventAck;
+import com.disk91.integration.mdb.entities.IntegrationEventClaim;
+import com.mongodb.CursorType;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+
+@Service
+public class IntegrationDbRoute {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /*
+     * Database route, shared by all the instances connected to the same database. The events are inserted
+     * in a capped collection (bounded in size, the oldest events are overwritten) and each instance reads
+     * them in the insertion order with a tailable cursor, fetched by batch.
+     * - broadcast events are processed by every instance
+     * - fire & forget events are processed by the first instance able to claim them (unique key on the
+     *   event id in the claim collection)
+     * Each instance acknowledges its position in the collection so a restarted instance resumes after the
+     * last event it has processed, as long as it is still in the capped collection. An event is processed once
+     * the local callback has completed, the position only moves over the events processed, so the events in
+     * progress on a stop are read again on restart. On the first start, the reading starts after the last event
+     * of the collection.
+     */
+
+    protected IntegrationConfig integrationConfig;
+    protected CommonConfig commonConfig;
+    protected MongoTemplate mongoTemplate;
+
+    @Autowired
+    public IntegrationDbRoute(
+            IntegrationConfig _integrationConfig,
+            CommonConfig _commonConfig,
+            MongoTemplate _mongoTemplate
+    ) {
+        this.integrationConfig = _integrationConfig;
+        this.commonConfig = _commonConfig;
+        this.mongoTemplate = _mongoTemplate;
+    }
+
+    @Autowired(required = false)
+    protected MeterRegistry meterRegistry;
+
+    protected final AtomicBoolean running = new AtomicBoolean(false);
+    protected Thread reader;
+    protected BiPredicate<IntegrationQuery, Runnable> delivery;
+    protected long startMs;
+    // reading position, the last event read from the collection (reader thread)
+    protected ObjectId lastEventId = null;
+    // events read and not yet acknowledged, in the collection order, true once processed
+    protected final ConcurrentSkipListMap<ObjectId, Boolean> pendingAck = new ConcurrentSkipListMap<>();
+    // last event of the processed prefix and last event saved in the acknowledgement
+    protected ObjectId processedEventId = null;
+    protected ObjectId lastAckEventId = null;
+    protected long unacknowledged = 0;
+
+    /**
+     * Create the capped collection when not existing
+     */
+    @PostConstruct
+    public void init() {
+        if ( !integrationConfig.isIntegrationRouteDbEnabled() ) return;
+        try {
+            if ( !mongoTemplate.collectionExists(IntegrationEvent.COLLECTION) ) {
+                long size = Math.max(1, integrationConfig.getIntegrationRouteDbCollectionSizeMb()) * 1024L * 1024L;
+                mongoTemplate.createCollection(IntegrationEvent.COLLECTION, CollectionOptions.empty().capped().size(size));
+                log.info("[integration] Db route collection created ({} MB)", size / (1024 * 1024));
+            } else if ( !isCapped() ) {
+                log.error("[integration] Db route collection {} is not capped, the route can't work", IntegrationEvent.COLLECTION);
+            }
+        } catch (MongoException x) {
+            log.error("[integration] Db route collection setup failed ({})", x.getMessage());
+        }
+        initDbRouteMetrics();
+    }
+
+    protected boolean isCapped() {
+        Document c = mongoTemplate.getDb().listCollections().filter(Filters.eq("name", IntegrationEvent.COLLECTION)).first();
+        if ( c == null ) return false;
+        Document options = c.get("options", Document.class);
+        return options != null && options.getBoolean("capped", false);
+    }
+
+    /**
+     * Start reading the events from the database
+     * @param _delivery - local delivery of the events to the destination module, returns false when the event
+     *                  is refused, otherwise the Runnable is called once the event is processed
+     */
+    public void start(BiPredicate<IntegrationQuery, Runnable> _delivery) {
+        if ( !running.compareAndSet(false, true) ) return;
+        this.delivery = _delivery;
+        this.startMs = Now.NowUtcMs();
+        this.resumePosition();
+        reader = new Thread(this::readerLoop);
+        reader.setName("integration-db-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Get the reading position, after the last event acknowledged by this instance or after the last event
+     * of the collection on the first start
+     */
+    protected void resumePosition() {
+        pendingAck.clear();
+        unacknowledged = 0;
+        IntegrationEventAck ack = mongoTemplate.findById(commonConfig.getInstanceId(), IntegrationEventAck.class);
+        if ( ack != null && ack.getLastEventId() != null && ObjectId.isValid(ack.getLastEventId()) ) {
+            lastEventId = new ObjectId(ack.getLastEventId());
+            lastAckEventId = lastEventId;
+            processedEventId = lastEventId;
+            log.info("[integration] Db route resuming after event {}", ack.getLastEventId());
+            return;
+        }
+        Query q = new Query().with(Sort.by(Sort.Direction.DESC, "_id")).limit(1);
+        IntegrationEvent last = mongoTemplate.findOne(q, IntegrationEvent.class);
+        lastEventId = ( last != null && ObjectId.isValid(last.getId()) ) ? new ObjectId(last.getId()) : null;
+        lastAckEventId = null;
+        processedEventId = null;
+        log.info("[integration] Db route first start, reading after event {}", ( lastEventId != null ) ? lastEventId.toHexString() : "none");
+    }
+
+    /**
+     * Stop the reader and acknowledge the last processed event
+     */
+    public void stop() {
+        if ( !running.compareAndSet(true, false) ) return;
+        if ( reader != null ) {
+            try {
+                reader.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        acknowledge();
+    }
+
+    /**
+     * Publish a query to the other instances
+     * @param q - query to publish
+     * @return false when the event can't be stored
+     */
+    public boolean publish(IntegrationQuery q) {
+        try {
+            mongoTemplate.insert(IntegrationEvent.buildFrom(q));
+            publishedEvents.incrementAndGet();
+            return true;
+        } catch (Exception x) {
+            log.error("[integration] Db route publication failed for query {} ({})", q.getQueryId(), x.getMessage());
+            failedEvents.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Tail the capped collection, the cursor is reopened after the last processed event when it dies (empty
+     * collection, network failure...)
+     */
+    protected void readerLoop() {
+        while (running.get()) {
+            Bson filter = ( lastEventId != null ) ? Filters.gt("_id", lastEventId) : Filters.empty();
+            try (MongoCursor<Document> cursor = mongoTemplate.getCollection(IntegrationEvent.COLLECTION)
+                    .find(filter)
+                    .cursorType(CursorType.TailableAwait)
+                    .maxAwaitTime(integrationConfig.getIntegrationRouteDbPollMs(), TimeUnit.MILLISECONDS)
+                    .batchSize(Math.max(1, integrationConfig.getIntegrationRouteDbBatchSize()))
+                    .iterator()
+            ) {
+                while (running.get()) {
+                    Document d = cursor.tryNext();
+                    if ( d == null ) {
+                        // nothing new, good time to acknowledge
+                        acknowledge();
+                        if ( cursor.getServerCursor() == null ) break;  // dead cursor
+                        continue;
+                    }
+                    lastEventId = d.getObjectId("_id");
+                    process(lastEventId, d);
+                    unacknowledged++;
+                    if ( unacknowledged >= integrationConfig.getIntegrationRouteDbBatchSize() ) acknowledge();
+                }
+            } catch (Exception x) {
+                if ( running.get() ) log.warn("[integration] Db route reader failure ({})", x.getMessage());
+            }
+            if ( running.get() ) Now.sleep(integrationConfig.getIntegrationRouteDbPollMs());
+        }
+    }
+
+    /**
+     * Process an event read from the database
+     * @param id - event id
+     * @param d - raw event
+     */
+    protected void process(ObjectId id, Document d) {
+        IntegrationEvent e;
+        try {
+            e = mongoTemplate.getConverter().read(IntegrationEvent.class, d);
+        } catch (Exception x) {
+            log.error("[integration] Db route event {} can't be read ({})", id, x.getMessage());
+            failedEvents.incrementAndGet();
+            pendingAck.put(id, true);
+            return;
+        }
+        process(id, e);
+    }
+
+    /**
+     * Process an event read from the database, fire & forget events must be claimed first. The event is
+     * registered for the acknowledgement before the delivery, the delivery callback marks it processed.
+     * @param id - event id
+     * @param e - event
+     */
+    protected void process(ObjectId id, IntegrationEvent e) {
+        pendingAck.put(id, false);
+        boolean claimed = false;
+        try {
+            if ( e.getTimeoutMs() > 0 && Now.NowUtcMs() > e.getQueryMs() + e.getTimeoutMs() ) {
+                expiredEvents.incrementAndGet();
+                processed(id);
+                return;
+            }
+            if ( e.getType() == IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET ) {
+                if ( !claim(e) ) {
+                    // processed by another instance
+                    processed(id);
+                    return;
+                }
+                claimed = true;
+            }
+            receivedEvents.incrementAndGet();
+            receiveLatencyMs.addAndGet(Math.max(0, Now.NowUtcMs() - e.getQueryMs()));
+            if ( !delivery.test(e.toQuery(), () -> processed(id)) ) {
+                // refused locally, release the claim so the event is not reported as processed
+                failedEvents.incrementAndGet();
+                if ( claimed ) releaseClaim(e);
+                processed(id);
+            }
+        } catch (Exception x) {
+            log.error("[integration] Db route event processing failure ({})", x.getMessage());
+            failedEvents.incrementAndGet();
+            if ( claimed ) releaseClaim(e);
+            processed(id);
+        }
+    }
+
+    /**
+     * Claim a fire & forget event for this instance. An event published before the start and already claimed
+     * by this instance was in progress on the previous stop, it is claimed again.
+     * @param e - event
+     * @return true when this instance must process the event
+     */
+    protected boolean claim(IntegrationEvent e) {
+        IntegrationEventClaim claim = new IntegrationEventClaim();
+        claim.setId(e.getId());
+        claim.setInstanceId(commonConfig.getInstanceId());
+        claim.setClaimDate(new Date());
+        try {
+            mongoTemplate.insert(claim);
+            return true;
+        } catch (DuplicateKeyException x) {
+            if ( e.getQueryMs() >= startMs ) return false;
+            IntegrationEventClaim previous = mongoTemplate.findById(e.getId(), IntegrationEventClaim.class);
+            return previous != null && commonConfig.getInstanceId().equals(previous.getInstanceId());
+        }
+    }
+
+    /**
+     * Remove the claim of an event not processed
+     * @param e - event
+     */
+    protected void releaseClaim(IntegrationEvent e) {
+        try {
+            mongoTemplate.remove(
+                    Query.query(Criteria.where("_id").is(e.getId()).and("instanceId").is(commonConfig.getInstanceId())),
+                    IntegrationEventClaim.class
+            );
+        } catch (Exception x) {
+            log.warn("[integration] Db route claim release failure for event {} ({})", e.getId(), x.getMessage());
+        }
+    }
+
+    /**
+     * Mark an event as processed, it can be acknowledged once all the previous events are processed
+     * @param id - event id
+     */
+    protected void processed(ObjectId id) {
+        pendingAck.replace(id, true);
+    }
+
+    /**
+     * Save the position of the last processed event for this instance, the events are processed in parallel
+     * so the position is the last event of the processed prefix
+     */
+    protected void acknowledge() {
+        Map.Entry<ObjectId, Boolean> first;
+        while ( (first = pendingAck.firstEntry()) != null && first.getValue() ) {
+            pendingAck.remove(first.getKey());
+            processedEventId = first.getKey();
+        }
+        unacknowledged = 0;
+        if ( processedEventId == null || processedEventId.equals(lastAckEventId) ) return;
+        try {
+            IntegrationEventAck ack = new IntegrationEventAck();
+            ack.setId(commonConfig.getInstanceId());
+            ack.setLastEventId(processedEventId.toHexString());
+            ack.setAckMs(Now.NowUtcMs());
+            mongoTemplate.save(ack);
+            lastAckEventId = processedEventId;
+        } catch (Exception x) {
+            log.warn("[integration] Db route acknowledgement failure ({})", x.getMessage());
+        }
+    }
+
+    // ================================================================================================
+    // Metrics
+
+    protected void initDbRouteMetrics() {
+        if ( meterRegistry == null ) return;
+        Gauge.builder("capture_integration_db_published", this.getPublishedEvents())
+                .description("[capture] Number of events published on the db route")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_db_received", this.getReceivedEvents())
+                .description("[capture] Number of events received and processed from the db route")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_db_receive_latency_ms", this.getReceiveLatencyMs())
+                .description("[capture] Total time between publication and reception in milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_db_expired", this.getExpiredEvents())
+                .description("[capture] Number of events received after their timeout")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_db_failed", this.getFailedEvents())
+                .description("[capture] Number of events failed on publication or processing")
+                .register(meterRegistry);
+    }
+
+    protected AtomicLong publishedEvents = new AtomicLong(0);
+    public Supplier<Number> getPublishedEvents() {
+        return () -> publishedEvents.get();
+    }
+
+    protected AtomicLong receivedEvents = new AtomicLong(0);
+    public Supplier<Number> getReceivedEvents() {
+        return () -> receivedEvents.get();
+    }
+
+    protected AtomicLong receiveLatencyMs = new AtomicLong(0);
+    public Supplier<Number> getReceiveLatencyMs() {
+        return () -> receiveLatencyMs.get();
+    }
+
+    protected AtomicLong expiredEvents = new AtomicLong(0);
+    public Supplier<Number> getExpiredEvents() {
+        return () -> expiredEvents.get();
+    }
+
+    protected AtomicLong failedEvents = new AtomicLong(0);
+    public Supplier<Number> getFailedEvents() {
+        return () -> failedEvents.get();
+    }
+
+}
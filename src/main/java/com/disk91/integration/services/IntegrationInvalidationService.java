@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.integration.services;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.exceptions.ITOverQuotaException;
+import com.disk91.integration.api.interfaces.IntegrationInvalidation;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Service
+public class IntegrationInvalidationService {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /*
+     * Coalescing of the cache invalidation broadcasts. The caches publish one invalidation per changed key,
+     * bulk operations generate thousands of them, mostly duplicated. The keys are collected per destination
+     * module, action and route during a short window, deduplicated and sent in a single broadcast with an
+     * IntegrationInvalidation payload (split when over max.keys). The receivers flush all the keys in one pass.
+     * The older versions only accept a String payload, in legacy mode (rolling upgrade) the deduplicated keys are
+     * sent one per message with a String payload.
+     */
+
+    protected record Target(ModuleCatalog.Modules module, int action, IntegrationQuery.QueryRoute route) {}
+
+    protected final ConcurrentHashMap<Target, Set<String>> pending = new ConcurrentHashMap<>();
+
+    protected IntegrationService integrationService;
+    protected IntegrationConfig integrationConfig;
+    protected CommonConfig commonConfig;
+
+    @Autowired
+    public IntegrationInvalidationService(
+            IntegrationService _integrationService,
+            IntegrationConfig _integrationConfig,
+            CommonConfig _commonConfig
+    ) {
+        this.integrationService = _integrationService;
+        this.integrationConfig = _integrationConfig;
+        this.commonConfig = _commonConfig;
+    }
+
+    @Autowired(required = false)
+    protected MeterRegistry meterRegistry;
+
+    /**
+     * Request the invalidation of a key on the other instances, the key is broadcast with the other keys
+     * of the same module and action at the end of the coalescing window (immediately when the window is 0)
+     * @param module - source and destination module
+     * @param action - module flush action
+     * @param route - route for the broadcast
+     * @param key - key to invalidate
+     */
+    public void invalidate(ModuleCatalog.Modules module, int action, IntegrationQuery.QueryRoute route, String key) {
+        if ( key == null ) return;
+        this.requestedKeys.incrementAndGet();
+        Target t = new Target(module, action, route);
+        if ( this.integrationConfig.getIntegrationInvalidationWindowMs() <= 0 ) {
+            this.publish(t, List.of(key));
+            return;
+        }
+        // the set is updated under the map bin lock, flush removes it the same way so no key is lost
+        this.pending.compute(t, (k, keys) -> {
+            if ( keys == null ) keys = ConcurrentHashMap.newKeySet();
+            keys.add(key);
+            return keys;
+        });
+    }
+
+    /**
+     * Broadcast the keys collected during the window
+     */
+    @Scheduled(fixedDelayString = "${integration.invalidation.window.ms:50}", initialDelay = 1_000)
+    public void flush() {
+        for ( Target t : new ArrayList<>(this.pending.keySet()) ) {
+            Set<String> keys = this.pending.remove(t);
+            if ( keys == null || keys.isEmpty() ) continue;
+            int max = Math.max(1, this.integrationConfig.getIntegrationInvalidationMaxKeys());
+            ArrayList<String> all = new ArrayList<>(keys);
+            for ( int i = 0 ; i < all.size() ; i += max ) {
+                this.publish(t, all.subList(i, Math.min(all.size(), i + max)));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.flush();
+    }
+
+    /**
+     * @return true when the invalidations must be sent in the format of the older versions, one key per message
+     */
+    public boolean isLegacy() {
+        return this.integrationConfig.isIntegrationInvalidationLegacy();
+    }
+
+    protected void publish(Target t, List<String> keys) {
+        if ( this.isLegacy() || keys.size() == 1 ) {
+            for ( String key : keys ) this.publish(t, key, 1);
+        } else {
+            this.publish(t, new IntegrationInvalidation(keys), keys.size());
+        }
+    }
+
+    protected void publish(Target t, Object payload, int keys) {
+        IntegrationQuery iq = new IntegrationQuery(t.module(), commonConfig.getInstanceId());
+        iq.setServiceNameDest(t.module());
+        iq.setType(IntegrationQuery.QueryType.TYPE_BROADCAST);
+        iq.setAction(t.action());
+        iq.setQuery(payload);
+        iq.setRoute(t.route());
+        this.sentKeys.addAndGet(keys);
+        this.sentMessages.incrementAndGet();
+        try {
+            integrationService.processQuery(iq);
+        } catch (ITOverQuotaException x) {
+            log.warn("[integration] Invalidation of {} keys for {} refused ({})", keys, t.module(), x.getMessage());
+        }
+    }
+
+    // ================================================================================================
+    // Metrics
+
+    protected final AtomicLong requestedKeys = new AtomicLong(0);
+    protected final AtomicLong sentKeys = new AtomicLong(0);
+    protected final AtomicLong sentMessages = new AtomicLong(0);
+
+    public Supplier<Number> getRequestedKeys() {
+        return requestedKeys::get;
+    }
+
+    public Supplier<Number> getSentKeys() {
+        return sentKeys::get;
+    }
+
+    public Supplier<Number> getSentMessages() {
+        return sentMessages::get;
+    }
+
+    /**
+     * Coalescing ratio, number of invalidations requested per message sent
+     */
+    public Supplier<Number> getCoalescingRatio() {
+        return () -> ( sentMessages.get() == 0 ) ? 0.0 : (double) requestedKeys.get() / sentMessages.get();
+    }
+
+    @PostConstruct
+    protected void initInvalidationMetrics() {
+        if ( meterRegistry == null ) return;
+        Gauge.builder("capture_integration_invalidation_requested_keys", this.getRequestedKeys())
+                .description("[capture] Number of cache invalidations requested")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_invalidation_sent_keys", this.getSentKeys())
+                .description("[capture] Number of cache invalidation keys broadcast after deduplication")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_invalidation_sent_messages", this.getSentMessages())
+                .description("[capture] Number of cache invalidation broadcasts")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_invalidation_coalescing_ratio", this.getCoalescingRatio())
+                .description("[capture] Cache invalidations requested per broadcast")
+                .register(meterRegistry);
+    }
+
+}
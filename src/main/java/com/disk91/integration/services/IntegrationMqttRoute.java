@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.integration.services;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.Now;
+import com.disk91.common.tools.RingBuffer;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.tools.IntegrationCodec;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+@Service
+public class IntegrationMqttRoute implements MqttCallbackExtended {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /*
+     * MQTT route, instances are connected to a shared broker.
+     * - broadcast events are published on <prefix>/broadcast/<module>, every instance subscribes to all of them
+     * - fire & forget events are published on <prefix>/work/<module>, instances subscribe with a shared
+     *   subscription ($share/<group>/...) so the broker delivers each event to a single instance
+     * Messages use the IntegrationCodec binary encoding, the QoS is selected per query type. When the broker
+     * is not reachable, the events are kept in a local buffer and published on reconnection.
+     */
+
+    protected IntegrationConfig integrationConfig;
+    protected CommonConfig commonConfig;
+
+    @Autowired
+    public IntegrationMqttRoute(
+            IntegrationConfig _integrationConfig,
+            CommonConfig _commonConfig
+    ) {
+        this.integrationConfig = _integrationConfig;
+        this.commonConfig = _commonConfig;
+    }
+
+    @Autowired(required = false)
+    protected MeterRegistry meterRegistry;
+
+    protected MqttAsyncClient client;
+    protected RingBuffer<IntegrationQuery> buffer;
+    protected Consumer<IntegrationQuery> delivery;
+    protected final AtomicBoolean running = new AtomicBoolean(false);
+    protected final AtomicBoolean connecting = new AtomicBoolean(false);
+    protected final AtomicBoolean connectedOnce = new AtomicBoolean(false);
+
+    /**
+     * Connect to the broker and subscribe to the module topics
+     * @param _delivery - local delivery of the events to the destination module
+     */
+    public void start(Consumer<IntegrationQuery> _delivery) {
+        if ( !running.compareAndSet(false, true) ) return;
+        this.delivery = _delivery;
+        this.buffer = new RingBuffer<>(Math.max(2, integrationConfig.getIntegrationRouteMqttBufferSize()));
+        try {
+            client = new MqttAsyncClient(
+                    integrationConfig.getIntegrationRouteMqttUrl(),
+                    integrationConfig.getIntegrationRouteMqttClientPrefix() + "-" + commonConfig.getInstanceId(),
+                    new MemoryPersistence()
+            );
+            client.setCallback(this);
+            initMqttRouteMetrics();
+            connect();
+        } catch (MqttException x) {
+            log.error("[integration] Mqtt route setup failed ({})", x.getMessage());
+        }
+    }
+
+    /**
+     * Disconnect from the broker, pending events in the local buffer are lost
+     */
+    public void stop() {
+        if ( !running.compareAndSet(true, false) ) return;
+        if ( buffer != null && buffer.size() > 0 ) log.warn("[integration] Mqtt route stopped with {} events not published", buffer.size());
+        try {
+            if ( client != null ) {
+                if ( client.isConnected() ) client.disconnect(2_000).waitForCompletion(2_000);
+                client.close();
+            }
+        } catch (MqttException x) {
+            log.warn("[integration] Mqtt route disconnection failure ({})", x.getMessage());
+        }
+    }
+
+    protected void connect() {
+        if ( !connecting.compareAndSet(false, true) ) return;
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setAutomaticReconnect(true);
+        options.setKeepAliveInterval(30);
+        options.setMaxInflight(Math.max(10, integrationConfig.getIntegrationRouteMqttMaxInflight()));
+        if ( !integrationConfig.getIntegrationRouteMqttUser().isEmpty() ) {
+            options.setUserName(integrationConfig.getIntegrationRouteMqttUser());
+            options.setPassword(integrationConfig.getIntegrationRouteMqttPassword().toCharArray());
+        }
+        try {
+            client.connect(options, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    connecting.set(false);
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable x) {
+                    connecting.set(false);
+                    log.warn("[integration] Mqtt route connection failed ({}), retrying", x.getMessage());
+                }
+            });
+        } catch (MqttException x) {
+            connecting.set(false);
+            log.warn("[integration] Mqtt route connection failed ({}), retrying", x.getMessage());
+        }
+    }
+
+    /**
+     * The automatic reconnection only works once connected, retry the initial connection until it succeeds
+     */
+    @Scheduled(fixedDelay = 10_000, initialDelay = 10_000)
+    void reconnect() {
+        if ( running.get() && client != null && !connectedOnce.get() && !client.isConnected() && !connecting.get() ) {
+            try {
+                connect();
+            } catch (Exception x) {
+                log.warn("[integration] Mqtt route reconnection failure ({})", x.getMessage());
+            }
+        }
+    }
+
+    // ================================================================================================
+    // Topics
+
+    protected String getTopic(IntegrationQuery.QueryType type, ModuleCatalog.Modules module) {
+        String kind = ( type == IntegrationQuery.QueryType.TYPE_BROADCAST ) ? "broadcast" : "work";
+        return integrationConfig.getIntegrationRouteMqttTopicPrefix() + "/" + kind + "/" + ModuleCatalog.getServiceName(module);
+    }
+
+    protected int getQos(IntegrationQuery.QueryType type) {
+        int qos = ( type == IntegrationQuery.QueryType.TYPE_BROADCAST )
+                ? integrationConfig.getIntegrationRouteMqttQosBroadcast()
+                : integrationConfig.getIntegrationRouteMqttQosFireForget();
+        return Math.max(0, Math.min(2, qos));
+    }
+
+    /**
+     * Publish a query to the other instances, the query is buffered locally when not connected
+     * @param q - query to publish
+     * @return false when the query can't be published nor buffered
+     */
+    public boolean publish(IntegrationQuery q) {
+        if ( client == null || !running.get() ) return false;
+        if ( !client.isConnected() || buffer.size() > 0 ) {
+            // keep the order, flush the pending ones first
+            if ( !buffer.offer(q) ) {
+                droppedEvents.incrementAndGet();
+                return false;
+            }
+            if ( client.isConnected() ) flushBuffer();
+            return true;
+        }
+        return send(q);
+    }
+
+    protected boolean send(IntegrationQuery q) {
+        try {
+            MqttMessage m = new MqttMessage(IntegrationCodec.encode(q));
+            m.setQos(getQos(q.getType()));
+            client.publish(getTopic(q.getType(), q.getServiceNameDest()), m);
+            publishedEvents.incrementAndGet();
+            return true;
+        } catch (MqttException x) {
+            // connection lost or too many messages in flight, buffer it
+            if ( buffer.offer(q) ) return true;
+            droppedEvents.incrementAndGet();
+            return false;
+        } catch (Exception x) {
+            log.error("[integration] Mqtt route publication failed for query {} ({})", q.getQueryId(), x.getMessage());
+            failedEvents.incrementAndGet();
+            return false;
+        }
+    }
+
+    protected synchronized void flushBuffer() {
+        IntegrationQuery q;
+        while ( client.isConnected() && (q = buffer.poll()) != null ) {
+            try {
+                MqttMessage m = new MqttMessage(IntegrationCodec.encode(q));
+                m.setQos(getQos(q.getType()));
+                client.publish(getTopic(q.getType(), q.getServiceNameDest()), m);
+                publishedEvents.incrementAndGet();
+            } catch (MqttException x) {
+                // put it back at the end, the order is not guaranteed anymore, retry on next connection
+                if ( !buffer.offer(q) ) droppedEvents.incrementAndGet();
+                return;
+            } catch (Exception x) {
+                log.error("[integration] Mqtt route publication failed for query {} ({})", q.getQueryId(), x.getMessage());
+                failedEvents.incrementAndGet();
+            }
+        }
+    }
+
+    // ================================================================================================
+    // Mqtt callbacks
+
+    @Override
+    public void connectComplete(boolean reconnect, String serverURI) {
+        log.info("[integration] Mqtt route {} to {}", ( reconnect ) ? "reconnected" : "connected", serverURI);
+        connectedOnce.set(true);
+        String prefix = integrationConfig.getIntegrationRouteMqttTopicPrefix();
+        String group = integrationConfig.getIntegrationRouteMqttShareGroup();
+        try {
+            // clean session, subscriptions are lost on reconnection
+            client.subscribe(
+                    new String[] {
+                            prefix + "/broadcast/+",
+                            ( group.isEmpty() ) ? prefix + "/work/+" : "$share/" + group + "/" + prefix + "/work/+"
+                    },
+                    new int[] {
+                            getQos(IntegrationQuery.QueryType.TYPE_BROADCAST),
+                            getQos(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET)
+                    }
+            );
+        } catch (MqttException x) {
+            log.error("[integration] Mqtt route subscription failed ({})", x.getMessage());
+        }
+        flushBuffer();
+    }
+
+    @Override
+    public void connectionLost(Throwable cause) {
+        log.warn("[integration] Mqtt route connection lost ({})", ( cause != null ) ? cause.getMessage() : "unknown");
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) {
+        try {
+            IntegrationQuery q = IntegrationCodec.decode(message.getPayload());
+            if ( q.getTimeout_ms() > 0 && Now.NowUtcMs() > q.getQuery_ms() + q.getTimeout_ms() ) {
+                expiredEvents.incrementAndGet();
+                return;
+            }
+            q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MQTT);
+            receivedEvents.incrementAndGet();
+            receiveLatencyMs.addAndGet(Math.max(0, Now.NowUtcMs() - q.getQuery_ms()));
+            delivery.accept(q);
+        } catch (Exception x) {
+            log.error("[integration] Mqtt route message processing failure on {} ({})", topic, x.getMessage());
+            failedEvents.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+        // a slot is available in the inflight window, publish the events buffered during a burst
+        if ( buffer.size() > 0 ) flushBuffer();
+    }
+
+    // ================================================================================================
+    // Metrics
+
+    protected void initMqttRouteMetrics() {
+        if ( meterRegistry == null ) return;
+        Gauge.builder("capture_integration_mqtt_published", this.getPublishedEvents())
+                .description("[capture] Number of events published on the mqtt route")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_mqtt_received", this.getReceivedEvents())
+                .description("[capture] Number of events received from the mqtt route")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_mqtt_receive_latency_ms", this.getReceiveLatencyMs())
+                .description("[capture] Total time between publication and reception in milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_mqtt_buffered", () -> buffer.size())
+                .description("[capture] Number of events waiting in the local buffer for the broker connection")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_mqtt_dropped", this.getDroppedEvents())
+                .description("[capture] Number of events dropped, local buffer full")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_mqtt_expired", this.getExpiredEvents())
+                .description("[capture] Number of events received after their timeout")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_mqtt_failed", this.getFailedEvents())
+                .description("[capture] Number of events failed on encoding or decoding")
+                .register(meterRegistry);
+    }
+
+    protected AtomicLong publishedEvents = new AtomicLong(0);
+    public Supplier<Number> getPublishedEvents() {
+        return () -> publishedEvents.get();
+    }
+
+    protected AtomicLong receivedEvents = new AtomicLong(0);
+    public Supplier<Number> getReceivedEvents() {
+        return () -> receivedEvents.get();
+    }
+
+    protected AtomicLong receiveLatencyMs = new AtomicLong(0);
+    public Supplier<Number> getReceiveLatencyMs() {
+        return () -> receiveLatencyMs.get();
+    }
+
+    protected AtomicLong droppedEvents = new AtomicLong(0);
+    public Supplier<Number> getDroppedEvents() {
+        return () -> droppedEvents.get();
+    }
+
+    protected AtomicLong expiredEvents = new AtomicLong(0);
+    public Supplier<Number> getExpiredEvents() {
+        return () -> expiredEvents.get();
+    }
+
+    protected AtomicLong failedEvents = new AtomicLong(0);
+    public Supplier<Number> getFailedEvents() {
+        return () -> failedEvents.get();
+    }
+
+}
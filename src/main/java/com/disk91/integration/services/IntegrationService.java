@@ -23,12 +23,16 @@ import com.disk91.common.api.interfaces.ActionResult;
 import com.disk91.common.config.CommonConfig;
 import com.disk91.common.config.ModuleCatalog;
 import com.disk91.common.tools.Now;
+import com.disk91.common.tools.RingBuffer;
+import com.disk91.common.tools.TimerWheel;
 import com.disk91.common.tools.exceptions.ITOverQuotaException;
 import com.disk91.common.tools.exceptions.ITParseException;
 import com.disk91.common.tools.exceptions.ITTooManyException;
+import com.disk91.integration.api.interfaces.IntegrationBatchCallback;
 import com.disk91.integration.api.interfaces.IntegrationCallback;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
 import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.tools.IntegrationJournal;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
@@ -39,12 +43,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
@@ -66,9 +77,15 @@ public class IntegrationService {
      * broker will handle distribution.
      */
     private ConcurrentSkipListMap<Long, IntegrationQuery> eventStore;
+    // Alternative in-memory transport: one lane per destination module, each with a bounded lock-free ring
+    // buffer and its own workers, so a slow consumer can't delay the events of the other modules. Each event
+    // is claimed by a single worker, no index, no garbage collection and workers are unparked on new events.
+    private ConcurrentHashMap<ModuleCatalog.Modules, ModuleLane> lanes;
     private AtomicLong eventId;
     private AtomicLong eventsInQueue;
     protected final AtomicBoolean running = new AtomicBoolean(false);
+    // local journal of the in-memory events, replayed on restart (null when disabled)
+    protected IntegrationJournal journal;
 
     private static final Object lock = new Object();
 
@@ -84,18 +101,53 @@ public class IntegrationService {
         log.info("[integration] Init");
         this.integrationConfig = _integrationConfig;
         this.commonConfig = _commonConfig;
-        this.eventStore = new ConcurrentSkipListMap<>();
-        // @TODO : load the previous data from database
+        if ( this.isRingBus() ) {
+            this.lanes = new ConcurrentHashMap<>();
+        } else {
+            this.eventStore = new ConcurrentSkipListMap<>();
+        }
         this.eventId = new AtomicLong(0);
         this.eventsInQueue = new AtomicLong(0);
+        if ( this.integrationConfig.isIntegrationJournalEnabled() ) {
+            this.journal = new IntegrationJournal(
+                    this.integrationConfig.getIntegrationJournalPath(),
+                    this.integrationConfig.getIntegrationJournalSegmentSizeMb() * 1024L * 1024L
+            );
+        }
+    }
+
+    protected boolean isRingBus() {
+        return "ring".equalsIgnoreCase(this.integrationConfig.getIntegrationMemoryBus());
+    }
+
+    @Autowired(required = false)
+    protected IntegrationDbRoute integrationDbRoute;
+
+    @Autowired(required = false)
+    protected IntegrationMqttRoute integrationMqttRoute;
+
+    protected boolean isLocalProcessing() {
+        return this.integrationConfig.isIntegrationRouteMemoryEnabled()
+                || this.integrationConfig.isIntegrationRouteDbEnabled()
+                || this.integrationConfig.isIntegrationRouteMqttEnabled();
     }
 
     @PostConstruct
     public void startRunners() {
-        if ( this.integrationConfig.isIntegrationRouteMemoryEnabled() ) {
+        if ( this.isLocalProcessing() ) {
+            // database and mqtt events are processed locally by the in-memory workers
+            this.recoverJournal();
             log.info("[integration] Start inMemory Runners");
             this.startInMemoryWorkers(Math.max(1, this.integrationConfig.getIntegrationWorkersMaxCount()));
         }
+        if ( this.integrationConfig.isIntegrationRouteDbEnabled() && this.integrationDbRoute != null ) {
+            log.info("[integration] Start Db route reader");
+            this.integrationDbRoute.start(this::deliverLocally);
+        }
+        if ( this.integrationConfig.isIntegrationRouteMqttEnabled() && this.integrationMqttRoute != null ) {
+            log.info("[integration] Start Mqtt route");
+            this.integrationMqttRoute.start(this::deliverLocally);
+        }
     }
 
 
@@ -107,10 +159,19 @@ public class IntegrationService {
     @PreDestroy
     public void shutdown() {
         log.info("[integration] Integration workers stopping");
-        if ( this.integrationConfig.isIntegrationRouteMemoryEnabled() ) {
-            // @TODO : persist the event store to database for later processing
+        if ( this.integrationConfig.isIntegrationRouteDbEnabled() && this.integrationDbRoute != null ) {
+            this.integrationDbRoute.stop();
+        }
+        if ( this.integrationConfig.isIntegrationRouteMqttEnabled() && this.integrationMqttRoute != null ) {
+            this.integrationMqttRoute.stop();
+        }
+        if ( this.isLocalProcessing() ) {
             stopInMemoryWorkers();
         }
+        if ( this.journal != null ) {
+            // the events not delivered stay in the journal for the next start
+            this.journal.close();
+        }
         log.info("[integration] Integration workers stopped");
     }
 
@@ -148,6 +209,11 @@ public class IntegrationService {
             } else {
                 // No solution
                 log.error("[integration] No route available (all closed) for query {}", query.getQueryId());
+                this.incrementIntegrationRequests();
+                this.incrementFailedRequests();
+                query.setStateError();
+                query.setResponse(ActionResult.UNKNOWN("integration-no-route"));
+                this.failPending(query);
                 return query;
             }
         }
@@ -155,32 +221,277 @@ public class IntegrationService {
         // process depending route
         switch (query.getRoute()) {
             case ROUTE_MEMORY -> {
+                // all the query types, the response of SYNC / ASYNC queries is set in the query by the callback
+                if ( !this.queueInMemory(query) ) {
+                    this.incrementIntegrationRequests();
+                    this.incrementFailedRequests();
+                    throw new ITOverQuotaException("integration-memory-bus-full");
+                }
+                this.incrementIntegrationRequests();
+            }
+            case ROUTE_DB -> {
                 switch (query.getType()) {
                     case TYPE_FIRE_AND_FORGET, TYPE_BROADCAST -> {
-                        synchronized (lock) {
-                            this.eventStore.put(this.eventId.incrementAndGet(), query);
-                            this.eventsInQueue.incrementAndGet();
-                        }
-                        this.incrementInQueueRequests();
                         this.incrementIntegrationRequests();
+                        if ( this.integrationDbRoute == null || !this.integrationDbRoute.publish(query) ) {
+                            this.incrementFailedRequests();
+                            query.setStateError();
+                            query.setResponse(ActionResult.UNKNOWN("integration-db-route-failure"));
+                        }
                     }
                     case TYPE_ASYNC, TYPE_SYNC -> {
-                        log.error("[integration] Query Type not yet implemented");
+                        log.error("[integration] Query Type not supported on route {}", query.getRoute());
                         this.incrementIntegrationRequests();
                         this.incrementFailedRequests();
+                        query.setStateError();
+                        query.setResponse(ActionResult.UNKNOWN("integration-route-not-supported"));
+                        this.completePending(query);
                     }
-
                 }
             }
-            case ROUTE_DB, ROUTE_MQTT -> {
-                        log.error("[integration] Unknown route {} : not yet implemented", query.getRoute());
+            case ROUTE_MQTT -> {
+                switch (query.getType()) {
+                    case TYPE_FIRE_AND_FORGET, TYPE_BROADCAST -> {
+                        this.incrementIntegrationRequests();
+                        if ( this.integrationMqttRoute == null || !this.integrationMqttRoute.publish(query) ) {
+                            this.incrementFailedRequests();
+                            query.setStateError();
+                            query.setResponse(ActionResult.UNKNOWN("integration-mqtt-route-failure"));
+                        }
+                    }
+                    case TYPE_ASYNC, TYPE_SYNC -> {
+                        log.error("[integration] Query Type not supported on route {}", query.getRoute());
                         this.incrementIntegrationRequests();
                         this.incrementFailedRequests();
+                        query.setStateError();
+                        query.setResponse(ActionResult.UNKNOWN("integration-route-not-supported"));
+                        this.completePending(query);
+                    }
+                }
             }
         }
         return query;
     }
 
+    /**
+     * Queue a query in the in-memory transport for a local processing
+     * @param query - query to be processed
+     * @return false when the query is refused (queue full)
+     */
+    protected boolean queueInMemory(IntegrationQuery query) {
+        // only the memory route events need the journal, the other routes have their own persistence
+        boolean journaled = this.journal != null
+                && query.getRoute() == IntegrationQuery.QueryRoute.ROUTE_MEMORY
+                && !isRequest(query)
+                && this.journal.append(query);
+        if ( !this.enqueueInMemory(query) ) {
+            if ( journaled ) this.journal.complete(query.getQueryId());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queue a query in the in-memory transport without journaling it
+     * @param query - query to be processed
+     * @return false when the query is refused (queue full)
+     */
+    protected boolean enqueueInMemory(IntegrationQuery query) {
+        if ( this.lanes != null ) {
+            return this.getLane(query.getServiceNameDest()).push(query);
+        }
+        long id;
+        synchronized (lock) {
+            id = this.eventId.incrementAndGet();
+            this.eventStore.put(id, query);
+            this.eventsInQueue.incrementAndGet();
+        }
+        this.incrementInQueueRequests();
+        this.storeEvents.incrementAndGet();
+        this.storeBytes.addAndGet(estimateSize(query));
+        this.storeExpiry.schedule(id, Now.NowUtcMs() + this.integrationConfig.getIntegrationStoreExpirationMs());
+        return true;
+    }
+
+    /**
+     * Replay the events pending in the journal from the previous run, they are queued before the workers
+     * start so they are processed before the new events
+     */
+    protected void recoverJournal() {
+        if ( this.journal == null ) return;
+        try {
+            List<IntegrationQuery> pending = this.journal.recover();
+            for ( IntegrationQuery q : pending ) {
+                q.setForLaterProcessing(false);
+                q.setProcessAttempts(0);
+                if ( !this.enqueueInMemory(q) ) {
+                    log.warn("[integration] Journal event {} refused, local queue full", q.getQueryId());
+                    this.journal.complete(q.getQueryId());
+                    this.incrementFailedRequests();
+                }
+            }
+        } catch (IOException x) {
+            log.error("[integration] Journal recovery failure, journal disabled ({})", x.getMessage());
+            this.journal = null;
+        }
+    }
+
+    /**
+     * Mark an in-memory event as done in the journal and notify the route it has been received from
+     * @param query - processed or dropped event
+     */
+    protected void journalComplete(IntegrationQuery query) {
+        if ( this.journal != null ) this.journal.complete(query.getQueryId());
+        Runnable onProcessed = this.routeCompletions.remove(query.getQueryId());
+        if ( onProcessed != null ) onProcessed.run();
+    }
+
+    /**
+     * Sync the journal to disk, the events queued since the last sync can be lost on a crash
+     */
+    @Scheduled(fixedDelayString = "${integration.journal.fsync.ms:1000}", initialDelay = 2_000)
+    void journalSync() {
+        if ( this.journal != null ) this.journal.sync();
+    }
+
+    /**
+     * Local delivery of the queries received from the database route, they are processed by the
+     * in-memory workers
+     * @param query - query received
+     */
+    protected void deliverLocally(IntegrationQuery query) {
+        if ( !this.queueInMemory(query) ) {
+            log.warn("[integration] Query {} received from {} refused, local queue full", query.getQueryId(), query.getRoute());
+            this.incrementFailedRequests();
+        }
+    }
+
+    // completion of the events received from a route that tracks their processing, by query id
+    protected final ConcurrentHashMap<UUID, Runnable> routeCompletions = new ConcurrentHashMap<>();
+
+    /**
+     * Local delivery of the queries received from a route needing to know when they are processed
+     * @param query - query received
+     * @param onProcessed - called once the query is processed (or dropped) by the in-memory workers
+     * @return false when the query is refused, onProcessed is not called
+     */
+    protected boolean deliverLocally(IntegrationQuery query, Runnable onProcessed) {
+        this.routeCompletions.put(query.getQueryId(), onProcessed);
+        if ( !this.queueInMemory(query) ) {
+            this.routeCompletions.remove(query.getQueryId());
+            log.warn("[integration] Query {} received from {} refused, local queue full", query.getQueryId(), query.getRoute());
+            this.incrementFailedRequests();
+            return false;
+        }
+        return true;
+    }
+
+    // ===============================================================================
+    //  REQUEST / RESPONSE (SYNC / ASYNC)
+    // ===============================================================================
+
+    protected static class PendingResponse {
+        public CompletableFuture<IntegrationQuery> future;
+        public long startNs;
+    }
+
+    // pending responses by query id (correlation id), bounded by the reservations counted in pendingCount
+    protected final ConcurrentHashMap<UUID, PendingResponse> pendingResponses = new ConcurrentHashMap<>();
+    protected final AtomicInteger pendingCount = new AtomicInteger(0);
+
+    /**
+     * Send a query and get the response asynchronously. The future completes with the query, containing the
+     * response and result set by the destination module, or exceptionally with a TimeoutException when no
+     * response is received before the query timeout (default integration.query.timeout.ms). It also completes
+     * exceptionally, with an IllegalStateException, when the query is dropped or expired before its processing
+     * or when no route is available, the query is then in STATE_ERROR with the reason in its response.
+     * Only the in-memory route supports the request / response queries.
+     * @param query - query to process, the type is forced to TYPE_ASYNC when not SYNC
+     * @return the future response
+     * @throws ITOverQuotaException - when too many responses are pending or the queue is full
+     */
+    public CompletableFuture<IntegrationQuery> processAsyncQuery(IntegrationQuery query) throws ITOverQuotaException {
+        if ( query.getType() != IntegrationQuery.QueryType.TYPE_SYNC ) query.setType(IntegrationQuery.QueryType.TYPE_ASYNC);
+        if ( query.getTimeout_ms() <= 0 ) query.setTimeout_ms(integrationConfig.getIntegrationQueryTimeoutMs());
+        // reserve a slot, released when the future completes
+        if ( pendingCount.incrementAndGet() > integrationConfig.getIntegrationQueryMaxPending() ) {
+            pendingCount.decrementAndGet();
+            this.incrementFailedRequests();
+            throw new ITOverQuotaException("integration-too-many-pending-queries");
+        }
+
+        PendingResponse p = new PendingResponse();
+        p.startNs = System.nanoTime();
+        p.future = new CompletableFuture<>();
+        pendingResponses.put(query.getQueryId(), p);
+        CompletableFuture<IntegrationQuery> r = p.future
+                .orTimeout(query.getTimeout_ms(), TimeUnit.MILLISECONDS)
+                .whenComplete((q, x) -> {
+                    pendingCount.decrementAndGet();
+                    if ( pendingResponses.remove(query.getQueryId()) != null && x != null ) {
+                        this.incrementTimeoutRequests();
+                    }
+                });
+        try {
+            this.processQuery(query);
+        } catch (ITOverQuotaException x) {
+            if ( pendingResponses.remove(query.getQueryId()) != null ) p.future.completeExceptionally(x);
+            throw x;
+        }
+        return r;
+    }
+
+    /**
+     * Send a query and wait for the response until the query timeout (default integration.query.timeout.ms).
+     * Only the in-memory route supports the request / response queries. Must not be called from a callback
+     * of the destination module, the worker would wait for itself.
+     * @param query - query to process, the type is forced to TYPE_SYNC
+     * @return the query with the response, in STATE_ERROR with an integration-query-timeout response on timeout
+     *         or with the failure reason when the query has not been processed
+     * @throws ITOverQuotaException - when too many responses are pending or the queue is full
+     */
+    public IntegrationQuery processSyncQuery(IntegrationQuery query) throws ITOverQuotaException {
+        query.setType(IntegrationQuery.QueryType.TYPE_SYNC);
+        CompletableFuture<IntegrationQuery> f = this.processAsyncQuery(query);
+        try {
+            return f.get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException x) {
+            // dropped, expired or not routed, the query already contains the reason
+            if ( !(x.getCause() instanceof TimeoutException) ) return query;
+        }
+        query.setStateError();
+        query.setResponse(ActionResult.UNKNOWN("integration-query-timeout"));
+        return query;
+    }
+
+    /**
+     * Complete the pending response for a SYNC / ASYNC query, no effect when the requestor is not waiting
+     * anymore or for a query not sent with processAsyncQuery / processSyncQuery
+     * @param response - query with its response
+     */
+    protected void completePending(IntegrationQuery response) {
+        PendingResponse p = pendingResponses.remove(response.getQueryId());
+        if ( p == null ) return;
+        this.addResponseTime(( System.nanoTime() - p.startNs ) / 1_000);
+        p.future.complete(response);
+    }
+
+    /**
+     * Fail the pending response for a SYNC / ASYNC query not processed (dropped, expired, no route), the
+     * requestor is released immediately instead of waiting for the timeout. The query state and response
+     * must be set before. No effect when the requestor is not waiting anymore.
+     * @param query - query in error
+     */
+    protected void failPending(IntegrationQuery query) {
+        if ( !isRequest(query) ) return;
+        PendingResponse p = pendingResponses.remove(query.getQueryId());
+        if ( p == null ) return;
+        String reason = ( query.getResponse() != null ) ? query.getResponse().getMessage() : "integration-query-failure";
+        p.future.completeExceptionally(new IllegalStateException(reason));
+    }
+
     // ===============================================================================
     //  CALL BACK REGISTRATIONS
     // ===============================================================================
@@ -196,7 +507,8 @@ public class IntegrationService {
 
 
     /**
-     * Register a callback function to be called when a new query is available for the given service
+     * Register a callback function to be called when a new query is available for the given service. When the
+     * callback implements IntegrationBatchCallback, the events are delivered by batch
      * @param service
      */
     public void registerCallback(ModuleCatalog.Modules service, IntegrationCallback callback) throws ITParseException, ITTooManyException {
@@ -221,6 +533,12 @@ public class IntegrationService {
     protected void startInMemoryWorkers(int count) {
         running.set(true);
 
+        if ( this.lanes != null ) {
+            // each module lane has its own workers
+            this.lanes.values().forEach(ModuleLane::start);
+            return;
+        }
+
         ExecutorService exec = Executors.newFixedThreadPool(
                 count,
                 r -> {
@@ -244,6 +562,8 @@ public class IntegrationService {
     protected void stopInMemoryWorkers() {
         running.set(false);
 
+        if ( this.lanes != null ) this.lanes.values().forEach(ModuleLane::stop);
+
         ExecutorService exec = executorRef.getAndSet(null);
         if (exec == null) return;
 
@@ -263,70 +583,120 @@ public class IntegrationService {
 
     private AtomicLong currentEventId = new AtomicLong(0);
 
-    private synchronized IntegrationQuery getNextEvent() {
-        if ( currentEventId.get() == 0 ) {
-            try {
-                currentEventId.set(eventStore.firstKey());
-            } catch (NoSuchElementException x) {
-                // empty store
-                return null;
-            }
-        }
-        IntegrationQuery evt = eventStore.get(currentEventId.get());
+    private synchronized Map.Entry<Long, IntegrationQuery> getNextEvent() {
+        // the events expired before being processed leave gaps in the ids
+        Map.Entry<Long, IntegrationQuery> evt = eventStore.ceilingEntry(currentEventId.get());
         if ( evt != null ) {
-            currentEventId.getAndIncrement();
+            currentEventId.set(evt.getKey() + 1);
         }
         return evt;
     }
 
     /**
-     * Worker loop: takes events and dispatches them to all callbacks
+     * Claim the next store event when it is for the given destination, to complete a batch started with
+     * the previous event. Stops on the first event for another destination so the store order is kept,
+     * the events already claimed by another worker are skipped as getNextEvent does.
+     * @param dest - destination module of the batch
+     * @return the claimed event, null when the next event is not for this destination
+     */
+    private synchronized Map.Entry<Long, IntegrationQuery> claimNextEvent(ModuleCatalog.Modules dest) {
+        Map.Entry<Long, IntegrationQuery> evt;
+        while ( (evt = eventStore.ceilingEntry(currentEventId.get())) != null ) {
+            IntegrationQuery query = evt.getValue();
+            if ( query.getServiceNameDest() != dest ) return null;
+            currentEventId.set(evt.getKey() + 1);
+            synchronized (lock) {
+                if ( query.getProcessAttempts() == 0 && !query.isForLaterProcessing() ) {
+                    query.setProcessAttempts(query.getProcessAttempts() + 1);
+                    return evt;
+                }
+            }
+        }
+        return null;
+    }
+
+    // store batch size per destination module, from the module settings
+    protected final ConcurrentHashMap<ModuleCatalog.Modules, Integer> storeBatchSizes = new ConcurrentHashMap<>();
+
+    protected int getStoreBatchSize(ModuleCatalog.Modules module) {
+        return storeBatchSizes.computeIfAbsent(module, m -> Math.max(1, getModuleIntSetting(
+                integrationConfig.getIntegrationModuleBatchSize(),
+                ModuleCatalog.getServiceName(m),
+                integrationConfig.getIntegrationBatchMaxSize()
+        )));
+    }
+
+    /**
+     * Remove an event from the store once processed (or expired), the local worker is the last consumer
+     * @param id - event id in the store
+     */
+    protected void releaseStoreEvent(long id) {
+        IntegrationQuery evt = eventStore.remove(id);
+        if ( evt == null ) return;
+        this.eventsInQueue.decrementAndGet();
+        this.decrementInQueueRequests();
+        this.storeEvents.decrementAndGet();
+        this.storeBytes.addAndGet(-estimateSize(evt));
+    }
+
+    /**
+     * Rough estimation of the memory retained by a queued event, for the store metrics
+     * @param q - queued event
+     * @return estimated size in bytes
+     */
+    protected static long estimateSize(IntegrationQuery q) {
+        long size = 256;            // query object, ids, timestamps, response
+        Object p = q.getQuery();
+        if ( p instanceof String str ) size += 40 + 2L * str.length();
+        else if ( p instanceof byte[] b ) size += 16 + b.length;
+        else if ( p != null ) size += 128;
+        return size;
+    }
+
+    /**
+     * Worker loop: takes events and dispatches them to all callbacks. The store holds the memory route events
+     * and the events received from the database and mqtt routes, so the workers run whatever the enabled routes.
+     * For the modules with a batch callback, the worker drains the following events for the same module, up
+     * to the batch size, without waiting for more events to arrive.
      */
     protected void inMemoryWorkerLoop() {
-        long lastEventId = 0;
         while (running.get() && !Thread.currentThread().isInterrupted()) {
             try {
                 boolean pending = false;
-                if ( integrationConfig.isIntegrationRouteMemoryEnabled() ) {
-                    IntegrationQuery query = getNextEvent();
-                    if ( query != null ) {
-                        boolean get = false;
-                        synchronized (lock) {
-                            // let see if we can take it
-                            if (query.getProcessAttempts() == 0 && !query.isForLaterProcessing() ) {
-                                // In memory mode (local) broadcast is just 1 instance
-                                query.setProcessAttempts(query.getProcessAttempts() + 1);
-                                get = true;
-                            }
+                Map.Entry<Long, IntegrationQuery> evt = getNextEvent();
+                if ( evt != null ) {
+                    IntegrationQuery query = evt.getValue();
+                    boolean get = false;
+                    synchronized (lock) {
+                        // let see if we can take it
+                        if (query.getProcessAttempts() == 0 && !query.isForLaterProcessing() ) {
+                            // In memory mode (local) broadcast is just 1 instance
+                            query.setProcessAttempts(query.getProcessAttempts() + 1);
+                            get = true;
                         }
-                        if ( get ) {
-                            // not yet took by another worker, process it.
-                            if (    query.getServiceNameSource() == query.getServiceNameDest()
-                                 && query.getSourceInstanceId().compareTo(commonConfig.getInstanceId()) ==0 ) {
-                                // skip processing for self messages from local instance
-                                query.setStateDone();
-                                this.incrementProcessingCount();
-                                this.incrementSkipRequests();
-                            } else {
-                                try {
-                                    this._callbacks.get(query.getServiceNameDest()).callback.onIntegrationEvent(query);
-                                    query.setStateDone();
-                                    this.addProcessingTime(Now.NowUtcMs()-query.getQuery_ms());
-                                    this.incrementProcessingCount();
-                                    this.incrementSuccessRequests();
-                                } catch (Exception x) {
-                                    this.incrementFailedRequests();
-                                    query.setStateError();
-                                    query.setResponse(ActionResult.UNKNOWN(x.getMessage()));
-                                }
-                            }
-                            pending = true; // not sure but probably more to process
+                    }
+                    if ( get ) {
+                        // not yet took by another worker, process it.
+                        ModuleCatalog.Modules dest = query.getServiceNameDest();
+                        IntegrationSetup setup = _callbacks.get(dest);
+                        int batchSize = ( setup != null && setup.callback instanceof IntegrationBatchCallback ) ? getStoreBatchSize(dest) : 1;
+                        if ( batchSize > 1 ) {
+                            ArrayList<Map.Entry<Long, IntegrationQuery>> claimed = new ArrayList<>();
+                            claimed.add(evt);
+                            Map.Entry<Long, IntegrationQuery> next;
+                            while ( claimed.size() < batchSize && (next = claimNextEvent(dest)) != null ) claimed.add(next);
+                            ArrayList<IntegrationQuery> batch = new ArrayList<>(claimed.size());
+                            for ( Map.Entry<Long, IntegrationQuery> e : claimed ) batch.add(e.getValue());
+                            List<IntegrationQuery> completed = dispatchBatchInMemory((IntegrationBatchCallback) setup.callback, batch);
+                            for ( IntegrationQuery q : completed ) journalComplete(q);
+                            for ( Map.Entry<Long, IntegrationQuery> e : claimed ) releaseStoreEvent(e.getKey());
+                        } else {
+                            if ( dispatchInMemory(query) ) journalComplete(query);
+                            releaseStoreEvent(evt.getKey());
                         }
+                        pending = true; // not sure but probably more to process
                     }
                 }
-                // Now process the DB pending events
-
-                // @TODO : DB Integration processing
 
                 // Calm down when not busy
                 if ( !pending ) Now.sleep(20);
@@ -338,10 +708,418 @@ public class IntegrationService {
     }
 
 
+    // ================================================================================================
+    // PER MODULE LANES FOR THE RING BUFFER TRANSPORT
+    // ================================================================================================
+
+    protected enum OverflowPolicy {
+        REJECT,             // refuse the new event, processQuery throws ITOverQuotaException
+        DROP_NEWEST,        // silently drop the new event
+        DROP_OLDEST         // drop the oldest pending event to make room for the new one
+    }
+
+    protected class ModuleLane {
+        protected final ModuleCatalog.Modules module;
+        protected final RingBuffer<IntegrationQuery> bus;
+        protected final int workers;
+        protected final OverflowPolicy overflow;
+        // batch delivery for the modules implementing IntegrationBatchCallback
+        protected final int batchSize;
+        protected final long batchWaitMs;
+        // events received during the shutdown, kept for a later processing
+        protected final ConcurrentLinkedQueue<IntegrationQuery> forLater = new ConcurrentLinkedQueue<>();
+        protected final AtomicBoolean started = new AtomicBoolean(false);
+        protected ExecutorService executor;
+
+        protected final AtomicLong processed = new AtomicLong(0);
+        protected final AtomicLong failed = new AtomicLong(0);
+        protected final AtomicLong dropped = new AtomicLong(0);
+        protected final AtomicLong processingTimeMs = new AtomicLong(0);
+
+        protected ModuleLane(ModuleCatalog.Modules module, int size, int workers, OverflowPolicy overflow, int batchSize, long batchWaitMs) {
+            this.module = module;
+            this.bus = new RingBuffer<>(Math.max(2, size));
+            this.workers = Math.max(1, workers);
+            this.overflow = overflow;
+            this.batchSize = Math.max(1, batchSize);
+            this.batchWaitMs = Math.max(0, batchWaitMs);
+        }
+
+        /**
+         * Queue an event in the lane, apply the overflow policy when full
+         * @param query - event to queue
+         * @return false when the event is refused
+         */
+        protected boolean push(IntegrationQuery query) {
+            if ( query.isForLaterProcessing() ) {
+                // queued on the next start, the journal keeps them when the application stops
+                forLater.add(query);
+                queued();
+                return true;
+            }
+            if ( bus.offer(query) ) {
+                queued();
+                return true;
+            }
+            switch (overflow) {
+                case DROP_NEWEST -> {
+                    drop(query);
+                    return true;
+                }
+                case DROP_OLDEST -> {
+                    for ( int i = 0 ; i < 3 ; i++ ) {
+                        IntegrationQuery old = bus.poll();
+                        if ( old != null ) {
+                            unqueued();
+                            drop(old);
+                        }
+                        if ( bus.offer(query) ) {
+                            queued();
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+
+        protected void queued() {
+            eventsInQueue.incrementAndGet();
+            incrementInQueueRequests();
+        }
+
+        protected void unqueued() {
+            eventsInQueue.decrementAndGet();
+            decrementInQueueRequests();
+        }
+
+        protected void drop(IntegrationQuery query) {
+            dropped.incrementAndGet();
+            journalComplete(query);
+            query.setStateError();
+            query.setResponse(ActionResult.UNKNOWN("integration-event-dropped"));
+            failPending(query);
+        }
+
+        protected void start() {
+            if ( !started.compareAndSet(false, true) ) return;
+            String name = ModuleCatalog.getServiceName(module);
+            executor = Executors.newFixedThreadPool(
+                    workers,
+                    r -> {
+                        Thread t = new Thread(r);
+                        t.setName("integration-" + name + "-" + t.threadId());
+                        t.setDaemon(true);
+                        return t;
+                    }
+            );
+            drainForLater();
+            for ( int i = 0 ; i < workers ; i++ ) executor.submit(this::workerLoop);
+            log.info("[integration] Lane {} started with {} workers, {} slots, overflow {}", name, workers, bus.capacity(), overflow);
+        }
+
+        /**
+         * Move the events received while the lane was not running to the ring, the overflow policy applies
+         */
+        protected void drainForLater() {
+            IntegrationQuery query;
+            while ( (query = forLater.poll()) != null ) {
+                unqueued();
+                query.setForLaterProcessing(false);
+                if ( !push(query) ) drop(query);
+            }
+        }
+
+        protected void stop() {
+            ExecutorService exec = executor;
+            executor = null;
+            if ( exec != null ) {
+                exec.shutdownNow();
+                try {
+                    exec.awaitTermination(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            started.set(false);
+            if ( bus.size() > 0 || !forLater.isEmpty() ) {
+                log.info("[integration] Lane {} stopped with {} pending events, {} kept for later processing",
+                        ModuleCatalog.getServiceName(module), bus.size(), forLater.size());
+            }
+        }
+
+        /**
+         * Worker loop: each event is claimed by a single worker when polled, workers park when
+         * the lane is empty and are unparked by processQuery.
+         */
+        protected void workerLoop() {
+            ArrayList<IntegrationQuery> batch = new ArrayList<>(batchSize);
+            while (running.get() && !Thread.currentThread().isInterrupted()) {
+                try {
+                    IntegrationQuery query = bus.poll(500, TimeUnit.MILLISECONDS);
+                    if ( query == null ) continue;
+                    unqueued();
+                    query.setProcessAttempts(query.getProcessAttempts() + 1);
+                    IntegrationSetup setup = _callbacks.get(module);
+                    if ( batchSize > 1 && setup != null && setup.callback instanceof IntegrationBatchCallback bc ) {
+                        // accumulate up to batchSize events or batchWaitMs
+                        batch.clear();
+                        batch.add(query);
+                        long deadline = System.nanoTime() + batchWaitMs * 1_000_000L;
+                        while ( batch.size() < batchSize ) {
+                            long remaining = deadline - System.nanoTime();
+                            IntegrationQuery next = ( remaining > 0 ) ? bus.poll(remaining, TimeUnit.NANOSECONDS) : bus.poll();
+                            if ( next == null ) break;
+                            unqueued();
+                            next.setProcessAttempts(next.getProcessAttempts() + 1);
+                            batch.add(next);
+                        }
+                        for ( IntegrationQuery q : dispatchBatchInMemory(bc, batch) ) terminated(q);
+                    } else {
+                        if ( dispatchInMemory(query) ) terminated(query);
+                    }
+                } catch (Exception e) {
+                    log.error("[integration] Worker loop failure", e);
+                }
+            }
+        }
+
+        protected void terminated(IntegrationQuery query) {
+            journalComplete(query);
+            if ( query.getState() == IntegrationQuery.QueryState.STATE_ERROR ) failed.incrementAndGet();
+            else processed.incrementAndGet();
+            processingTimeMs.addAndGet(Now.NowUtcMs() - query.getQuery_ms());
+        }
+    }
+
+    /**
+     * Get the lane for a destination module, create it on first use with the module settings
+     * @param module - destination module
+     * @return the module lane
+     */
+    protected ModuleLane getLane(ModuleCatalog.Modules module) {
+        ModuleLane lane = lanes.computeIfAbsent(module, m -> {
+            String name = ModuleCatalog.getServiceName(m);
+            OverflowPolicy overflow;
+            String policy = getModuleSetting(integrationConfig.getIntegrationModuleOverflow(), name, integrationConfig.getIntegrationModuleOverflowDefault());
+            try {
+                overflow = ( policy == null ) ? OverflowPolicy.REJECT : OverflowPolicy.valueOf(policy.toUpperCase());
+            } catch (IllegalArgumentException x) {
+                log.warn("[integration] Invalid overflow policy for module {}, using reject", name);
+                overflow = OverflowPolicy.REJECT;
+            }
+            ModuleLane l = new ModuleLane(
+                    m,
+                    getModuleIntSetting(integrationConfig.getIntegrationModuleQueueSize(), name, integrationConfig.getIntegrationMemoryBusSize()),
+                    getModuleIntSetting(integrationConfig.getIntegrationModuleWorkers(), name, integrationConfig.getIntegrationWorkersMaxCount()),
+                    overflow,
+                    getModuleIntSetting(integrationConfig.getIntegrationModuleBatchSize(), name, integrationConfig.getIntegrationBatchMaxSize()),
+                    getModuleIntSetting(integrationConfig.getIntegrationModuleBatchWaitMs(), name, (int) integrationConfig.getIntegrationBatchMaxWaitMs())
+            );
+            initLaneMetrics(l);
+            return l;
+        });
+        if ( running.get() ) lane.start();
+        return lane;
+    }
+
+    /**
+     * Extract a module value from a "module:value,module:value" setting
+     * @param setting - setting string
+     * @param module - module name
+     * @param defaultValue - value when the module is not in the setting
+     * @return the module value
+     */
+    protected static String getModuleSetting(String setting, String module, String defaultValue) {
+        if ( setting == null || setting.isBlank() ) return defaultValue;
+        for ( String e : setting.split(",") ) {
+            String[] kv = e.trim().split(":");
+            if ( kv.length == 2 && kv[0].trim().equalsIgnoreCase(module) ) return kv[1].trim();
+        }
+        return defaultValue;
+    }
+
+    protected int getModuleIntSetting(String setting, String module, int defaultValue) {
+        String v = getModuleSetting(setting, module, null);
+        if ( v == null ) return defaultValue;
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException x) {
+            log.warn("[integration] Invalid setting {} for module {}", v, module);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Deliver an in-memory event to the destination module callback
+     * @param query - event claimed by the calling worker
+     * @return true when the event is terminated, false when the module completes it later
+     */
+    protected boolean dispatchInMemory(IntegrationQuery query) {
+        if ( !isDeliverable(query) ) return true;
+        try {
+            this._callbacks.get(query.getServiceNameDest()).callback.onIntegrationEvent(query);
+            return delivered(query, null);
+        } catch (Exception x) {
+            return delivered(query, x);
+        }
+    }
+
+    /**
+     * Deliver a batch of in-memory events to the destination module batch callback, the module reports the
+     * result of each event in the event state and response. When the callback fails, the events it has not
+     * processed are in error.
+     * @param callback - destination module batch callback
+     * @param batch - events claimed by the calling worker, for a single destination
+     * @return the events terminated, the others are completed later by the module
+     */
+    protected List<IntegrationQuery> dispatchBatchInMemory(IntegrationBatchCallback callback, List<IntegrationQuery> batch) {
+        ArrayList<IntegrationQuery> completed = new ArrayList<>(batch.size());
+        ArrayList<IntegrationQuery> deliverable = new ArrayList<>(batch.size());
+        for ( IntegrationQuery q : batch ) {
+            if ( isDeliverable(q) ) deliverable.add(q);
+            else completed.add(q);
+        }
+        if ( deliverable.isEmpty() ) return completed;
+        try {
+            callback.onIntegrationEvents(deliverable);
+            for ( IntegrationQuery q : deliverable ) {
+                if ( delivered(q, null) ) completed.add(q);
+            }
+        } catch (Exception x) {
+            for ( IntegrationQuery q : deliverable ) {
+                if ( delivered(q, ( q.getState() == IntegrationQuery.QueryState.STATE_PENDING ) ? x : null) ) completed.add(q);
+            }
+        }
+        this.incrementBatchCount();
+        return completed;
+    }
+
+    protected static boolean isRequest(IntegrationQuery query) {
+        return ( query.getType() == IntegrationQuery.QueryType.TYPE_SYNC || query.getType() == IntegrationQuery.QueryType.TYPE_ASYNC );
+    }
+
+    /**
+     * Verify an event needs to be delivered to the destination module, the self messages and the requests
+     * received after their timeout are terminated here
+     * @param query - event claimed by the calling worker
+     * @return true when the event must be delivered
+     */
+    protected boolean isDeliverable(IntegrationQuery query) {
+        boolean request = isRequest(query);
+        if (    !request
+             && query.getServiceNameSource() == query.getServiceNameDest()
+             && query.getSourceInstanceId().compareTo(commonConfig.getInstanceId()) ==0 ) {
+            // skip processing for self messages from local instance
+            query.setStateDone();
+            this.incrementProcessingCount();
+            this.incrementSkipRequests();
+            return false;
+        }
+        if ( request && query.getTimeout_ms() > 0 && Now.NowUtcMs() > query.getQuery_ms() + query.getTimeout_ms() ) {
+            // the requestor does not wait anymore
+            this.incrementFailedRequests();
+            query.setStateError();
+            query.setResponse(ActionResult.UNKNOWN("integration-query-timeout"));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Terminate an event after its delivery to the destination module, unless the module completes it later
+     * @param query - delivered event
+     * @param x - exception raised by the callback, null on success
+     * @return true when terminated, false when the module has not completed it yet
+     */
+    protected boolean delivered(IntegrationQuery query, Exception x) {
+        if ( x != null ) {
+            query.setStateError();
+            query.setResponse(ActionResult.UNKNOWN(x.getMessage()));
+        }
+        if ( !this.arrived(query) ) return false;
+        this.finished(query, x != null);
+        return true;
+    }
+
+    /**
+     * Update the metrics of a terminated event and release the requestor
+     * @param query - terminated event
+     * @param failed - true when the callback failed
+     */
+    protected void finished(IntegrationQuery query, boolean failed) {
+        if ( !failed ) {
+            // the callback may have set the state itself
+            if ( query.getState() == IntegrationQuery.QueryState.STATE_PENDING ) query.setStateDone();
+            this.addProcessingTime(Now.NowUtcMs()-query.getQuery_ms());
+            this.incrementProcessingCount();
+            if ( query.getState() == IntegrationQuery.QueryState.STATE_ERROR ) this.incrementFailedRequests();
+            else this.incrementSuccessRequests();
+        } else {
+            this.incrementFailedRequests();
+        }
+        if ( isRequest(query) ) this.completePending(query);
+    }
+
+    // events completed by their module after the callback returned, by query id, with the number of parties
+    // still expected: the worker once the callback returned, and the module once the event is processed
+    protected final ConcurrentHashMap<UUID, AtomicInteger> deferredCompletions = new ConcurrentHashMap<>();
+
+    /**
+     * Called by a module callback to keep an event pending after the callback returns, the module sets the
+     * event state and response once processed and calls completeDeferred. The event is terminated (journal,
+     * route acknowledgment, requestor) by the last of the worker and the module, the worker is not blocked.
+     * @param query - event being delivered to the module callback
+     */
+    public void deferCompletion(IntegrationQuery query) {
+        this.deferredCompletions.put(query.getQueryId(), new AtomicInteger(2));
+    }
+
+    /**
+     * Called by a module to terminate an event it deferred with deferCompletion, the state and response must
+     * be set before. No effect for an event not deferred.
+     * @param query - event processed by the module
+     */
+    public void completeDeferred(IntegrationQuery query) {
+        AtomicInteger parties = this.deferredCompletions.get(query.getQueryId());
+        if ( parties == null || parties.decrementAndGet() > 0 ) return;
+        this.deferredCompletions.remove(query.getQueryId());
+        this.finished(query, false);
+        ModuleLane lane = ( this.lanes != null ) ? this.lanes.get(query.getServiceNameDest()) : null;
+        if ( lane != null ) lane.terminated(query);
+        else this.journalComplete(query);
+    }
+
+    /**
+     * Worker arrival for a delivered event
+     * @param query - delivered event
+     * @return true when the event can be terminated by the worker
+     */
+    protected boolean arrived(IntegrationQuery query) {
+        AtomicInteger parties = this.deferredCompletions.get(query.getQueryId());
+        if ( parties == null ) return true;
+        if ( parties.decrementAndGet() > 0 ) return false;
+        this.deferredCompletions.remove(query.getQueryId());
+        return true;
+    }
+
     /**
      * For debugging purpose, we get the ability to trace the queue content...
      */
     public void traceQueue() {
+        if ( lanes != null ) {
+            lanes.forEach((module, lane) -> {
+                log.info("[integration] Lane {} contains {} pending events, {} kept for later processing",
+                        module.name(),
+                        lane.bus.size(),
+                        lane.forLater.size()
+                );
+            });
+            return;
+        }
         if ( eventStore == null ) return;
         eventStore.forEach((key,element) -> {
             log.info("[integration] Elt ({}) from {} to {} with type {} and action {} having state {}",
@@ -358,53 +1136,56 @@ public class IntegrationService {
     }
 
     // ================================================================================================
-    // Garbage collector for in-memory pending queries
+    // Expiration of the in-memory pending queries
     //
+    // The processed events are removed from the store by the worker, only the events not processed
+    // in time (no worker, stuck callback) need to be expired. They are scheduled in a timer wheel at
+    // insertion so the expiration does not scan the store.
 
-    private long lastInMemoryGarbage = Now.NowUtcMs();
-    private boolean forceInMemoryGarbageNext = false;
+    protected final TimerWheel<Long> storeExpiry = new TimerWheel<>(512, 1_000, Now.NowUtcMs());
 
     /**
-     * Ability to force garbage to run faster (mostly for tests)
+     * Ability to force the expiration to run now (mostly for tests)
      */
     public void forceInMemoryGarbage() {
-        forceInMemoryGarbageNext = true;
+        this.inMemoryGarbage();
     }
 
     /**
-     * Clean the outdated pending queries every second
+     * Expire the outdated pending queries every second
      */
     @Scheduled(fixedDelay = 1_000, initialDelay = 2_000)
     void inMemoryGarbage() {
         if ( eventStore == null ) return;
-        if ( (Now.NowUtcMs() - lastInMemoryGarbage < 30_000) && !forceInMemoryGarbageNext ) return;
-        lastInMemoryGarbage = Now.NowUtcMs();
-        forceInMemoryGarbageNext = false;
-        try {
-            // remove all the queries that are too old and done with ID lower than the worker indexes
-            long now = Now.NowUtcMs();
-            long eventId = eventStore.firstKey();
-            long _currentEventId = this.currentEventId.get();
-            while (eventId < _currentEventId) {
-                IntegrationQuery evt = eventStore.get(eventId);
-                if (evt != null) {
-                    if ((evt.getState() == IntegrationQuery.QueryState.STATE_DONE || evt.getState() == IntegrationQuery.QueryState.STATE_ERROR)
-                            && !evt.isForLaterProcessing()  // don't clear these one we want to store in database on exit
-                    ) {
-                        // remove it
-                        eventStore.remove(eventId);
-                        this.eventsInQueue.decrementAndGet();
-                        this.decrementInQueueRequests();
-                    }
-                }
-                eventId++;
+        long now = Now.NowUtcMs();
+        // the wheel is advanced by a single thread at a time
+        synchronized (storeExpiry) {
+            try {
+                storeExpiry.advance(now, id -> this.expireStoreEvent(id, now));
+            } catch (Exception e) {
+                log.error("[integration] In-memory expiration failure ({})", e.getMessage());
             }
-        } catch (NoSuchElementException x) {
-            // empty store, nothing to do.
-        } catch (Exception e) {
-            log.error("[integration] In-memory garbage collector failure ({})", e.getMessage());
         }
-        // @TODO : not sure what to do with the timeout...  so let see later,
+    }
+
+    protected void expireStoreEvent(long id, long now) {
+        IntegrationQuery evt = eventStore.get(id);
+        if ( evt == null ) return;                 // already processed
+        if ( evt.isForLaterProcessing() ) {
+            // kept until the shutdown
+            storeExpiry.schedule(id, now + integrationConfig.getIntegrationStoreExpirationMs());
+            return;
+        }
+        if ( evt.getState() == IntegrationQuery.QueryState.STATE_PENDING ) {
+            log.warn("[integration] Event {} to {} expired in the store", evt.getQueryId(), evt.getServiceNameDest());
+            evt.setStateError();
+            evt.setResponse(ActionResult.UNKNOWN("integration-event-expired"));
+            this.incrementFailedRequests();
+            this.storeExpired.incrementAndGet();
+            journalComplete(evt);
+            this.failPending(evt);
+        }
+        releaseStoreEvent(id);
     }
 
 
@@ -447,9 +1228,59 @@ public class IntegrationService {
         Gauge.builder("capture_integration_service_processing_count", this.getProcessingCount())
                 .description("[capture] Total number of processed requests")
                 .register(meterRegistry);
+        Gauge.builder("capture_integration_service_batch_count", this.getBatchCount())
+                .description("[capture] Number of batches delivered to the modules batch callbacks")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_service_pending_responses", () -> pendingResponses.size())
+                .description("[capture] Number of SYNC / ASYNC queries waiting for a response")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_service_timeout_requests", this.getTimeoutRequests())
+                .description("[capture] Number of SYNC / ASYNC queries without response before timeout")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_service_store_events", this.getStoreEvents())
+                .description("[capture] Number of events retained in the in-memory store")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_service_store_bytes", this.getStoreBytes())
+                .description("[capture] Estimated memory retained by the in-memory store events in bytes")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_service_store_expired", this.getStoreExpired())
+                .description("[capture] Number of events expired in the in-memory store before being processed")
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_service_total_response_time_us", this.getTotalResponseTimeUs())
+                .description("[capture] Total response time of the SYNC / ASYNC queries in microseconds")
+                .register(meterRegistry);
     }
 
 
+    /**
+     * Per module lane metrics, registered on lane creation
+     * @param lane - module lane
+     */
+    protected void initLaneMetrics(ModuleLane lane) {
+        if ( meterRegistry == null ) return;
+        String name = ModuleCatalog.getServiceName(lane.module);
+        Gauge.builder("capture_integration_service_module_queue_depth", () -> lane.bus.size())
+                .description("[capture] Number of events waiting in the module lane")
+                .tag("module", name)
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_service_module_processed", () -> lane.processed.get())
+                .description("[capture] Number of events processed by the module lane")
+                .tag("module", name)
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_service_module_failed", () -> lane.failed.get())
+                .description("[capture] Number of events failed in the module lane")
+                .tag("module", name)
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_service_module_dropped", () -> lane.dropped.get())
+                .description("[capture] Number of events dropped by the module lane overflow policy")
+                .tag("module", name)
+                .register(meterRegistry);
+        Gauge.builder("capture_integration_service_module_processing_time_ms", () -> lane.processingTimeMs.get())
+                .description("[capture] Total delivery time (queue + processing) in milliseconds for the module lane")
+                .tag("module", name)
+                .register(meterRegistry);
+    }
+
     protected AtomicLong integrationRequests = new AtomicLong(0);
     public Supplier<Number> getIntegrationRequest() {
         return ()->integrationRequests.get();
@@ -458,6 +1289,21 @@ public class IntegrationService {
         integrationRequests.incrementAndGet();
     }
 
+    protected final AtomicLong storeEvents = new AtomicLong(0);
+    public Supplier<Number> getStoreEvents() {
+        return storeEvents::get;
+    }
+
+    protected final AtomicLong storeBytes = new AtomicLong(0);
+    public Supplier<Number> getStoreBytes() {
+        return storeBytes::get;
+    }
+
+    protected final AtomicLong storeExpired = new AtomicLong(0);
+    public Supplier<Number> getStoreExpired() {
+        return storeExpired::get;
+    }
+
     protected AtomicLong inQueueRequests = new AtomicLong(0);
     public Supplier<Number> getInQueueRequests() {
         return () -> inQueueRequests.get();
@@ -502,6 +1348,30 @@ public class IntegrationService {
         totalProcessingTimeMs.addAndGet(durationMs);
     }
 
+    protected AtomicLong batchCount = new AtomicLong(0);
+    public Supplier<Number> getBatchCount() {
+        return () -> batchCount.get();
+    }
+    public void incrementBatchCount() {
+        batchCount.incrementAndGet();
+    }
+
+    protected AtomicLong timeoutRequests = new AtomicLong(0);
+    public Supplier<Number> getTimeoutRequests() {
+        return () -> timeoutRequests.get();
+    }
+    public void incrementTimeoutRequests() {
+        timeoutRequests.incrementAndGet();
+    }
+
+    protected AtomicLong totalResponseTimeUs = new AtomicLong(0);
+    public Supplier<Number> getTotalResponseTimeUs() {
+        return () -> totalResponseTimeUs.get();
+    }
+    public void addResponseTime(long durationUs) {
+        totalResponseTimeUs.addAndGet(durationUs);
+    }
+
     protected AtomicLong processingCount = new AtomicLong(0);
     public Supplier<Number> getProcessingCount() {
         return () -> processingCount.get();
@@ -25,6 +25,7 @@ import com.disk91.devices.mdb.entities.sub.DevAttribute;
 import com.disk91.devices.mdb.entities.sub.DeviceHistoryReason;
 import com.disk91.devices.services.DeviceCache;
 import com.disk91.groups.config.ActionCatalog;
+import com.disk91.integration.services.IntegrationInvalidationService;
 import com.disk91.integration.services.IntegrationService;
 import com.disk91.users.tests.UsersTestsService;
 import jakarta.servlet.*;
@@ -50,6 +51,9 @@ public class IntegrationTestsService {
     @Autowired
     protected IntegrationService integrationService;
 
+    @Autowired
+    protected IntegrationInvalidationService integrationInvalidationService;
+
     @Autowired
     protected AuditIntegration auditIntegration;
 
@@ -107,9 +111,17 @@ public class IntegrationTestsService {
 
 
         commonTestsService.info("[integration] Create 10 devices flush cache messages to check processing");
+        long initialBroadcasts = integrationInvalidationService.getSentMessages().get().longValue();
         for ( int i = 0 ; i < 10 ; i++ ) {
             deviceCache.flushDevice(CaptureTestsService.captureDeviceId);
         }
+        // the invalidations are coalesced, at least one broadcast, less than 10
+        integrationInvalidationService.flush();
+        long broadcasts = integrationInvalidationService.getSentMessages().get().longValue() - initialBroadcasts;
+        if ( broadcasts < 1 || broadcasts >= 10 ) {
+            commonTestsService.error("[integration] {} invalidation broadcasts for 10 flushes", broadcasts);
+            throw new ITParseException("[integration] Invalidations not coalesced");
+        }
         integrationService.forceInMemoryGarbage();
         for ( int i = 0 ; i < 2 ; i++ ) {
             Now.sleep(1_000);
@@ -117,13 +129,13 @@ public class IntegrationTestsService {
         }
         Now.sleep(1_000);
         // Check the metrics
-        if ( integrationService.getIntegrationRequest().get().longValue() != initialMessages + 20 ) {
-            commonTestsService.error("[integration] only {} message received / {}",integrationService.getIntegrationRequest().get().longValue(), initialMessages+20);
+        if ( integrationService.getIntegrationRequest().get().longValue() != initialMessages + 10 + broadcasts ) {
+            commonTestsService.error("[integration] only {} message received / {}",integrationService.getIntegrationRequest().get().longValue(), initialMessages+10+broadcasts);
             integrationService.traceQueue();
             throw new ITParseException("[integration] Missing integration messages");
         }
-        if ( integrationService.getSkipRequests().get().longValue() != initialSkip + 10 ) {
-            commonTestsService.error("[integration] only {} message skipped / {}",integrationService.getSkipRequests().get().longValue(),initialSkip+10);
+        if ( integrationService.getSkipRequests().get().longValue() != initialSkip + broadcasts ) {
+            commonTestsService.error("[integration] only {} message skipped / {}",integrationService.getSkipRequests().get().longValue(),initialSkip+broadcasts);
             integrationService.traceQueue();
             throw new ITParseException("[integration] Missing integration skipped");
         }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.integration.tools;
+
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.exceptions.ITParseException;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.proto.IntegrationEnvelope;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Binary encoding of the IntegrationQuery for the message brokers, based on the IntegrationEnvelope protobuf
+ * message. The query parameters are encoded in JSON with their class name, only the classes from the
+ * application and the basic java types are accepted on decoding. A list of parameters is decoded as an
+ * ArrayList, its elements class is transmitted with it and must be the same for all the elements.
+ */
+public class IntegrationCodec {
+
+    public static final int VERSION = 1;
+
+    protected static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    protected static final String [] allowedPackages = { "com.disk91.", "java.lang." };
+
+    /**
+     * Encode a query
+     * @param q - query to encode
+     * @return the binary message
+     * @throws ITParseException - when the query parameters can't be serialized
+     */
+    public static byte[] encode(IntegrationQuery q) throws ITParseException {
+        try {
+            IntegrationEnvelope.Builder b = IntegrationEnvelope.newBuilder()
+                    .setVersion(VERSION)
+                    .setType(q.getType().name())
+                    .setSource(q.getServiceNameSource().name())
+                    .setDest(q.getServiceNameDest().name())
+                    .setAction(q.getAction())
+                    .setQueryIdMsb(q.getQueryId().getMostSignificantBits())
+                    .setQueryIdLsb(q.getQueryId().getLeastSignificantBits())
+                    .setQueryMs(q.getQuery_ms())
+                    .setTimeoutMs(q.getTimeout_ms())
+                    .setSourceInstanceId(( q.getSourceInstanceId() != null ) ? q.getSourceInstanceId() : "");
+            if ( q.getQuery() instanceof List<?> l ) {
+                // the element type is lost in JSON, transmitted aside
+                Class<?> elementClass = null;
+                for ( Object o : l ) {
+                    if ( o == null ) continue;
+                    if ( elementClass == null ) elementClass = o.getClass();
+                    else if ( elementClass != o.getClass() ) throw new ITParseException("integration-codec-mixed-list");
+                }
+                b.setPayloadClass(ArrayList.class.getName());
+                if ( elementClass != null ) b.setPayloadElementClass(elementClass.getName());
+                b.setPayload(ByteString.copyFrom(mapper.writeValueAsBytes(l)));
+            } else if ( q.getQuery() != null ) {
+                b.setPayloadClass(q.getQuery().getClass().getName());
+                b.setPayload(ByteString.copyFrom(mapper.writeValueAsBytes(q.getQuery())));
+            }
+            return b.build().toByteArray();
+        } catch (IOException x) {
+            throw new ITParseException("integration-codec-encoding-failed");
+        }
+    }
+
+    /**
+     * Decode a query
+     * @param data - binary message
+     * @return the query
+     * @throws ITParseException - when the message is invalid or the parameter class is not allowed
+     */
+    public static IntegrationQuery decode(byte [] data) throws ITParseException {
+        try {
+            IntegrationEnvelope e = IntegrationEnvelope.parseFrom(data);
+            if ( e.getVersion() != VERSION ) throw new ITParseException("integration-codec-unsupported-version");
+            IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.valueOf(e.getSource()), e.getSourceInstanceId());
+            q.setType(IntegrationQuery.QueryType.valueOf(e.getType()));
+            q.setServiceNameDest(ModuleCatalog.Modules.valueOf(e.getDest()));
+            q.setAction(e.getAction());
+            q.setQueryId(new UUID(e.getQueryIdMsb(), e.getQueryIdLsb()));
+            q.setQuery_ms(e.getQueryMs());
+            q.setTimeout_ms(e.getTimeoutMs());
+            if ( ArrayList.class.getName().equals(e.getPayloadClass()) ) {
+                Class<?> elementClass = ( e.getPayloadElementClass().isEmpty() ) ? Object.class : allowedClass(e.getPayloadElementClass());
+                q.setQuery(mapper.readValue(
+                        e.getPayload().toByteArray(),
+                        mapper.getTypeFactory().constructCollectionType(ArrayList.class, elementClass)
+                ));
+            } else if ( !e.getPayloadClass().isEmpty() ) {
+                q.setQuery(mapper.readValue(e.getPayload().toByteArray(), allowedClass(e.getPayloadClass())));
+            }
+            return q;
+        } catch (IOException | ClassNotFoundException | IllegalArgumentException x) {
+            throw new ITParseException("integration-codec-decoding-failed");
+        }
+    }
+
+    /**
+     * Get a parameter class, from the application or the basic java types only
+     * @param name - class name
+     * @return the class
+     * @throws ITParseException - when the class is not allowed
+     */
+    protected static Class<?> allowedClass(String name) throws ITParseException, ClassNotFoundException {
+        for ( String p : allowedPackages ) {
+            if ( name.startsWith(p) ) return Class.forName(name);
+        }
+        throw new ITParseException("integration-codec-class-not-allowed");
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.integration.tools;
+
+import com.disk91.common.tools.exceptions.ITParseException;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local journal of the queued integration events, so the events not yet delivered survive a
+ * restart. The journal is a sequence of segment files (journal-<index>.seg), each record is:
+ *   type (1 byte) | length (4 bytes) | crc32 of type and payload (4 bytes) | payload
+ * with type EVENT (payload is the IntegrationCodec encoding) or DONE (payload is the query id). A closed
+ * segment is deleted once all its events are done. On recovery, the records are read until the first invalid
+ * one in each segment (torn write), the pending events are rewritten in a new segment and the old segments
+ * are deleted.
+ */
+public class IntegrationJournal {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    protected static final byte RECORD_EVENT = 1;
+    protected static final byte RECORD_DONE = 2;
+    protected static final int HEADER_SIZE = 9;
+
+    protected static class Segment {
+        protected final long index;
+        protected final Path path;
+        protected int pending = 0;
+        protected boolean closed = false;
+
+        protected Segment(long index, Path path) {
+            this.index = index;
+            this.path = path;
+        }
+    }
+
+    protected final Path directory;
+    protected final long segmentMaxSize;
+    protected final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    protected final HashMap<UUID, Segment> pendingEvents = new HashMap<>();
+    protected Segment active;
+    protected FileChannel channel;
+    protected OutputStream out;
+    protected long activeSize;
+    protected boolean dirty = false;
+
+    /**
+     * @param directory - journal directory, created when not existing
+     * @param segmentMaxSize - segment size in bytes before switching to a new segment
+     */
+    public IntegrationJournal(String directory, long segmentMaxSize) {
+        this.directory = Paths.get(directory);
+        this.segmentMaxSize = Math.max(64 * 1024, segmentMaxSize);
+    }
+
+    /**
+     * Read the existing segments, compact them and open a new segment for writing
+     * @return the pending events in the journal order, to be processed before the new ones
+     * @throws IOException - journal not accessible
+     */
+    public synchronized List<IntegrationQuery> recover() throws IOException {
+        Files.createDirectories(directory);
+        ArrayList<Path> files = new ArrayList<>();
+        long maxIndex = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, "journal-*.seg")) {
+            for ( Path p : ds ) {
+                files.add(p);
+                maxIndex = Math.max(maxIndex, getSegmentIndex(p));
+            }
+        }
+        files.sort(Comparator.comparingLong(IntegrationJournal::getSegmentIndex));
+
+        LinkedHashMap<UUID, byte[]> pending = new LinkedHashMap<>();
+        int corrupted = 0;
+        for ( Path p : files ) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+                while ( true ) {
+                    byte type;
+                    try {
+                        type = in.readByte();
+                    } catch (EOFException x) {
+                        break;
+                    }
+                    int len = in.readInt();
+                    int crc = in.readInt();
+                    if ( len < 0 || len > segmentMaxSize * 2 ) { corrupted++; break; }
+                    byte [] payload = new byte[len];
+                    in.readFully(payload);
+                    if ( crc(type, payload) != crc ) { corrupted++; break; }
+                    if ( type == RECORD_EVENT ) {
+                        try {
+                            IntegrationQuery q = IntegrationCodec.decode(payload);
+                            pending.put(q.getQueryId(), payload);
+                        } catch (ITParseException x) {
+                            corrupted++;
+                        }
+                    } else if ( type == RECORD_DONE && len == 16 ) {
+                        ByteBuffer b = ByteBuffer.wrap(payload);
+                        pending.remove(new UUID(b.getLong(), b.getLong()));
+                    }
+                }
+            } catch (EOFException x) {
+                // torn write at the end of the segment
+                corrupted++;
+            }
+        }
+        if ( corrupted > 0 ) log.warn("[integration] Journal recovery, {} invalid records ignored", corrupted);
+
+        // compaction, the pending events are written in a new segment
+        openSegment(maxIndex + 1);
+        ArrayList<IntegrationQuery> events = new ArrayList<>(pending.size());
+        for ( byte [] payload : pending.values() ) {
+            try {
+                IntegrationQuery q = IntegrationCodec.decode(payload);
+                writeRecord(RECORD_EVENT, payload);
+                active.pending++;
+                pendingEvents.put(q.getQueryId(), active);
+                events.add(q);
+            } catch (ITParseException x) {
+                // already verified
+            }
+        }
+        sync();
+        for ( Path p : files ) Files.deleteIfExists(p);
+        log.info("[integration] Journal recovered {} pending events from {} segments", events.size(), files.size());
+        return events;
+    }
+
+    protected static long getSegmentIndex(Path p) {
+        String n = p.getFileName().toString();
+        try {
+            return Long.parseLong(n.substring("journal-".length(), n.length() - ".seg".length()));
+        } catch (NumberFormatException x) {
+            return 0;
+        }
+    }
+
+    protected static int crc(byte type, byte [] payload) {
+        CRC32 c = new CRC32();
+        c.update(type);
+        c.update(payload);
+        return (int) c.getValue();
+    }
+
+    protected void openSegment(long index) throws IOException {
+        if ( active != null ) {
+            out.flush();
+            channel.force(false);
+            out.close();
+            active.closed = true;
+        }
+        Path p = directory.resolve(String.format("journal-%012d.seg", index));
+        channel = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+        active = new Segment(index, p);
+        activeSize = 0;
+        segments.addLast(active);
+    }
+
+    protected void writeRecord(byte type, byte [] payload) throws IOException {
+        if ( activeSize + HEADER_SIZE + payload.length > segmentMaxSize && activeSize > 0 ) {
+            openSegment(active.index + 1);
+        }
+        byte [] header = ByteBuffer.allocate(HEADER_SIZE).put(type).putInt(payload.length).putInt(crc(type, payload)).array();
+        out.write(header);
+        out.write(payload);
+        activeSize += HEADER_SIZE + payload.length;
+        dirty = true;
+    }
+
+    /**
+     * Journal a queued event
+     * @param q - event
+     * @return false when the event can't be journaled (not serializable, io error)
+     */
+    public synchronized boolean append(IntegrationQuery q) {
+        if ( active == null ) return false;
+        try {
+            writeRecord(RECORD_EVENT, IntegrationCodec.encode(q));
+            active.pending++;
+            pendingEvents.put(q.getQueryId(), active);
+            return true;
+        } catch (ITParseException | IOException x) {
+            log.debug("[integration] Event {} not journaled ({})", q.getQueryId(), x.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Mark a journaled event as done (processed, dropped...), no effect for an event not journaled
+     * @param queryId - event query id
+     */
+    public synchronized void complete(UUID queryId) {
+        Segment s = pendingEvents.remove(queryId);
+        if ( s == null ) return;
+        try {
+            byte [] payload = ByteBuffer.allocate(16).putLong(queryId.getMostSignificantBits()).putLong(queryId.getLeastSignificantBits()).array();
+            writeRecord(RECORD_DONE, payload);
+        } catch (IOException x) {
+            log.warn("[integration] Journal write failure ({})", x.getMessage());
+        }
+        s.pending--;
+        // delete the closed segments with no more pending events
+        while ( !segments.isEmpty() && segments.peekFirst().closed && segments.peekFirst().pending <= 0 ) {
+            Segment old = segments.pollFirst();
+            try {
+                Files.deleteIfExists(old.path);
+            } catch (IOException x) {
+                log.warn("[integration] Journal segment {} deletion failure ({})", old.path, x.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Flush the journal to the disk
+     */
+    public synchronized void sync() {
+        if ( active == null || !dirty ) return;
+        try {
+            out.flush();
+            channel.force(false);
+            dirty = false;
+        } catch (IOException x) {
+            log.warn("[integration] Journal sync failure ({})", x.getMessage());
+        }
+    }
+
+    /**
+     * Flush and close the journal, the pending events will be recovered on next start
+     */
+    public synchronized void close() {
+        if ( active == null ) return;
+        sync();
+        try {
+            out.close();
+        } catch (IOException x) {
+            log.warn("[integration] Journal close failure ({})", x.getMessage());
+        }
+        if ( !pendingEvents.isEmpty() ) log.info("[integration] Journal closed with {} pending events", pendingEvents.size());
+        active = null;
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingEvents.size();
+    }
+
+}
@@ -251,6 +251,34 @@ public class UsersConfig {
         return usersCacheApiKeyLogPeriod;
     }
 
+    // --------------------------------------------
+    // Authorization decision cache
+    // --------------------------------------------
+
+    @Value("${users.authorization.cache.max.size:10000}")
+    protected int usersAuthorizationCacheMaxSize;
+    public int getUsersAuthorizationCacheMaxSize() {
+        return usersAuthorizationCacheMaxSize;
+    }
+
+    @Value("${users.authorization.cache.expiration_s:300}")
+    protected int usersAuthorizationCacheExpiration;
+    public int getUsersAuthorizationCacheExpiration() {
+        return usersAuthorizationCacheExpiration;
+    }
+
+    @Value("${users.recipient.index.enabled:true}")
+    protected boolean usersRecipientIndexEnabled;
+    public boolean isUsersRecipientIndexEnabled() {
+        return usersRecipientIndexEnabled;
+    }
+
+    @Value("${users.recipient.index.expiration_s:3600}")
+    protected int usersRecipientIndexExpiration;
+    public int getUsersRecipientIndexExpiration() {
+        return usersRecipientIndexExpiration;
+    }
+
     // --------------------------------------------
     // User Sessions
     // --------------------------------------------
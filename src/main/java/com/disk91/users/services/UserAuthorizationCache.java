@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.users.services;
+
+import com.disk91.common.tools.Now;
+import com.disk91.users.config.UsersConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Service
+public class UserAuthorizationCache {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Authorization decision cache, memorize the result of a right verification for a login (user or apikey)
+     * and a set of groups. This is used on the capture path where the same verification is made for every
+     * frame and the answer almost never changes. The cache only stores the decision, the verification itself
+     * is made by UserCommon. Entries are invalidated when the user, apikey, groups or roles are changing
+     * (local change or broadcast from another instance) and have a time to live as a safety net.
+     */
+
+    @Autowired
+    protected UsersConfig usersConfig;
+
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    protected static class Decision {
+        protected boolean authorized;
+        protected String login;           // login or apikey used for the verification
+        protected String userLogin;       // user owning the apikey, same as login for regular users, null if unknown
+        protected long expirationMs;      // -1 when no expiration
+    }
+
+    protected final ConcurrentHashMap<String, Decision> decisions = new ConcurrentHashMap<>();
+
+    // incremented on every invalidation, a decision computed across an invalidation is not stored
+    protected final AtomicLong generation = new AtomicLong(0);
+
+    /**
+     * Other structures derived from the users, groups and roles, notified on the same changes
+     */
+    public interface ChangeListener {
+        void onLoginChange(String login);
+        void onGlobalChange();
+    }
+
+    protected final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addChangeListener(ChangeListener listener) {
+        this.listeners.add(listener);
+    }
+
+    @PostConstruct
+    private void initUserAuthorizationCache() {
+        log.info("[users] initUserAuthorizationCache");
+
+        Gauge.builder("users_service_authorization_cache_hit", this.getCacheHit())
+                .description("[Users] total authorization decisions found in cache")
+                .register(meterRegistry);
+        Gauge.builder("users_service_authorization_cache_miss", this.getCacheMiss())
+                .description("[Users] total authorization decisions computed")
+                .register(meterRegistry);
+        Gauge.builder("users_service_authorization_cache_invalidation", this.getCacheInvalidation())
+                .description("[Users] total authorization decisions invalidated")
+                .register(meterRegistry);
+        Gauge.builder("users_service_authorization_cache_size", () -> decisions.size())
+                .description("[Users] authorization decisions in cache")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return usersConfig.getUsersAuthorizationCacheMaxSize() > 0;
+    }
+
+    /**
+     * Build the cache key, the groups are sorted so the order of association does not matter
+     * @param login - user login or apikey
+     * @param globalRole - role giving access whatever the groups, can be null
+     * @param groupRole - role expected on one of the groups, can be null
+     * @param groups - group shortIds
+     * @return key
+     */
+    public static String buildKey(String login, String globalRole, String groupRole, List<String> groups) {
+        ArrayList<String> sorted = new ArrayList<>(groups);
+        Collections.sort(sorted);
+        StringBuilder sb = new StringBuilder(login)
+                .append('|').append(globalRole)
+                .append('|').append(groupRole)
+                .append('|');
+        for ( String g : sorted ) sb.append(g).append(',');
+        return sb.toString();
+    }
+
+    /**
+     * Get a decision from the cache
+     * @param key - key from buildKey
+     * @return the decision or null when not in cache or expired
+     */
+    public Boolean get(String key) {
+        Decision d = decisions.get(key);
+        if ( d == null || ( d.expirationMs > 0 && d.expirationMs < Now.NowUtcMs() ) ) {
+            cacheMiss.incrementAndGet();
+            return null;
+        }
+        cacheHit.incrementAndGet();
+        return d.authorized;
+    }
+
+    /**
+     * Get the invalidation generation, to be captured before computing a decision and given to put
+     * @return current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Store a decision in the cache, unless an invalidation happened since the decision started to be computed
+     * @param key - key from buildKey
+     * @param login - login or apikey used for the verification
+     * @param userLogin - user login behind the apikey, null when unknown
+     * @param authorized - decision
+     * @param fromGeneration - generation captured before computing the decision
+     */
+    public void put(String key, String login, String userLogin, boolean authorized, long fromGeneration) {
+        if ( generation.get() != fromGeneration ) return;
+        if ( decisions.size() >= usersConfig.getUsersAuthorizationCacheMaxSize() ) {
+            this.purgeExpired();
+            if ( decisions.size() >= usersConfig.getUsersAuthorizationCacheMaxSize() ) {
+                // simple strategy, the decisions are cheap to rebuild
+                log.debug("[users] Authorization cache is full, clear it");
+                cacheInvalidation.addAndGet(decisions.size());
+                decisions.clear();
+            }
+        }
+        Decision d = new Decision();
+        d.authorized = authorized;
+        d.login = login;
+        d.userLogin = userLogin;
+        d.expirationMs = ( usersConfig.getUsersAuthorizationCacheExpiration() > 0 )
+                ? Now.NowUtcMs() + usersConfig.getUsersAuthorizationCacheExpiration() * 1000L
+                : -1;
+        decisions.put(key, d);
+        // an invalidation between the check and the put may have missed this decision
+        if ( generation.get() != fromGeneration ) decisions.remove(key, d);
+    }
+
+    /**
+     * Remove all the decisions concerning a login, an apikey or the apikeys of a user
+     * @param login - user login or apikey
+     */
+    public void invalidateLogin(String login) {
+        if ( login == null ) return;
+        generation.incrementAndGet();
+        decisions.entrySet().removeIf(e -> {
+            if ( login.equals(e.getValue().login) || login.equals(e.getValue().userLogin) ) {
+                cacheInvalidation.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
+        for ( ChangeListener l : listeners ) l.onLoginChange(login);
+    }
+
+    /**
+     * Remove all the decisions, used on group hierarchy or role definition changes
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cacheInvalidation.addAndGet(decisions.size());
+        decisions.clear();
+        for ( ChangeListener l : listeners ) l.onGlobalChange();
+    }
+
+    protected void purgeExpired() {
+        long now = Now.NowUtcMs();
+        decisions.entrySet().removeIf(e -> e.getValue().expirationMs > 0 && e.getValue().expirationMs < now);
+    }
+
+    // ================================================================================================================
+    // Metrics
+    // ================================================================================================================
+
+    protected AtomicLong cacheHit = new AtomicLong(0);
+    public Supplier<Number> getCacheHit() {
+        return () -> cacheHit.get();
+    }
+
+    protected AtomicLong cacheMiss = new AtomicLong(0);
+    public Supplier<Number> getCacheMiss() {
+        return () -> cacheMiss.get();
+    }
+
+    protected AtomicLong cacheInvalidation = new AtomicLong(0);
+    public Supplier<Number> getCacheInvalidation() {
+        return () -> cacheInvalidation.get();
+    }
+
+}
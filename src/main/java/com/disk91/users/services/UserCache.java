@@ -25,9 +25,8 @@ import com.disk91.common.tools.ClonableString;
 import com.disk91.common.tools.Now;
 import com.disk91.common.tools.ObjectCache;
 import com.disk91.common.tools.exceptions.ITNotFoundException;
-import com.disk91.common.tools.exceptions.ITOverQuotaException;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
-import com.disk91.integration.services.IntegrationService;
+import com.disk91.integration.services.IntegrationInvalidationService;
 import com.disk91.users.config.UsersConfig;
 import com.disk91.users.mdb.entities.User;
 import com.disk91.users.mdb.repositories.UserRepository;
@@ -70,7 +69,10 @@ public class UserCache {
     protected CommonConfig commonConfig;
 
     @Autowired
-    protected IntegrationService integrationService;
+    protected IntegrationInvalidationService integrationInvalidationService;
+
+    @Autowired
+    protected UserAuthorizationCache userAuthorizationCache;
 
     // ================================================================================================================
     // USER CACHE SERVICE
@@ -163,21 +165,26 @@ public class UserCache {
      * @return
      */
     public void flushUser(String userLogin) {
+        this.flushUserLocally(userLogin);
+
+        // Broadcast other instances to flush their cache for this user (coalesced)
+        integrationInvalidationService.invalidate(
+                ModuleCatalog.Modules.USERS,
+                USERS_ACTION_FLUSH_CACHE_USERS.ordinal(),
+                IntegrationQuery.getRoutefromRouteString(usersConfig.getUsersIntracomMedium()),
+                userLogin
+        );
+    }
+
+    /**
+     * Remove a user from the local cache only, on invalidation received from another instance
+     * @param userLogin - user login to be removed
+     */
+    public void flushUserLocally(String userLogin) {
         if ( this.serviceEnable && usersConfig.getUsersCacheMaxSize() > 0 ) {
             this.userCache.remove(userLogin,false);
         }
-
-        // Broadcast other instances to flush their cache for this device
-        IntegrationQuery iq = new IntegrationQuery(ModuleCatalog.Modules.USERS, commonConfig.getInstanceId());
-        iq.setServiceNameDest(ModuleCatalog.Modules.USERS);
-        iq.setType(IntegrationQuery.QueryType.TYPE_BROADCAST);
-        iq.setAction(USERS_ACTION_FLUSH_CACHE_USERS.ordinal());
-        iq.setQuery(userLogin);
-        iq.setRoute(IntegrationQuery.getRoutefromRouteString(usersConfig.getUsersIntracomMedium()));
-        try {
-            integrationService.processQuery(iq);
-        } catch (ITOverQuotaException ignored) {}
-
+        userAuthorizationCache.invalidateLogin(userLogin);
     }
 
     /**
@@ -286,19 +293,25 @@ public class UserCache {
      * @param apiKey - user apiKey to remove
      */
     public void flushApiKey(String apiKey) {
+        this.flushApiKeyLocally(apiKey);
+        // Broadcast other instances to flush their cache for this apikey (coalesced)
+        integrationInvalidationService.invalidate(
+                ModuleCatalog.Modules.USERS,
+                USERS_ACTION_FLUSH_CACHE_APIKEY.ordinal(),
+                IntegrationQuery.getRoutefromRouteString(usersConfig.getUsersIntracomMedium()),
+                apiKey
+        );
+    }
+
+    /**
+     * Remove an apikey from the local cache only, on invalidation received from another instance
+     * @param apiKey - user apiKey to remove
+     */
+    public void flushApiKeyLocally(String apiKey) {
         if ( this.serviceApiEnable && usersConfig.getUsersCacheApiKeyMaxSize() > 0 ) {
             this.userApiCache.remove(apiKey,false);
         }
-        // Broadcast other instances to flush their cache for this device
-        IntegrationQuery iq = new IntegrationQuery(ModuleCatalog.Modules.USERS, commonConfig.getInstanceId());
-        iq.setServiceNameDest(ModuleCatalog.Modules.USERS);
-        iq.setType(IntegrationQuery.QueryType.TYPE_BROADCAST);
-        iq.setAction(USERS_ACTION_FLUSH_CACHE_APIKEY.ordinal());
-        iq.setQuery(apiKey);
-        iq.setRoute(IntegrationQuery.getRoutefromRouteString(usersConfig.getUsersIntracomMedium()));
-        try {
-            integrationService.processQuery(iq);
-        } catch (ITOverQuotaException ignored) {}
+        userAuthorizationCache.invalidateLogin(apiKey);
     }
 
 
@@ -29,6 +29,9 @@ public class UserCommon {
     @Autowired
     protected GroupsServices groupsServices;
 
+    @Autowired
+    protected UserAuthorizationCache userAuthorizationCache;
+
     /**
      * Verify a requestor can access a user profile for read or write. Currently, the detailed ACL are not managed
      * so R/W access is not supported and only global admin can access foreign accounts.
@@ -290,6 +293,67 @@ public class UserCommon {
         }
     }
 
+    /**
+     * Verify a login (user or apikey) has the globalRole or the groupRole on at least one of the given groups.
+     * This is the same verification as calling getUserWithRolesAndGroups with the globalRole and no group
+     * then with the groupRole on every group (including virtual groups), but the decision is cached for
+     * the (login, roles, groups) combination as it is called on every frame received by the capture drivers.
+     * @param login - user login, it can be an apikey
+     * @param globalRole - role giving access whatever the groups, can be null
+     * @param groupRole - role expected on one of the groups
+     * @param groups - list of group shortIds
+     * @return true when authorized
+     */
+    public boolean isAuthorizedOnGroups(
+            String login,
+            String globalRole,
+            String groupRole,
+            List<String> groups
+    ) {
+        String key = null;
+        long generation = 0;
+        if ( userAuthorizationCache.isEnabled() ) {
+            key = UserAuthorizationCache.buildKey(login, globalRole, groupRole, groups);
+            // captured before the verification, a revocation made meanwhile prevents the put
+            generation = userAuthorizationCache.getGeneration();
+            Boolean cached = userAuthorizationCache.get(key);
+            if ( cached != null ) return cached;
+        }
+
+        boolean authorized = false;
+        String userLogin = null;
+        if ( globalRole != null ) {
+            try {
+                User u = this.getUserWithRolesAndGroups(login, globalRole, null, null, false);
+                userLogin = u.getLogin();
+                authorized = true;
+            } catch (ITNotFoundException | ITRightException ignored) {}
+        }
+        if ( !authorized ) {
+            for ( String g : groups ) {
+                try {
+                    User u = this.getUserWithRolesAndGroups(login, groupRole, null, g, true);
+                    userLogin = u.getLogin();
+                    authorized = true;
+                    break; // found, no need to continue
+                } catch (ITNotFoundException | ITRightException ignored) {
+                    // not in this group, try the next one
+                }
+            }
+        }
+
+        if ( key != null ) {
+            if ( userLogin == null ) {
+                // negative decision, get the user behind the apikey for the invalidation
+                try {
+                    userLogin = userCache.getUser(login).getLogin();
+                } catch (ITNotFoundException ignored) {}
+            }
+            userAuthorizationCache.put(key, login, userLogin, authorized, generation);
+        }
+        return authorized;
+    }
+
     /**
      * Get a user structure from a login or an apikey, verifying the user is active & registered
      * @param login - user login or apikey
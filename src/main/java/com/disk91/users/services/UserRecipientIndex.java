@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) - Paul Pinault (aka disk91) - 2026.
+ *
+ *    Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ *    and associated documentation files (the "Software"), to deal in the Software without restriction,
+ *    including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ *    sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ *    furnished to do so, subject to the following conditions:
+ *
+ *    The above copyright notice and this permission notice shall be included in all copies or
+ *    substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *    IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ *    FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ *    OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ *    IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.disk91.users.services;
+
+import com.disk91.common.tools.Now;
+import com.disk91.common.tools.exceptions.ITNotFoundException;
+import com.disk91.common.tools.exceptions.ITRightException;
+import com.disk91.groups.mdb.entities.Group;
+import com.disk91.groups.services.GroupsServices;
+import com.disk91.users.config.UsersConfig;
+import com.disk91.users.mdb.entities.User;
+import com.disk91.users.mdb.entities.sub.UserAlertPreference;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class UserRecipientIndex implements UserAuthorizationCache.ChangeListener {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Index of the alert recipients per (group, role): the active users of an alert group having the role, with
+     * their language and alert preferences resolved. A list is built on first use (same selection as
+     * UserCommon.getUsersByGroupWithRole) then kept up to date from the change notifications of the
+     * authorization cache: a user change marks the login for a new verification in every list, done on the
+     * next lookup of the list; a group or role definition change drops all the lists. The lists are rebuilt
+     * after users.recipient.index.expiration_s as a safety net.
+     */
+
+    /**
+     * @param login - user login
+     * @param language - preferred language
+     * @param alertPreference - accepted alert mediums, never null
+     * @param personalData - personal data can be decrypted
+     * @param user - user snapshot shared by all the lookups, clone it before any modification (keys...)
+     */
+    public record Recipient(String login, String language, UserAlertPreference alertPreference, boolean personalData, User user) {}
+
+    protected static class Entry {
+        protected final String group;
+        protected final String role;
+        protected final LinkedHashMap<String, Recipient> recipients = new LinkedHashMap<>();
+        protected final Set<String> changed = new HashSet<>();
+        protected boolean built = false;
+        protected long builtMs;
+
+        protected Entry(String group, String role) {
+            this.group = group;
+            this.role = role;
+        }
+    }
+
+    protected final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    protected final UsersConfig usersConfig;
+    protected final UserCommon userCommon;
+    protected final UserCache userCache;
+    protected final GroupsServices groupsServices;
+    protected final UserAuthorizationCache userAuthorizationCache;
+
+    @Autowired(required = false)
+    protected MeterRegistry meterRegistry;
+
+    protected Timer buildTimer;
+
+    @Autowired
+    public UserRecipientIndex(
+            UsersConfig _usersConfig,
+            UserCommon _userCommon,
+            UserCache _userCache,
+            GroupsServices _groupsServices,
+            UserAuthorizationCache _userAuthorizationCache
+    ) {
+        this.usersConfig = _usersConfig;
+        this.userCommon = _userCommon;
+        this.userCache = _userCache;
+        this.groupsServices = _groupsServices;
+        this.userAuthorizationCache = _userAuthorizationCache;
+    }
+
+    @PostConstruct
+    public void initUserRecipientIndex() {
+        userAuthorizationCache.addChangeListener(this);
+        if ( meterRegistry == null ) return;
+        Gauge.builder("users_service_recipient_index_size", this::getRecipientCount)
+                .description("[Users] alert recipients in the index")
+                .register(meterRegistry);
+        Gauge.builder("users_service_recipient_index_lists", entries::size)
+                .description("[Users] (group, role) recipient lists in the index")
+                .register(meterRegistry);
+        this.buildTimer = Timer.builder("users_service_recipient_index_build")
+                .description("[Users] recipient list build duration")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the recipients of an alert for a group, users with the role in the group, when it is an alert group
+     * @param groupShortId - targeted group
+     * @param role - role required on the group, can be null
+     * @return the recipients, empty when none or the group does not exist
+     */
+    public List<Recipient> getAlertRecipients(String groupShortId, String role) {
+        if ( !usersConfig.isUsersRecipientIndexEnabled() ) {
+            Entry e = new Entry(groupShortId, role);
+            build(e);
+            return new ArrayList<>(e.recipients.values());
+        }
+
+        String key = groupShortId + '|' + role;
+        Entry e = entries.computeIfAbsent(key, k -> new Entry(groupShortId, role));
+        synchronized (e) {
+            long ttlMs = usersConfig.getUsersRecipientIndexExpiration() * 1000L;
+            if ( !e.built || ( ttlMs > 0 && (Now.NowUtcMs() - e.builtMs) > ttlMs ) ) {
+                build(e);
+            } else if ( !e.changed.isEmpty() ) {
+                for ( String login : e.changed ) {
+                    e.recipients.remove(login);
+                    Recipient r = verify(login, e.group, e.role);
+                    if ( r != null ) e.recipients.put(login, r);
+                }
+                e.changed.clear();
+            }
+            return new ArrayList<>(e.recipients.values());
+        }
+    }
+
+    protected void build(Entry e) {
+        long start = Now.NanoTime();
+        e.recipients.clear();
+        e.changed.clear();
+        for ( User u : userCommon.getUsersByGroupWithRole(e.group, false, true, e.role) ) {
+            e.recipients.put(u.getLogin(), toRecipient(u));
+        }
+        e.built = true;
+        e.builtMs = Now.NowUtcMs();
+        long durationNs = Now.NanoTime() - start;
+        if ( buildTimer != null ) buildTimer.record(durationNs, TimeUnit.NANOSECONDS);
+        log.debug("[users] Recipient list {}/{} built with {} users in {} ms", e.group, e.role, e.recipients.size(), durationNs / 1_000_000);
+    }
+
+    /**
+     * Verify a single user against a list, same conditions as UserCommon.getUsersByGroupWithRole
+     * @return the recipient or null when the user is not part of the list
+     */
+    protected Recipient verify(String login, String group, String role) {
+        try {
+            if ( !groupsServices.getGroupsListByShortId(group).getHead().isAlertGroup() ) return null;
+            User u = ( role != null )
+                    ? userCommon.getUserWithRolesAndGroups(login, role, null, group, true)
+                    : userCache.getUser(login);
+            if ( !u.isActive() || u.isLocked() || u.isApiAccount() ) return null;
+            boolean member = ( u.getGroups() != null && u.getGroups().contains(group) )
+                    || ( u.getAcls() != null && u.getAcls().stream().anyMatch(a -> group.equals(a.getGroup())) )
+                    || ( Group.isVirtualGroup(group) && login.equals(Group.getVirtualGroupOwner(group)) );
+            return ( member ) ? toRecipient(u) : null;
+        } catch (ITNotFoundException | ITRightException x) {
+            return null;
+        }
+    }
+
+    protected static Recipient toRecipient(User u) {
+        return new Recipient(
+                u.getLogin(),
+                u.getLanguage(),
+                ( u.getAlertPreference() != null ) ? u.getAlertPreference() : UserAlertPreference.of(),
+                u.isPersonalDataAccessible(),
+                u
+        );
+    }
+
+    public long getRecipientCount() {
+        long count = 0;
+        for ( Entry e : entries.values() ) count += e.recipients.size();
+        return count;
+    }
+
+    // ================================================================================================================
+    // Change notifications
+
+    @Override
+    public void onLoginChange(String login) {
+        if ( User.isApiKey(login) ) return;
+        for ( Entry e : entries.values() ) {
+            synchronized (e) {
+                if ( e.built ) e.changed.add(login);
+            }
+        }
+    }
+
+    @Override
+    public void onGlobalChange() {
+        for ( Entry e : entries.values() ) {
+            synchronized (e) {
+                e.built = false;
+            }
+        }
+        entries.clear();
+    }
+
+}
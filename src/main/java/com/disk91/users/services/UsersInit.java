@@ -29,6 +29,7 @@ import com.disk91.common.tools.Now;
 import com.disk91.common.tools.exceptions.ITParseException;
 import com.disk91.common.tools.exceptions.ITTooManyException;
 import com.disk91.integration.api.interfaces.IntegrationCallback;
+import com.disk91.integration.api.interfaces.IntegrationInvalidation;
 import com.disk91.integration.api.interfaces.IntegrationQuery;
 import com.disk91.integration.services.IntegrationService;
 import com.disk91.users.config.UsersConfig;
@@ -162,16 +163,18 @@ public class UsersInit {
                         @Override
                         public void onIntegrationEvent(IntegrationQuery q) {
                             if ( q.getAction() == USERS_ACTION_FLUSH_CACHE_USERS.ordinal() ) {
-                                String userId = (String) q.getQuery();
-                                userCache.flushUser(userId);
+                                for ( String userId : IntegrationInvalidation.keysOf(q) ) {
+                                    userCache.flushUserLocally(userId);
+                                }
                                 // terminate the action
                                 q.setResponse(ActionResult.OK("User cache flushed")); // fire & forget, success on every actions
                                 q.setResult(null);
                                 q.setState(IntegrationQuery.QueryState.STATE_DONE);
                                 q.setResponse_ts(Now.NanoTime());
                             } else if ( q.getAction() == USERS_ACTION_FLUSH_CACHE_APIKEY.ordinal() ) {
-                                String apikeyId = (String) q.getQuery();
-                                userCache.flushApiKey(apikeyId);
+                                for ( String apikeyId : IntegrationInvalidation.keysOf(q) ) {
+                                    userCache.flushApiKeyLocally(apikeyId);
+                                }
                                 // terminate the action
                                 q.setResponse(ActionResult.OK("Apikey cache flushed")); // fire & forget, success on every actions
                                 q.setResult(null);
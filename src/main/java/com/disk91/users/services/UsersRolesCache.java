@@ -54,6 +54,9 @@ public class UsersRolesCache {
     @Autowired
     protected RolesRepository rolesRepository;
 
+    @Autowired
+    protected UserAuthorizationCache userAuthorizationCache;
+
     // Platform roles to setup for database init
     private final String [] pfRoles = {
         "{'version':2, 'platform':true, 'name':'ROLE_GOD_ADMIN','description':'role-god-admin-desc', 'enDescription':'super administrator', 'creationBy':'system', 'creationMs':0, 'assignable':false}",
@@ -203,6 +206,7 @@ public class UsersRolesCache {
         role.setAssignable(assignable);
         rolesRepository.save(role);
         rolesCache.put(role.getName(), role);
+        userAuthorizationCache.invalidateAll();
         // @TODO - send message to other instances to reload roles.
     }
 
@@ -229,6 +233,7 @@ public class UsersRolesCache {
         }
         // load the custom roles if any
         all.forEach((r) -> rolesCache.putIfAbsent(r.getName(), r));
+        userAuthorizationCache.invalidateAll();
         log.info("[users] {} Roles (re)loaded", rolesCache.size());
     }
 
@@ -0,0 +1,329 @@
+package com.disk91.iot.alerts;
+
+import com.disk91.alerts.config.AlertsConfig;
+import com.disk91.alerts.mdb.entities.sub.AlertMedium;
+import com.disk91.alerts.services.AlertDeliveryService;
+import com.disk91.common.tools.EmailTools;
+import com.disk91.common.tools.FirebaseTools;
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.MulticastMessage;
+import com.google.firebase.messaging.SendResponse;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class AlertDeliveryTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Minimal SMTP server accepting everything but the rejected recipient, counts the connections and the messages
+     */
+    protected static class SmtpStub implements Runnable {
+        protected final ServerSocket server;
+        protected final String rejected;
+        protected final AtomicInteger connections = new AtomicInteger(0);
+        protected final AtomicInteger messages = new AtomicInteger(0);
+
+        protected SmtpStub() throws Exception {
+            this(null);
+        }
+
+        protected SmtpStub(String rejected) throws Exception {
+            this.rejected = rejected;
+            server = new ServerSocket(0);
+            Thread t = new Thread(this, "smtp-stub");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        public void run() {
+            while ( !server.isClosed() ) {
+                try ( Socket s = server.accept() ) {
+                    connections.incrementAndGet();
+                    BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+                    PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+                    out.print("220 localhost\r\n"); out.flush();
+                    boolean data = false;
+                    String line;
+                    while ( (line = in.readLine()) != null ) {
+                        if ( data ) {
+                            if ( line.equals(".") ) {
+                                data = false;
+                                messages.incrementAndGet();
+                                out.print("250 OK\r\n"); out.flush();
+                            }
+                        } else if ( line.toUpperCase().startsWith("DATA") ) {
+                            data = true;
+                            out.print("354 Go ahead\r\n"); out.flush();
+                        } else if ( rejected != null && line.toUpperCase().startsWith("RCPT") && line.contains(rejected) ) {
+                            out.print("550 No such user\r\n"); out.flush();
+                        } else if ( line.toUpperCase().startsWith("QUIT") ) {
+                            out.print("221 Bye\r\n"); out.flush();
+                            break;
+                        } else {
+                            out.print("250 OK\r\n"); out.flush();
+                        }
+                    }
+                } catch (Exception ignored) {}
+            }
+        }
+
+        protected void close() throws Exception {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testEmailBatchOneConnection() throws Exception {
+        log.info("[alerts][test] Running testEmailBatchOneConnection");
+        SmtpStub smtp = new SmtpStub();
+        try {
+            JavaMailSenderImpl sender = new JavaMailSenderImpl();
+            sender.setHost("localhost");
+            sender.setPort(smtp.server.getLocalPort());
+            sender.getJavaMailProperties().put("mail.smtp.timeout", "5000");
+            EmailTools emailTools = new EmailTools();
+            ReflectionTestUtils.setField(emailTools, "sender", sender);
+            ReflectionTestUtils.setField(emailTools, "mailPassword", "");
+
+            ArrayList<EmailTools.Email> emails = new ArrayList<>();
+            for ( int i = 0 ; i < 5 ; i++ ) {
+                emails.add(new EmailTools.Email("user" + i + "@test.com", "alert\\nmessage " + i, "alert " + i, "alerts@test.com"));
+            }
+            List<Boolean> sent = emailTools.sendBatch(emails);
+
+            assertEquals(5, sent.size());
+            assertTrue(sent.stream().allMatch(b -> b));
+            assertEquals(5, smtp.messages.get());
+            assertEquals(1, smtp.connections.get());
+        } finally {
+            smtp.close();
+        }
+    }
+
+    @Test
+    public void testEmailBatchRejectedRecipient() throws Exception {
+        log.info("[alerts][test] Running testEmailBatchRejectedRecipient");
+        SmtpStub smtp = new SmtpStub("user2@test.com");
+        try {
+            JavaMailSenderImpl sender = new JavaMailSenderImpl();
+            sender.setHost("localhost");
+            sender.setPort(smtp.server.getLocalPort());
+            sender.getJavaMailProperties().put("mail.smtp.timeout", "5000");
+            EmailTools emailTools = new EmailTools();
+            ReflectionTestUtils.setField(emailTools, "sender", sender);
+            ReflectionTestUtils.setField(emailTools, "mailPassword", "");
+
+            ArrayList<EmailTools.Email> emails = new ArrayList<>();
+            for ( int i = 0 ; i < 5 ; i++ ) {
+                emails.add(new EmailTools.Email("user" + i + "@test.com", "alert\\nmessage " + i, "alert " + i, "alerts@test.com"));
+            }
+            List<Boolean> sent = emailTools.sendBatch(emails);
+
+            // only the rejected recipient is reported failed, the others are sent on the same connection
+            assertEquals(List.of(true, true, false, true, true), sent);
+            assertEquals(4, smtp.messages.get());
+            assertEquals(1, smtp.connections.get());
+        } finally {
+            smtp.close();
+        }
+    }
+
+    protected SendResponse response(boolean success) {
+        SendResponse r = Mockito.mock(SendResponse.class);
+        lenient().when(r.isSuccessful()).thenReturn(success);
+        return r;
+    }
+
+    protected BatchResponse batch(List<SendResponse> responses) {
+        BatchResponse b = Mockito.mock(BatchResponse.class);
+        lenient().when(b.getResponses()).thenReturn(responses);
+        return b;
+    }
+
+    @Test
+    public void testPushBatchGrouping() throws Exception {
+        log.info("[alerts][test] Running testPushBatchGrouping");
+        FirebaseMessaging messaging = Mockito.mock(FirebaseMessaging.class);
+        FirebaseTools firebaseTools = new FirebaseTools() {
+            @Override
+            protected FirebaseMessaging getMessaging() {
+                return messaging;
+            }
+            @Override
+            public boolean isFirebaseInitialized() {
+                return true;
+            }
+        };
+        when(messaging.sendEachForMulticast(any(MulticastMessage.class)))
+                .thenReturn(batch(List.of(response(true), response(false), response(true))));
+        when(messaging.sendEach(anyList()))
+                .thenAnswer(i -> batch(Collections.nCopies(((List<?>) i.getArgument(0)).size(), response(true))));
+
+        List<Boolean> sent = firebaseTools.sendPushBatch(List.of(
+                new FirebaseTools.Push("t1", "Alert", "Door open"),
+                new FirebaseTools.Push("t2", "Alert", "Door open"),
+                new FirebaseTools.Push("t3", "Alert", "Porte ouverte"),
+                new FirebaseTools.Push("t4", "Alert", "Door open"),
+                new FirebaseTools.Push("t5", "Alert", "Tür offen")
+        ));
+
+        // the same content goes in one multicast, the others in one sendEach
+        verify(messaging, times(1)).sendEachForMulticast(any(MulticastMessage.class));
+        verify(messaging, times(1)).sendEach(argThat(l -> l.size() == 2));
+        verify(messaging, never()).send(any());
+        assertEquals(List.of(true, false, true, true, true), sent);
+    }
+
+    @Test
+    public void testDeliveryBatches() throws Exception {
+        log.info("[alerts][test] Running testDeliveryBatches");
+        AlertsConfig config = Mockito.mock(AlertsConfig.class);
+        lenient().when(config.getAlertsDeliveryEmailConcurrency()).thenReturn(1);
+        lenient().when(config.getAlertsDeliveryEmailBatchMax()).thenReturn(10);
+        lenient().when(config.getAlertsDeliveryPushConcurrency()).thenReturn(1);
+        lenient().when(config.getAlertsDeliveryPushBatchMax()).thenReturn(500);
+        lenient().when(config.getAlertsDeliveryLingerMs()).thenReturn(200L);
+        lenient().when(config.getAlertsDeliveryQueueSize()).thenReturn(100);
+        lenient().when(config.getAlertsDeliveryTimeoutMs()).thenReturn(1000L);
+        lenient().when(config.getAlertsDeliveryEnqueueWaitMs()).thenReturn(100L);
+
+        EmailTools emailTools = Mockito.mock(EmailTools.class);
+        ArrayList<Integer> emailBatches = new ArrayList<>();
+        when(emailTools.sendBatch(anyList())).thenAnswer(i -> {
+            List<?> l = i.getArgument(0);
+            synchronized (emailBatches) { emailBatches.add(l.size()); }
+            return new ArrayList<>(Collections.nCopies(l.size(), true));
+        });
+        FirebaseTools firebaseTools = Mockito.mock(FirebaseTools.class);
+        when(firebaseTools.sendPushBatch(anyList())).thenAnswer(i -> {
+            List<?> l = i.getArgument(0);
+            return new ArrayList<>(Collections.nCopies(l.size(), false));
+        });
+
+        AlertDeliveryService delivery = new AlertDeliveryService(config, emailTools, firebaseTools);
+        delivery.initAlertDeliveryService();
+        try {
+            ArrayList<CompletableFuture<AlertDeliveryService.Result>> results = new ArrayList<>();
+            for ( int i = 0 ; i < 5 ; i++ ) {
+                results.add(delivery.deliver(new AlertDeliveryService.Delivery(
+                        AlertMedium.EMAIL, "user" + i + "@test.com", "alert", "message", "alerts@test.com"
+                )));
+            }
+            CompletableFuture<AlertDeliveryService.Result> push = delivery.deliver(new AlertDeliveryService.Delivery(
+                    AlertMedium.PUSH, "token", "alert", "message", null
+            ));
+            CompletableFuture<AlertDeliveryService.Result> sms = delivery.deliver(new AlertDeliveryService.Delivery(
+                    AlertMedium.SMS, "+33600000000", "alert", "message", null
+            ));
+
+            for ( CompletableFuture<AlertDeliveryService.Result> r : results ) {
+                assertTrue(r.get(5, TimeUnit.SECONDS).sent());
+            }
+            assertFalse(push.get(5, TimeUnit.SECONDS).sent());
+            assertEquals("alerts-failed-send-push", push.get().error());
+            assertEquals("alerts-delivery-not-supported", sms.get(5, TimeUnit.SECONDS).error());
+
+            // the emails have been grouped
+            synchronized (emailBatches) {
+                assertEquals(5, emailBatches.stream().mapToInt(Integer::intValue).sum());
+                assertTrue(emailBatches.size() < 5);
+            }
+        } finally {
+            delivery.destroyAlertDeliveryService();
+        }
+    }
+
+    @Test
+    public void testInterruptedSenderFailsQueue() throws Exception {
+        log.info("[alerts][test] Running testInterruptedSenderFailsQueue");
+        AlertsConfig config = Mockito.mock(AlertsConfig.class);
+        lenient().when(config.getAlertsDeliveryEmailConcurrency()).thenReturn(1);
+        lenient().when(config.getAlertsDeliveryEmailBatchMax()).thenReturn(1);
+        lenient().when(config.getAlertsDeliveryPushConcurrency()).thenReturn(1);
+        lenient().when(config.getAlertsDeliveryPushBatchMax()).thenReturn(500);
+        lenient().when(config.getAlertsDeliveryLingerMs()).thenReturn(0L);
+        lenient().when(config.getAlertsDeliveryQueueSize()).thenReturn(100);
+        lenient().when(config.getAlertsDeliveryEnqueueWaitMs()).thenReturn(100L);
+
+        // the sender is blocked on the first email until interrupted
+        CountDownLatch entered = new CountDownLatch(1);
+        EmailTools emailTools = Mockito.mock(EmailTools.class);
+        when(emailTools.sendBatch(anyList())).thenAnswer(i -> {
+            entered.countDown();
+            try {
+                new CountDownLatch(1).await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+            return new ArrayList<>(Collections.nCopies(((List<?>) i.getArgument(0)).size(), false));
+        });
+
+        AlertDeliveryService delivery = new AlertDeliveryService(config, emailTools, Mockito.mock(FirebaseTools.class));
+        delivery.initAlertDeliveryService();
+        try {
+            ArrayList<CompletableFuture<AlertDeliveryService.Result>> results = new ArrayList<>();
+            results.add(delivery.deliver(new AlertDeliveryService.Delivery(AlertMedium.EMAIL, "user0@test.com", "alert", "message", "alerts@test.com")));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            for ( int i = 1 ; i < 4 ; i++ ) {
+                results.add(delivery.deliver(new AlertDeliveryService.Delivery(
+                        AlertMedium.EMAIL, "user" + i + "@test.com", "alert", "message", "alerts@test.com"
+                )));
+            }
+            assertEquals(3, delivery.getQueueSize(AlertMedium.EMAIL));
+
+            // interrupted, the waiting notifications are failed too
+            Map<?, ?> channels = (Map<?, ?>) ReflectionTestUtils.getField(delivery, "channels");
+            assertNotNull(channels);
+            ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) ReflectionTestUtils.getField(channels.get(AlertMedium.EMAIL), "executor");
+            assertNotNull(executor);
+            executor.getThreadPoolExecutor().shutdownNow();
+            for ( CompletableFuture<AlertDeliveryService.Result> r : results ) {
+                assertEquals("alerts-failed-send-email", r.get(5, TimeUnit.SECONDS).error());
+            }
+            assertEquals(0, delivery.getQueueSize(AlertMedium.EMAIL));
+        } finally {
+            delivery.destroyAlertDeliveryService();
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.disk91.iot.alerts;
+
+import com.disk91.alerts.config.AlertsConfig;
+import com.disk91.alerts.mdb.entities.Alert;
+import com.disk91.alerts.mdb.entities.sub.AlertState;
+import com.disk91.alerts.mdb.repositories.AlertRepository;
+import com.disk91.alerts.services.AlertService;
+import com.disk91.alerts.services.AlertStateWriter;
+import com.disk91.common.services.PurgeService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class AlertServiceTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    // simulated database, alert id -> stored alert, and the state writes not yet flushed
+    private final LinkedHashMap<String, Alert> stored = new LinkedHashMap<>();
+    private final HashMap<String, AlertState> unflushed = new HashMap<>();
+
+    private Alert copyOf(Alert a) {
+        Alert c = Alert.newAlert(a.getAlertId(), "test", "tmpl", "dev", List.of("g"), List.of(), a.getRequestMs(), "pub");
+        c.setId(a.getId());
+        c.setState(a.getState());
+        return c;
+    }
+
+    private void store(String id, AlertState state, long requestMs) {
+        Alert a = Alert.newAlert("a-" + id, "test", "tmpl", "dev", List.of("g"), List.of(), requestMs, "pub");
+        a.setId(id);
+        a.setState(state);
+        stored.put(id, a);
+    }
+
+    private AlertService createService() {
+        AlertRepository alertRepository = mock(AlertRepository.class);
+        when(alertRepository.findAlertsByState(any(AlertState.class))).thenAnswer(inv -> {
+            AlertState state = inv.getArgument(0);
+            return stored.values().stream().filter(a -> a.getState() == state).map(this::copyOf).toList();
+        });
+        when(alertRepository.findAlertsByStateInOrderByRequestMsAsc(anyList())).thenAnswer(inv -> {
+            List<AlertState> states = inv.getArgument(0);
+            return stored.values().stream()
+                    .filter(a -> states.contains(a.getState()))
+                    .sorted(Comparator.comparingLong(Alert::getRequestMs))
+                    .map(this::copyOf)
+                    .toList();
+        });
+        // batched state writes, applied on flush
+        AlertStateWriter alertStateWriter = mock(AlertStateWriter.class);
+        doAnswer(inv -> {
+            Alert a = inv.getArgument(0);
+            unflushed.put(a.getId(), a.getState());
+            return null;
+        }).when(alertStateWriter).saveState(any(Alert.class));
+        doAnswer(inv -> {
+            unflushed.forEach((id, state) -> stored.get(id).setState(state));
+            unflushed.clear();
+            return null;
+        }).when(alertStateWriter).flush();
+
+        AlertService service = new AlertService();
+        ReflectionTestUtils.setField(service, "alertRepository", alertRepository);
+        ReflectionTestUtils.setField(service, "alertStateWriter", alertStateWriter);
+        ReflectionTestUtils.setField(service, "alertsConfig", mock(AlertsConfig.class));
+        ReflectionTestUtils.setField(service, "alertTaskExecutor", mock(ThreadPoolTaskExecutor.class));
+        ReflectionTestUtils.setField(service, "purgeService", mock(PurgeService.class));
+        return service;
+    }
+
+    @Test
+    public void testStartupRequeue() {
+        log.info("[alerts][test] Running testStartupRequeue");
+
+        // alerts left in the memory queue by the previous run, and alerts not yet enqueued
+        store("000000000000000000000001", AlertState.PENDING_QUEUE, 1_000);
+        store("000000000000000000000002", AlertState.ENDING_QUEUE, 2_000);
+        store("000000000000000000000003", AlertState.PENDING, 3_000);
+        store("000000000000000000000004", AlertState.ENDING, 4_000);
+        store("000000000000000000000005", AlertState.RUNNING, 5_000);
+        AlertService service = createService();
+        ReflectionTestUtils.invokeMethod(service, "initAlertProcessor");
+
+        // the stuck alerts are enqueued again with the others, oldest first
+        @SuppressWarnings("unchecked")
+        LinkedBlockingQueue<Alert> queue = (LinkedBlockingQueue<Alert>) ReflectionTestUtils.getField(service, "alertQueue");
+        assertNotNull(queue);
+        ArrayList<String> ids = new ArrayList<>();
+        for ( Alert a : queue ) ids.add(a.getId());
+        assertEquals(List.of(
+                "000000000000000000000001",
+                "000000000000000000000002",
+                "000000000000000000000003",
+                "000000000000000000000004"
+        ), ids);
+        for ( Alert a : queue ) {
+            assertTrue(a.getState() == AlertState.PENDING_QUEUE || a.getState() == AlertState.ENDING_QUEUE);
+        }
+        assertEquals(AlertState.ENDING_QUEUE, queue.stream().filter(a -> a.getId().endsWith("2")).findFirst().orElseThrow().getState());
+        ReflectionTestUtils.invokeMethod(service, "destroyAlertProcessor");
+    }
+
+}
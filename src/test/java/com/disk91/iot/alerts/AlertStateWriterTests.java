@@ -0,0 +1,126 @@
+package com.disk91.iot.alerts;
+
+import com.disk91.alerts.config.AlertsConfig;
+import com.disk91.alerts.mdb.entities.Alert;
+import com.disk91.alerts.mdb.entities.sub.AlertMedium;
+import com.disk91.alerts.mdb.entities.sub.AlertState;
+import com.disk91.alerts.services.AlertStateWriter;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class AlertStateWriterTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    protected MongoTemplate mongoTemplate;
+    protected BulkOperations bulk;
+
+    protected AlertStateWriter newWriter() {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        bulk = Mockito.mock(BulkOperations.class);
+        MongoConverter converter = Mockito.mock(MongoConverter.class);
+        lenient().when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(Alert.class))).thenReturn(bulk);
+        lenient().when(mongoTemplate.getConverter()).thenReturn(converter);
+        lenient().when(converter.convertToMongoType(any(), any())).thenAnswer(i -> new Document("entry", true));
+        AlertsConfig config = Mockito.mock(AlertsConfig.class);
+        lenient().when(config.getAlertsStateFlushMax()).thenReturn(1000);
+        return new AlertStateWriter(mongoTemplate, config);
+    }
+
+    protected Alert newAlert(String id) {
+        Alert a = Alert.newAlert("a-" + id, "test", "tmpl", "dev", List.of("g"), List.of(), 0, "pub");
+        a.setId(id);
+        return a;
+    }
+
+    @Test
+    public void testCoalescing() {
+        log.info("[alerts][test] Running testCoalescing");
+        AlertStateWriter w = newWriter();
+
+        Alert a = newAlert("000000000000000000000001");
+        a.setState(AlertState.PENDING_QUEUE);
+        w.saveState(a);
+        boolean added = a.upsertSent("u1", AlertMedium.EMAIL, false, false, "alerts-alert-not-sent");
+        w.saveSent(a, "u1", added);
+        a.upsertSent("u1", AlertMedium.EMAIL, true, false, "");
+        w.saveSent(a, "u1", false);
+        a.setState(AlertState.RUNNING);
+        w.saveState(a);
+
+        Alert b = newAlert("000000000000000000000002");
+        b.setState(AlertState.PENDING_QUEUE);
+        w.saveState(b);
+        assertEquals(2, w.getPendingCount());
+
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        w.flush();
+        // one bulk: a $set and a $push for a, a $set for b
+        verify(mongoTemplate, times(1)).bulkOps(any(BulkOperations.BulkMode.class), eq(Alert.class));
+        verify(bulk, times(3)).updateOne(any(Query.class), updates.capture());
+        verify(bulk, times(1)).execute();
+        assertEquals(0, w.getPendingCount());
+
+        List<Update> l = new ArrayList<>(updates.getAllValues());
+        Document setA = (Document) l.get(0).getUpdateObject().get("$set");
+        assertEquals(AlertState.RUNNING, setA.get("state"));
+        assertFalse(setA.containsKey("sent.0"));
+        assertTrue(l.get(1).getUpdateObject().containsKey("$push"));
+        assertFalse(l.get(2).getUpdateObject().containsKey("$push"));
+
+        // the entry is now stored, an update is a positional $set
+        a.upsertSent("u1", AlertMedium.EMAIL, true, true, "");
+        w.saveSent(a, "u1", false);
+        w.flush();
+        verify(bulk, times(4)).updateOne(any(Query.class), updates.capture());
+        Document setSent = (Document) updates.getValue().getUpdateObject().get("$set");
+        assertTrue(setSent.containsKey("sent.0"));
+    }
+
+    @Test
+    public void testCommit() {
+        log.info("[alerts][test] Running testCommit");
+        AlertStateWriter w = newWriter();
+
+        Alert a = newAlert("000000000000000000000003");
+        Alert b = newAlert("000000000000000000000004");
+        w.saveState(b);
+        a.setState(AlertState.ENDED);
+        w.commit(a);
+
+        // only the committed alert is written, the other one waits for the flush
+        verify(bulk, times(1)).updateOne(any(Query.class), any(Update.class));
+        verify(bulk, times(1)).execute();
+        assertEquals(1, w.getPendingCount());
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.disk91.iot.audit;
+
+import com.disk91.audit.tools.AuditExportWriter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditExportWriterTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testNdjson() throws Exception {
+        log.info("[audit][test] Running testNdjson");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        AuditExportWriter w = new AuditExportWriter(bos, AuditExportWriter.Format.NDJSON, false);
+        w.write(1000L, "Users", "Login", "owner", "User \"owner\" logged\nfrom 1.2.3.4");
+        w.write(2000L, "Groups", "Creation", "other", "Group ***");
+        w.close();
+        assertEquals(2, w.getRows());
+
+        String [] lines = bos.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode n = mapper.readTree(lines[0]);
+        assertEquals(1000L, n.get("actionMs").asLong());
+        assertEquals("Users", n.get("service").asText());
+        assertEquals("User \"owner\" logged\nfrom 1.2.3.4", n.get("log").asText());
+        assertEquals("Creation", mapper.readTree(lines[1]).get("action").asText());
+    }
+
+    @Test
+    public void testCsvGzip() throws Exception {
+        log.info("[audit][test] Running testCsvGzip");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        AuditExportWriter w = new AuditExportWriter(bos, AuditExportWriter.Format.CSV, true);
+        w.write(1000L, "Users", "Login", "owner", "plain");
+        w.write(2000L, "Users", "Login", "a,b", "say \"hi\"\r\nbye");
+        w.close();
+
+        String csv = new String(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray())).readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals("actionMs,service,action,owner,log\r\n" +
+                "1000,Users,Login,owner,plain\r\n" +
+                "2000,Users,Login,\"a,b\",\"say \"\"hi\"\"\r\nbye\"\r\n", csv);
+    }
+
+}
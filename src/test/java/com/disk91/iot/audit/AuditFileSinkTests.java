@@ -0,0 +1,127 @@
+package com.disk91.iot.audit;
+
+import com.disk91.audit.tools.AuditFileSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditFileSinkTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static String line(int i) {
+        return String.format("%08d [test] [action] User owner - audit line with some content to fill the segments ....", i);
+    }
+
+    @Test
+    public void testRotationCompressionAndRead(@TempDir Path dir) throws Exception {
+        log.info("[audit][test] Running testRotationCompressionAndRead");
+
+        // 1MB segments, 4KB chunks, ~2.5MB of lines
+        AuditFileSink sink = new AuditFileSink(dir, 1024 * 1024, 4 * 1024, true, 0, 0);
+        int count = 25_000;
+        for ( int i = 0 ; i < count ; i++ ) {
+            sink.append(1_000_000L + i, line(i));
+            if ( i % 100 == 99 ) sink.flush();
+        }
+        sink.flush();
+
+        // time range read, only the chunks of the range
+        List<String> lines = new ArrayList<>();
+        sink.read(1_000_000L + 12_000, 1_000_000L + 12_010, lines::add);
+        assertTrue(lines.contains(line(12_000)));
+        assertTrue(lines.contains(line(12_010)));
+        assertTrue(lines.size() < 200, "only a few chunks are read");
+        sink.close();
+
+        // closed segments are compressed with their index
+        List<String> names;
+        try (Stream<Path> files = Files.list(dir)) {
+            names = files.map(p -> p.getFileName().toString()).sorted().toList();
+        }
+        assertEquals(3, names.stream().filter(n -> n.endsWith(".log.gz")).count());
+        assertEquals(3, names.stream().filter(n -> n.endsWith(".log.gz.idx")).count());
+        assertTrue(names.stream().noneMatch(n -> n.endsWith(".log")));
+
+        // read the compressed segments, all the lines in order
+        sink = new AuditFileSink(dir, 1024 * 1024, 4 * 1024, true, 0, 0);
+        lines.clear();
+        sink.read(Long.MIN_VALUE, Long.MAX_VALUE, lines::add);
+        assertEquals(count, lines.size());
+        assertEquals(line(0), lines.get(0));
+        assertEquals(line(count - 1), lines.get(count - 1));
+        lines.clear();
+        sink.read(1_000_000L + 20_000, 1_000_000L + 20_000, lines::add);
+        assertTrue(lines.contains(line(20_000)));
+        assertTrue(lines.size() < 100);
+        sink.close();
+    }
+
+    @Test
+    public void testMaxTotalSize(@TempDir Path dir) throws Exception {
+        log.info("[audit][test] Running testMaxTotalSize");
+
+        // uncompressed 1MB segments, keep at most 2.5MB
+        AuditFileSink sink = new AuditFileSink(dir, 1024 * 1024, 64 * 1024, false, 0, 2_500_000);
+        for ( int i = 0 ; i < 50_000 ; i++ ) {
+            sink.append(i, line(i));
+            if ( i % 1000 == 999 ) sink.flush();
+        }
+        sink.close();
+
+        long total = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for ( Path p : files.toList() ) total += Files.size(p);
+        }
+        assertTrue(total <= 2_500_000 + 1024 * 1024, "oldest segments deleted");
+        List<String> lines = new ArrayList<>();
+        sink = new AuditFileSink(dir, 1024 * 1024, 64 * 1024, false, 0, 2_500_000);
+        sink.read(0, 1_000, lines::add);
+        assertTrue(lines.isEmpty());
+        sink.close();
+    }
+
+    @Test
+    public void testRecoveryAfterCrash(@TempDir Path dir) throws Exception {
+        log.info("[audit][test] Running testRecoveryAfterCrash");
+
+        // segment left open, the last chunk is not in the index
+        AuditFileSink crashed = new AuditFileSink(dir, 1024 * 1024, 4 * 1024, true, 0, 0);
+        for ( int i = 0 ; i < 1_000 ; i++ ) crashed.append(1_000_000L + i, line(i));
+        crashed.flush();
+
+        // segment of a previous version, without index
+        Path legacy = dir.resolve("audit-2020-01-01-0001.log");
+        Files.write(legacy, List.of(line(-2), line(-1)));
+
+        // restart, the plain segments are compressed, the lines of the last chunk are still found
+        AuditFileSink sink = new AuditFileSink(dir, 1024 * 1024, 4 * 1024, true, 0, 0);
+        sink.close();
+        List<String> names;
+        try (Stream<Path> files = Files.list(dir)) {
+            names = files.map(p -> p.getFileName().toString()).sorted().toList();
+        }
+        assertEquals(2, names.stream().filter(n -> n.endsWith(".log.gz")).count());
+        assertTrue(names.stream().noneMatch(n -> n.endsWith(".log")));
+
+        sink = new AuditFileSink(dir, 1024 * 1024, 4 * 1024, true, 0, 0);
+        List<String> lines = new ArrayList<>();
+        sink.read(1_000_000L + 999, 1_000_000L + 999, lines::add);
+        assertTrue(lines.contains(line(999)));
+        lines.clear();
+        sink.read(Long.MIN_VALUE, Long.MAX_VALUE, lines::add);
+        assertEquals(1_002, lines.size());
+        assertEquals(line(-2), lines.get(0));
+        sink.close();
+    }
+
+}
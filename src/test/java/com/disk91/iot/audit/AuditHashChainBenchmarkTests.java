@@ -0,0 +1,72 @@
+package com.disk91.iot.audit;
+
+import com.disk91.audit.integration.AuditMessage;
+import com.disk91.audit.services.AuditChainService;
+import com.disk91.audit.tools.AuditHashChain;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cost of the hash chain on the audit write path, per record, and of the verification.
+ * Not run by default, use -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class AuditHashChainBenchmarkTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void benchmarkChain() throws Exception {
+        int count = 1_000_000;
+        byte [] key = AuditChainService.deriveKey("bench-key");
+        ArrayList<AuditMessage> messages = new ArrayList<>(10_000);
+        for ( int i = 0 ; i < 10_000 ; i++ ) {
+            AuditMessage m = new AuditMessage();
+            m.setService("Users");
+            m.setAction("Login");
+            m.setActionMs(1_700_000_000_000L + i);
+            m.setOwner("owner-" + i);
+            m.setLogStr("User {0} logged in from {1} with {2}");
+            m.setParams(new ArrayList<>(List.of("cGFyYW1ldGVyLW9uZS1lbmNyeXB0ZWQ=", "cGFyYW1ldGVyLXR3by1lbmNyeXB0ZWQ=", "dGhyZWU=")));
+            messages.add(m);
+        }
+
+        for ( int round = 0 ; round < 3 ; round++ ) {
+            AuditHashChain chain = new AuditHashChain(key, "bench", 0, Long.MAX_VALUE, Long.MAX_VALUE, 10_000);
+            ArrayList<AuditHashChain.Entry> entries = new ArrayList<>(count);
+            long start = System.nanoTime();
+            for ( int i = 0 ; i < count ; i++ ) {
+                AuditMessage m = messages.get(i % messages.size());
+                AuditHashChain.Link l = chain.append(m, 1_000);
+                if ( round == 2 ) entries.add(new AuditHashChain.Entry(l.seq(), m, l.signature()));
+            }
+            long appendNs = System.nanoTime() - start;
+            chain.closeChain(2_000);
+            List<AuditHashChain.Checkpoint> cps = chain.drainCheckpoints();
+            log.info("[audit][bench] round {} : {} records chained, {} ns/record, {} checkpoints",
+                    round, count, appendNs / count, cps.size());
+
+            if ( round == 2 ) {
+                start = System.nanoTime();
+                AuditHashChain.VerifyResult r = AuditHashChain.verify(key, cps.get(0).chainId(), null, count - 1, entries.iterator(), cps);
+                long verifyNs = System.nanoTime() - start;
+                assertTrue(r.valid, r.reason);
+                log.info("[audit][bench] {} records verified, {} ns/record", r.verified, verifyNs / count);
+                start = System.nanoTime();
+                r = AuditHashChain.verify(key, cps.get(0).chainId(), cps.get(cps.size() - 2), count - 1,
+                        entries.subList((int) cps.get(cps.size() - 2).toSeq() + 1, count).iterator(), cps.subList(cps.size() - 1, cps.size()));
+                assertTrue(r.valid, r.reason);
+                log.info("[audit][bench] last {} records verified from the nearest checkpoint in {} us",
+                        r.verified, (System.nanoTime() - start) / 1_000);
+            }
+        }
+    }
+
+}
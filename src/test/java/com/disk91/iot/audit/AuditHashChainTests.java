@@ -0,0 +1,186 @@
+package com.disk91.iot.audit;
+
+import com.disk91.audit.integration.AuditMessage;
+import com.disk91.audit.services.AuditChainService;
+import com.disk91.audit.tools.AuditHashChain;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditHashChainTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final byte [] KEY = AuditChainService.deriveKey("test-key");
+
+    private static AuditMessage message(int i) {
+        AuditMessage m = new AuditMessage();
+        m.setService("Users");
+        m.setAction("Login");
+        m.setActionMs(1_000_000L + i);
+        m.setOwner("owner-" + (i % 10));
+        m.setLogStr("User {0} logged from {1}");
+        m.setParams(new ArrayList<>(List.of("enc-" + i, "ip-" + i)));
+        return m;
+    }
+
+    @Test
+    public void testChainCheckpointsAndVerify() throws Exception {
+        log.info("[audit][test] Running testChainCheckpointsAndVerify");
+        // 1h segments, a checkpoint every 100 records
+        AuditHashChain chain = new AuditHashChain(KEY, "i1", 0, 3_600_000, 3_600_000, 100);
+        ArrayList<AuditHashChain.Entry> entries = new ArrayList<>();
+        String chainId = null;
+        for ( int i = 0 ; i < 1050 ; i++ ) {
+            AuditMessage m = message(i);
+            AuditHashChain.Link l = chain.append(m, 10_000);
+            if ( chainId == null ) chainId = l.chainId();
+            assertEquals(chainId, l.chainId());
+            assertEquals(i, l.seq());
+            entries.add(new AuditHashChain.Entry(l.seq(), m, l.signature()));
+        }
+        chain.closeChain(20_000);
+        List<AuditHashChain.Checkpoint> cps = chain.drainCheckpoints();
+        assertEquals(11, cps.size());
+        assertEquals(1000, cps.get(10).fromSeq());
+        assertEquals(1049, cps.get(10).toSeq());
+        for ( int i = 1 ; i < cps.size() ; i++ ) assertEquals(cps.get(i - 1).hash(), cps.get(i).previousHash());
+
+        // full chain
+        AuditHashChain.VerifyResult r = AuditHashChain.verify(KEY, chainId, null, 1049, entries.iterator(), cps);
+        assertTrue(r.valid, r.reason);
+        assertEquals(1050, r.verified);
+
+        // from the nearest checkpoint, only the entries after it
+        AuditHashChain.Checkpoint anchor = cps.get(6);
+        r = AuditHashChain.verify(KEY, chainId, anchor, 749, entries.subList(700, 750).iterator(), cps.subList(7, cps.size()));
+        assertTrue(r.valid, r.reason);
+        assertEquals(50, r.verified);
+
+        // wrong key
+        r = AuditHashChain.verify(AuditChainService.deriveKey("other"), chainId, anchor, 749, entries.subList(700, 750).iterator(), List.of());
+        assertFalse(r.valid);
+        assertEquals("audit-chain-checkpoint-invalid", r.reason);
+    }
+
+    @Test
+    public void testTamperDetection() throws Exception {
+        log.info("[audit][test] Running testTamperDetection");
+        AuditHashChain chain = new AuditHashChain(KEY, "i1", 0, 3_600_000, 3_600_000, 50);
+        ArrayList<AuditHashChain.Entry> entries = new ArrayList<>();
+        String chainId = null;
+        for ( int i = 0 ; i < 200 ; i++ ) {
+            AuditMessage m = message(i);
+            AuditHashChain.Link l = chain.append(m, 10_000);
+            chainId = l.chainId();
+            entries.add(new AuditHashChain.Entry(l.seq(), m, l.signature()));
+        }
+        List<AuditHashChain.Checkpoint> cps = chain.drainCheckpoints();
+        assertEquals(4, cps.size());
+
+        // modified entry
+        ArrayList<AuditHashChain.Entry> modified = new ArrayList<>(entries);
+        AuditMessage m = message(120);
+        m.setOwner("someone-else");
+        modified.set(120, new AuditHashChain.Entry(120, m, entries.get(120).signature()));
+        AuditHashChain.VerifyResult r = AuditHashChain.verify(KEY, chainId, null, 199, modified.iterator(), cps);
+        assertFalse(r.valid);
+        assertEquals(120, r.failedSeq);
+        assertEquals("audit-chain-record-invalid", r.reason);
+
+        // removed entry
+        ArrayList<AuditHashChain.Entry> removed = new ArrayList<>(entries);
+        removed.remove(77);
+        r = AuditHashChain.verify(KEY, chainId, null, 199, removed.iterator(), cps);
+        assertFalse(r.valid);
+        assertEquals(77, r.failedSeq);
+        assertEquals("audit-chain-record-missing", r.reason);
+
+        // checkpoint altered, its root does not match the entries anymore
+        ArrayList<AuditHashChain.Checkpoint> forged = new ArrayList<>(cps);
+        AuditHashChain.Checkpoint c = cps.get(1);
+        forged.set(1, new AuditHashChain.Checkpoint(c.instanceId(), c.chainId(), c.fromSeq(), c.toSeq(),
+                cps.get(2).merkleRoot(), c.headHash(), c.previousHash(), c.hash(), c.createdMs()));
+        r = AuditHashChain.verify(KEY, chainId, null, 199, entries.iterator(), forged);
+        assertFalse(r.valid);
+        assertEquals(99, r.failedSeq);
+        assertEquals("audit-chain-checkpoint-mismatch", r.reason);
+    }
+
+    @Test
+    public void testSegmentsAndTimeCheckpoints() throws Exception {
+        log.info("[audit][test] Running testSegmentsAndTimeCheckpoints");
+        // 1s segments, checkpoint every 100ms
+        AuditHashChain chain = new AuditHashChain(KEY, "i1", 0, 1_000, 100, 1_000_000);
+        AuditHashChain.Link a = chain.append(message(0), 10_010);
+        chain.append(message(1), 10_020);
+        chain.tick(10_050);
+        assertTrue(chain.drainCheckpoints().isEmpty());
+        chain.tick(10_150);
+        List<AuditHashChain.Checkpoint> cps = chain.drainCheckpoints();
+        assertEquals(1, cps.size());
+        assertEquals(1, cps.get(0).toSeq());
+
+        // nothing new, no checkpoint
+        chain.tick(10_300);
+        assertTrue(chain.drainCheckpoints().isEmpty());
+
+        // next segment, new chain from position 0, the previous one is closed
+        chain.append(message(2), 10_500);
+        AuditHashChain.Link b = chain.append(message(3), 11_001);
+        assertNotEquals(a.chainId(), b.chainId());
+        assertEquals(0, b.seq());
+        cps = chain.drainCheckpoints();
+        assertEquals(1, cps.size());
+        assertEquals(a.chainId(), cps.get(0).chainId());
+        assertEquals(2, cps.get(0).fromSeq());
+        assertEquals(2, cps.get(0).toSeq());
+
+        // chain id unique across restarts
+        AuditHashChain restarted = new AuditHashChain(KEY, "i1", 5_000, 1_000, 100, 1_000_000);
+        assertNotEquals(b.chainId(), restarted.append(message(4), 11_002).chainId());
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        log.info("[audit][test] Running testRollback");
+        AuditHashChain chain = new AuditHashChain(KEY, "i1", 0, 3_600_000, 3_600_000, 4);
+        ArrayList<AuditHashChain.Entry> entries = new ArrayList<>();
+        String chainId = null;
+        for ( int i = 0 ; i < 10 ; i++ ) {
+            AuditMessage m = message(i);
+            AuditHashChain.Link l = chain.append(m, 10_000);
+            chainId = l.chainId();
+            entries.add(new AuditHashChain.Entry(l.seq(), m, l.signature()));
+        }
+
+        // batch not written, its checkpoint is discarded and the chain is closed before it
+        AuditHashChain.Mark mark = chain.mark();
+        for ( int i = 10 ; i < 15 ; i++ ) chain.append(message(i), 10_000);
+        chain.rollback(mark, 10_100);
+        List<AuditHashChain.Checkpoint> cps = chain.drainCheckpoints();
+        assertEquals(3, cps.size());
+        assertEquals(8, cps.get(2).fromSeq());
+        assertEquals(9, cps.get(2).toSeq());
+        AuditHashChain.VerifyResult r = AuditHashChain.verify(KEY, chainId, null, 9, entries.iterator(), cps);
+        assertTrue(r.valid, r.reason);
+        assertEquals(10, r.verified);
+
+        // same segment, new chain from position 0
+        AuditHashChain.Link next = chain.append(message(15), 10_200);
+        assertNotEquals(chainId, next.chainId());
+        assertEquals(0, next.seq());
+        chain.closeChain(10_300);
+        cps = chain.drainCheckpoints();
+        assertEquals(1, cps.size());
+        assertEquals(next.chainId(), cps.get(0).chainId());
+        r = AuditHashChain.verify(KEY, next.chainId(), null, 0, List.of(new AuditHashChain.Entry(0, message(15), next.signature())).iterator(), cps);
+        assertTrue(r.valid, r.reason);
+    }
+
+}
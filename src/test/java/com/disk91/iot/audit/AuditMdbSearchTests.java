@@ -0,0 +1,223 @@
+package com.disk91.iot.audit;
+
+import com.disk91.audit.mdb.entities.AuditMdb;
+import com.disk91.audit.services.AuditMdbSearchService;
+import com.disk91.common.tools.exceptions.ITParseException;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Audit search query building, the collection is simulated by evaluating the generated queries on a list
+ */
+public class AuditMdbSearchTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ArrayList<AuditMdb> collection = new ArrayList<>();
+    private AuditMdbSearchService service;
+
+    @BeforeEach
+    public void setup() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.find(any(Query.class), eq(AuditMdb.class))).thenAnswer(inv -> find(inv.getArgument(0)));
+        when(mongoTemplate.count(any(Query.class), eq(AuditMdb.class))).thenAnswer(inv -> {
+            Query q = inv.getArgument(0);
+            long count = collection.stream().filter(a -> matches(a, q.getQueryObject())).count();
+            return ( q.getLimit() > 0 ) ? Math.min(count, q.getLimit()) : count;
+        });
+        when(mongoTemplate.estimatedCount(AuditMdb.class)).thenAnswer(inv -> (long) collection.size());
+        service = new AuditMdbSearchService(mongoTemplate);
+    }
+
+    private void add(String service, String action, String owner, long actionMs) {
+        AuditMdb a = new AuditMdb();
+        a.setId(new ObjectId().toHexString());
+        a.setService(service);
+        a.setAction(action);
+        a.setOwner(owner);
+        a.setServiceLc(AuditMdb.toSearchKey(service));
+        a.setActionLc(AuditMdb.toSearchKey(action));
+        a.setOwnerLc(AuditMdb.toSearchKey(owner));
+        a.setActionMs(actionMs);
+        collection.add(a);
+    }
+
+    // -------------------------------------------------------------------------
+    // Query evaluation, limited to the operators used by the search
+
+    private Object valueOf(AuditMdb a, String field) {
+        return switch (field) {
+            case "_id" -> new ObjectId(a.getId());
+            case "actionMs" -> a.getActionMs();
+            case "serviceLc" -> a.getServiceLc();
+            case "actionLc" -> a.getActionLc();
+            case "ownerLc" -> a.getOwnerLc();
+            default -> throw new IllegalArgumentException("unexpected field " + field);
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, Object b) {
+        if ( a instanceof Number && b instanceof Number ) return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean matches(AuditMdb a, Document query) {
+        for ( Map.Entry<String, Object> e : query.entrySet() ) {
+            switch (e.getKey()) {
+                case "$and":
+                    for ( Object c : (List<Object>) e.getValue() ) if ( !matches(a, (Document) c) ) return false;
+                    break;
+                case "$or":
+                    boolean any = false;
+                    for ( Object c : (List<Object>) e.getValue() ) any |= matches(a, (Document) c);
+                    if ( !any ) return false;
+                    break;
+                default:
+                    if ( !matchesField(valueOf(a, e.getKey()), e.getValue()) ) return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesField(Object value, Object condition) {
+        if ( condition instanceof Pattern p ) return value != null && p.matcher(value.toString()).find();
+        if ( !(condition instanceof Document ops) ) return value != null && compare(value, condition) == 0;
+        for ( Map.Entry<String, Object> op : ops.entrySet() ) {
+            boolean ok = switch (op.getKey()) {
+                case "$lt" -> compare(value, op.getValue()) < 0;
+                case "$lte" -> compare(value, op.getValue()) <= 0;
+                case "$gt" -> compare(value, op.getValue()) > 0;
+                case "$gte" -> compare(value, op.getValue()) >= 0;
+                case "$regex" -> Pattern.compile(op.getValue().toString()).matcher(value.toString()).find();
+                default -> throw new IllegalArgumentException("unexpected operator " + op.getKey());
+            };
+            if ( !ok ) return false;
+        }
+        return true;
+    }
+
+    private List<AuditMdb> find(Query q) {
+        Document sort = q.getSortObject();
+        Comparator<AuditMdb> order = (x, y) -> 0;
+        for ( Map.Entry<String, Object> s : sort.entrySet() ) {
+            int direction = ((Number) s.getValue()).intValue();
+            order = order.thenComparing((x, y) -> direction * compare(valueOf(x, s.getKey()), valueOf(y, s.getKey())));
+        }
+        return collection.stream()
+                .filter(a -> matches(a, q.getQueryObject()))
+                .sorted(order)
+                .skip(q.getSkip())
+                .limit(( q.getLimit() > 0 ) ? q.getLimit() : Long.MAX_VALUE)
+                .toList();
+    }
+
+    // -------------------------------------------------------------------------
+
+    @Test
+    public void testKeysetPaginationWithTies() throws Exception {
+        log.info("[audit][test] Running testKeysetPaginationWithTies");
+
+        // 25 entries sharing 5 timestamps, pages of 4 split the ties
+        for ( int i = 0 ; i < 25 ; i++ ) add("Users", "Login", "owner-" + i, 1_000L + (i / 5));
+        HashSet<String> seen = new HashSet<>();
+        ArrayList<AuditMdb> all = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            AuditMdbSearchService.Result r = service.search("users", false, 0, 0, cursor, 0, 4, 0);
+            for ( AuditMdb a : r.entries ) assertTrue(seen.add(a.getId()), "entry returned twice");
+            all.addAll(r.entries);
+            cursor = r.nextCursor;
+            pages++;
+        } while ( cursor != null && pages < 20 );
+
+        // every entry once, most recent first, the cursor is actionMs_id
+        assertEquals(25, all.size());
+        assertEquals(7, pages);
+        for ( int i = 1 ; i < all.size() ; i++ ) {
+            AuditMdb p = all.get(i - 1);
+            AuditMdb c = all.get(i);
+            assertTrue(p.getActionMs() > c.getActionMs()
+                    || ( p.getActionMs() == c.getActionMs() && new ObjectId(p.getId()).compareTo(new ObjectId(c.getId())) > 0 ));
+        }
+        AuditMdbSearchService.Result first = service.search("users", false, 0, 0, null, 0, 4, 0);
+        AuditMdb last = first.entries.get(3);
+        assertEquals(last.getActionMs() + "_" + last.getId(), first.nextCursor);
+    }
+
+    @Test
+    public void testExactAndPrefixMatch() throws Exception {
+        log.info("[audit][test] Running testExactAndPrefixMatch");
+
+        add("Users", "Login", "Owner-1", 1_000L);
+        add("Users", "Logout", "Owner-12", 1_001L);
+        add("Groups", "Creation", "Owner-2", 1_002L);
+        add("Devices", "Update", "owner-1", 1_003L);
+
+        // prefix, case insensitive, on service, action or owner
+        assertEquals(2, service.search("LOG", false, 0, 0, null, 0, 10, 0).entries.size());
+        assertEquals(3, service.search("owner-1", false, 0, 0, null, 0, 10, 0).entries.size());
+        // exact
+        assertEquals(0, service.search("log", true, 0, 0, null, 0, 10, 0).entries.size());
+        assertEquals(2, service.search("owner-1", true, 0, 0, null, 0, 10, 0).entries.size());
+        // not a substring match, regex characters are literal
+        assertEquals(0, service.search("ogin", false, 0, 0, null, 0, 10, 0).entries.size());
+        assertEquals(0, service.search("owner.1", false, 0, 0, null, 0, 10, 0).entries.size());
+        // time range
+        assertEquals(1, service.search("owner-1", false, 1_001L, 1_002L, null, 0, 10, 0).entries.size());
+    }
+
+    @Test
+    public void testInvalidCursor() {
+        log.info("[audit][test] Running testInvalidCursor");
+
+        add("Users", "Login", "owner", 1_000L);
+        String id = new ObjectId().toHexString();
+        for ( String cursor : new String[] { "garbage", "1000", "abc_" + id, "1000_zz", "1000_" + id + "_1", "1000_" + id.substring(1) } ) {
+            assertThrows(ITParseException.class, () -> service.search("users", false, 0, 0, cursor, 0, 10, 0), cursor);
+        }
+    }
+
+    @Test
+    public void testBoundedCount() throws Exception {
+        log.info("[audit][test] Running testBoundedCount");
+
+        for ( int i = 0 ; i < 30 ; i++ ) add("Users", "Login", "owner-" + i, 1_000L + i);
+        add("Groups", "Creation", "other", 2_000L);
+
+        AuditMdbSearchService.Result r = service.search("users", false, 0, 0, null, 0, 5, 10);
+        assertEquals(10, r.total);
+        assertTrue(r.totalApproximate);
+        r = service.search("users", false, 0, 0, null, 0, 5, 100);
+        assertEquals(30, r.total);
+        assertFalse(r.totalApproximate);
+        // no filter, estimated
+        r = service.search(null, false, 0, 0, null, 0, 5, 100);
+        assertEquals(31, r.total);
+        assertTrue(r.totalApproximate);
+        // not requested
+        assertEquals(-1, service.search("users", false, 0, 0, null, 0, 5, 0).total);
+    }
+
+}
@@ -0,0 +1,231 @@
+package com.disk91.iot.audit;
+
+import com.disk91.audit.config.AuditConfig;
+import com.disk91.audit.integration.AuditIntegration;
+import com.disk91.audit.pdb.entities.Audit;
+import com.disk91.audit.services.AuditExportService;
+import com.disk91.audit.services.AuditPdbPartitionService;
+import com.disk91.audit.services.AuditPdbSearchService;
+import com.disk91.audit.tools.AuditExportWriter;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AuditPdbPartitionTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final int ROWS = 50_000;
+    private static final Pattern SORT_NODE = Pattern.compile("(^|->\\s+)Sort\\s+\\(", Pattern.MULTILINE);
+
+    private static EmbeddedPostgres pg;
+    private static SingleConnectionDataSource ds;
+    private JdbcTemplate jdbc;
+    private AuditConfig auditConfig;
+
+    @BeforeAll
+    public static void startPostgres() throws Exception {
+        pg = EmbeddedPostgres.start();
+        ds = new SingleConnectionDataSource(pg.getJdbcUrl("postgres", "postgres"), "postgres", "postgres", true);
+    }
+
+    @AfterAll
+    public static void stopPostgres() throws Exception {
+        ds.destroy();
+        pg.close();
+    }
+
+    @BeforeEach
+    public void setup() {
+        jdbc = new JdbcTemplate(ds);
+        jdbc.execute("DROP TABLE IF EXISTS audit_audits CASCADE");
+        auditConfig = mock(AuditConfig.class);
+        when(auditConfig.isAuditPsqlPartitioningEnabled()).thenReturn(true);
+        when(auditConfig.getAuditStoreMedium()).thenReturn("postgresql");
+        when(auditConfig.getAuditPsqlPartitionPremakeMonths()).thenReturn(2);
+        when(auditConfig.getAuditPsqlRetentionMonths()).thenReturn(0);
+        when(auditConfig.getAuditExportMaxConcurrent()).thenReturn(1);
+        when(auditConfig.getAuditExportFetchSize()).thenReturn(500);
+    }
+
+    private static long monthStart(YearMonth m) {
+        return m.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private static String partition(YearMonth m) {
+        return String.format("audit_audits_p%04d%02d", m.getYear(), m.getMonthValue());
+    }
+
+    /**
+     * Plain table as created by JPA, filled with entries from 3 months ago to now
+     */
+    private void createLegacy(long nowMs) {
+        jdbc.execute("CREATE TABLE audit_audits (audit_key uuid PRIMARY KEY, audit_timestamp_ns bigint NOT NULL, " +
+                "audit_signature varchar(255) NOT NULL, service varchar(255) NOT NULL, action varchar(255) NOT NULL, " +
+                "action_ms bigint NOT NULL, owner varchar(255) NOT NULL, log_str varchar(255) NOT NULL, params varchar(255)[] NOT NULL)");
+        long start = monthStart(YearMonth.from(Instant.ofEpochMilli(nowMs).atZone(ZoneOffset.UTC)).minusMonths(3));
+        long step = (nowMs - start) / ROWS;
+        jdbc.update("INSERT INTO audit_audits SELECT gen_random_uuid(), 0, 'sig', " +
+                "(ARRAY['Users','Groups','Devices','Capture'])[1 + i % 4], (ARRAY['Login','Logout','Creation','Update'])[1 + (i / 4) % 4], " +
+                "?::bigint + i * ?::bigint, 'Owner-' || (i % 1000), 'log {0}', ARRAY['p']::varchar[] FROM generate_series(0, ?) i",
+                start, step, ROWS - 1);
+    }
+
+    private String explain(AuditPdbSearchService.SearchQuery q) {
+        List<String> lines = jdbc.queryForList("EXPLAIN " + q.sql(), String.class, q.args());
+        return String.join("\n", lines);
+    }
+
+    @Test
+    public void testConversionSearchAndPlans() throws Exception {
+        log.info("[audit][test] Running testConversionSearchAndPlans");
+        long now = System.currentTimeMillis();
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        createLegacy(now);
+
+        AuditPdbPartitionService partitions = new AuditPdbPartitionService(jdbc, auditConfig);
+        partitions.initPartitionService();
+        assertTrue(partitions.isActive());
+        jdbc.execute("ANALYZE audit_audits");
+
+        // converted, one partition per month of data plus the premade ones
+        List<String> parts = partitions.listPartitions();
+        for ( int i = -3 ; i <= 2 ; i++ ) assertTrue(parts.contains(partition(current.plusMonths(i))), partition(current.plusMonths(i)));
+        assertTrue(parts.contains("audit_audits_default"));
+        assertEquals(ROWS, jdbc.queryForObject("SELECT count(*) FROM audit_audits", Long.class));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM audit_audits_default", Long.class));
+
+        // keyset walk, partial case-insensitive match, ordered and complete
+        AuditPdbSearchService search = new AuditPdbSearchService(jdbc);
+        long expected = jdbc.queryForObject("SELECT count(*) FROM audit_audits WHERE lower(owner) LIKE '%owner-42%'", Long.class);
+        assertTrue(expected > 0);
+        String cursor = null;
+        long found = 0;
+        long lastMs = Long.MAX_VALUE;
+        int pages = 0;
+        do {
+            AuditPdbSearchService.Result r = search.search("OWNER-42", false, 0, 0, cursor, 0, 100, ( pages == 0 ) ? 10_000 : 0);
+            if ( pages == 0 ) assertEquals(expected, r.total);
+            for ( Audit a : r.entries ) {
+                assertTrue(a.getActionMs() <= lastMs);
+                assertTrue(a.getOwner().toLowerCase().contains("owner-42"));
+                lastMs = a.getActionMs();
+            }
+            found += r.entries.size();
+            cursor = r.nextCursor;
+            pages++;
+        } while ( cursor != null );
+        assertEquals(expected, found);
+        assertEquals(4, search.search("owner-42", true, 0, 0, null, 0, 4, 0).entries.size());
+        assertThrows(Exception.class, () -> search.search(null, false, 0, 0, "bad", 0, 10, 0));
+
+        // a time range only reads its partitions
+        YearMonth prev = current.minusMonths(1);
+        String plan = explain(search.prepare(null, false, monthStart(prev) + 1000, monthStart(current) - 1000, null, 0, 50));
+        log.info("[audit][test] time range plan\n{}", plan);
+        assertTrue(plan.contains(partition(prev)));
+        assertFalse(plan.contains(partition(current)));
+        assertFalse(plan.contains(partition(current.minusMonths(2))));
+
+        // keyset page served by the primary key, no sort whatever the depth
+        plan = explain(search.prepare(null, false, 0, 0, (now - 86_400_000L) + "_00000000-0000-0000-0000-000000000000", 0, 50));
+        log.info("[audit][test] keyset plan\n{}", plan);
+        assertTrue(plan.contains("Index Scan Backward"));
+        assertFalse(SORT_NODE.matcher(plan).find());
+
+        // text filter on the trigram indexes
+        if ( partitions.isTrigram() ) {
+            jdbc.execute("SET enable_seqscan = off");
+            plan = explain(search.prepareCount("owner-42", false, 0, 0, 10_000));
+            jdbc.execute("RESET enable_seqscan");
+            log.info("[audit][test] text filter plan\n{}", plan);
+            assertTrue(plan.contains("Bitmap Index Scan"));
+            assertTrue(plan.contains("lower((owner)::text) ~~"));
+            assertFalse(plan.contains("Seq Scan"));
+        } else {
+            log.warn("[audit][test] pg_trgm not available, text plan not verified");
+        }
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        log.info("[audit][test] Running testRetention");
+        long now = System.currentTimeMillis();
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        createLegacy(now);
+        when(auditConfig.getAuditPsqlRetentionMonths()).thenReturn(2);
+
+        AuditPdbPartitionService partitions = new AuditPdbPartitionService(jdbc, auditConfig);
+        partitions.initPartitionService();
+
+        // setup maintains the partitions, the one 3 months ago is out of the retention
+        List<String> parts = new ArrayList<>(partitions.listPartitions());
+        assertFalse(parts.contains(partition(current.minusMonths(3))));
+        assertTrue(parts.contains(partition(current.minusMonths(2))));
+        long left = jdbc.queryForObject("SELECT count(*) FROM audit_audits", Long.class);
+        assertTrue(left < ROWS && left > 0);
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM audit_audits WHERE action_ms < ?", Long.class, monthStart(current.minusMonths(2))));
+
+        // nothing more to drop, new entries are stored in the current partition
+        assertEquals(0, partitions.dropExpiredPartitions(now));
+        jdbc.update("INSERT INTO audit_audits VALUES (gen_random_uuid(), 0, 'sig', 'Users', 'Login', ?, 'owner', 'log', ARRAY['p']::varchar[])", now);
+        assertEquals(1, jdbc.queryForObject("SELECT count(*) FROM " + partition(current) + " WHERE action_ms = ?", Long.class, now));
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        log.info("[audit][test] Running testExport");
+        long now = System.currentTimeMillis();
+        createLegacy(now);
+        AuditPdbPartitionService partitions = new AuditPdbPartitionService(jdbc, auditConfig);
+        partitions.initPartitionService();
+
+        AuditExportService export = new AuditExportService(auditConfig, new AuditIntegration(), null, jdbc);
+        export.startExport();
+        assertThrows(Exception.class, export::startExport);
+        export.endExport();
+
+        // whole table streamed with the cursor, oldest first
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        AuditExportWriter out = new AuditExportWriter(bos, AuditExportWriter.Format.CSV, false);
+        long start = System.currentTimeMillis();
+        assertEquals(ROWS, export.export("test", AuditExportService.Source.PSQL, null, false, 0, 0, false, out));
+        out.close();
+        log.info("[audit][test] {} entries exported in {} ms", ROWS, System.currentTimeMillis() - start);
+        String [] lines = bos.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(ROWS + 1, lines.length);
+        long last = 0;
+        for ( int i = 1 ; i < lines.length ; i++ ) {
+            long ms = Long.parseLong(lines[i].substring(0, lines[i].indexOf(',')));
+            assertTrue(ms >= last);
+            last = ms;
+        }
+        assertTrue(lines[1].endsWith(",log ***"));
+
+        // filtered
+        long expected = jdbc.queryForObject("SELECT count(*) FROM audit_audits WHERE lower(owner) LIKE '%owner-42%'", Long.class);
+        out = new AuditExportWriter(new ByteArrayOutputStream(), AuditExportWriter.Format.NDJSON, true);
+        assertEquals(expected, export.export("test", AuditExportService.Source.PSQL, "owner-42", false, 0, 0, false, out));
+        out.close();
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.disk91.iot.audit;
+
+import com.disk91.audit.config.AuditConfig;
+import com.disk91.audit.integration.AuditIntegration;
+import com.disk91.audit.mdb.entities.AuditMdb;
+import com.disk91.audit.services.AuditExportService;
+import com.disk91.audit.services.AuditMdbSearchService;
+import com.disk91.audit.tools.AuditExportWriter;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Audit search latency on a synthetic dataset (-Daudit.bench.docs, default 1M, 50M for the reference
+ * numbers) in a local Mongo database (-Dmongo.uri, default mongodb://localhost:27017). Compares the
+ * previous unanchored case-insensitive regex with skip pagination and count, to the prefix match on the
+ * lowercase fields with keyset pagination, and measures the streaming export throughput. Not run by default,
+ * use -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class AuditSearchBenchmarkTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final int PAGE = 50;
+
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    public void setup() {
+        client = MongoClients.create(System.getProperty("mongo.uri", "mongodb://localhost:27017"));
+        mongoTemplate = new MongoTemplate(client, "itc-audit-bench");
+        mongoTemplate.getDb().drop();
+    }
+
+    @AfterEach
+    public void clean() {
+        mongoTemplate.getDb().drop();
+        client.close();
+    }
+
+    private void load(long docs) {
+        String [] services = { "Users", "Groups", "Devices", "Capture", "Audit", "Alerts", "Billing", "Tickets" };
+        String [] actions = { "Login", "Logout", "Creation", "Update", "Deletion", "Registration", "Password", "Profile" };
+        long start = System.currentTimeMillis();
+        ArrayList<AuditMdb> batch = new ArrayList<>(10_000);
+        for ( long i = 0 ; i < docs ; i++ ) {
+            AuditMdb a = new AuditMdb();
+            a.setService(services[(int) (i % services.length)]);
+            a.setAction(actions[(int) ((i / 3) % actions.length)]);
+            a.setOwner("Owner-" + (i % 100_000));
+            a.setServiceLc(AuditMdb.toSearchKey(a.getService()));
+            a.setActionLc(AuditMdb.toSearchKey(a.getAction()));
+            a.setOwnerLc(AuditMdb.toSearchKey(a.getOwner()));
+            a.setActionMs(1_700_000_000_000L + i * 10);
+            a.setLogStr("bench {0}");
+            a.setParams(List.of("p"));
+            batch.add(a);
+            if ( batch.size() == 10_000 ) {
+                mongoTemplate.insert(batch, AuditMdb.class);
+                batch.clear();
+            }
+        }
+        if ( !batch.isEmpty() ) mongoTemplate.insert(batch, AuditMdb.class);
+        mongoTemplate.indexOps(AuditMdb.class).ensureIndex(new CompoundIndexDefinition(new Document("actionMs", -1).append("_id", -1)));
+        for ( String f : new String[] { "serviceLc", "actionLc", "ownerLc" } ) {
+            mongoTemplate.indexOps(AuditMdb.class).ensureIndex(new CompoundIndexDefinition(new Document(f, 1).append("actionMs", -1).append("_id", -1)));
+        }
+        log.info("[audit][bench] {} documents loaded in {} ms", docs, System.currentTimeMillis() - start);
+    }
+
+    private long legacy(String search, int page) {
+        long start = System.nanoTime();
+        Query q = new Query(new Criteria().orOperator(
+                Criteria.where("service").regex(search, "i"),
+                Criteria.where("action").regex(search, "i"),
+                Criteria.where("owner").regex(search, "i")
+        ));
+        long total = mongoTemplate.count(q, AuditMdb.class);
+        q.with(Sort.by(Sort.Direction.DESC, "actionMs")).skip((long) page * PAGE).limit(PAGE);
+        List<AuditMdb> r = mongoTemplate.find(q, AuditMdb.class);
+        assertTrue(total > 0 && !r.isEmpty());
+        return (System.nanoTime() - start) / 1_000;
+    }
+
+    @Test
+    public void benchmarkSearch() throws Exception {
+        long docs = Long.parseLong(System.getProperty("audit.bench.docs", "1000000"));
+        load(docs);
+        AuditMdbSearchService service = new AuditMdbSearchService(mongoTemplate);
+
+        for ( String search : new String[] { "owner-42", "login" } ) {
+            // walk the keyset pages, measure the pages at the legacy depths
+            String cursor = null;
+            int page = 0;
+            for ( int depth : new int[] { 0, 10, 100, 1000 } ) {
+                long keyset = 0;
+                while ( page <= depth ) {
+                    long start = System.nanoTime();
+                    AuditMdbSearchService.Result r = service.search(search, false, 0, 0, cursor, 0, PAGE, ( page == 0 ) ? 10_000 : 0);
+                    keyset = (System.nanoTime() - start) / 1_000;
+                    cursor = r.nextCursor;
+                    page++;
+                    if ( cursor == null ) break;
+                }
+                if ( cursor == null && page <= depth ) break;
+                log.info("[audit][bench] {} docs search '{}' page {} : regex + skip + count {} us, prefix + keyset {} us",
+                        docs, search, depth, legacy(search, depth), keyset);
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkExport() throws Exception {
+        long docs = Long.parseLong(System.getProperty("audit.bench.docs", "1000000"));
+        load(docs);
+        AuditConfig auditConfig = mock(AuditConfig.class);
+        when(auditConfig.getAuditExportMaxConcurrent()).thenReturn(1);
+        when(auditConfig.getAuditExportFetchSize()).thenReturn(1000);
+        AuditExportService export = new AuditExportService(auditConfig, new AuditIntegration(), mongoTemplate, null);
+
+        for ( boolean gzip : new boolean[] { false, true } ) {
+            long[] bytes = { 0 };
+            OutputStream sink = new OutputStream() {
+                @Override public void write(int b) { bytes[0]++; }
+                @Override public void write(byte[] b, int off, int len) { bytes[0] += len; }
+            };
+            AuditExportWriter out = new AuditExportWriter(sink, AuditExportWriter.Format.NDJSON, gzip);
+            long start = System.currentTimeMillis();
+            long rows = export.export("bench", AuditExportService.Source.MONGO, null, false, 0, 0, false, out);
+            out.close();
+            long duration = Math.max(1, System.currentTimeMillis() - start);
+            assertEquals(docs, rows);
+            log.info("[audit][bench] export {} docs ndjson gzip={} : {} ms, {} rows/s, {} bytes, heap used {} MB",
+                    docs, gzip, duration, (rows * 1000) / duration, bytes[0],
+                    (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024 * 1024));
+        }
+    }
+
+}
@@ -0,0 +1,290 @@
+package com.disk91.iot.audit;
+
+import com.disk91.audit.config.AuditConfig;
+import com.disk91.audit.integration.AuditIntegration;
+import com.disk91.audit.integration.AuditMessage;
+import com.disk91.audit.mdb.entities.AuditCheckpointMdb;
+import com.disk91.audit.mdb.entities.AuditMdb;
+import com.disk91.audit.mdb.repositories.AuditCheckpointRepositoryMdb;
+import com.disk91.audit.mdb.repositories.AuditRepositoryMdb;
+import com.disk91.audit.services.AuditChainService;
+import com.disk91.audit.services.AuditService;
+import com.disk91.audit.tools.AuditHashChain;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.Now;
+import com.disk91.integration.api.interfaces.IntegrationBatchCallback;
+import com.disk91.integration.api.interfaces.IntegrationCallback;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.services.IntegrationService;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class AuditServiceTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private IntegrationBatchCallback callback;
+    // events completed by the audit writer
+    private final LinkedBlockingQueue<IntegrationQuery> completed = new LinkedBlockingQueue<>();
+
+    private AuditService createService(AuditRepositoryMdb repository, int retries) throws Exception {
+        AuditChainService auditChainService = mock(AuditChainService.class);
+        when(auditChainService.chain(anyList())).thenReturn(null);
+        return createService(repository, retries, auditChainService);
+    }
+
+    private AuditService createService(AuditRepositoryMdb repository, int retries, AuditChainService auditChainService) throws Exception {
+        AuditConfig auditConfig = mock(AuditConfig.class);
+        when(auditConfig.getAuditStoreMedium()).thenReturn("mongo");
+        when(auditConfig.getAuditQueueSize()).thenReturn(1000);
+        when(auditConfig.getAuditBatchMaxSize()).thenReturn(50);
+        when(auditConfig.getAuditBatchMaxWaitMs()).thenReturn(100L);
+        when(auditConfig.getAuditEnqueueWaitMs()).thenReturn(5_000L);
+        when(auditConfig.getAuditCommitRetries()).thenReturn(retries);
+        when(auditConfig.getAuditCommitRetryDelayMs()).thenReturn(10L);
+        IntegrationService integrationService = mock(IntegrationService.class);
+        doAnswer(inv -> {
+            completed.add(inv.getArgument(0));
+            return null;
+        }).when(integrationService).completeDeferred(any(IntegrationQuery.class));
+
+        AuditService service = new AuditService();
+        ReflectionTestUtils.setField(service, "auditConfig", auditConfig);
+        ReflectionTestUtils.setField(service, "integrationService", integrationService);
+        ReflectionTestUtils.setField(service, "auditIntegration", mock(AuditIntegration.class));
+        ReflectionTestUtils.setField(service, "auditRepositoryMongo", repository);
+        ReflectionTestUtils.setField(service, "auditChainService", auditChainService);
+        service.init();
+
+        ArgumentCaptor<IntegrationCallback> registered = ArgumentCaptor.forClass(IntegrationCallback.class);
+        verify(integrationService).registerCallback(eq(ModuleCatalog.Modules.AUDIT), registered.capture());
+        callback = (IntegrationBatchCallback) registered.getValue();
+        return service;
+    }
+
+    private void awaitCompleted(int count) throws InterruptedException {
+        for ( int i = 0 ; i < count ; i++ ) assertNotNull(completed.poll(5, TimeUnit.SECONDS), "event not completed");
+    }
+
+    private IntegrationQuery event(int i) {
+        AuditMessage m = new AuditMessage();
+        m.setService("users");
+        m.setAction("login");
+        m.setActionMs(Now.NowUtcMs());
+        m.setOwner("owner-" + i);
+        m.setLogStr("user {0} logged in");
+        m.setParams(new ArrayList<>());
+        IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.USERS, "test");
+        q.setServiceNameDest(ModuleCatalog.Modules.AUDIT);
+        q.setType(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET);
+        q.setQuery(m);
+        return q;
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        log.info("[audit][test] Running testGroupCommit");
+
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        AuditRepositoryMdb repository = mock(AuditRepositoryMdb.class);
+        when(repository.saveAll(anyList())).thenAnswer(inv -> {
+            batchSizes.add(((List<?>) inv.getArgument(0)).size());
+            return inv.getArgument(0);
+        });
+        AuditService service = createService(repository, 0);
+
+        // concurrent integration workers, the messages are committed together
+        List<IntegrationQuery> events = Collections.synchronizedList(new ArrayList<>());
+        ArrayList<Thread> workers = new ArrayList<>();
+        for ( int w = 0 ; w < 8 ; w++ ) {
+            int base = w * 10;
+            Thread t = new Thread(() -> {
+                for ( int i = 0 ; i < 10 ; i++ ) {
+                    IntegrationQuery q = event(base + i);
+                    events.add(q);
+                    callback.onIntegrationEvent(q);
+                }
+            });
+            workers.add(t);
+            t.start();
+        }
+        for ( Thread t : workers ) t.join(10_000);
+        // done once stored
+        awaitCompleted(80);
+        service.shutdown();
+
+        assertEquals(80, events.size());
+        assertTrue(events.stream().allMatch(q -> q.getState() == IntegrationQuery.QueryState.STATE_DONE));
+        assertEquals(80, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batchSizes.stream().anyMatch(v -> v > 1));
+        assertTrue(batchSizes.stream().allMatch(v -> v <= 50));
+    }
+
+    @Test
+    public void testCommitRetry() throws Exception {
+        log.info("[audit][test] Running testCommitRetry");
+
+        AtomicInteger attempts = new AtomicInteger(0);
+        List<Boolean> newEntries = Collections.synchronizedList(new ArrayList<>());
+        AuditRepositoryMdb repository = mock(AuditRepositoryMdb.class);
+        when(repository.saveAll(anyList())).thenAnswer(inv -> {
+            List<AuditMdb> ams = inv.getArgument(0);
+            newEntries.add(ams.get(0).isNew());
+            if ( attempts.incrementAndGet() <= 2 ) throw new RuntimeException("write failure");
+            return ams;
+        });
+        AuditService service = createService(repository, 3);
+
+        // fails twice then succeeds, the retries are upserts of the same entries
+        IntegrationQuery q = event(0);
+        callback.onIntegrationEvents(List.of(q));
+        awaitCompleted(1);
+        assertEquals(IntegrationQuery.QueryState.STATE_DONE, q.getState());
+        assertEquals(3, attempts.get());
+        assertEquals(List.of(true, false, false), newEntries);
+
+        // retries exhausted, the event is in error
+        attempts.set(-10);
+        IntegrationQuery failed = event(1);
+        callback.onIntegrationEvents(List.of(failed));
+        awaitCompleted(1);
+        assertEquals(IntegrationQuery.QueryState.STATE_ERROR, failed.getState());
+        service.shutdown();
+    }
+
+    @Test
+    public void testWorkerNotBlocked() throws Exception {
+        log.info("[audit][test] Running testWorkerNotBlocked");
+
+        CountDownLatch release = new CountDownLatch(1);
+        AuditRepositoryMdb repository = mock(AuditRepositoryMdb.class);
+        when(repository.saveAll(anyList())).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return inv.getArgument(0);
+        });
+        AuditService service = createService(repository, 0);
+
+        // the callback returns while the storage is blocked, the event completion is deferred
+        IntegrationQuery q = event(0);
+        callback.onIntegrationEvents(List.of(q));
+        assertEquals(IntegrationQuery.QueryState.STATE_PENDING, q.getState());
+        assertTrue(completed.isEmpty());
+
+        release.countDown();
+        awaitCompleted(1);
+        assertEquals(IntegrationQuery.QueryState.STATE_DONE, q.getState());
+        service.shutdown();
+    }
+
+    @Test
+    public void testChainOnWriteFailure() throws Exception {
+        log.info("[audit][test] Running testChainOnWriteFailure");
+
+        // real hash chain, a single segment
+        AuditChainService auditChainService = new AuditChainService();
+        byte [] key = AuditChainService.deriveKey("test-key");
+        ReflectionTestUtils.setField(auditChainService, "key", key);
+        ReflectionTestUtils.setField(auditChainService, "chain", new AuditHashChain(key, "test", 0, Long.MAX_VALUE, Long.MAX_VALUE, 1_000));
+        ReflectionTestUtils.setField(auditChainService, "mongoActive", true);
+        List<AuditHashChain.Checkpoint> checkpoints = Collections.synchronizedList(new ArrayList<>());
+        AuditCheckpointRepositoryMdb checkpointRepository = mock(AuditCheckpointRepositoryMdb.class);
+        when(checkpointRepository.saveAll(anyList())).thenAnswer(inv -> {
+            List<AuditCheckpointMdb> cps = inv.getArgument(0);
+            for ( AuditCheckpointMdb c : cps ) checkpoints.add(c.toCheckpoint());
+            return cps;
+        });
+        ReflectionTestUtils.setField(auditChainService, "auditCheckpointRepositoryMongo", checkpointRepository);
+
+        AtomicBoolean failing = new AtomicBoolean(false);
+        List<AuditMdb> saved = Collections.synchronizedList(new ArrayList<>());
+        AuditRepositoryMdb repository = mock(AuditRepositoryMdb.class);
+        when(repository.saveAll(anyList())).thenAnswer(inv -> {
+            if ( failing.get() ) throw new RuntimeException("sink down");
+            List<AuditMdb> ams = inv.getArgument(0);
+            saved.addAll(ams);
+            return ams;
+        });
+        AuditService service = createService(repository, 0, auditChainService);
+
+        // stored, not stored, stored
+        IntegrationQuery first = event(0);
+        callback.onIntegrationEvents(List.of(first, event(1)));
+        awaitCompleted(2);
+        failing.set(true);
+        IntegrationQuery failed = event(2);
+        callback.onIntegrationEvents(List.of(failed));
+        awaitCompleted(1);
+        assertEquals(IntegrationQuery.QueryState.STATE_ERROR, failed.getState());
+        failing.set(false);
+        callback.onIntegrationEvents(List.of(event(3)));
+        awaitCompleted(1);
+        service.shutdown();
+
+        // the failed batch is not in the chain, the first chain is closed before it and verifies
+        assertEquals(3, saved.size());
+        String chainId = saved.get(0).getChainId();
+        assertEquals(chainId, saved.get(1).getChainId());
+        assertNotEquals(chainId, saved.get(2).getChainId());
+        assertEquals(0, saved.get(2).getChainSeq());
+        List<AuditHashChain.Checkpoint> firstChain = checkpoints.stream().filter(c -> c.chainId().equals(chainId)).toList();
+        assertEquals(1, firstChain.size());
+        assertEquals(1, firstChain.get(0).toSeq());
+        ArrayList<AuditHashChain.Entry> entries = new ArrayList<>();
+        for ( AuditMdb a : saved.subList(0, 2) ) entries.add(new AuditHashChain.Entry(a.getChainSeq(), a, a.getAuditSignature()));
+        AuditHashChain.VerifyResult r = AuditHashChain.verify(key, chainId, null, 1, entries.iterator(), firstChain);
+        assertTrue(r.valid, r.reason);
+        assertTrue(checkpoints.stream().anyMatch(c -> c.chainId().equals(saved.get(2).getChainId()) && c.toSeq() == 0));
+    }
+
+    @Test
+    public void testShutdownDrain() throws Exception {
+        log.info("[audit][test] Running testShutdownDrain");
+
+        List<String> saved = Collections.synchronizedList(new ArrayList<>());
+        AuditRepositoryMdb repository = mock(AuditRepositoryMdb.class);
+        when(repository.saveAll(anyList())).thenAnswer(inv -> {
+            List<AuditMdb> ams = inv.getArgument(0);
+            for ( AuditMdb a : ams ) saved.add(a.getOwner());
+            return ams;
+        });
+        AuditService service = createService(repository, 0);
+
+        // events in flight during the shutdown are stored by the writer or by the caller
+        ArrayList<IntegrationQuery> events = new ArrayList<>();
+        for ( int i = 0 ; i < 20 ; i++ ) events.add(event(i));
+        Thread sender = new Thread(() -> {
+            for ( IntegrationQuery q : events ) callback.onIntegrationEvent(q);
+        });
+        sender.start();
+        service.shutdown();
+        sender.join(10_000);
+
+        // late events, after the writer is stopped
+        IntegrationQuery late = event(20);
+        callback.onIntegrationEvent(late);
+        assertEquals(IntegrationQuery.QueryState.STATE_DONE, late.getState());
+
+        assertTrue(events.stream().allMatch(q -> q.getState() == IntegrationQuery.QueryState.STATE_DONE));
+        assertEquals(21, saved.size());
+        assertTrue(saved.contains("owner-20"));
+        verify(repository, atLeastOnce()).saveAll(any());
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.disk91.iot.capture;
+
+import com.disk91.capture.mdb.entities.CaptureEndpoint;
+import com.disk91.capture.mdb.entities.sub.CaptureEndpointCounter;
+import com.disk91.capture.services.CaptureEndpointCache;
+import com.disk91.capture.services.CaptureEndpointCounters;
+import com.mongodb.bulk.BulkWriteResult;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class CaptureEndpointCountersTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testConcurrentIncrementsFlushedOnce() throws Exception {
+        log.info("[capture][test] Running testConcurrentIncrementsFlushedOnce");
+
+        // sum the $inc sent to the database
+        AtomicLong persisted = new AtomicLong(0);
+        MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class);
+        BulkOperations bulk = Mockito.mock(BulkOperations.class);
+        lenient().when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(CaptureEndpoint.class))).thenReturn(bulk);
+        lenient().when(bulk.updateOne(any(Query.class), any(Update.class))).thenAnswer(i -> {
+            Document inc = (Document) ((Update) i.getArgument(1)).getUpdateObject().get("$inc");
+            for ( Object v : inc.values() ) persisted.addAndGet(((Number) v).longValue());
+            return bulk;
+        });
+        lenient().when(bulk.execute()).thenReturn(Mockito.mock(BulkWriteResult.class));
+
+        CaptureEndpointCounters counters = new CaptureEndpointCounters();
+        ReflectionTestUtils.setField(counters, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(counters, "captureEndpointCache", Mockito.mock(CaptureEndpointCache.class));
+
+        ArrayList<CaptureEndpoint> endpoints = new ArrayList<>();
+        for ( int i = 0 ; i < 4 ; i++ ) {
+            CaptureEndpoint e = new CaptureEndpoint();
+            e.setRef("ep-" + i);
+            endpoints.add(e);
+        }
+
+        // the flush and the pruning run while the capture threads increment
+        int threads = 8;
+        int perThread = 100_000;
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread flusher = new Thread(() -> {
+            while ( running.get() ) counters.flush();
+        });
+        flusher.start();
+        List<Thread> workers = new ArrayList<>();
+        for ( int t = 0 ; t < threads ; t++ ) {
+            final int id = t;
+            Thread w = new Thread(() -> {
+                for ( int i = 0 ; i < perThread ; i++ ) {
+                    counters.increment(endpoints.get((id + i) % endpoints.size()), CaptureEndpointCounter.FRAMES_RECEIVED);
+                }
+            });
+            workers.add(w);
+            w.start();
+        }
+        for ( Thread w : workers ) w.join();
+        running.set(false);
+        flusher.join();
+        counters.flush();
+
+        assertEquals((long) threads * perThread, persisted.get());
+        for ( CaptureEndpoint e : endpoints ) {
+            assertEquals(0, counters.getPending(e.getRef(), CaptureEndpointCounter.FRAMES_RECEIVED));
+        }
+        // nothing pending, all the entries have been removed
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(counters, "deltas")).isEmpty());
+    }
+
+}
@@ -0,0 +1,233 @@
+package com.disk91.iot.capture;
+
+import com.disk91.capture.api.interfaces.CaptureInsertIdsBody;
+import com.disk91.capture.api.interfaces.CaptureInsertIdsResponseItf;
+import com.disk91.capture.api.interfaces.sub.IdsBulkJobState;
+import com.disk91.capture.api.interfaces.sub.IdsBulkLineError;
+import com.disk91.capture.api.interfaces.sub.InsertIDsStatus;
+import com.disk91.capture.config.CaptureConfig;
+import com.disk91.capture.mdb.entities.CaptureEndpoint;
+import com.disk91.capture.mdb.entities.ProtocolIds;
+import com.disk91.capture.mdb.entities.Protocols;
+import com.disk91.capture.mdb.entities.sub.IdStateEnum;
+import com.disk91.capture.mdb.entities.sub.MandatoryField;
+import com.disk91.capture.mdb.entities.sub.ProtocolId;
+import com.disk91.capture.services.CaptureEndpointCache;
+import com.disk91.capture.services.CaptureIdsBulkService;
+import com.disk91.capture.services.CaptureIdsService;
+import com.disk91.capture.services.CaptureProtocolsCache;
+import com.disk91.common.tools.CustomField;
+import com.disk91.users.mdb.entities.User;
+import com.disk91.users.services.UserCommon;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class CaptureIdsBulkTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    protected MongoTemplate mongoTemplate;
+    protected BulkOperations bulk;
+    protected CaptureConfig captureConfig;
+    // IDs inserted by the bulk operations
+    protected final List<ProtocolIds> inserted = new ArrayList<>();
+
+    /**
+     * Ids service for an endpoint owned by alice, the ids have a unique deveui and a label,
+     * deveui "existing" is already in database
+     */
+    protected CaptureIdsService newService() throws Exception {
+        User alice = Mockito.mock(User.class);
+        lenient().when(alice.getLogin()).thenReturn("alice");
+        UserCommon userCommon = Mockito.mock(UserCommon.class);
+        lenient().when(userCommon.getUser("alice")).thenReturn(alice);
+
+        CaptureEndpoint e = new CaptureEndpoint();
+        e.setRef("ep1");
+        e.setOwner("alice");
+        e.setProtocolId("proto");
+        e.setIdTypeName("std");
+        CaptureEndpointCache endpointCache = Mockito.mock(CaptureEndpointCache.class);
+        lenient().when(endpointCache.getCaptureEndpoint("ep1")).thenReturn(e);
+
+        ProtocolId pid = new ProtocolId();
+        pid.setName("std");
+        pid.setMandatoryFields(List.of(
+                new MandatoryField("deveui", true, false, "string", "deveui", "Device EUI"),
+                new MandatoryField("label", false, false, "string", "label", "Label")
+        ));
+        Protocols protocol = Mockito.mock(Protocols.class);
+        lenient().when(protocol.getId()).thenReturn("proto");
+        lenient().when(protocol.getProtocolIds()).thenReturn(List.of(pid));
+        CaptureProtocolsCache protocolsCache = Mockito.mock(CaptureProtocolsCache.class);
+        lenient().when(protocolsCache.getProtocol("proto")).thenReturn(protocol);
+
+        ProtocolIds existing = new ProtocolIds();
+        existing.setCustomConfig(List.of(CustomField.of("deveui", "existing"), CustomField.of("label", "old")));
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        lenient().when(mongoTemplate.find(any(Query.class), eq(ProtocolIds.class))).thenReturn(List.of(existing));
+        bulk = Mockito.mock(BulkOperations.class);
+        lenient().when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(ProtocolIds.class))).thenReturn(bulk);
+        ArrayList<ProtocolIds> pending = new ArrayList<>();
+        lenient().when(bulk.insert(any(Object.class))).thenAnswer(i -> {
+            pending.add(i.getArgument(0));
+            return bulk;
+        });
+        lenient().when(bulk.execute()).thenAnswer(i -> {
+            BulkWriteResult r = Mockito.mock(BulkWriteResult.class);
+            lenient().when(r.getInsertedCount()).thenReturn(pending.size());
+            inserted.addAll(pending);
+            pending.clear();
+            return r;
+        });
+
+        captureConfig = Mockito.mock(CaptureConfig.class);
+        lenient().when(captureConfig.getCaptureProtocolIdsBulkChunkSize()).thenReturn(2);
+        lenient().when(captureConfig.getCaptureProtocolIdsBulkMaxErrors()).thenReturn(100);
+        lenient().when(captureConfig.getCaptureProtocolIdsBulkThreads()).thenReturn(1);
+        lenient().when(captureConfig.getCaptureProtocolIdsBulkMaxJobs()).thenReturn(5);
+
+        CaptureIdsService service = new CaptureIdsService();
+        ReflectionTestUtils.setField(service, "userCommon", userCommon);
+        ReflectionTestUtils.setField(service, "captureEndpointCache", endpointCache);
+        ReflectionTestUtils.setField(service, "captureProtocolsCache", protocolsCache);
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "captureConfig", captureConfig);
+        return service;
+    }
+
+    protected CaptureInsertIdsBody newBody(List<String> ids) {
+        CaptureInsertIdsBody body = new CaptureInsertIdsBody();
+        body.setCaptureId("ep1");
+        body.setInitialState(IdStateEnum.NOT_ASSIGNED);
+        body.setHeaders("deveui;label");
+        body.setIds(ids);
+        return body;
+    }
+
+    @Test
+    public void testDuplicateLines() throws Exception {
+        log.info("[capture][test] Running testDuplicateLines");
+        CaptureIdsService service = newService();
+
+        // line 3 duplicates line 1, line 4 is already in database
+        CaptureInsertIdsResponseItf r = service.insertIds("alice", newBody(List.of(
+                "0001;a", "0002;b", "0001;c", "existing;d", "0005;e"
+        )), null);
+
+        assertEquals(InsertIDsStatus.NOT_UNIQUE, r.getStatus());
+        assertEquals(3, r.getErrorFirstLine());
+        assertEquals(2, r.getErrorCount());
+        assertEquals(0, r.getInserted());
+        verify(bulk, never()).execute();
+    }
+
+    @Test
+    public void testPartialInsertion() throws Exception {
+        log.info("[capture][test] Running testPartialInsertion");
+        CaptureIdsService service = newService();
+
+        // the database refuses the second line of the second chunk
+        BulkWriteResult partial = Mockito.mock(BulkWriteResult.class);
+        lenient().when(partial.getInsertedCount()).thenReturn(1);
+        BulkOperationException refused = Mockito.mock(BulkOperationException.class);
+        lenient().when(refused.getErrors()).thenReturn(List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)));
+        lenient().when(refused.getResult()).thenReturn(partial);
+        when(bulk.execute())
+                .thenAnswer(i -> {
+                    BulkWriteResult r = Mockito.mock(BulkWriteResult.class);
+                    lenient().when(r.getInsertedCount()).thenReturn(2);
+                    return r;
+                })
+                .thenThrow(refused);
+
+        CaptureInsertIdsResponseItf r = service.insertIds("alice", newBody(List.of(
+                "0001;a", "0002;b", "0003;c", "0004;d"
+        )), null);
+
+        assertEquals(InsertIDsStatus.PARTIALLY_INSERTED, r.getStatus());
+        assertEquals(3, r.getInserted());
+        assertEquals(1, r.getErrorCount());
+        assertEquals(4, r.getErrorFirstLine());
+        assertEquals(1, r.getErrors().size());
+        assertEquals(4, r.getErrors().getFirst().getLine());
+        assertEquals(InsertIDsStatus.UNKNOWN_ERROR, r.getErrors().getFirst().getStatus());
+
+        // nothing inserted at all
+        doThrow(new RuntimeException("connection lost")).when(bulk).execute();
+        r = service.insertIds("alice", newBody(List.of("0010;a", "0011;b")), null);
+        assertEquals(InsertIDsStatus.UNKNOWN_ERROR, r.getStatus());
+        assertEquals(0, r.getInserted());
+        assertEquals(2, r.getErrorCount());
+    }
+
+    @Test
+    public void testBulkJob() throws Exception {
+        log.info("[capture][test] Running testBulkJob");
+        CaptureIdsService service = newService();
+        CaptureIdsBulkService bulkService = new CaptureIdsBulkService();
+        ReflectionTestUtils.setField(bulkService, "captureIdsService", service);
+        ReflectionTestUtils.setField(bulkService, "captureConfig", captureConfig);
+        ReflectionTestUtils.setField(bulkService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.invokeMethod(bulkService, "initCaptureIdsBulkService");
+        try {
+            // line 3 is a duplicate, line 5 misses a field, the blank line is ignored
+            String csv = "deveui;label\n0001;a\n0002;b\n0001;c\n0004;d\n0005\n\n0007;g\n";
+            MockMultipartFile file = new MockMultipartFile("file", "ids.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8));
+            CaptureIdsBulkService.BulkJob job = bulkService.startImport("alice", "ep1", IdStateEnum.NOT_ASSIGNED, file);
+
+            long end = System.currentTimeMillis() + 5_000;
+            while ( job.getState() != IdsBulkJobState.DONE && job.getState() != IdsBulkJobState.FAILED && System.currentTimeMillis() < end ) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(IdsBulkJobState.DONE, job.getState());
+            assertEquals(InsertIDsStatus.NOT_UNIQUE, job.getStatus());
+            assertEquals(6, job.getLinesProcessed());
+            assertEquals(4, job.getInserted());
+            assertEquals(4, inserted.size());
+            assertEquals(2, job.getErrorCount());
+            List<IdsBulkLineError> errors = job.getErrors();
+            assertEquals(3, errors.get(0).getLine());
+            assertEquals(InsertIDsStatus.NOT_UNIQUE, errors.get(0).getStatus());
+            assertEquals(5, errors.get(1).getLine());
+            assertEquals(InsertIDsStatus.MISSING_DATA, errors.get(1).getStatus());
+        } finally {
+            bulkService.destroy();
+        }
+    }
+
+}
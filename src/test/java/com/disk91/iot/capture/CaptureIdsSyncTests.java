@@ -0,0 +1,267 @@
+package com.disk91.iot.capture;
+
+import com.disk91.capture.config.CaptureConfig;
+import com.disk91.capture.interfaces.AbstractProtocol;
+import com.disk91.capture.mdb.entities.CaptureEndpoint;
+import com.disk91.capture.mdb.entities.ProtocolIds;
+import com.disk91.capture.mdb.entities.ProtocolIdsSyncCursor;
+import com.disk91.capture.mdb.entities.Protocols;
+import com.disk91.capture.mdb.repositories.ProtocolIdsSyncCursorRepository;
+import com.disk91.capture.services.CaptureEndpointCache;
+import com.disk91.capture.services.CaptureIdsService;
+import com.disk91.capture.services.CaptureIdsSyncService;
+import com.disk91.capture.services.CaptureProtocolsCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class CaptureIdsSyncTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    protected static final List<String> IDS = List.of("id1", "id2", "id3", "id4", "id5");
+
+    // persisted state shared by the service instances (restart)
+    protected final Map<String, ProtocolIdsSyncCursor> cursors = new ConcurrentHashMap<>();
+    protected final List<String> checked = Collections.synchronizedList(new ArrayList<>());
+    protected final List<String> scanned = Collections.synchronizedList(new ArrayList<>());
+
+    protected AbstractProtocol driver;
+    protected CaptureEndpointCache endpointCache;
+    protected SimpleMeterRegistry meterRegistry;
+
+    protected static CaptureEndpoint newEndpoint(String ref) {
+        CaptureEndpoint e = new CaptureEndpoint();
+        e.setRef(ref);
+        e.setProtocolId("proto");
+        return e;
+    }
+
+    /**
+     * Driver reviewing the IDs by 2 without change, failing on the batches containing a faulty ID
+     */
+    protected AbstractProtocol newDriver(String faultyId) throws Exception {
+        AbstractProtocol d = Mockito.mock(AbstractProtocol.class);
+        lenient().when(d.getCheckIdsBatchSize()).thenReturn(2);
+        lenient().when(d.getNetworkServerKey(any())).thenAnswer(i -> ((CaptureEndpoint) i.getArgument(0)).getRef());
+        lenient().when(d.checkIds(any(), anyList())).thenAnswer(i -> {
+            List<ProtocolIds> ids = i.getArgument(1);
+            ArrayList<ProtocolIds> r = new ArrayList<>();
+            for ( ProtocolIds id : ids ) {
+                if ( id.getId().equals(faultyId) ) throw new IllegalStateException("driver parse failure");
+            }
+            for ( ProtocolIds id : ids ) {
+                checked.add(id.getId());
+                r.add(null);
+            }
+            return r;
+        });
+        return d;
+    }
+
+    protected static String lastIdOf(Query q) {
+        Object c = q.getQueryObject().get("id");
+        return ( c instanceof Document d ) ? (String) d.get("$gt") : null;
+    }
+
+    protected CaptureIdsSyncService newSync(int burst) {
+        Protocols protocol = Mockito.mock(Protocols.class);
+        lenient().when(protocol.getProcessingClassName()).thenReturn("test.Driver");
+        CaptureProtocolsCache protocolsCache = Mockito.mock(CaptureProtocolsCache.class);
+        try {
+            lenient().when(protocolsCache.getProtocol("proto")).thenReturn(protocol);
+        } catch (Exception ignored) {}
+        CaptureIdsService idsService = new CaptureIdsService();
+        ReflectionTestUtils.setField(idsService, "captureProtocolsCache", protocolsCache);
+        @SuppressWarnings("unchecked")
+        Map<String, AbstractProtocol> drivers = (Map<String, AbstractProtocol>) ReflectionTestUtils.getField(idsService, "protocolCache");
+        drivers.put("test.Driver", driver);
+
+        // the due IDs, after the cursor when given
+        MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class);
+        lenient().when(mongoTemplate.find(any(Query.class), eq(ProtocolIds.class))).thenAnswer(i -> {
+            Query q = i.getArgument(0);
+            String after = lastIdOf(q);
+            ArrayList<ProtocolIds> r = new ArrayList<>();
+            for ( String id : IDS ) {
+                if ( after != null && id.compareTo(after) <= 0 ) continue;
+                if ( q.getLimit() > 0 && r.size() >= q.getLimit() ) break;
+                ProtocolIds p = new ProtocolIds();
+                p.setId(id);
+                r.add(p);
+            }
+            return r;
+        });
+        lenient().when(mongoTemplate.count(any(Query.class), eq(ProtocolIds.class))).thenAnswer(i -> {
+            String after = lastIdOf(i.getArgument(0));
+            return IDS.stream().filter(id -> after == null || id.compareTo(after) > 0).count();
+        });
+        lenient().when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(ProtocolIds.class))).thenAnswer(i -> {
+            Document in = (Document) ((Query) i.getArgument(0)).getQueryObject().get("id");
+            for ( Object id : (Collection<?>) in.get("$in") ) scanned.add((String) id);
+            return null;
+        });
+
+        ProtocolIdsSyncCursorRepository cursorRepository = Mockito.mock(ProtocolIdsSyncCursorRepository.class);
+        lenient().when(cursorRepository.findById(anyString())).thenAnswer(i -> Optional.ofNullable(cursors.get((String) i.getArgument(0))));
+        lenient().when(cursorRepository.save(any(ProtocolIdsSyncCursor.class))).thenAnswer(i -> {
+            ProtocolIdsSyncCursor c = i.getArgument(0);
+            cursors.put(c.getId(), c);
+            return c;
+        });
+
+        CaptureConfig config = Mockito.mock(CaptureConfig.class);
+        lenient().when(config.getCaptureProtocolIdsSyncThreads()).thenReturn(2);
+        lenient().when(config.getCaptureProtocolIdsSyncBurst()).thenReturn(burst);
+        lenient().when(config.getCaptureProtocolIdsResyncMaxRate()).thenReturn(0f);
+        lenient().when(config.getCaptureProtocolIdsSyncBatchMax()).thenReturn(10);
+        lenient().when(config.getCaptureProtocolIdsRecheckRateDays()).thenReturn(30);
+        lenient().when(config.getCaptureProtocolIdsSyncBackoff()).thenReturn(60);
+
+        meterRegistry = new SimpleMeterRegistry();
+        CaptureIdsSyncService sync = new CaptureIdsSyncService();
+        ReflectionTestUtils.setField(sync, "captureIdsService", idsService);
+        ReflectionTestUtils.setField(sync, "captureEndpointCache", endpointCache);
+        ReflectionTestUtils.setField(sync, "protocolIdsSyncCursorRepository", cursorRepository);
+        ReflectionTestUtils.setField(sync, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(sync, "captureConfig", config);
+        ReflectionTestUtils.setField(sync, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(sync, "serviceEnable", true);
+        return sync;
+    }
+
+    protected Object syncEndpoint(CaptureIdsSyncService sync, CaptureEndpoint e) {
+        Object st = ReflectionTestUtils.invokeMethod(sync, "getStats", e.getRef());
+        ReflectionTestUtils.invokeMethod(sync, "syncEndpoint", e, st);
+        return st;
+    }
+
+    @Test
+    public void testCursorResume() throws Exception {
+        log.info("[capture][test] Running testCursorResume");
+        driver = newDriver(null);
+        CaptureEndpoint e = newEndpoint("ep1");
+
+        // 3 tokens, the pass stops after id3 and the cursor is saved
+        syncEndpoint(newSync(3), e);
+        assertEquals(List.of("id1", "id2", "id3"), checked);
+        assertEquals("id3", cursors.get("ep1").getLastId());
+
+        // restart, the pass continues after the cursor and ends
+        syncEndpoint(newSync(3), e);
+        assertEquals(IDS, checked);
+        assertNull(cursors.get("ep1").getLastId());
+        assertTrue(cursors.get("ep1").getLastPassEndMs() > 0);
+        assertEquals(IDS, scanned);
+    }
+
+    @Test
+    public void testFaultyIdDoesNotBlock() throws Exception {
+        log.info("[capture][test] Running testFaultyIdDoesNotBlock");
+        driver = newDriver("id2");
+        CaptureEndpoint e = newEndpoint("ep1");
+
+        Object st = syncEndpoint(newSync(10), e);
+
+        // the other IDs are reviewed, the faulty one keeps its scan date and the pass completes
+        assertEquals(List.of("id1", "id3", "id4", "id5"), checked);
+        assertEquals(List.of("id1", "id3", "id4", "id5"), scanned);
+        assertNull(cursors.get("ep1").getLastId());
+        assertTrue(cursors.get("ep1").getLastPassEndMs() > 0);
+        assertEquals(1, ((AtomicLong) ReflectionTestUtils.getField(st, "failed")).get());
+        assertEquals(4, ((AtomicLong) ReflectionTestUtils.getField(st, "synced")).get());
+    }
+
+    @Test
+    public void testScheduler() throws Exception {
+        log.info("[capture][test] Running testScheduler");
+        driver = newDriver(null);
+        CaptureEndpoint ep1 = newEndpoint("ep1");
+        CaptureEndpoint ep2 = newEndpoint("ep2");
+        CaptureEndpoint ep3 = newEndpoint("ep3");
+        endpointCache = Mockito.mock(CaptureEndpointCache.class);
+        doAnswer(i -> {
+            Consumer<CaptureEndpoint> c = i.getArgument(0);
+            c.accept(ep1);
+            c.accept(ep2);
+            c.accept(ep3);
+            return null;
+        }).when(endpointCache).forEachCaptureEndpoint(any());
+
+        CaptureIdsSyncService sync = newSync(10);
+        ReflectionTestUtils.invokeMethod(sync, "initCaptureIdsSyncService");
+        try {
+            // ep3 is in backoff
+            Object st3 = ReflectionTestUtils.invokeMethod(sync, "getStats", "ep3");
+            ReflectionTestUtils.setField(st3, "pausedUntilMs", System.currentTimeMillis() + 60_000);
+
+            ReflectionTestUtils.invokeMethod(sync, "scheduleSync");
+
+            verify(driver, timeout(5_000).atLeastOnce()).checkIds(eq(ep1), anyList());
+            verify(driver, timeout(5_000).atLeastOnce()).checkIds(eq(ep2), anyList());
+            long end = System.currentTimeMillis() + 5_000;
+            while ( !((Collection<?>) ReflectionTestUtils.getField(sync, "running")).isEmpty() && System.currentTimeMillis() < end ) {
+                Thread.sleep(10);
+            }
+            assertTrue(((Collection<?>) ReflectionTestUtils.getField(sync, "running")).isEmpty());
+            verify(driver, never()).checkIds(eq(ep3), anyList());
+            assertNull(cursors.get("ep1").getLastId());
+            assertNull(cursors.get("ep2").getLastId());
+            assertNull(cursors.get("ep3"));
+        } finally {
+            sync.destroy();
+        }
+    }
+
+    @Test
+    public void testDiscardRemovesMeters() throws Exception {
+        log.info("[capture][test] Running testDiscardRemovesMeters");
+        driver = newDriver(null);
+        CaptureIdsSyncService sync = newSync(10);
+        syncEndpoint(sync, newEndpoint("ep1"));
+        syncEndpoint(sync, newEndpoint("ep2"));
+        assertEquals(2, meterRegistry.find("capture_ids_sync_synced").gauges().size());
+
+        // the gauges of the deleted endpoint are removed, not the others
+        sync.discard("ep1");
+        assertTrue(meterRegistry.find("capture_ids_sync_pending").tag("endpoint", "ep1").gauges().isEmpty());
+        assertTrue(meterRegistry.find("capture_ids_sync_failed").tag("endpoint", "ep1").gauges().isEmpty());
+        assertEquals(1, meterRegistry.find("capture_ids_sync_synced").gauges().size());
+        assertNotNull(meterRegistry.find("capture_ids_sync_synced").tag("endpoint", "ep2").gauge());
+    }
+
+}
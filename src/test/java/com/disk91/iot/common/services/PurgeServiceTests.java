@@ -0,0 +1,171 @@
+package com.disk91.iot.common.services;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.pdb.entities.Param;
+import com.disk91.common.pdb.repositories.ParamRepository;
+import com.disk91.common.services.MongoMutexService;
+import com.disk91.common.services.PurgeService;
+import com.disk91.common.services.PurgeTarget;
+import com.disk91.common.tools.Now;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class PurgeServiceTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    // In memory store, entries are time keys, sorted
+    protected static class FakeTarget implements PurgeTarget {
+        protected final List<Long> entries = new ArrayList<>();
+        protected final List<Long> requestedFrom = new ArrayList<>();
+        protected int failAfter = Integer.MAX_VALUE;
+        protected final long cutoffMs;
+
+        protected FakeTarget(long cutoffMs) {
+            this.cutoffMs = cutoffMs;
+        }
+
+        public String getPurgeName() { return "fake"; }
+        public long getPurgeCutoffMs(long nowMs) { return cutoffMs; }
+
+        public PurgeBatch purgeBatch(long fromMs, long cutoffMs, int max) {
+            if ( requestedFrom.size() >= failAfter ) throw new RuntimeException("store down");
+            requestedFrom.add(fromMs);
+            int deleted = 0;
+            long last = fromMs;
+            while ( deleted < max && !entries.isEmpty() && entries.getFirst() < cutoffMs ) {
+                last = entries.removeFirst();
+                deleted++;
+            }
+            return new PurgeBatch(deleted, last);
+        }
+
+        public long countPurgeBacklog(long fromMs, long cutoffMs) {
+            return entries.stream().filter(e -> e >= fromMs && e < cutoffMs).count();
+        }
+    }
+
+    protected final Map<String, Param> params = new HashMap<>();
+
+    protected PurgeService newService() {
+        CommonConfig config = Mockito.mock(CommonConfig.class);
+        lenient().when(config.getPurgeBatchSize()).thenReturn(10);
+        lenient().when(config.getPurgeRowsPerSecond()).thenReturn(1_000_000);
+        lenient().when(config.getPurgeMaxRunMs()).thenReturn(10_000L);
+        lenient().when(config.getInstanceId()).thenReturn("test");
+        ParamRepository repo = Mockito.mock(ParamRepository.class);
+        lenient().when(repo.findByParamKey(anyString())).thenAnswer(i -> {
+            Param p = params.get((String) i.getArgument(0));
+            return ( p == null ) ? null : p.clone();
+        });
+        lenient().when(repo.save(any())).thenAnswer(i -> {
+            Param p = i.getArgument(0);
+            params.put(p.getParamKey(), p.clone());
+            return p;
+        });
+        MongoMutexService mutex = Mockito.mock(MongoMutexService.class);
+        lenient().when(mutex.P(anyString(), anyString(), Mockito.anyLong())).thenReturn(true);
+        return new PurgeService(config, repo, mutex);
+    }
+
+    @Test
+    public void testWindow() {
+        log.info("[common][test] Running testWindow");
+        long h = 3_600_000L;
+        assertTrue(PurgeService.isInWindow(5 * h, 0, 0));
+        assertTrue(PurgeService.isInWindow(2 * h, 1, 6));
+        assertFalse(PurgeService.isInWindow(6 * h, 1, 6));
+        assertTrue(PurgeService.isInWindow(23 * h, 22, 4));
+        assertTrue(PurgeService.isInWindow(24 * h + 3 * h, 22, 4));
+        assertFalse(PurgeService.isInWindow(12 * h, 22, 4));
+    }
+
+    @Test
+    public void testPurgeByBatch() {
+        log.info("[common][test] Running testPurgeByBatch");
+        FakeTarget t = new FakeTarget(1_000);
+        for ( long i = 0; i < 1_200; i += 10 ) t.entries.add(i);
+
+        PurgeService s = newService();
+        s.register(t);
+        s.runPurge(Now.NowUtcMs() + 10_000);
+
+        // 100 expired entries, batches of 10, the last one finds nothing
+        assertEquals(20, t.entries.size());
+        assertEquals(1_000, t.entries.getFirst());
+        assertEquals(11, t.requestedFrom.size());
+        // completed, the next run starts from the beginning
+        assertEquals(0, params.get("common.purge.position.fake").getLongValue());
+    }
+
+    @Test
+    public void testResume() {
+        log.info("[common][test] Running testResume");
+        FakeTarget t = new FakeTarget(1_000);
+        for ( long i = 0; i < 1_200; i += 10 ) t.entries.add(i);
+        t.failAfter = 3;
+
+        PurgeService s = newService();
+        s.register(t);
+        s.runPurge(Now.NowUtcMs() + 10_000);
+        assertEquals(90, t.entries.size());
+        assertEquals(290, params.get("common.purge.position.fake").getLongValue());
+
+        // restart, the purge continues from the saved position
+        t.failAfter = Integer.MAX_VALUE;
+        t.requestedFrom.clear();
+        s = newService();
+        s.register(t);
+        s.runPurge(Now.NowUtcMs() + 10_000);
+        assertEquals(290, t.requestedFrom.getFirst());
+        assertEquals(20, t.entries.size());
+    }
+
+    @Test
+    public void testPositionMovedByOtherInstance() {
+        log.info("[common][test] Running testPositionMovedByOtherInstance");
+        FakeTarget t = new FakeTarget(1_000);
+        for ( long i = 0; i < 1_200; i += 10 ) t.entries.add(i);
+        t.failAfter = 3;
+
+        PurgeService s = newService();
+        s.register(t);
+        s.runPurge(Now.NowUtcMs() + 10_000);
+        assertEquals(290, params.get("common.purge.position.fake").getLongValue());
+
+        // another instance held the mutex in between and moved the position
+        Param p = params.get("common.purge.position.fake").clone();
+        p.setLongValue(500);
+        params.put(p.getParamKey(), p);
+        t.failAfter = Integer.MAX_VALUE;
+        t.requestedFrom.clear();
+        s.runPurge(Now.NowUtcMs() + 10_000);
+        assertEquals(500, t.requestedFrom.getFirst());
+    }
+
+}
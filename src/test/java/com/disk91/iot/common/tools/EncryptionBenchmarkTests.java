@@ -0,0 +1,97 @@
+package com.disk91.iot.common.tools;
+
+import com.disk91.common.tools.EncryptionHelper;
+import com.disk91.common.tools.HexCodingTools;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Micro benchmark of the EncryptionHelper, ops/s and allocated bytes per op for the initial implementation
+ * (copied below as reference) and the current one. Not run by default, use -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class EncryptionBenchmarkTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final String KEY = "0123456789abcdef0123456789abcdef";
+    private static final String IV = "90f7adcf874990333cf159c1857fe539";
+    private static final String VALUE = "{\"temperature\":21.5,\"humidity\":48,\"battery\":3.61}";
+    private static final int WARMUP = 50_000;
+    private static final int ITERATIONS = 200_000;
+
+    private interface Op {
+        String run() throws Exception;
+    }
+
+    // Initial implementation, reference for the comparison
+    private static String legacyEncrypt(String tobeEncrypted, String iv, String encKey) throws Exception {
+        byte [] byteToEncrytpLen = tobeEncrypted.getBytes(StandardCharsets.UTF_8);
+        int pad = (16 - (byteToEncrytpLen.length & 0x0F) );
+        if ( pad == 16 ) pad = 0;
+        pad += byteToEncrytpLen.length;
+        byte [] byteToEncrytp = new byte[pad];
+        for ( int i = 0 ; i < byteToEncrytpLen.length ; i++ ) byteToEncrytp[i] = byteToEncrytpLen[i];
+        for ( int i = byteToEncrytpLen.length ; i < pad ; i ++ ) byteToEncrytp[i] = 0;
+        byte[] _iv = HexCodingTools.getBytesFromInt(HexCodingTools.getIntArrayFromHexString(iv));
+        SecretKeySpec skeySpec = new SecretKeySpec(HexCodingTools.getBytesFromInt(HexCodingTools.getIntArrayFromHexString(encKey)), "AES");
+        Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, skeySpec, new IvParameterSpec(_iv));
+        return Base64.getEncoder().encodeToString(cipher.doFinal(byteToEncrytp));
+    }
+
+    private static String legacyDecrypt(String tobeDecrypted, String iv, String encKey) throws Exception {
+        byte[] _iv = HexCodingTools.getBytesFromInt(HexCodingTools.getIntArrayFromHexString(iv));
+        SecretKeySpec skeySpec = new SecretKeySpec(HexCodingTools.getBytesFromInt(HexCodingTools.getIntArrayFromHexString(encKey)), "AES");
+        Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, skeySpec, new IvParameterSpec(_iv));
+        byte [] decryptedBytes = cipher.doFinal(Base64.getDecoder().decode(tobeDecrypted));
+        int pad = 0;
+        for ( int i = decryptedBytes.length ; i > 0 ; i-- ) {
+            if ( decryptedBytes[i-1] == 0 ) pad++;
+            else break;
+        }
+        byte [] unpadded = new byte[decryptedBytes.length-pad];
+        for ( int i = 0 ; i < decryptedBytes.length-pad ; i++ ) unpadded[i] = decryptedBytes[i];
+        return new String (unpadded, StandardCharsets.UTF_8).trim();
+    }
+
+    private void measure(String name, Op op) throws Exception {
+        for ( int i = 0 ; i < WARMUP ; i++ ) op.run();
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().threadId();
+        long alloc = mx.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        for ( int i = 0 ; i < ITERATIONS ; i++ ) op.run();
+        long duration = System.nanoTime() - start;
+        alloc = mx.getThreadAllocatedBytes(tid) - alloc;
+        log.info("[common][bench] {} : {} ops/s, {} bytes/op",
+                name,
+                (long)(ITERATIONS / (duration / 1_000_000_000.0)),
+                alloc / ITERATIONS
+        );
+    }
+
+    @Test
+    public void benchmarkEncryption() throws Exception {
+        String cbc = EncryptionHelper.encrypt(VALUE, IV, KEY);
+        String gcm = EncryptionHelper.encryptAuthenticated(VALUE, KEY);
+
+        measure("legacy cbc encrypt", () -> legacyEncrypt(VALUE, IV, KEY));
+        measure("cached cbc encrypt", () -> EncryptionHelper.encrypt(VALUE, IV, KEY));
+        measure("gcm encrypt       ", () -> EncryptionHelper.encryptAuthenticated(VALUE, KEY));
+        measure("legacy cbc decrypt", () -> legacyDecrypt(cbc, IV, KEY));
+        measure("cached cbc decrypt", () -> EncryptionHelper.decrypt(cbc, IV, KEY));
+        measure("gcm decrypt       ", () -> EncryptionHelper.decrypt(gcm, IV, KEY));
+    }
+
+}
@@ -2,6 +2,8 @@ package com.disk91.iot.common.tools;
 
 import com.disk91.common.config.CommonConfig;
 import com.disk91.common.services.EncryptionService;
+import com.disk91.common.tools.EncryptionHelper;
+import com.disk91.common.tools.exceptions.ITParseException;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
@@ -13,7 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.PropertySource;
 
-import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.BDDMockito.given;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,4 +40,32 @@ public class EncryptionTests {
         });
     }
 
+    private static final String TEST_KEY = "0123456789abcdef0123456789abcdef";
+    private static final String TEST_IV = "90f7adcf874990333cf159c1857fe539";
+
+    @Test
+    public void testCbcCompatibility() throws ITParseException {
+        // values encrypted with the initial implementation must stay readable and identical
+        assertEquals("GFowK7iv7tXiAyfRep23QQ==", EncryptionHelper.encrypt("hello world 123", TEST_IV, TEST_KEY));
+        assertEquals("EW0jjWr7CQrKcB2W11QYekjtxHYMbvWT5GHVguYP84k=", EncryptionHelper.encrypt("tower control is a great name", TEST_IV, TEST_KEY));
+        assertEquals("hello world 123", EncryptionHelper.decrypt("GFowK7iv7tXiAyfRep23QQ==", TEST_IV, TEST_KEY));
+        assertEquals("", EncryptionHelper.decrypt(EncryptionHelper.encrypt("", TEST_IV, TEST_KEY), TEST_IV, TEST_KEY));
+    }
+
+    @Test
+    public void testAuthenticated() throws ITParseException {
+        String e1 = EncryptionHelper.encryptAuthenticated("hello world 123", TEST_KEY);
+        String e2 = EncryptionHelper.encryptAuthenticated("hello world 123", TEST_KEY);
+        assertTrue(e1.startsWith(EncryptionHelper.GCM_PREFIX));
+        assertNotEquals(e1, e2);                                // random nonce
+        assertEquals("hello world 123", EncryptionHelper.decrypt(e1, TEST_IV, TEST_KEY));
+        assertEquals("hello world 123", EncryptionHelper.decryptAuthenticated(e2, TEST_KEY));
+
+        // modified content is detected
+        char[] c = e1.toCharArray();
+        int i = EncryptionHelper.GCM_PREFIX.length() + 20;
+        c[i] = ( c[i] == 'A' ) ? 'B' : 'A';
+        assertThrows(ITParseException.class, () -> EncryptionHelper.decrypt(new String(c), TEST_IV, TEST_KEY));
+    }
+
 }
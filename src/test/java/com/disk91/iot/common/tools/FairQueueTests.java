@@ -0,0 +1,107 @@
+package com.disk91.iot.common.tools;
+
+import com.disk91.common.tools.FairQueue;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class FairQueueTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testRoundRobin() {
+        log.info("[common][test] Running testRoundRobin");
+
+        FairQueue<String> q = new FairQueue<>(t -> 1, 100);
+        for ( int i = 0 ; i < 10 ; i++ ) assertTrue(q.offer("noisy", "n" + i));
+        assertTrue(q.offer("quiet", "q0"));
+        assertEquals(11, q.size());
+        assertEquals(2, q.activeTenants());
+
+        // the quiet tenant is served right after the first noisy element
+        assertEquals("n0", q.poll());
+        assertEquals("q0", q.poll());
+        assertEquals("n1", q.poll());
+        assertEquals(1, q.activeTenants());
+        assertEquals(8, q.size("noisy"));
+        assertEquals(0, q.size("quiet"));
+    }
+
+    @Test
+    public void testWeightsAndCap() {
+        log.info("[common][test] Running testWeightsAndCap");
+
+        FairQueue<String> q = new FairQueue<>(t -> t.equals("big") ? 3 : 1, 5);
+        for ( int i = 0 ; i < 5 ; i++ ) assertTrue(q.offer("big", "b" + i));
+        assertFalse(q.offer("big", "b5"));      // tenant cap
+        for ( int i = 0 ; i < 3 ; i++ ) assertTrue(q.offer("small", "s" + i));
+
+        // big gets 3 elements per round, small 1
+        assertEquals("b0", q.poll());
+        assertEquals("b1", q.poll());
+        assertEquals("b2", q.poll());
+        assertEquals("s0", q.poll());
+        assertEquals("b3", q.poll());
+        assertEquals("b4", q.poll());
+        assertEquals("s1", q.poll());
+        assertEquals("s2", q.poll());
+        assertNull(q.poll());
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testGlobalCapacity() {
+        log.info("[common][test] Running testGlobalCapacity");
+
+        FairQueue<String> q = new FairQueue<>(t -> 1, 100, 6);
+        ArrayList<String> evicted = new ArrayList<>();
+        q.setEvictionListener((t, e) -> evicted.add(t + ":" + e));
+
+        for ( int i = 0 ; i < 6 ; i++ ) assertTrue(q.offer("noisy", "n" + i));
+        assertFalse(q.offer("noisy", "n6"));     // full, noisy is the largest tenant
+        assertEquals(6, q.size());
+
+        // quiet tenants take the place of the newest noisy elements
+        assertTrue(q.offer("quiet1", "a0"));
+        assertTrue(q.offer("quiet2", "b0"));
+        assertTrue(q.offer("quiet1", "a1"));
+        assertEquals(List.of("noisy:n5", "noisy:n4", "noisy:n3"), evicted);
+        assertEquals(6, q.size());
+        assertEquals(3, q.size("noisy"));
+        assertEquals(3, q.maxTenantSize());
+
+        // no eviction in favor of a tenant that would become as large as the largest one
+        assertFalse(q.offer("quiet1", "a2"));
+        assertTrue(q.offer("quiet3", "c0"));
+        assertEquals("noisy:n2", evicted.get(evicted.size() - 1));
+        assertEquals(6, q.size());
+
+        // tenants refused on a full queue leave no sub-queue behind
+        FairQueue<String> r = new FairQueue<>(t -> 1, 100, 1);
+        assertTrue(r.offer("a", "a0"));
+        assertFalse(r.offer("b", "b0"));
+        assertEquals(0, r.size("b"));
+        assertEquals(1, r.activeTenants());
+        assertEquals("a0", r.poll());
+        assertNull(r.poll());
+    }
+}
@@ -0,0 +1,84 @@
+package com.disk91.iot.common.tools;
+
+import com.disk91.common.tools.RingBuffer;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class RingBufferTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testBounded() {
+        log.info("[common][test] Running testBounded");
+
+        RingBuffer<Integer> r = new RingBuffer<>(3);
+        assertEquals(4, r.capacity());
+        for ( int i = 0 ; i < 4 ; i++ ) assertTrue(r.offer(i));
+        assertFalse(r.offer(4));
+        assertEquals(4, r.size());
+
+        // FIFO order and slot reuse after a full round
+        assertEquals(0, r.poll());
+        assertTrue(r.offer(4));
+        for ( int i = 1 ; i < 5 ; i++ ) assertEquals(i, r.poll());
+        assertNull(r.poll());
+        assertEquals(0, r.size());
+    }
+
+    @Test
+    public void testConcurrentDelivery() throws InterruptedException {
+        log.info("[common][test] Running testConcurrentDelivery");
+
+        RingBuffer<Integer> r = new RingBuffer<>(1024);
+        int producers = 4, consumers = 4, perProducer = 50_000;
+        ConcurrentHashMap<Integer, Boolean> seen = new ConcurrentHashMap<>();
+        AtomicInteger duplicates = new AtomicInteger(0);
+
+        Thread [] threads = new Thread[producers + consumers];
+        for ( int c = 0 ; c < consumers ; c++ ) {
+            threads[c] = new Thread(() -> {
+                while ( true ) {
+                    Integer v = r.poll(200, TimeUnit.MILLISECONDS);
+                    if ( v == null ) return;
+                    if ( seen.put(v, true) != null ) duplicates.incrementAndGet();
+                }
+            });
+        }
+        for ( int p = 0 ; p < producers ; p++ ) {
+            final int base = p * perProducer;
+            threads[consumers + p] = new Thread(() -> {
+                for ( int i = 0 ; i < perProducer ; i++ ) {
+                    while ( !r.offer(base + i) ) Thread.onSpinWait();
+                }
+            });
+        }
+        for ( Thread t : threads ) t.start();
+        for ( Thread t : threads ) t.join(30_000);
+
+        // every element is delivered exactly once
+        assertEquals(0, duplicates.get());
+        assertEquals(producers * perProducer, seen.size());
+    }
+
+}
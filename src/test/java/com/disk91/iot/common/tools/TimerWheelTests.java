@@ -0,0 +1,54 @@
+package com.disk91.iot.common.tools;
+
+import com.disk91.common.tools.TimerWheel;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class TimerWheelTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testExpiration() {
+        log.info("[common][test] Running testExpiration");
+
+        // 8 slots of 100ms, a turn is 800ms
+        TimerWheel<Integer> w = new TimerWheel<>(8, 100, 10_000);
+        w.schedule(1, 10_250);
+        w.schedule(2, 10_500);
+        w.schedule(3, 12_050);          // beyond one turn
+
+        List<Integer> expired = new ArrayList<>();
+        w.advance(10_200, expired::add);
+        assertTrue(expired.isEmpty());
+        w.advance(10_300, expired::add);
+        assertEquals(List.of(1), expired);
+        w.advance(11_000, expired::add);
+        assertEquals(List.of(1, 2), expired);
+        w.advance(12_000, expired::add);
+        assertEquals(List.of(1, 2), expired);
+        // long pause, more than one turn elapsed
+        w.advance(15_000, expired::add);
+        assertEquals(List.of(1, 2, 3), expired);
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.disk91.iot.common.tools;
+
+import com.disk91.common.tools.TokenBucket;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class TokenBucketTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testBurstAndRelease() {
+        log.info("[common][test] Running testBurstAndRelease");
+
+        // no refill, only the burst is available
+        TokenBucket b = new TokenBucket(5, 0);
+        assertEquals(3, b.tryAcquireUpTo(3));
+        assertEquals(2, b.tryAcquireUpTo(3));
+        assertEquals(0, b.tryAcquireUpTo(1));
+
+        // unused tokens are given back, up to the capacity
+        b.release(2);
+        assertEquals(2.0, b.getAvailable(), 0.001);
+        b.release(10);
+        assertEquals(5.0, b.getAvailable(), 0.001);
+        b.release(-1);
+        assertEquals(5.0, b.getAvailable(), 0.001);
+    }
+
+    @Test
+    public void testRefill() throws InterruptedException {
+        log.info("[common][test] Running testRefill");
+
+        // one token per 10ms, capacity 2
+        TokenBucket b = new TokenBucket(2, 0.1);
+        assertEquals(2, b.tryAcquireUpTo(10));
+        assertEquals(0, b.tryAcquireUpTo(10));
+        Thread.sleep(60);
+        int obtained = b.tryAcquireUpTo(10);
+        assertTrue(obtained >= 1 && obtained <= 2, "obtained " + obtained);
+
+        // never above the capacity whatever the idle time
+        Thread.sleep(100);
+        assertEquals(2, b.tryAcquireUpTo(10));
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.disk91.iot.groups;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.groups.config.GroupsConfig;
+import com.disk91.groups.integration.GroupActions;
+import com.disk91.groups.mdb.entities.Group;
+import com.disk91.groups.services.GroupsShortIdCache;
+import com.disk91.integration.api.interfaces.IntegrationInvalidation;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.services.IntegrationInvalidationService;
+import com.disk91.integration.services.IntegrationService;
+import com.disk91.users.services.UserAuthorizationCache;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class GroupsShortIdCacheTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private GroupsShortIdCache createCache(IntegrationService integrationService, boolean legacy) {
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.getIntegrationInvalidationWindowMs()).thenReturn(50L);
+        when(integrationConfig.getIntegrationInvalidationMaxKeys()).thenReturn(500);
+        when(integrationConfig.isIntegrationInvalidationLegacy()).thenReturn(legacy);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("test");
+        GroupsConfig groupsConfig = mock(GroupsConfig.class);
+        when(groupsConfig.getGroupsIntracomMedium()).thenReturn("memory");
+
+        GroupsShortIdCache cache = new GroupsShortIdCache();
+        ReflectionTestUtils.setField(cache, "groupsConfig", groupsConfig);
+        ReflectionTestUtils.setField(cache, "commonConfig", commonConfig);
+        ReflectionTestUtils.setField(cache, "userAuthorizationCache", mock(UserAuthorizationCache.class));
+        ReflectionTestUtils.setField(cache, "integrationService", integrationService);
+        ReflectionTestUtils.setField(cache, "integrationInvalidationService",
+                new IntegrationInvalidationService(integrationService, integrationConfig, commonConfig));
+        return cache;
+    }
+
+    private Group createGroup(String shortId, String ... referring) {
+        Group g = new Group();
+        g.init(shortId, "Group " + shortId, shortId, "en", true);
+        for ( String r : referring ) g.getReferringGroups().add(r);
+        return g;
+    }
+
+    @Test
+    public void testGroupFlushCoalescing() throws Exception {
+        log.info("[groups][test] Running testGroupFlushCoalescing");
+
+        IntegrationService integrationService = mock(IntegrationService.class);
+        GroupsShortIdCache cache = createCache(integrationService, false);
+        for ( int i = 0 ; i < 20 ; i++ ) {
+            ReflectionTestUtils.invokeMethod(cache, "flushGroup", createGroup("G" + i, "Root", "A"));
+        }
+        verify(integrationService, never()).processQuery(any());
+        IntegrationInvalidationService invalidation = (IntegrationInvalidationService) ReflectionTestUtils.getField(cache, "integrationInvalidationService");
+        assertNotNull(invalidation);
+        invalidation.flush();
+
+        // one message with the deduplicated hierarchy keys
+        ArgumentCaptor<IntegrationQuery> sent = ArgumentCaptor.forClass(IntegrationQuery.class);
+        verify(integrationService, times(1)).processQuery(sent.capture());
+        IntegrationQuery q = sent.getValue();
+        assertEquals(ModuleCatalog.Modules.GROUPS, q.getServiceNameDest());
+        assertEquals(GroupActions.GROUPS_ACTION_FLUSH_CACHE_SHORTIDS.ordinal(), q.getAction());
+        Set<String> keys = new HashSet<>(IntegrationInvalidation.keysOf(q));
+        assertEquals(22, keys.size());
+        assertTrue(keys.contains("Root") && keys.contains("A") && keys.contains("G19"));
+    }
+
+    @Test
+    public void testGroupFlushLegacy() throws Exception {
+        log.info("[groups][test] Running testGroupFlushLegacy");
+
+        IntegrationService integrationService = mock(IntegrationService.class);
+        GroupsShortIdCache cache = createCache(integrationService, true);
+        Group g = createGroup("G0", "Root");
+        ReflectionTestUtils.invokeMethod(cache, "flushGroup", g);
+
+        // older versions expect the group object
+        ArgumentCaptor<IntegrationQuery> sent = ArgumentCaptor.forClass(IntegrationQuery.class);
+        verify(integrationService, times(1)).processQuery(sent.capture());
+        assertEquals(GroupActions.GROUPS_ACTION_FLUSH_CACHE_SHORTID.ordinal(), sent.getValue().getAction());
+        assertSame(g, sent.getValue().getQuery());
+    }
+
+}
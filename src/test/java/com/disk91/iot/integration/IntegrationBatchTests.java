@@ -0,0 +1,133 @@
+package com.disk91.iot.integration;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.Now;
+import com.disk91.integration.api.interfaces.IntegrationBatchCallback;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.services.IntegrationService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IntegrationBatchTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testBatchDelivery() throws Exception {
+        log.info("[integration][test] Running testBatchDelivery");
+
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(1);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn("ring");
+        when(integrationConfig.getIntegrationMemoryBusSize()).thenReturn(1024);
+        when(integrationConfig.getIntegrationModuleOverflowDefault()).thenReturn("reject");
+        when(integrationConfig.getIntegrationBatchMaxSize()).thenReturn(10);
+        when(integrationConfig.getIntegrationBatchMaxWaitMs()).thenReturn(200L);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("test");
+
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        IntegrationService service = new IntegrationService(integrationConfig, commonConfig);
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, new IntegrationBatchCallback() {
+            @Override
+            public void onIntegrationEvents(List<IntegrationQuery> queries) {
+                batchSizes.add(queries.size());
+                for ( IntegrationQuery q : queries ) {
+                    // per event result
+                    if ( (Integer) q.getQuery() % 5 == 0 ) q.setState(IntegrationQuery.QueryState.STATE_ERROR);
+                }
+            }
+
+            @Override
+            public void onIntegrationEvent(IntegrationQuery query) {
+                batchSizes.add(1);
+            }
+        });
+        service.startRunners();
+
+        ArrayList<IntegrationQuery> sent = new ArrayList<>();
+        for ( int i = 1 ; i <= 25 ; i++ ) {
+            IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CAPTURE, "test");
+            q.setServiceNameDest(ModuleCatalog.Modules.AUDIT);
+            q.setType(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET);
+            q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MEMORY);
+            q.setQuery(i);
+            service.processQuery(q);
+            sent.add(q);
+        }
+        Now.sleep(1_500);
+        service.shutdown();
+
+        assertEquals(25, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batchSizes.stream().allMatch(v -> v <= 10));
+        assertTrue(batchSizes.size() < 25);
+        assertEquals(5, sent.stream().filter(q -> q.getState() == IntegrationQuery.QueryState.STATE_ERROR).count());
+        assertEquals(20, sent.stream().filter(q -> q.getState() == IntegrationQuery.QueryState.STATE_DONE).count());
+    }
+
+    @Test
+    public void testStoreBatchDelivery() throws Exception {
+        log.info("[integration][test] Running testStoreBatchDelivery");
+
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(1);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn("store");
+        when(integrationConfig.getIntegrationStoreExpirationMs()).thenReturn(300_000L);
+        when(integrationConfig.getIntegrationBatchMaxSize()).thenReturn(10);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("test");
+
+        List<String> deliveries = Collections.synchronizedList(new ArrayList<>());
+        IntegrationService service = new IntegrationService(integrationConfig, commonConfig);
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, new IntegrationBatchCallback() {
+            @Override
+            public void onIntegrationEvents(List<IntegrationQuery> queries) {
+                deliveries.add("audit:" + queries.size());
+                for ( IntegrationQuery q : queries ) {
+                    if ( (Integer) q.getQuery() % 5 == 0 ) q.setState(IntegrationQuery.QueryState.STATE_ERROR);
+                }
+            }
+
+            @Override
+            public void onIntegrationEvent(IntegrationQuery query) {
+                deliveries.add("audit:single");
+            }
+        });
+        service.registerCallback(ModuleCatalog.Modules.USERS, q -> deliveries.add("users"));
+
+        // queued before the workers start: 15 audit events, a users event, 5 audit events
+        ArrayList<IntegrationQuery> sent = new ArrayList<>();
+        for ( int i = 1 ; i <= 21 ; i++ ) {
+            IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CAPTURE, "test");
+            q.setServiceNameDest(( i == 16 ) ? ModuleCatalog.Modules.USERS : ModuleCatalog.Modules.AUDIT);
+            q.setType(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET);
+            q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MEMORY);
+            q.setQuery(i);
+            service.processQuery(q);
+            sent.add(q);
+        }
+        service.startRunners();
+        long deadline = Now.NowUtcMs() + 5_000;
+        while ( deliveries.size() < 4 && Now.NowUtcMs() < deadline ) Now.sleep(10);
+        service.shutdown();
+
+        // batches limited to the max size, the order between the modules is kept
+        assertEquals(List.of("audit:10", "audit:5", "users", "audit:5"), deliveries);
+        assertEquals(4, sent.stream().filter(q -> q.getState() == IntegrationQuery.QueryState.STATE_ERROR).count());
+        assertEquals(17, sent.stream().filter(q -> q.getState() == IntegrationQuery.QueryState.STATE_DONE).count());
+    }
+
+}
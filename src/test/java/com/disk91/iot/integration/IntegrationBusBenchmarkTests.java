@@ -0,0 +1,224 @@
+package com.disk91.iot.integration;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.Now;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.services.IntegrationService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Throughput (events/s) and p99 delivery latency of the in-memory integration transports, from
+ * processQuery to the callback, with 1 to 16 workers. A second test measures the latency of a fast module
+ * lane while another module has a slow consumer, a third one the overhead of a SYNC query compared to
+ * a direct method call and a last one the cost of the local journal. Not run by default, use -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class IntegrationBusBenchmarkTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final int EVENTS = 200_000;
+    private static final int PRODUCERS = 4;
+
+    private void run(String bus, int workers) throws Exception {
+        run(bus, workers, null);
+    }
+
+    private void run(String bus, int workers, String journal) throws Exception {
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(workers);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn(bus);
+        when(integrationConfig.getIntegrationMemoryBusSize()).thenReturn(EVENTS);
+        when(integrationConfig.getIntegrationModuleOverflowDefault()).thenReturn("reject");
+        when(integrationConfig.isIntegrationJournalEnabled()).thenReturn(journal != null);
+        when(integrationConfig.getIntegrationJournalPath()).thenReturn(journal);
+        when(integrationConfig.getIntegrationJournalSegmentSizeMb()).thenReturn(16);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("bench");
+
+        IntegrationService service = new IntegrationService(integrationConfig, commonConfig);
+        long [] latencies = new long[EVENTS];
+        AtomicInteger received = new AtomicInteger(0);
+        CountDownLatch done = new CountDownLatch(EVENTS);
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, q -> {
+            int i = received.getAndIncrement();
+            if ( i < EVENTS ) latencies[i] = Now.NanoTime() - q.getQuery_ts();
+            done.countDown();
+        });
+        service.startRunners();
+
+        long start = Now.NanoTime();
+        Thread [] producers = new Thread[PRODUCERS];
+        for ( int p = 0 ; p < PRODUCERS ; p++ ) {
+            producers[p] = new Thread(() -> {
+                for ( int i = 0 ; i < EVENTS / PRODUCERS ; i++ ) {
+                    IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CUSTOM, "remote");
+                    q.setServiceNameDest(ModuleCatalog.Modules.AUDIT);
+                    q.setType(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET);
+                    q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MEMORY);
+                    try {
+                        service.processQuery(q);
+                    } catch (Exception x) {
+                        done.countDown();
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        boolean complete = done.await(120, TimeUnit.SECONDS);
+        long duration = Now.NanoTime() - start;
+        service.shutdown();
+        assertTrue(complete, "all the events must be delivered");
+
+        long [] sorted = Arrays.copyOf(latencies, Math.min(received.get(), EVENTS));
+        Arrays.sort(sorted);
+        log.info("[integration][bench] bus {} workers {} journal {} : {} events/s, p50 {} us, p99 {} us",
+                bus,
+                workers,
+                journal != null,
+                (long)(EVENTS / (duration / 1_000_000_000.0)),
+                sorted[sorted.length / 2] / 1_000,
+                sorted[(int)(sorted.length * 0.99)] / 1_000
+        );
+    }
+
+    @Test
+    public void benchmarkMemoryBus() throws Exception {
+        for ( String bus : new String[] { "store", "ring" } ) {
+            for ( int workers : new int[] { 1, 2, 4, 8, 16 } ) {
+                run(bus, workers);
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkJournal() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        for ( int workers : new int[] { 1, 4 } ) {
+            run("ring", workers);
+            run("ring", workers, dir.toString());
+        }
+    }
+
+    @Test
+    public void benchmarkLaneIsolation() throws Exception {
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(1);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn("ring");
+        when(integrationConfig.getIntegrationMemoryBusSize()).thenReturn(1024);
+        when(integrationConfig.getIntegrationModuleOverflowDefault()).thenReturn("drop_oldest");
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("bench");
+
+        IntegrationService service = new IntegrationService(integrationConfig, commonConfig);
+        int fastEvents = 10_000;
+        long [] latencies = new long[fastEvents];
+        AtomicInteger received = new AtomicInteger(0);
+        CountDownLatch done = new CountDownLatch(fastEvents);
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, q -> Now.sleep(5));   // slow consumer
+        service.registerCallback(ModuleCatalog.Modules.USERS, q -> {
+            int i = received.getAndIncrement();
+            if ( i < fastEvents ) latencies[i] = Now.NanoTime() - q.getQuery_ts();
+            done.countDown();
+        });
+        service.startRunners();
+
+        for ( int i = 0 ; i < fastEvents ; i++ ) {
+            for ( ModuleCatalog.Modules m : new ModuleCatalog.Modules[] { ModuleCatalog.Modules.AUDIT, ModuleCatalog.Modules.USERS } ) {
+                IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CUSTOM, "remote");
+                q.setServiceNameDest(m);
+                q.setType(IntegrationQuery.QueryType.TYPE_BROADCAST);
+                q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MEMORY);
+                service.processQuery(q);
+            }
+        }
+        boolean complete = done.await(60, TimeUnit.SECONDS);
+        service.shutdown();
+        assertTrue(complete, "the fast module must not be blocked by the slow one");
+
+        long [] sorted = Arrays.copyOf(latencies, fastEvents);
+        Arrays.sort(sorted);
+        log.info("[integration][bench] fast lane with a slow neighbour : p50 {} us, p99 {} us",
+                sorted[fastEvents / 2] / 1_000,
+                sorted[(int)(fastEvents * 0.99)] / 1_000
+        );
+    }
+
+    private Integer directCall(Integer v) {
+        return v + 1;
+    }
+
+    @Test
+    public void benchmarkSyncOverhead() throws Exception {
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(2);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn("ring");
+        when(integrationConfig.getIntegrationMemoryBusSize()).thenReturn(1024);
+        when(integrationConfig.getIntegrationModuleOverflowDefault()).thenReturn("reject");
+        when(integrationConfig.getIntegrationQueryTimeoutMs()).thenReturn(5_000L);
+        when(integrationConfig.getIntegrationQueryMaxPending()).thenReturn(1_000);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("bench");
+
+        IntegrationService service = new IntegrationService(integrationConfig, commonConfig);
+        service.registerCallback(ModuleCatalog.Modules.BILLING, q -> q.setResult(directCall((Integer) q.getQuery())));
+        service.startRunners();
+
+        int calls = 50_000;
+        long [] latencies = new long[calls];
+        long sum = 0;
+        // warmup
+        for ( int i = 0 ; i < 5_000 ; i++ ) sum += directCall(i);
+        for ( int i = 0 ; i < 5_000 ; i++ ) {
+            IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CAPTURE, "bench");
+            q.setServiceNameDest(ModuleCatalog.Modules.BILLING);
+            q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MEMORY);
+            q.setQuery(i);
+            service.processSyncQuery(q);
+        }
+
+        long start = System.nanoTime();
+        for ( int i = 0 ; i < calls ; i++ ) sum += directCall(i);
+        long direct = System.nanoTime() - start;
+
+        for ( int i = 0 ; i < calls ; i++ ) {
+            long s = System.nanoTime();
+            IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CAPTURE, "bench");
+            q.setServiceNameDest(ModuleCatalog.Modules.BILLING);
+            q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MEMORY);
+            q.setQuery(i);
+            q = service.processSyncQuery(q);
+            latencies[i] = System.nanoTime() - s;
+            assertTrue(q.getState() == IntegrationQuery.QueryState.STATE_DONE && (Integer) q.getResult() == i + 1);
+        }
+        service.shutdown();
+
+        Arrays.sort(latencies);
+        log.info("[integration][bench] sync query : p50 {} us, p99 {} us, direct call {} ns/op ({})",
+                latencies[calls / 2] / 1_000,
+                latencies[(int)(calls * 0.99)] / 1_000,
+                direct / calls,
+                sum
+        );
+    }
+
+}
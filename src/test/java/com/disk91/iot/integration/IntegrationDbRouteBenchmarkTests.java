@@ -0,0 +1,141 @@
+package com.disk91.iot.integration;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.Now;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.mdb.entities.IntegrationEvent;
+import com.disk91.integration.services.IntegrationDbRoute;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Database route throughput and cross-instance latency, two route instances share a local Mongo database
+ * (-Dmongo.uri, default mongodb://localhost:27017). Not run by default, use -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class IntegrationDbRouteBenchmarkTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final int EVENTS = 20_000;
+
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    public void setup() {
+        client = MongoClients.create(System.getProperty("mongo.uri", "mongodb://localhost:27017"));
+        mongoTemplate = new MongoTemplate(client, "itc-integration-bench");
+        mongoTemplate.getDb().drop();
+    }
+
+    @AfterEach
+    public void clean() {
+        mongoTemplate.getDb().drop();
+        client.close();
+    }
+
+    private IntegrationDbRoute createRoute(String instanceId) {
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteDbEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationRouteDbCollectionSizeMb()).thenReturn(64L);
+        when(integrationConfig.getIntegrationRouteDbBatchSize()).thenReturn(100);
+        when(integrationConfig.getIntegrationRouteDbPollMs()).thenReturn(200L);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn(instanceId);
+        IntegrationDbRoute route = new IntegrationDbRoute(integrationConfig, commonConfig, mongoTemplate);
+        route.init();
+        return route;
+    }
+
+    private IntegrationQuery createQuery(IntegrationQuery.QueryType type, int i) {
+        IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.USERS, "bench-a");
+        q.setServiceNameDest(ModuleCatalog.Modules.USERS);
+        q.setType(type);
+        q.setRoute(IntegrationQuery.QueryRoute.ROUTE_DB);
+        q.setQuery("user-" + i);
+        return q;
+    }
+
+    @Test
+    public void benchmarkBroadcast() throws Exception {
+        long [] latencies = new long[EVENTS];
+        AtomicInteger received = new AtomicInteger(0);
+        CountDownLatch done = new CountDownLatch(EVENTS);
+        IntegrationDbRoute a = createRoute("bench-a");
+        IntegrationDbRoute b = createRoute("bench-b");
+        a.start((q, processed) -> { processed.run(); return true; });
+        b.start((q, processed) -> {
+            int i = received.getAndIncrement();
+            if ( i < EVENTS ) latencies[i] = Now.NowUtcMs() - q.getQuery_ms();
+            done.countDown();
+            processed.run();
+            return true;
+        });
+        Now.sleep(500);
+
+        long start = Now.NowUtcMs();
+        for ( int i = 0 ; i < EVENTS ; i++ ) {
+            assertTrue(a.publish(createQuery(IntegrationQuery.QueryType.TYPE_BROADCAST, i)));
+        }
+        long published = Now.NowUtcMs();
+        boolean complete = done.await(120, TimeUnit.SECONDS);
+        long duration = Math.max(1, Now.NowUtcMs() - start);
+        a.stop();
+        b.stop();
+        assertTrue(complete, "all the broadcast events must reach the other instance");
+
+        Arrays.sort(latencies);
+        log.info("[integration][bench] db broadcast : publish {} events/s, delivery {} events/s, p50 {} ms, p99 {} ms",
+                EVENTS * 1000L / Math.max(1, published - start),
+                EVENTS * 1000L / duration,
+                latencies[EVENTS / 2],
+                latencies[(int)(EVENTS * 0.99)]
+        );
+    }
+
+    @Test
+    public void testFireAndForgetSingleDelivery() throws Exception {
+        int events = 2_000;
+        ConcurrentHashMap<String, Integer> seen = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(events);
+        IntegrationDbRoute a = createRoute("bench-a");
+        IntegrationDbRoute b = createRoute("bench-b");
+        a.start((q, processed) -> { seen.merge((String) q.getQuery(), 1, Integer::sum); done.countDown(); processed.run(); return true; });
+        b.start((q, processed) -> { seen.merge((String) q.getQuery(), 1, Integer::sum); done.countDown(); processed.run(); return true; });
+        Now.sleep(500);
+
+        for ( int i = 0 ; i < events ; i++ ) {
+            assertTrue(a.publish(createQuery(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, i)));
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        Now.sleep(1_000);
+        a.stop();
+        b.stop();
+
+        // each event is processed by a single instance
+        assertEquals(events, seen.size());
+        assertTrue(seen.values().stream().allMatch(v -> v == 1));
+        assertEquals(events, mongoTemplate.getCollection(IntegrationEvent.COLLECTION).countDocuments());
+    }
+
+}
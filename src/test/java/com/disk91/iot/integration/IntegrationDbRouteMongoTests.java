@@ -0,0 +1,144 @@
+package com.disk91.iot.integration;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.Now;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.mdb.entities.IntegrationEvent;
+import com.disk91.integration.mdb.entities.IntegrationEventAck;
+import com.disk91.integration.mdb.entities.IntegrationEventClaim;
+import com.disk91.integration.services.IntegrationDbRoute;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Database route over an embedded MongoDB, two route instances share the same capped collection
+ */
+public class IntegrationDbRouteMongoTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static TransitionWalker.ReachedState<RunningMongodProcess> mongod;
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+
+    @BeforeAll
+    public static void startMongo() {
+        mongod = Mongod.instance().start(Version.Main.V7_0);
+        client = MongoClients.create("mongodb://" + mongod.current().getServerAddress());
+        mongoTemplate = new MongoTemplate(client, "itc-test");
+    }
+
+    @AfterAll
+    public static void stopMongo() {
+        if ( client != null ) client.close();
+        if ( mongod != null ) mongod.close();
+    }
+
+    @BeforeEach
+    public void clean() {
+        mongoTemplate.dropCollection(IntegrationEvent.class);
+        mongoTemplate.dropCollection(IntegrationEventAck.class);
+        mongoTemplate.dropCollection(IntegrationEventClaim.class);
+    }
+
+    private IntegrationDbRoute createRoute(String instanceId) {
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteDbEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationRouteDbCollectionSizeMb()).thenReturn(1L);
+        when(integrationConfig.getIntegrationRouteDbBatchSize()).thenReturn(10);
+        when(integrationConfig.getIntegrationRouteDbPollMs()).thenReturn(50L);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn(instanceId);
+        IntegrationDbRoute route = new IntegrationDbRoute(integrationConfig, commonConfig, mongoTemplate);
+        route.init();
+        return route;
+    }
+
+    private IntegrationQuery createQuery(IntegrationQuery.QueryType type, int i) {
+        IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.USERS, "a");
+        q.setServiceNameDest(ModuleCatalog.Modules.USERS);
+        q.setType(type);
+        q.setRoute(IntegrationQuery.QueryRoute.ROUTE_DB);
+        q.setQuery("user-" + i);
+        return q;
+    }
+
+    @Test
+    public void testTwoInstances() throws Exception {
+        log.info("[integration][test] Running testTwoInstances");
+
+        // queries received per instance
+        ConcurrentHashMap<String, List<String>> received = new ConcurrentHashMap<>();
+        received.put("a", Collections.synchronizedList(new ArrayList<>()));
+        received.put("b", Collections.synchronizedList(new ArrayList<>()));
+        IntegrationDbRoute a = createRoute("a");
+        IntegrationDbRoute b = createRoute("b");
+        assertTrue((Boolean) ReflectionTestUtils.invokeMethod(a, "isCapped"));
+        a.start((q, processed) -> { received.get("a").add(q.getType() + ":" + q.getQuery()); processed.run(); return true; });
+        b.start((q, processed) -> { received.get("b").add(q.getType() + ":" + q.getQuery()); processed.run(); return true; });
+
+        for ( int i = 0 ; i < 20 ; i++ ) {
+            assertTrue(a.publish(createQuery(IntegrationQuery.QueryType.TYPE_BROADCAST, i)));
+            assertTrue(a.publish(createQuery(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, i)));
+        }
+        long deadline = Now.NowUtcMs() + 10_000;
+        while ( received.get("a").size() + received.get("b").size() < 60 && Now.NowUtcMs() < deadline ) Now.sleep(50);
+        a.stop();
+        b.stop();
+
+        // broadcasts processed by both instances, fire & forget by a single one
+        for ( String instance : List.of("a", "b") ) {
+            assertEquals(20, received.get(instance).stream().filter(s -> s.startsWith("TYPE_BROADCAST")).distinct().count());
+        }
+        ArrayList<String> ff = new ArrayList<>();
+        for ( String instance : List.of("a", "b") ) {
+            received.get(instance).stream().filter(s -> s.startsWith("TYPE_FIRE_AND_FORGET")).forEach(ff::add);
+        }
+        assertEquals(20, ff.size());
+        assertEquals(20, Set.copyOf(ff).size());
+        assertEquals(20, mongoTemplate.count(new Query(), IntegrationEventClaim.class));
+
+        // both positions on the last event of the collection
+        List<IntegrationEvent> events = mongoTemplate.findAll(IntegrationEvent.class);
+        assertEquals(40, events.size());
+        String last = events.get(events.size() - 1).getId();
+        assertEquals(last, mongoTemplate.findById("a", IntegrationEventAck.class).getLastEventId());
+        assertEquals(last, mongoTemplate.findById("b", IntegrationEventAck.class).getLastEventId());
+
+        // restarted, resume after the acknowledged position, only the new events are read
+        received.get("b").clear();
+        IntegrationDbRoute restarted = createRoute("b");
+        restarted.start((q, processed) -> { received.get("b").add(q.getType() + ":" + q.getQuery()); processed.run(); return true; });
+        assertTrue(a.publish(createQuery(IntegrationQuery.QueryType.TYPE_BROADCAST, 20)));
+        deadline = Now.NowUtcMs() + 10_000;
+        while ( received.get("b").isEmpty() && Now.NowUtcMs() < deadline ) Now.sleep(50);
+        restarted.stop();
+        assertEquals(List.of("TYPE_BROADCAST:user-20"), received.get("b"));
+    }
+
+}
@@ -0,0 +1,253 @@
+package com.disk91.iot.integration;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.Now;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.mdb.entities.IntegrationEvent;
+import com.disk91.integration.mdb.entities.IntegrationEventAck;
+import com.disk91.integration.mdb.entities.IntegrationEventClaim;
+import com.disk91.integration.services.IntegrationDbRoute;
+import com.disk91.integration.services.IntegrationService;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Database route acknowledgement and claims, the database is simulated with maps shared by the route instances
+ */
+public class IntegrationDbRouteTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ConcurrentHashMap<String, IntegrationEventClaim> claims = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, IntegrationEventAck> acks = new ConcurrentHashMap<>();
+    private IntegrationEvent lastEvent = null;
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    public void setup() {
+        mongoTemplate = mock(MongoTemplate.class);
+        lenient().doAnswer(inv -> {
+            IntegrationEventClaim c = inv.getArgument(0);
+            if ( claims.putIfAbsent(c.getId(), c) != null ) throw new DuplicateKeyException("duplicate claim " + c.getId());
+            return c;
+        }).when(mongoTemplate).insert(any(IntegrationEventClaim.class));
+        lenient().when(mongoTemplate.findById(anyString(), eq(IntegrationEventClaim.class))).thenAnswer(inv -> claims.get((String) inv.getArgument(0)));
+        lenient().when(mongoTemplate.findById(anyString(), eq(IntegrationEventAck.class))).thenAnswer(inv -> acks.get((String) inv.getArgument(0)));
+        lenient().when(mongoTemplate.save(any(IntegrationEventAck.class))).thenAnswer(inv -> {
+            IntegrationEventAck a = inv.getArgument(0);
+            acks.put(a.getId(), a);
+            return a;
+        });
+        lenient().when(mongoTemplate.remove(any(Query.class), eq(IntegrationEventClaim.class))).thenAnswer(inv -> {
+            Document q = ((Query) inv.getArgument(0)).getQueryObject();
+            claims.computeIfPresent(q.getString("_id"), (k, c) -> c.getInstanceId().equals(q.getString("instanceId")) ? null : c);
+            return null;
+        });
+        lenient().when(mongoTemplate.findOne(any(Query.class), eq(IntegrationEvent.class))).thenAnswer(inv -> lastEvent);
+    }
+
+    private IntegrationDbRoute createRoute(String instanceId, BiPredicate<IntegrationQuery, Runnable> delivery) {
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        lenient().when(integrationConfig.getIntegrationRouteDbBatchSize()).thenReturn(100);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        lenient().when(commonConfig.getInstanceId()).thenReturn(instanceId);
+        IntegrationDbRoute route = new IntegrationDbRoute(integrationConfig, commonConfig, mongoTemplate);
+        // started without the reader thread, the events are given to process()
+        ReflectionTestUtils.setField(route, "delivery", delivery);
+        ReflectionTestUtils.setField(route, "startMs", Now.NowUtcMs());
+        ReflectionTestUtils.invokeMethod(route, "resumePosition");
+        return route;
+    }
+
+    private IntegrationEvent createEvent(IntegrationQuery.QueryType type, int i) {
+        IntegrationEvent e = new IntegrationEvent();
+        e.setId(new ObjectId().toHexString());
+        e.setQueryId(UUID.randomUUID().toString());
+        e.setServiceNameSource(ModuleCatalog.Modules.USERS);
+        e.setSourceInstanceId("other");
+        e.setServiceNameDest(ModuleCatalog.Modules.USERS);
+        e.setType(type);
+        e.setQuery("user-" + i);
+        e.setQueryMs(Now.NowUtcMs() - 1_000);
+        return e;
+    }
+
+    private void process(IntegrationDbRoute route, IntegrationEvent e) {
+        ReflectionTestUtils.invokeMethod(route, "process", new ObjectId(e.getId()), e);
+    }
+
+    private String ackOf(String instanceId) {
+        IntegrationEventAck a = acks.get(instanceId);
+        return ( a != null ) ? a.getLastEventId() : null;
+    }
+
+    @Test
+    public void testResumeAfterRestart() {
+        log.info("[integration][test] Running testResumeAfterRestart");
+
+        ArrayList<Runnable> inProgress = new ArrayList<>();
+        IntegrationDbRoute route = createRoute("a", (q, processed) -> inProgress.add(processed));
+        ArrayList<IntegrationEvent> events = new ArrayList<>();
+        for ( int i = 0 ; i < 5 ; i++ ) {
+            IntegrationEvent e = createEvent(IntegrationQuery.QueryType.TYPE_BROADCAST, i);
+            events.add(e);
+            process(route, e);
+        }
+        assertEquals(5, inProgress.size());
+
+        // only the processed prefix is acknowledged
+        ReflectionTestUtils.invokeMethod(route, "acknowledge");
+        assertNull(ackOf("a"));
+        inProgress.get(0).run();
+        inProgress.get(1).run();
+        inProgress.get(3).run();
+        ReflectionTestUtils.invokeMethod(route, "acknowledge");
+        assertEquals(events.get(1).getId(), ackOf("a"));
+        inProgress.get(2).run();
+        ReflectionTestUtils.invokeMethod(route, "acknowledge");
+        assertEquals(events.get(3).getId(), ackOf("a"));
+
+        // restart, resume after the last processed event, the event in progress is read again
+        IntegrationDbRoute restarted = createRoute("a", (q, processed) -> true);
+        assertEquals(new ObjectId(events.get(3).getId()), ReflectionTestUtils.getField(restarted, "lastEventId"));
+
+        // first start of an other instance, read after the last event of the collection
+        lastEvent = events.get(4);
+        IntegrationDbRoute fresh = createRoute("b", (q, processed) -> true);
+        assertEquals(new ObjectId(events.get(4).getId()), ReflectionTestUtils.getField(fresh, "lastEventId"));
+        lastEvent = null;
+        IntegrationDbRoute empty = createRoute("c", (q, processed) -> true);
+        assertNull(ReflectionTestUtils.getField(empty, "lastEventId"));
+    }
+
+    @Test
+    public void testClaimContention() throws Exception {
+        log.info("[integration][test] Running testClaimContention");
+
+        int count = 500;
+        ConcurrentHashMap<String, Integer> seen = new ConcurrentHashMap<>();
+        BiPredicate<IntegrationQuery, Runnable> delivery = (q, processed) -> {
+            seen.merge((String) q.getQuery(), 1, Integer::sum);
+            processed.run();
+            return true;
+        };
+        IntegrationDbRoute a = createRoute("a", delivery);
+        IntegrationDbRoute b = createRoute("b", delivery);
+        List<IntegrationEvent> events = Collections.synchronizedList(new ArrayList<>());
+        for ( int i = 0 ; i < count ; i++ ) events.add(createEvent(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, i));
+
+        Thread ta = new Thread(() -> events.forEach(e -> process(a, e)));
+        Thread tb = new Thread(() -> events.forEach(e -> process(b, e)));
+        ta.start();
+        tb.start();
+        ta.join(10_000);
+        tb.join(10_000);
+
+        // each event processed by a single instance, both instances acknowledge the whole collection
+        assertEquals(count, seen.size());
+        assertTrue(seen.values().stream().allMatch(v -> v == 1));
+        assertEquals(count, claims.size());
+        ReflectionTestUtils.invokeMethod(a, "acknowledge");
+        ReflectionTestUtils.invokeMethod(b, "acknowledge");
+        assertEquals(events.get(count - 1).getId(), ackOf("a"));
+        assertEquals(events.get(count - 1).getId(), ackOf("b"));
+    }
+
+    @Test
+    public void testRefusedEventReleasesClaim() {
+        log.info("[integration][test] Running testRefusedEventReleasesClaim");
+
+        IntegrationEvent e = createEvent(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, 0);
+        IntegrationDbRoute a = createRoute("a", (q, processed) -> false);
+        process(a, e);
+        assertTrue(claims.isEmpty());
+        ReflectionTestUtils.invokeMethod(a, "acknowledge");
+        assertEquals(e.getId(), ackOf("a"));
+
+        // an other instance can process it
+        ArrayList<String> received = new ArrayList<>();
+        IntegrationDbRoute b = createRoute("b", (q, processed) -> {
+            received.add((String) q.getQuery());
+            processed.run();
+            return true;
+        });
+        process(b, e);
+        assertEquals(List.of("user-0"), received);
+        assertEquals("b", claims.get(e.getId()).getInstanceId());
+    }
+
+    @Test
+    public void testClaimInProgressOnRestart() {
+        log.info("[integration][test] Running testClaimInProgressOnRestart");
+
+        IntegrationEvent e = createEvent(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, 0);
+        IntegrationDbRoute a = createRoute("a", (q, processed) -> true);
+        process(a, e);                                  // claimed, never processed
+        assertEquals("a", claims.get(e.getId()).getInstanceId());
+
+        // the restarted instance claims its own event again, the others don't
+        ArrayList<String> received = new ArrayList<>();
+        IntegrationDbRoute restarted = createRoute("a", (q, processed) -> received.add((String) q.getQuery()));
+        IntegrationDbRoute b = createRoute("b", (q, processed) -> received.add("b"));
+        process(restarted, e);
+        process(b, e);
+        assertEquals(List.of("user-0"), received);
+    }
+
+    @Test
+    public void testLocalProcessingWithoutMemoryRoute() throws Exception {
+        log.info("[integration][test] Running testLocalProcessingWithoutMemoryRoute");
+
+        // only the database route enabled, the events it receives are processed by the store workers
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(false);
+        when(integrationConfig.isIntegrationRouteDbEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn("store");
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(1);
+        when(integrationConfig.getIntegrationStoreExpirationMs()).thenReturn(300_000L);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("a");
+        IntegrationService service = new IntegrationService(integrationConfig, commonConfig);
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        service.registerCallback(ModuleCatalog.Modules.USERS, q -> received.add((String) q.getQuery()));
+        service.startRunners();
+        try {
+            CountDownLatch processed = new CountDownLatch(1);
+            IntegrationEvent e = createEvent(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, 0);
+            IntegrationQuery q = e.toQuery();
+            Boolean accepted = ReflectionTestUtils.invokeMethod(service, "deliverLocally", q, (Runnable) processed::countDown);
+            assertEquals(Boolean.TRUE, accepted);
+            assertTrue(processed.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("user-0"), received);
+            assertEquals(IntegrationQuery.QueryState.STATE_DONE, q.getState());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+}
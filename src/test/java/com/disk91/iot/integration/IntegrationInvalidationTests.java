@@ -0,0 +1,95 @@
+package com.disk91.iot.integration;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.integration.api.interfaces.IntegrationInvalidation;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.services.IntegrationInvalidationService;
+import com.disk91.integration.services.IntegrationService;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class IntegrationInvalidationTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testInvalidationCoalescing() throws Exception {
+        log.info("[integration][test] Running testInvalidationCoalescing");
+
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.getIntegrationInvalidationWindowMs()).thenReturn(50L);
+        when(integrationConfig.getIntegrationInvalidationMaxKeys()).thenReturn(20);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("test");
+        IntegrationService integrationService = mock(IntegrationService.class);
+
+        IntegrationInvalidationService service = new IntegrationInvalidationService(integrationService, integrationConfig, commonConfig);
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            service.invalidate(ModuleCatalog.Modules.DEVICES, 0, IntegrationQuery.QueryRoute.ROUTE_MEMORY, "dev-" + (i % 50));
+        }
+        service.invalidate(ModuleCatalog.Modules.USERS, 1, IntegrationQuery.QueryRoute.ROUTE_MEMORY, "user");
+        verify(integrationService, never()).processQuery(any());
+        service.flush();
+
+        // 50 device keys in 3 messages of max 20 keys, 1 user message
+        ArgumentCaptor<IntegrationQuery> sent = ArgumentCaptor.forClass(IntegrationQuery.class);
+        verify(integrationService, times(4)).processQuery(sent.capture());
+        HashSet<String> devices = new HashSet<>();
+        for ( IntegrationQuery q : sent.getAllValues() ) {
+            assertEquals(IntegrationQuery.QueryType.TYPE_BROADCAST, q.getType());
+            List<String> keys = IntegrationInvalidation.keysOf(q);
+            assertTrue(keys.size() <= 20);
+            if ( q.getServiceNameDest() == ModuleCatalog.Modules.DEVICES ) devices.addAll(keys);
+            else assertEquals(List.of("user"), keys);
+        }
+        assertEquals(50, devices.size());
+        assertEquals(1001, service.getRequestedKeys().get().longValue());
+        assertEquals(51, service.getSentKeys().get().longValue());
+        assertEquals(1001.0 / 4, service.getCoalescingRatio().get().doubleValue(), 0.001);
+
+        // nothing left to send
+        service.flush();
+        verify(integrationService, times(4)).processQuery(any());
+    }
+
+    @Test
+    public void testInvalidationLegacyFormat() throws Exception {
+        log.info("[integration][test] Running testInvalidationLegacyFormat");
+
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.getIntegrationInvalidationWindowMs()).thenReturn(50L);
+        when(integrationConfig.getIntegrationInvalidationMaxKeys()).thenReturn(20);
+        when(integrationConfig.isIntegrationInvalidationLegacy()).thenReturn(true);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("test");
+        IntegrationService integrationService = mock(IntegrationService.class);
+
+        IntegrationInvalidationService service = new IntegrationInvalidationService(integrationService, integrationConfig, commonConfig);
+        for ( int i = 0 ; i < 100 ; i++ ) {
+            service.invalidate(ModuleCatalog.Modules.DEVICES, 0, IntegrationQuery.QueryRoute.ROUTE_MEMORY, "dev-" + (i % 5));
+        }
+        service.flush();
+
+        // deduplicated, one String payload per key as expected by the older versions
+        ArgumentCaptor<IntegrationQuery> sent = ArgumentCaptor.forClass(IntegrationQuery.class);
+        verify(integrationService, times(5)).processQuery(sent.capture());
+        HashSet<String> devices = new HashSet<>();
+        for ( IntegrationQuery q : sent.getAllValues() ) {
+            assertInstanceOf(String.class, q.getQuery());
+            devices.add((String) q.getQuery());
+        }
+        assertEquals(5, devices.size());
+        assertEquals(5, service.getSentMessages().get().longValue());
+    }
+
+}
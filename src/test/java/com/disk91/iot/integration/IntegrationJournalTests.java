@@ -0,0 +1,121 @@
+package com.disk91.iot.integration;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.Now;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.services.IntegrationService;
+import com.disk91.integration.tools.IntegrationJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IntegrationJournalTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private IntegrationQuery event(int i) {
+        IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CAPTURE, "test");
+        q.setServiceNameDest(ModuleCatalog.Modules.AUDIT);
+        q.setType(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET);
+        q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MEMORY);
+        q.setQuery(i);
+        return q;
+    }
+
+    @Test
+    public void testJournalRecovery(@TempDir Path dir) throws Exception {
+        log.info("[integration][test] Running testJournalRecovery");
+
+        IntegrationJournal journal = new IntegrationJournal(dir.toString(), 1024 * 1024);
+        assertEquals(0, journal.recover().size());
+        ArrayList<IntegrationQuery> sent = new ArrayList<>();
+        for ( int i = 0 ; i < 10 ; i++ ) {
+            IntegrationQuery q = event(i);
+            assertTrue(journal.append(q));
+            sent.add(q);
+        }
+        for ( int i = 0 ; i < 4 ; i++ ) journal.complete(sent.get(i).getQueryId());
+        journal.close();
+
+        // torn write at the end of the last segment
+        Path last;
+        try (Stream<Path> files = Files.list(dir)) {
+            last = files.sorted().reduce((a, b) -> b).orElseThrow();
+        }
+        Files.write(last, new byte[] { 1, 0, 0 }, StandardOpenOption.APPEND);
+
+        journal = new IntegrationJournal(dir.toString(), 1024 * 1024);
+        List<IntegrationQuery> pending = journal.recover();
+        assertEquals(6, pending.size());
+        for ( int i = 0 ; i < 6 ; i++ ) {
+            assertEquals(sent.get(i + 4).getQueryId(), pending.get(i).getQueryId());
+            assertEquals(i + 4, pending.get(i).getQuery());
+        }
+        // compacted in a single segment
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+        journal.close();
+    }
+
+    @Test
+    public void testJournalReplay(@TempDir Path dir) throws Exception {
+        log.info("[integration][test] Running testJournalReplay");
+
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(1);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn("ring");
+        when(integrationConfig.getIntegrationMemoryBusSize()).thenReturn(1024);
+        when(integrationConfig.getIntegrationModuleOverflowDefault()).thenReturn("reject");
+        when(integrationConfig.isIntegrationJournalEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationJournalPath()).thenReturn(dir.toString());
+        when(integrationConfig.getIntegrationJournalSegmentSizeMb()).thenReturn(1);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("test");
+
+        // first run, the consumer is stuck on the first event when the service stops
+        CountDownLatch started = new CountDownLatch(1);
+        IntegrationService service = new IntegrationService(integrationConfig, commonConfig);
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, q -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException x) {
+                throw new RuntimeException(x);
+            }
+        });
+        service.startRunners();
+        for ( int i = 0 ; i < 5 ; i++ ) service.processQuery(event(i));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        service.shutdown();
+
+        // second run, the events not processed are replayed
+        List<Object> received = Collections.synchronizedList(new ArrayList<>());
+        service = new IntegrationService(integrationConfig, commonConfig);
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, q -> received.add(q.getQuery()));
+        service.startRunners();
+        Now.sleep(500);
+        service.shutdown();
+
+        assertEquals(List.of(1, 2, 3, 4), received);
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.disk91.iot.integration;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.exceptions.ITOverQuotaException;
+import com.disk91.integration.api.interfaces.IntegrationBatchCallback;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.services.IntegrationService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IntegrationLaneTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    protected IntegrationConfig ringConfig(String overflow, int size, int batchSize) {
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(1);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn("ring");
+        when(integrationConfig.getIntegrationMemoryBusSize()).thenReturn(size);
+        when(integrationConfig.getIntegrationModuleOverflowDefault()).thenReturn(overflow);
+        when(integrationConfig.getIntegrationBatchMaxSize()).thenReturn(batchSize);
+        when(integrationConfig.getIntegrationBatchMaxWaitMs()).thenReturn(200L);
+        return integrationConfig;
+    }
+
+    protected CommonConfig commonConfig() {
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("test");
+        return commonConfig;
+    }
+
+    protected IntegrationQuery event(int i) {
+        IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CAPTURE, "test");
+        q.setServiceNameDest(ModuleCatalog.Modules.AUDIT);
+        q.setType(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET);
+        q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MEMORY);
+        q.setQuery(i);
+        return q;
+    }
+
+    /**
+     * Start a service with a single worker blocked on the first event so the 2 slots lane can be filled
+     */
+    protected IntegrationService blockedLane(String overflow, List<Integer> received, CountDownLatch entered, CountDownLatch release) throws Exception {
+        IntegrationService service = new IntegrationService(ringConfig(overflow, 2, 1), commonConfig());
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, q -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+            received.add((Integer) q.getQuery());
+        });
+        service.startRunners();
+        service.processQuery(event(0));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        service.processQuery(event(1));
+        service.processQuery(event(2));
+        return service;
+    }
+
+    protected void awaitReceived(List<Integer> received, int count) {
+        long end = System.currentTimeMillis() + 5_000;
+        while ( received.size() < count && System.currentTimeMillis() < end ) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException x) {
+                return;
+            }
+        }
+    }
+
+    @Test
+    public void testOverflowReject() throws Exception {
+        log.info("[integration][test] Running testOverflowReject");
+
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IntegrationService service = blockedLane("reject", received, entered, release);
+
+        assertThrows(ITOverQuotaException.class, () -> service.processQuery(event(3)));
+        release.countDown();
+        awaitReceived(received, 3);
+        service.shutdown();
+        assertEquals(List.of(0, 1, 2), received);
+    }
+
+    @Test
+    public void testOverflowDropNewest() throws Exception {
+        log.info("[integration][test] Running testOverflowDropNewest");
+
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IntegrationService service = blockedLane("drop_newest", received, entered, release);
+
+        IntegrationQuery q = service.processQuery(event(3));
+        assertEquals(IntegrationQuery.QueryState.STATE_ERROR, q.getState());
+        release.countDown();
+        awaitReceived(received, 3);
+        service.shutdown();
+        assertEquals(List.of(0, 1, 2), received);
+    }
+
+    @Test
+    public void testOverflowDropOldest() throws Exception {
+        log.info("[integration][test] Running testOverflowDropOldest");
+
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IntegrationService service = blockedLane("drop_oldest", received, entered, release);
+
+        IntegrationQuery q = service.processQuery(event(3));
+        assertNotEquals(IntegrationQuery.QueryState.STATE_ERROR, q.getState());
+        release.countDown();
+        awaitReceived(received, 3);
+        service.shutdown();
+        assertEquals(List.of(0, 2, 3), received);
+    }
+
+    @Test
+    public void testBatchDeliveryBounded() throws Exception {
+        log.info("[integration][test] Running testBatchDeliveryBounded");
+
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        IntegrationService service = new IntegrationService(ringConfig("reject", 1024, 4), commonConfig());
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, new IntegrationBatchCallback() {
+            @Override
+            public void onIntegrationEvents(List<IntegrationQuery> queries) {
+                batchSizes.add(queries.size());
+                for ( IntegrationQuery q : queries ) received.add((Integer) q.getQuery());
+            }
+
+            @Override
+            public void onIntegrationEvent(IntegrationQuery query) {
+                batchSizes.add(1);
+                received.add((Integer) query.getQuery());
+            }
+        });
+        service.startRunners();
+        for ( int i = 0 ; i < 10 ; i++ ) service.processQuery(event(i));
+        awaitReceived(received, 10);
+        service.shutdown();
+
+        // single worker, order is kept and batches are limited to 4 events
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), received);
+        assertTrue(batchSizes.stream().allMatch(v -> v <= 4));
+        assertTrue(batchSizes.size() >= 3);
+    }
+
+    @Test
+    public void testForLaterAndRestart() throws Exception {
+        log.info("[integration][test] Running testForLaterAndRestart");
+
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        IntegrationService service = new IntegrationService(ringConfig("reject", 16, 1), commonConfig());
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, q -> received.add((Integer) q.getQuery()));
+
+        // events received before the start are kept and processed on start
+        service.processQuery(event(0));
+        service.processQuery(event(1));
+        service.startRunners();
+        awaitReceived(received, 2);
+        assertEquals(List.of(0, 1), received);
+
+        // events received after the stop are processed when the lane restarts
+        service.shutdown();
+        service.processQuery(event(2));
+        service.startRunners();
+        service.processQuery(event(3));
+        awaitReceived(received, 4);
+        service.shutdown();
+        assertEquals(List.of(0, 1, 2, 3), received);
+        assertEquals(0, service.getInQueueRequests().get().longValue());
+    }
+
+}
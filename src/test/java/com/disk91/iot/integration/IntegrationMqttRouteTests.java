@@ -0,0 +1,190 @@
+package com.disk91.iot.integration;
+
+import com.disk91.audit.integration.AuditMessage;
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.CustomField;
+import com.disk91.common.tools.Now;
+import com.disk91.common.tools.exceptions.ITParseException;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.services.IntegrationMqttRoute;
+import com.disk91.integration.tools.IntegrationCodec;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mqtt route tests against an in-process broker
+ */
+public class IntegrationMqttRouteTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private Server broker;
+    private int port;
+
+    @BeforeEach
+    public void startBroker() throws IOException {
+        try ( ServerSocket s = new ServerSocket(0) ) {
+            port = s.getLocalPort();
+        }
+        Properties p = new Properties();
+        p.setProperty("host", "127.0.0.1");
+        p.setProperty("port", Integer.toString(port));
+        p.setProperty("allow_anonymous", "true");
+        p.setProperty("persistence_enabled", "false");
+        broker = new Server();
+        broker.startServer(new MemoryConfig(p));
+    }
+
+    @AfterEach
+    public void stopBroker() {
+        broker.stopServer();
+    }
+
+    private IntegrationMqttRoute createRoute(String instanceId) {
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.getIntegrationRouteMqttUrl()).thenReturn("tcp://127.0.0.1:" + port);
+        when(integrationConfig.getIntegrationRouteMqttUser()).thenReturn("");
+        when(integrationConfig.getIntegrationRouteMqttPassword()).thenReturn("");
+        when(integrationConfig.getIntegrationRouteMqttClientPrefix()).thenReturn("itc-test");
+        when(integrationConfig.getIntegrationRouteMqttTopicPrefix()).thenReturn("itc/integration");
+        when(integrationConfig.getIntegrationRouteMqttShareGroup()).thenReturn("itc");
+        when(integrationConfig.getIntegrationRouteMqttQosBroadcast()).thenReturn(1);
+        when(integrationConfig.getIntegrationRouteMqttQosFireForget()).thenReturn(2);
+        when(integrationConfig.getIntegrationRouteMqttBufferSize()).thenReturn(100_000);
+        when(integrationConfig.getIntegrationRouteMqttMaxInflight()).thenReturn(1000);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn(instanceId);
+        return new IntegrationMqttRoute(integrationConfig, commonConfig);
+    }
+
+    private IntegrationQuery createQuery(ModuleCatalog.Modules dest, IntegrationQuery.QueryType type, Object param) {
+        IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.USERS, "mqtt-a");
+        q.setServiceNameDest(dest);
+        q.setType(type);
+        q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MQTT);
+        q.setAction(3);
+        q.setQuery(param);
+        return q;
+    }
+
+    @Test
+    public void testCodec() throws ITParseException {
+        log.info("[integration][test] Running testCodec");
+
+        AuditMessage m = new AuditMessage();
+        IntegrationQuery q = createQuery(ModuleCatalog.Modules.AUDIT, IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, m);
+        IntegrationQuery d = IntegrationCodec.decode(IntegrationCodec.encode(q));
+        assertEquals(q.getQueryId(), d.getQueryId());
+        assertEquals(q.getType(), d.getType());
+        assertEquals(q.getServiceNameSource(), d.getServiceNameSource());
+        assertEquals(q.getServiceNameDest(), d.getServiceNameDest());
+        assertEquals(q.getSourceInstanceId(), d.getSourceInstanceId());
+        assertEquals(q.getAction(), d.getAction());
+        assertEquals(q.getQuery_ms(), d.getQuery_ms());
+        assertInstanceOf(AuditMessage.class, d.getQuery());
+
+        q = createQuery(ModuleCatalog.Modules.USERS, IntegrationQuery.QueryType.TYPE_BROADCAST, "login");
+        assertEquals("login", IntegrationCodec.decode(IntegrationCodec.encode(q)).getQuery());
+
+        assertThrows(ITParseException.class, () -> IntegrationCodec.decode(new byte[] { 0x0A, 0x7F, 0x01 }));
+    }
+
+    @Test
+    public void testCodecList() throws ITParseException {
+        log.info("[integration][test] Running testCodecList");
+
+        // billing log parameters, the element type is kept
+        ArrayList<CustomField> params = new ArrayList<>(List.of(CustomField.of("device", "d-1"), CustomField.of("bytes", "42")));
+        IntegrationQuery q = createQuery(ModuleCatalog.Modules.BILLING, IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, params);
+        IntegrationQuery d = IntegrationCodec.decode(IntegrationCodec.encode(q));
+        ArrayList<?> decoded = assertInstanceOf(ArrayList.class, d.getQuery());
+        assertEquals(2, decoded.size());
+        CustomField f = assertInstanceOf(CustomField.class, decoded.get(1));
+        assertEquals("bytes", f.getName());
+        assertEquals("42", f.getValue());
+
+        // empty list
+        q = createQuery(ModuleCatalog.Modules.BILLING, IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, new ArrayList<CustomField>());
+        assertEquals(0, assertInstanceOf(ArrayList.class, IntegrationCodec.decode(IntegrationCodec.encode(q)).getQuery()).size());
+
+        // mixed elements are refused
+        IntegrationQuery mixed = createQuery(ModuleCatalog.Modules.BILLING, IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, new ArrayList<>(List.of("a", 1)));
+        assertThrows(ITParseException.class, () -> IntegrationCodec.encode(mixed));
+    }
+
+    @Test
+    public void testBroadcast() throws Exception {
+        log.info("[integration][test] Running testBroadcast");
+
+        int events = 5_000;
+        CountDownLatch doneA = new CountDownLatch(events);
+        CountDownLatch doneB = new CountDownLatch(events);
+        IntegrationMqttRoute a = createRoute("mqtt-a");
+        IntegrationMqttRoute b = createRoute("mqtt-b");
+        a.start(q -> doneA.countDown());
+        b.start(q -> doneB.countDown());
+        Now.sleep(1_000);
+
+        long start = Now.NowUtcMs();
+        for ( int i = 0 ; i < events ; i++ ) {
+            assertTrue(a.publish(createQuery(ModuleCatalog.Modules.USERS, IntegrationQuery.QueryType.TYPE_BROADCAST, "user-" + i)));
+        }
+        // every instance gets the broadcast events, the sender included (skipped on local dispatch)
+        assertTrue(doneB.await(60, TimeUnit.SECONDS));
+        assertTrue(doneA.await(10, TimeUnit.SECONDS));
+        long duration = Math.max(1, Now.NowUtcMs() - start);
+        log.info("[integration][test] mqtt broadcast end-to-end {} events/s", events * 1000L / duration);
+        a.stop();
+        b.stop();
+    }
+
+    @Test
+    public void testFireAndForgetDistribution() throws Exception {
+        log.info("[integration][test] Running testFireAndForgetDistribution");
+
+        int events = 2_000;
+        ConcurrentHashMap<String, Integer> seen = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(events);
+        IntegrationMqttRoute a = createRoute("mqtt-a");
+        IntegrationMqttRoute b = createRoute("mqtt-b");
+        a.start(q -> { seen.merge((String) q.getQuery(), 1, Integer::sum); done.countDown(); });
+        b.start(q -> { seen.merge((String) q.getQuery(), 1, Integer::sum); done.countDown(); });
+        Now.sleep(1_000);
+
+        long start = Now.NowUtcMs();
+        for ( int i = 0 ; i < events ; i++ ) {
+            assertTrue(a.publish(createQuery(ModuleCatalog.Modules.AUDIT, IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET, "audit-" + i)));
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long duration = Math.max(1, Now.NowUtcMs() - start);
+        Now.sleep(500);
+        log.info("[integration][test] mqtt fire & forget end-to-end {} events/s", events * 1000L / duration);
+        a.stop();
+        b.stop();
+
+        // shared subscription, each event is processed by a single instance
+        assertEquals(events, seen.size());
+        assertTrue(seen.values().stream().allMatch(v -> v == 1));
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.disk91.iot.integration;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.Now;
+import com.disk91.common.tools.exceptions.ITOverQuotaException;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.services.IntegrationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IntegrationRequestTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private IntegrationService service;
+
+    private IntegrationService createService(int busSize, String overflow, int maxPending) {
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(1);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn("ring");
+        when(integrationConfig.getIntegrationMemoryBusSize()).thenReturn(busSize);
+        when(integrationConfig.getIntegrationModuleOverflowDefault()).thenReturn(overflow);
+        when(integrationConfig.getIntegrationQueryTimeoutMs()).thenReturn(2_000L);
+        when(integrationConfig.getIntegrationQueryMaxPending()).thenReturn(maxPending);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("test");
+        return new IntegrationService(integrationConfig, commonConfig);
+    }
+
+    @BeforeEach
+    public void setup() throws Exception {
+        service = createService(64, "reject", 2);
+        service.registerCallback(ModuleCatalog.Modules.BILLING, q -> {
+            if ( "slow".equals(q.getQuery()) ) Now.sleep(500);
+            q.setResult("re:" + q.getQuery());
+        });
+        service.startRunners();
+    }
+
+    @AfterEach
+    public void clean() {
+        service.shutdown();
+    }
+
+    private IntegrationQuery createQuery(Object param, long timeoutMs) {
+        IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CAPTURE, "test");
+        q.setServiceNameDest(ModuleCatalog.Modules.BILLING);
+        q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MEMORY);
+        q.setQuery(param);
+        q.setTimeout_ms(timeoutMs);
+        return q;
+    }
+
+    @Test
+    public void testSyncQuery() throws ITOverQuotaException {
+        log.info("[integration][test] Running testSyncQuery");
+
+        IntegrationQuery r = service.processSyncQuery(createQuery("ping", 0));
+        assertEquals(IntegrationQuery.QueryState.STATE_DONE, r.getState());
+        assertEquals("re:ping", r.getResult());
+
+        // deadline reached
+        r = service.processSyncQuery(createQuery("slow", 100));
+        assertEquals(IntegrationQuery.QueryState.STATE_ERROR, r.getState());
+        assertEquals(1L, service.getTimeoutRequests().get().longValue());
+    }
+
+    @Test
+    public void testAsyncQuery() throws Exception {
+        log.info("[integration][test] Running testAsyncQuery");
+
+        CompletableFuture<IntegrationQuery> f = service.processAsyncQuery(createQuery("ping", 0));
+        IntegrationQuery r = f.get(2, TimeUnit.SECONDS);
+        assertEquals(IntegrationQuery.QueryType.TYPE_ASYNC, r.getType());
+        assertEquals("re:ping", r.getResult());
+
+        f = service.processAsyncQuery(createQuery("slow", 100));
+        CompletableFuture<IntegrationQuery> ff = f;
+        ExecutionException x = assertThrows(ExecutionException.class, () -> ff.get(2, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, x.getCause());
+    }
+
+    @Test
+    public void testPendingLimit() throws Exception {
+        log.info("[integration][test] Running testPendingLimit");
+
+        service.processAsyncQuery(createQuery("slow", 0));
+        service.processAsyncQuery(createQuery("slow", 0));
+        assertThrows(ITOverQuotaException.class, () -> service.processAsyncQuery(createQuery("slow", 0)));
+    }
+
+    @Test
+    public void testPendingLimitConcurrent() throws Exception {
+        log.info("[integration][test] Running testPendingLimitConcurrent");
+
+        // concurrent requestors never get more than the allowed pending responses
+        AtomicInteger accepted = new AtomicInteger(0);
+        CountDownLatch go = new CountDownLatch(1);
+        ArrayList<Thread> requestors = new ArrayList<>();
+        for ( int i = 0 ; i < 16 ; i++ ) {
+            Thread t = new Thread(() -> {
+                try {
+                    go.await();
+                    service.processAsyncQuery(createQuery("slow", 0));
+                    accepted.incrementAndGet();
+                } catch (ITOverQuotaException | InterruptedException x) {
+                    // refused
+                }
+            });
+            requestors.add(t);
+            t.start();
+        }
+        go.countDown();
+        for ( Thread t : requestors ) t.join(5_000);
+        assertEquals(2, accepted.get());
+    }
+
+    @Test
+    public void testDroppedQuery() throws Exception {
+        log.info("[integration][test] Running testDroppedQuery");
+
+        // a lane of 2 events dropping the newest ones, the worker is blocked on the first event
+        IntegrationService dropping = createService(2, "drop_newest", 10);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dropping.registerCallback(ModuleCatalog.Modules.BILLING, q -> {
+            blocked.countDown();
+            try { release.await(5, TimeUnit.SECONDS); } catch (InterruptedException x) { Thread.currentThread().interrupt(); }
+            q.setResult("re:" + q.getQuery());
+        });
+        dropping.startRunners();
+        try {
+            CompletableFuture<IntegrationQuery> first = dropping.processAsyncQuery(createQuery("first", 0));
+            assertTrue(blocked.await(2, TimeUnit.SECONDS));
+            ArrayList<CompletableFuture<IntegrationQuery>> queued = new ArrayList<>();
+            for ( int i = 0 ; i < 2 ; i++ ) queued.add(dropping.processAsyncQuery(createQuery("queued", 0)));
+
+            // the requestor of the dropped query is released without waiting for the timeout
+            long start = Now.NowUtcMs();
+            IntegrationQuery dropped = dropping.processSyncQuery(createQuery("dropped", 0));
+            assertTrue(Now.NowUtcMs() - start < 1_000);
+            assertEquals(IntegrationQuery.QueryState.STATE_ERROR, dropped.getState());
+            assertEquals("integration-event-dropped", dropped.getResponse().getMessage());
+            CompletableFuture<IntegrationQuery> f = dropping.processAsyncQuery(createQuery("dropped", 0));
+            ExecutionException x = assertThrows(ExecutionException.class, () -> f.get(1, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, x.getCause());
+            assertEquals(0L, dropping.getTimeoutRequests().get().longValue());
+
+            // the others are processed
+            release.countDown();
+            assertEquals("re:first", first.get(2, TimeUnit.SECONDS).getResult());
+            for ( CompletableFuture<IntegrationQuery> q : queued ) assertEquals("re:queued", q.get(2, TimeUnit.SECONDS).getResult());
+        } finally {
+            release.countDown();
+            dropping.shutdown();
+        }
+    }
+
+}
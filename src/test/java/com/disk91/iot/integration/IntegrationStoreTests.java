@@ -0,0 +1,110 @@
+package com.disk91.iot.integration;
+
+import com.disk91.common.config.CommonConfig;
+import com.disk91.common.config.ModuleCatalog;
+import com.disk91.common.tools.Now;
+import com.disk91.integration.api.interfaces.IntegrationQuery;
+import com.disk91.integration.config.IntegrationConfig;
+import com.disk91.integration.services.IntegrationService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IntegrationStoreTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void testStoreRelease() throws Exception {
+        log.info("[integration][test] Running testStoreRelease");
+
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(2);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn("store");
+        when(integrationConfig.getIntegrationStoreExpirationMs()).thenReturn(300_000L);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("test");
+
+        CountDownLatch done = new CountDownLatch(20);
+        IntegrationService service = new IntegrationService(integrationConfig, commonConfig);
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, q -> done.countDown());
+        service.startRunners();
+
+        for ( int i = 0 ; i < 20 ; i++ ) {
+            IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CAPTURE, "test");
+            q.setServiceNameDest(ModuleCatalog.Modules.AUDIT);
+            q.setType(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET);
+            q.setRoute(IntegrationQuery.QueryRoute.ROUTE_MEMORY);
+            q.setQuery("event " + i);
+            service.processQuery(q);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Now.sleep(100);
+
+        // released by the workers, no garbage collection
+        assertEquals(0, service.getStoreEvents().get().longValue());
+        assertEquals(0, service.getStoreBytes().get().longValue());
+        assertEquals(0, service.getInQueueRequests().get().longValue());
+        service.shutdown();
+    }
+
+    @Test
+    public void testDeferredCompletion() throws Exception {
+        log.info("[integration][test] Running testDeferredCompletion");
+
+        IntegrationConfig integrationConfig = mock(IntegrationConfig.class);
+        when(integrationConfig.isIntegrationRouteMemoryEnabled()).thenReturn(true);
+        when(integrationConfig.getIntegrationWorkersMaxCount()).thenReturn(1);
+        when(integrationConfig.getIntegrationMemoryBus()).thenReturn("store");
+        when(integrationConfig.getIntegrationStoreExpirationMs()).thenReturn(300_000L);
+        CommonConfig commonConfig = mock(CommonConfig.class);
+        when(commonConfig.getInstanceId()).thenReturn("test");
+
+        // the module keeps the events and completes them later, the worker goes on with the next ones
+        LinkedBlockingQueue<IntegrationQuery> kept = new LinkedBlockingQueue<>();
+        IntegrationService service = new IntegrationService(integrationConfig, commonConfig);
+        service.registerCallback(ModuleCatalog.Modules.AUDIT, q -> {
+            service.deferCompletion(q);
+            kept.add(q);
+        });
+        service.startRunners();
+
+        CountDownLatch terminated = new CountDownLatch(3);
+        ArrayList<IntegrationQuery> sent = new ArrayList<>();
+        for ( int i = 0 ; i < 3 ; i++ ) {
+            IntegrationQuery q = new IntegrationQuery(ModuleCatalog.Modules.CAPTURE, "test");
+            q.setServiceNameDest(ModuleCatalog.Modules.AUDIT);
+            q.setType(IntegrationQuery.QueryType.TYPE_FIRE_AND_FORGET);
+            q.setRoute(IntegrationQuery.QueryRoute.ROUTE_DB);
+            q.setQuery("event " + i);
+            ReflectionTestUtils.invokeMethod(service, "deliverLocally", q, (Runnable) terminated::countDown);
+            sent.add(q);
+        }
+        for ( int i = 0 ; i < 3 ; i++ ) assertNotNull(kept.poll(5, TimeUnit.SECONDS));
+        Now.sleep(100);
+        assertEquals(3, terminated.getCount());
+        assertTrue(sent.stream().allMatch(q -> q.getState() == IntegrationQuery.QueryState.STATE_PENDING));
+
+        // terminated once completed by the module
+        sent.get(0).setState(IntegrationQuery.QueryState.STATE_DONE);
+        sent.get(1).setState(IntegrationQuery.QueryState.STATE_ERROR);
+        sent.get(2).setState(IntegrationQuery.QueryState.STATE_DONE);
+        for ( IntegrationQuery q : sent ) service.completeDeferred(q);
+        assertTrue(terminated.await(1, TimeUnit.SECONDS));
+        assertEquals(IntegrationQuery.QueryState.STATE_ERROR, sent.get(1).getState());
+        assertEquals(0, service.getStoreEvents().get().longValue());
+        service.shutdown();
+    }
+
+}
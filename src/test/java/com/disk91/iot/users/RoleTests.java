@@ -5,6 +5,7 @@ import com.disk91.common.tools.exceptions.ITTooManyException;
 import com.disk91.users.config.UsersConfig;
 import com.disk91.users.mdb.entities.Role;
 import com.disk91.users.mdb.repositories.RolesRepository;
+import com.disk91.users.services.UserAuthorizationCache;
 import com.disk91.users.services.UsersRolesCache;
 import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
 import org.junit.jupiter.api.Test;
@@ -40,6 +41,9 @@ public class RoleTests {
     @Mock
     private RolesRepository rolesRepository;
 
+    @Mock
+    private UserAuthorizationCache userAuthorizationCache;
+
     @InjectMocks
     private UsersRolesCache usersRolesCache;
 
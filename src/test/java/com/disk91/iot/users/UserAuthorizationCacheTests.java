@@ -0,0 +1,143 @@
+package com.disk91.iot.users;
+
+import com.disk91.common.tools.exceptions.ITNotFoundException;
+import com.disk91.common.tools.exceptions.ITRightException;
+import com.disk91.users.config.UsersConfig;
+import com.disk91.users.mdb.entities.User;
+import com.disk91.users.services.UserAuthorizationCache;
+import com.disk91.users.services.UserCache;
+import com.disk91.users.services.UserCommon;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class UserAuthorizationCacheTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    protected static final List<String> LOGINS = List.of("alice", "bob", "carol");
+    protected static final List<String> GROUPS = List.of("g1", "g2", "g3");
+    protected static final List<String> ROLES = List.of("ROLE_A", "ROLE_B");
+
+    // rights granted, "login|role|group", group is "*" for a global role
+    protected final Set<String> rights = new HashSet<>();
+
+    protected static User newUser(String login) {
+        User u = new User();
+        u.setLogin(login);
+        u.setActive(true);
+        return u;
+    }
+
+    /**
+     * UserCommon verifying the rights from the rights set, with or without the decision cache
+     */
+    protected UserCommon newUserCommon(UserAuthorizationCache cache, Runnable onVerification) throws Exception {
+        UserCache userCache = Mockito.mock(UserCache.class);
+        lenient().when(userCache.getUser(anyString())).thenAnswer(i -> newUser(i.getArgument(0)));
+        UserCommon common = Mockito.spy(new UserCommon());
+        ReflectionTestUtils.setField(common, "userCache", userCache);
+        ReflectionTestUtils.setField(common, "userAuthorizationCache", cache);
+        lenient().doAnswer(i -> {
+            String login = i.getArgument(0);
+            String role = i.getArgument(1);
+            String group = i.getArgument(3);
+            boolean granted;
+            synchronized (rights) {
+                granted = rights.contains(login + "|" + role + "|" + ((group == null) ? "*" : group));
+            }
+            if ( onVerification != null ) onVerification.run();
+            if ( !granted ) throw new ITRightException("user-rights-role-not-found-in-apikey");
+            return newUser(login);
+        }).when(common).getUserWithRolesAndGroups(anyString(), anyString(), any(), any(), anyBoolean());
+        return common;
+    }
+
+    protected UserAuthorizationCache newCache(int maxSize) {
+        UsersConfig config = Mockito.mock(UsersConfig.class);
+        lenient().when(config.getUsersAuthorizationCacheMaxSize()).thenReturn(maxSize);
+        lenient().when(config.getUsersAuthorizationCacheExpiration()).thenReturn(300);
+        UserAuthorizationCache cache = new UserAuthorizationCache();
+        ReflectionTestUtils.setField(cache, "usersConfig", config);
+        return cache;
+    }
+
+    @Test
+    public void testCachedEquivalence() throws Exception {
+        log.info("[users][test] Running testCachedEquivalence");
+        UserAuthorizationCache cache = newCache(1000);
+        UserCommon cached = newUserCommon(cache, null);
+        UserCommon uncached = newUserCommon(newCache(0), null);
+
+        // random rights changes (invalidated as UserCache does) mixed with verifications
+        Random r = new Random(42);
+        for ( int step = 0 ; step < 5000 ; step++ ) {
+            String login = LOGINS.get(r.nextInt(LOGINS.size()));
+            if ( r.nextInt(10) == 0 ) {
+                String right = login + "|" + ROLES.get(r.nextInt(ROLES.size())) + "|"
+                        + ((r.nextInt(4) == 0) ? "*" : GROUPS.get(r.nextInt(GROUPS.size())));
+                synchronized (rights) {
+                    if ( !rights.remove(right) ) rights.add(right);
+                }
+                cache.invalidateLogin(login);
+                continue;
+            }
+            String globalRole = (r.nextBoolean()) ? ROLES.get(r.nextInt(ROLES.size())) : null;
+            String groupRole = ROLES.get(r.nextInt(ROLES.size()));
+            List<String> groups = GROUPS.subList(0, 1 + r.nextInt(GROUPS.size()));
+            assertEquals(
+                    uncached.isAuthorizedOnGroups(login, globalRole, groupRole, groups),
+                    cached.isAuthorizedOnGroups(login, globalRole, groupRole, groups),
+                    "step " + step
+            );
+        }
+        assertTrue(cache.getCacheHit().get().longValue() > 0);
+    }
+
+    @Test
+    public void testInvalidationDuringVerification() throws Exception {
+        log.info("[users][test] Running testInvalidationDuringVerification");
+        UserAuthorizationCache cache = newCache(1000);
+        rights.add("alice|ROLE_A|g1");
+
+        // the right is revoked while the first verification is running
+        AtomicBoolean revoke = new AtomicBoolean(true);
+        UserCommon common = newUserCommon(cache, () -> {
+            if ( revoke.getAndSet(false) ) {
+                synchronized (rights) { rights.clear(); }
+                cache.invalidateLogin("alice");
+            }
+        });
+
+        assertTrue(common.isAuthorizedOnGroups("alice", null, "ROLE_A", List.of("g1")));
+        // the decision computed before the revocation has not been stored
+        assertFalse(common.isAuthorizedOnGroups("alice", null, "ROLE_A", List.of("g1")));
+        assertFalse(common.isAuthorizedOnGroups("alice", null, "ROLE_A", List.of("g1")));
+    }
+
+}
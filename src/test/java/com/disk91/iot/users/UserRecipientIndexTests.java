@@ -0,0 +1,105 @@
+package com.disk91.iot.users;
+
+import com.disk91.common.tools.exceptions.ITNotFoundException;
+import com.disk91.common.tools.exceptions.ITRightException;
+import com.disk91.groups.mdb.entities.Group;
+import com.disk91.groups.services.GroupsServices;
+import com.disk91.groups.tools.GroupsList;
+import com.disk91.users.config.UsersConfig;
+import com.disk91.users.mdb.entities.User;
+import com.disk91.users.services.UserAuthorizationCache;
+import com.disk91.users.services.UserCache;
+import com.disk91.users.services.UserCommon;
+import com.disk91.users.services.UserRecipientIndex;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@EnableAutoConfiguration(exclude={MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("test")
+@PropertySource(value = {"file:configuration/common-test.properties"}, ignoreResourceNotFound = true)
+@AutoConfigureEmbeddedDatabase
+public class UserRecipientIndexTests {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    protected static User newUser(String login, String group) {
+        User u = new User();
+        u.setLogin(login);
+        u.setLanguage("en");
+        u.setActive(true);
+        u.setGroups(new ArrayList<>(List.of(group)));
+        u.setAcls(new ArrayList<>());
+        return u;
+    }
+
+    @Test
+    public void testIncrementalIndex() throws ITNotFoundException, ITRightException {
+        log.info("[users][test] Running testIncrementalIndex");
+
+        UsersConfig config = Mockito.mock(UsersConfig.class);
+        lenient().when(config.isUsersRecipientIndexEnabled()).thenReturn(true);
+        lenient().when(config.getUsersRecipientIndexExpiration()).thenReturn(0);
+
+        Group g = Mockito.mock(Group.class);
+        lenient().when(g.isAlertGroup()).thenReturn(true);
+        GroupsList gl = Mockito.mock(GroupsList.class);
+        lenient().when(gl.getHead()).thenReturn(g);
+        GroupsServices groupsServices = Mockito.mock(GroupsServices.class);
+        lenient().when(groupsServices.getGroupsListByShortId("grp")).thenReturn(gl);
+
+        UserCommon userCommon = Mockito.mock(UserCommon.class);
+        when(userCommon.getUsersByGroupWithRole("grp", false, true, "ROLE_ALERT"))
+                .thenAnswer(i -> new ArrayList<>(List.of(newUser("alice", "grp"), newUser("bob", "grp"))));
+
+        UserAuthorizationCache authorizationCache = new UserAuthorizationCache();
+        UserRecipientIndex index = new UserRecipientIndex(
+                config, userCommon, Mockito.mock(UserCache.class), groupsServices, authorizationCache
+        );
+        index.initUserRecipientIndex();
+
+        // built on first use, then a lookup
+        assertEquals(2, index.getAlertRecipients("grp", "ROLE_ALERT").size());
+        assertEquals(2, index.getAlertRecipients("grp", "ROLE_ALERT").size());
+        verify(userCommon, times(1)).getUsersByGroupWithRole(anyString(), anyBoolean(), anyBoolean(), anyString());
+        assertEquals(2, index.getRecipientCount());
+
+        // bob leaves the group, carol joins, only these users are verified again
+        when(userCommon.getUserWithRolesAndGroups("bob", "ROLE_ALERT", null, "grp", true))
+                .thenThrow(new ITRightException("user-rights-role-not-found-in-apikey"));
+        when(userCommon.getUserWithRolesAndGroups("carol", "ROLE_ALERT", null, "grp", true))
+                .thenReturn(newUser("carol", "grp"));
+        authorizationCache.invalidateLogin("bob");
+        authorizationCache.invalidateLogin("carol");
+        List<UserRecipientIndex.Recipient> l = index.getAlertRecipients("grp", "ROLE_ALERT");
+        assertEquals(2, l.size());
+        assertTrue(l.stream().anyMatch(r -> r.login().equals("carol")));
+        assertFalse(l.stream().anyMatch(r -> r.login().equals("bob")));
+        assertTrue(l.getFirst().alertPreference().isEmailAlert());
+        verify(userCommon, times(1)).getUsersByGroupWithRole(anyString(), anyBoolean(), anyBoolean(), anyString());
+
+        // group or role definition change, the list is built again
+        authorizationCache.invalidateAll();
+        assertEquals(0, index.getRecipientCount());
+        index.getAlertRecipients("grp", "ROLE_ALERT");
+        verify(userCommon, times(2)).getUsersByGroupWithRole(anyString(), anyBoolean(), anyBoolean(), anyString());
+    }
+
+}